@@ -28,6 +28,7 @@ package org.forgerock.openidm.provisioner.openicf;
 
 import org.forgerock.json.fluent.JsonValue;
 import org.forgerock.json.resource.JsonResourceException;
+import org.forgerock.openidm.provisioner.openicf.query.QueryFilter;
 import org.identityconnectors.common.Pair;
 import org.identityconnectors.framework.api.APIConfiguration;
 import org.identityconnectors.framework.api.operations.APIOperation;
@@ -35,11 +36,14 @@ import org.identityconnectors.framework.common.objects.*;
 import org.identityconnectors.framework.common.objects.filter.Filter;
 
 import java.net.URI;
-import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
 /**
+ * Helper performing the conversions and checks of the operations on one object type.
+ * <p/>
+ * Implementations hold no per-request state, so one instance may serve concurrent requests.
+ *
  * @author $author$
  * @version $Revision$ $Date$
  */
@@ -94,11 +98,13 @@ public interface OperationHelper {
 
 
     /**
+     * Gets a {@link ResultsHandler} which converts each object as the connector returns it
+     * and passes it on to the {@code handler}.
+     *
+     * @param handler the handler to stream the converted objects to
      * @return new instance of {@link ResultsHandler}
      */
-    public ResultsHandler getResultsHandler();
-
-    public List<Map<String, Object>> getQueryResult();
+    public ResultsHandler getResultsHandler(QueryResultHandler handler);
 
     /**
      * Build new {@code Filter} instance form the {@code query} and {@code params} values.
@@ -110,6 +116,17 @@ public interface OperationHelper {
      */
     public Filter build(Map<String, Object> query, Map<String, Object> params) throws Exception;
 
+    /**
+     * Build a new {@code QueryFilter} from the {@code query} and {@code params} values, split into
+     * the part the connector can evaluate and the part which must be evaluated locally.
+     *
+     * @param query
+     * @param params
+     * @return
+     * @throws Exception
+     */
+    public QueryFilter buildQueryFilter(Map<String, Object> query, Map<String, Object> params) throws Exception;
+
     public Pair<ObjectClass, Set<Attribute>> build(Class<? extends APIOperation> operation, JsonValue source) throws Exception;
 
     /**
@@ -0,0 +1,45 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright © 2013 ForgeRock AS. All rights reserved.
+ *
+ * The contents of this file are subject to the terms
+ * of the Common Development and Distribution License
+ * (the License). You may not use this file except in
+ * compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://forgerock.org/license/CDDLv1.0.html
+ * See the License for the specific language governing
+ * permission and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL
+ * Header Notice in each file and include the License file
+ * at http://forgerock.org/license/CDDLv1.0.html
+ * If applicable, add the following below the CDDL Header,
+ * with the fields enclosed by brackets [] replaced by
+ * your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ */
+
+package org.forgerock.openidm.provisioner.openicf;
+
+import java.util.Map;
+
+/**
+ * Receives the objects of a streaming query, one at a time, as the connector returns them.
+ * <p/>
+ * The handler is called on the thread running the connector search, so a handler which
+ * blocks, for example on a full work queue, holds back the connector until it returns.
+ */
+public interface QueryResultHandler {
+
+    /**
+     * Handles an object returned by the query, converted to its OpenIDM representation.
+     *
+     * @param object the converted object
+     * @return true to continue with the next object, false to stop the query
+     * @throws RuntimeException to abort the query with an error
+     */
+    public boolean handle(Map<String, Object> object);
+}
@@ -42,6 +42,12 @@ import java.util.*;
 
 public class AttributeInfoHelper {
     private final static Logger logger = LoggerFactory.getLogger(AttributeInfoHelper.class);
+
+    private final static ValueConverter<String> STRING_CONVERTER = ConnectorUtil.getValueConverter(String.class);
+    private final static ValueConverter<QualifiedUid> QUALIFIED_UID_CONVERTER =
+            ConnectorUtil.getValueConverter(QualifiedUid.class);
+    private final static ValueConverter<GuardedString> GUARDED_STRING_CONVERTER =
+            ConnectorUtil.getValueConverter(GuardedString.class);
     private final Class<?> type;
     private final String name;
     private final Set<AttributeFlag> flags;
@@ -49,6 +55,9 @@ public class AttributeInfoHelper {
     private final Object defaultValue;
     private final String cipher;
     private final String key;
+    // Converters resolved once from the schema, so converting a value is a direct call
+    private final ValueConverter<?> readConverter;
+    private final ValueConverter<?> writeConverter;
 
 
     public AttributeInfoHelper(String name, boolean isOperationalOption, Map<String, Object> schema) throws SchemaException {
@@ -141,11 +150,15 @@ public class AttributeInfoHelper {
             //required
             builder.setRequired((null != schema.get(Constants.REQUIRED)) ? (Boolean) schema.get(Constants.REQUIRED) : false);
             attributeInfo = builder.build();
+            readConverter = ConnectorUtil.getValueConverter(attributeInfo.isMultiValued() ? Object.class : type);
+            writeConverter = ConnectorUtil.getValueConverter(attributeInfo.getType());
         } else {
             flags = null;
             attributeInfo = null;
             key = null;
             cipher = null;
+            readConverter = null;
+            writeConverter = null;
         }
     }
 
@@ -200,10 +213,13 @@ public class AttributeInfoHelper {
         if (null == source) {
             attribute = AttributeBuilder.build(attributeInfo.getName());
         } else {
+            ValueConverter<?> converter = attributeInfo == this.attributeInfo
+                    ? writeConverter
+                    : ConnectorUtil.getValueConverter(attributeInfo.getType());
             if (attributeInfo.isMultiValued()) {
-                attribute = AttributeBuilder.build(attributeInfo.getName(), getMultiValue(source, attributeInfo.getType()));
+                attribute = AttributeBuilder.build(attributeInfo.getName(), getMultiValue(source, converter));
             } else {
-                attribute = AttributeBuilder.build(attributeInfo.getName(), getSingleValue(source, attributeInfo.getType()));
+                attribute = AttributeBuilder.build(attributeInfo.getName(), getSingleValue(source, converter));
             }
         }
         return attribute;
@@ -215,13 +231,13 @@ public class AttributeInfoHelper {
             if (null != source.getValue()) {
                 List<Object> value = new ArrayList<Object>(source.getValue().size());
                 for (Object o : source.getValue()) {
-                    value.add(ConnectorUtil.coercedTypeCasting(o, Object.class));
+                    value.add(readConverter.convert(o));
                 }
                 resultValue = value;
             }
         } else {
             try {
-                resultValue = ConnectorUtil.coercedTypeCasting(AttributeUtil.getSingleValue(source), type);
+                resultValue = readConverter.convert(AttributeUtil.getSingleValue(source));
             } catch (IllegalArgumentException e) {
                 logger.warn(
                         "Incorrect schema configuration. Expecting {} attribute to be single but it has multi value.",
@@ -249,30 +265,30 @@ public class AttributeInfoHelper {
      */
     public void build(OperationOptionsBuilder builder, Object value) throws IOException {
         if (OperationOptions.OP_ATTRIBUTES_TO_GET.equals(name)) {
-            builder.setAttributesToGet(getMultiValue(value, String.class));
+            builder.setAttributesToGet(getMultiValue(value, STRING_CONVERTER));
         } else if (OperationOptions.OP_CONTAINER.equals(name)) {
-            builder.setContainer(getSingleValue(value, QualifiedUid.class));
+            builder.setContainer(getSingleValue(value, QUALIFIED_UID_CONVERTER));
         } else if (OperationOptions.OP_RUN_AS_USER.equals(name)) {
-            builder.setRunAsUser(getSingleValue(value, String.class));
+            builder.setRunAsUser(getSingleValue(value, STRING_CONVERTER));
         } else if (OperationOptions.OP_RUN_WITH_PASSWORD.equals(name)) {
-            builder.setRunWithPassword(getSingleValue(value, GuardedString.class));
+            builder.setRunWithPassword(getSingleValue(value, GUARDED_STRING_CONVERTER));
         } else if (OperationOptions.OP_SCOPE.equals(name)) {
-            builder.setScope(getSingleValue(value, String.class));
+            builder.setScope(getSingleValue(value, STRING_CONVERTER));
         } else {
-            builder.setOption(name, getNewValue(value == null ? defaultValue : value, attributeInfo.isMultiValued(), attributeInfo.getType()));
+            builder.setOption(name, getNewValue(value == null ? defaultValue : value, attributeInfo.isMultiValued(), writeConverter));
         }
     }
 
-    private Object getNewValue(Object source, boolean isMultiValued, Class type) {
+    private Object getNewValue(Object source, boolean isMultiValued, ValueConverter<?> converter) {
         if (isMultiValued) {
-            return getMultiValue(source, type);
+            return getMultiValue(source, converter);
         } else {
-            return getSingleValue(source, type);
+            return getSingleValue(source, converter);
         }
     }
 
 
-    private <T> T getSingleValue(Object source, Class<T> clazz) {
+    private <T> T getSingleValue(Object source, ValueConverter<T> converter) {
         if (null == source) {
             return null;
         } else if ((source instanceof List)) {
@@ -281,7 +297,7 @@ public class AttributeInfoHelper {
                 if (c.isEmpty()) {
                     return null;
                 } else {
-                    return ConnectorUtil.coercedTypeCasting(c.get(0), clazz);
+                    return converter.convert(c.get(0));
                 }
             }
             logger.error("Non multivalued [{}] argument has collection value", name);
@@ -290,11 +306,11 @@ public class AttributeInfoHelper {
             logger.error("Non multivalued [{}] argument has array value", name);
             throw new IllegalArgumentException("Non multivalued argument [" + name + "] has array value");
         } else {
-            return ConnectorUtil.coercedTypeCasting(source, clazz);
+            return converter.convert(source);
         }
     }
 
-    private <T> Collection<T> getMultiValue(Object source, Class<T> clazz) {
+    private <T> Collection<T> getMultiValue(Object source, ValueConverter<T> converter) {
         if (null == source) {
             return null;
         }
@@ -302,16 +318,16 @@ public class AttributeInfoHelper {
         if (source instanceof Collection) {
             newValues = new ArrayList<T>(((Collection) source).size());
             for (Object o : (Collection) source) {
-                newValues.add(ConnectorUtil.coercedTypeCasting(o, clazz));
+                newValues.add(converter.convert(o));
             }
         } else if (source.getClass().isArray()) {
             newValues = new ArrayList<T>(((Object[]) source).length);
             for (Object o : (Object[]) source) {
-                newValues.add(ConnectorUtil.coercedTypeCasting(o, clazz));
+                newValues.add(converter.convert(o));
             }
         } else {
             newValues = new ArrayList<T>(1);
-            newValues.add(ConnectorUtil.coercedTypeCasting(source, clazz));
+            newValues.add(converter.convert(source));
         }
 
         return newValues;
@@ -50,6 +50,8 @@ import java.math.BigInteger;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import static org.forgerock.json.schema.validator.Constants.*;
 
@@ -770,6 +772,161 @@ public class ConnectorUtil {
         return name;
     }
 
+    /**
+     * Converts values to their JSON representation, the way
+     * {@link #coercedTypeCasting(Object, Class)} does with an {@code Object} target.
+     */
+    private static final ValueConverter<Object> JSON_VALUE_CONVERTER = new ValueConverter<Object>() {
+        public Object convert(Object source) {
+            if (source instanceof String || source instanceof Number || source instanceof Boolean
+                    || source instanceof Map || source instanceof List || null == source) {
+                return source;
+            }
+            return coercedTypeCasting(source, Object.class);
+        }
+    };
+
+    /**
+     * Converts values to one target type. Values of the target type are returned as they are,
+     * the source types the converter knows are converted directly, and the others are coerced
+     * by {@link #coercedTypeCasting(Object, Class)}.
+     */
+    private static class TypedValueConverter<T> implements ValueConverter<T> {
+        private final Class<T> clazz;
+        private final Class<?> instanceClazz;
+
+        TypedValueConverter(Class<T> clazz) {
+            this.clazz = clazz;
+            Class<?> wrapper = PRIMITIVE_WRAPPERS.get(clazz);
+            this.instanceClazz = null != wrapper ? wrapper : clazz;
+        }
+
+        @SuppressWarnings("unchecked")
+        public T convert(Object source) {
+            if (instanceClazz.isInstance(source)) {
+                return (T) source;
+            }
+            if (null == source) {
+                return null;
+            }
+            Object converted = convertDirectly(source);
+            if (null != converted) {
+                return (T) converted;
+            }
+            return coercedTypeCasting(source, clazz);
+        }
+
+        /**
+         * Converts the source types which convert without failure.
+         *
+         * @param source the value to convert, not null nor of the target type
+         * @return the converted value, null to coerce the value instead
+         */
+        Object convertDirectly(Object source) {
+            return null;
+        }
+    }
+
+    private static final Map<Class<?>, Class<?>> PRIMITIVE_WRAPPERS = new HashMap<Class<?>, Class<?>>();
+
+    /**
+     * The converters to the attribute types, shared by all attributes of one type.
+     */
+    private static final ConcurrentMap<Class<?>, ValueConverter<?>> VALUE_CONVERTERS =
+            new ConcurrentHashMap<Class<?>, ValueConverter<?>>();
+
+    static {
+        PRIMITIVE_WRAPPERS.put(boolean.class, Boolean.class);
+        PRIMITIVE_WRAPPERS.put(char.class, Character.class);
+        PRIMITIVE_WRAPPERS.put(int.class, Integer.class);
+        PRIMITIVE_WRAPPERS.put(long.class, Long.class);
+        PRIMITIVE_WRAPPERS.put(float.class, Float.class);
+        PRIMITIVE_WRAPPERS.put(double.class, Double.class);
+
+        VALUE_CONVERTERS.put(Object.class, JSON_VALUE_CONVERTER);
+        VALUE_CONVERTERS.put(String.class, new TypedValueConverter<String>(String.class) {
+            Object convertDirectly(Object source) {
+                Class<?> sourceClass = source.getClass();
+                if (sourceClass == Integer.class || sourceClass == Long.class || sourceClass == Double.class
+                        || sourceClass == Float.class || sourceClass == Boolean.class
+                        || sourceClass == BigInteger.class || sourceClass == BigDecimal.class) {
+                    return source.toString();
+                }
+                return null;
+            }
+        });
+        VALUE_CONVERTERS.put(Long.class, new TypedValueConverter<Long>(Long.class) {
+            Object convertDirectly(Object source) {
+                return source instanceof Integer ? Long.valueOf(((Integer) source).longValue()) : null;
+            }
+        });
+        VALUE_CONVERTERS.put(long.class, new TypedValueConverter<Long>(long.class) {
+            Object convertDirectly(Object source) {
+                return source instanceof Integer ? Long.valueOf(((Integer) source).longValue()) : null;
+            }
+        });
+        VALUE_CONVERTERS.put(Double.class, new TypedValueConverter<Double>(Double.class) {
+            Object convertDirectly(Object source) {
+                return source instanceof Integer ? Double.valueOf(((Integer) source).doubleValue()) : null;
+            }
+        });
+        VALUE_CONVERTERS.put(double.class, new TypedValueConverter<Double>(double.class) {
+            Object convertDirectly(Object source) {
+                return source instanceof Integer ? Double.valueOf(((Integer) source).doubleValue()) : null;
+            }
+        });
+        VALUE_CONVERTERS.put(BigInteger.class, new TypedValueConverter<BigInteger>(BigInteger.class) {
+            Object convertDirectly(Object source) {
+                if (source instanceof Integer || source instanceof Long) {
+                    return BigInteger.valueOf(((Number) source).longValue());
+                }
+                return null;
+            }
+        });
+        VALUE_CONVERTERS.put(BigDecimal.class, new TypedValueConverter<BigDecimal>(BigDecimal.class) {
+            Object convertDirectly(Object source) {
+                if (source instanceof Integer || source instanceof Long) {
+                    return BigDecimal.valueOf(((Number) source).longValue());
+                } else if (source instanceof Double) {
+                    return BigDecimal.valueOf((Double) source);
+                }
+                return null;
+            }
+        });
+        VALUE_CONVERTERS.put(GuardedString.class, new TypedValueConverter<GuardedString>(GuardedString.class) {
+            Object convertDirectly(Object source) {
+                return source instanceof String ? new GuardedString(((String) source).toCharArray()) : null;
+            }
+        });
+    }
+
+    /**
+     * Get the converter of values to the {@code clazz} type.
+     * <p/>
+     * Values which already are of the target type are returned as they are. The converters of
+     * the common attribute types convert the common source types directly, such as numbers to
+     * strings or integers to longs, and the other values are coerced by
+     * {@link #coercedTypeCasting(Object, Class)}. One converter is shared per target type.
+     *
+     * @param clazz the target type, {@code Object} for the JSON representation
+     * @return the converter
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> ValueConverter<T> getValueConverter(final Class<T> clazz) {
+        if (null == clazz) {
+            throw new IllegalArgumentException("Target Class can not be null");
+        }
+        ValueConverter<T> converter = (ValueConverter<T>) VALUE_CONVERTERS.get(clazz);
+        if (null == converter) {
+            converter = new TypedValueConverter<T>(clazz);
+            ValueConverter<T> existing = (ValueConverter<T>) VALUE_CONVERTERS.putIfAbsent(clazz, converter);
+            if (null != existing) {
+                converter = existing;
+            }
+        }
+        return converter;
+    }
+
     /**
      * Coerce the {@code source} object to an object of {@code clazz} type.
      * <p/>
@@ -56,6 +56,11 @@ public class ObjectClassInfoHelper {
     private final ObjectClass objectClass;
     private String nameAttribute = null;
     private final Set<String> attributesReturnedByDefault;
+    private final Map<String, AttributeInfoHelper> attributesByName;
+    // The attributes set by the operations, the name and uid excluded
+    private final List<AttributeInfoHelper> createableAttributes;
+    private final List<AttributeInfoHelper> updateableAttributes;
+    private final List<AttributeInfoHelper> valueAttributes;
 
     /**
      * Create a custom object class.
@@ -81,6 +86,24 @@ public class ObjectClassInfoHelper {
             attributes.add(helper);
         }
         attributesReturnedByDefault = CollectionUtil.newReadOnlySet(defaultAttributes);
+
+        attributesByName = new HashMap<String, AttributeInfoHelper>(attributes.size());
+        createableAttributes = new ArrayList<AttributeInfoHelper>(attributes.size());
+        updateableAttributes = new ArrayList<AttributeInfoHelper>(attributes.size());
+        valueAttributes = new ArrayList<AttributeInfoHelper>(attributes.size());
+        for (AttributeInfoHelper attributeInfo : attributes) {
+            attributesByName.put(attributeInfo.getName(), attributeInfo);
+            if (Name.NAME.equals(attributeInfo.getName()) || Uid.NAME.equals(attributeInfo.getName())) {
+                continue;
+            }
+            valueAttributes.add(attributeInfo);
+            if (attributeInfo.getAttributeInfo().isCreateable()) {
+                createableAttributes.add(attributeInfo);
+            }
+            if (attributeInfo.getAttributeInfo().isUpdateable()) {
+                updateableAttributes.add(attributeInfo);
+            }
+        }
     }
 
     /**
@@ -128,37 +151,30 @@ public class ObjectClassInfoHelper {
         Set<String> keySet = source.required().asMap().keySet();
         if (CreateApiOp.class.isAssignableFrom(operation)) {
             builder.put(Name.NAME, new Name(nameValue));
-            for (AttributeInfoHelper attributeInfo : attributes) {
-                if (Name.NAME.equals(attributeInfo.getName()) || Uid.NAME.equals(attributeInfo.getName()) ||
-                        !keySet.contains(attributeInfo.getName())) {
+            for (AttributeInfoHelper attributeInfo : createableAttributes) {
+                if (!keySet.contains(attributeInfo.getName())) {
                     continue;
                 }
-                if (attributeInfo.getAttributeInfo().isCreateable()) {
-                    Object v = source.get(attributeInfo.getName());
-                    if (null == v && attributeInfo.getAttributeInfo().isRequired()) {
-                        throw new IllegalArgumentException("Required attribute {" + attributeInfo.getName() + "} value is null");
-                    }
-                    builder.put(attributeInfo.getName(), attributeInfo.build(v, cryptoService));
+                Object v = source.get(attributeInfo.getName());
+                if (null == v && attributeInfo.getAttributeInfo().isRequired()) {
+                    throw new IllegalArgumentException("Required attribute {" + attributeInfo.getName() + "} value is null");
                 }
+                builder.put(attributeInfo.getName(), attributeInfo.build(v, cryptoService));
             }
         } else if (UpdateApiOp.class.isAssignableFrom(operation)) {
             if (null != nameValue) {
                 builder.put(Name.NAME, new Name(nameValue));
             }
-            for (AttributeInfoHelper attributeInfo : attributes) {
-                if (Name.NAME.equals(attributeInfo.getName()) || Uid.NAME.equals(attributeInfo.getName()) ||
-                        !keySet.contains(attributeInfo.getName())) {
+            for (AttributeInfoHelper attributeInfo : updateableAttributes) {
+                if (!keySet.contains(attributeInfo.getName())) {
                     continue;
                 }
-                if (attributeInfo.getAttributeInfo().isUpdateable()) {
-                    Object v = source.get(attributeInfo.getName());
-                    builder.put(attributeInfo.getName(), attributeInfo.build(v, cryptoService));
-                }
+                Object v = source.get(attributeInfo.getName());
+                builder.put(attributeInfo.getName(), attributeInfo.build(v, cryptoService));
             }
         } else {
-            for (AttributeInfoHelper attributeInfo : attributes) {
-                if (Name.NAME.equals(attributeInfo.getName()) || Uid.NAME.equals(attributeInfo.getName()) ||
-                        !keySet.contains(attributeInfo.getName())) {
+            for (AttributeInfoHelper attributeInfo : valueAttributes) {
+                if (!keySet.contains(attributeInfo.getName())) {
                     continue;
                 }
                 Object v = source.get(attributeInfo.getName());
@@ -191,10 +207,9 @@ public class ObjectClassInfoHelper {
     }
 
     public Attribute build(String attributeName, Object source, CryptoService cryptoService) throws Exception {
-        for (AttributeInfoHelper attributeInfoHelper : attributes) {
-            if (attributeInfoHelper.getName().equals(attributeName)) {
-                return attributeInfoHelper.build(source, cryptoService);
-            }
+        AttributeInfoHelper attributeInfoHelper = attributesByName.get(attributeName);
+        if (null != attributeInfoHelper) {
+            return attributeInfoHelper.build(source, cryptoService);
         }
         if (source instanceof Collection) {
             return AttributeBuilder.build(attributeName, (Collection) source);
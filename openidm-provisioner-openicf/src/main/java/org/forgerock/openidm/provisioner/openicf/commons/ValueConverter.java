@@ -0,0 +1,46 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright © 2013 ForgeRock AS. All rights reserved.
+ *
+ * The contents of this file are subject to the terms
+ * of the Common Development and Distribution License
+ * (the License). You may not use this file except in
+ * compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://forgerock.org/license/CDDLv1.0.html
+ * See the License for the specific language governing
+ * permission and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL
+ * Header Notice in each file and include the License file
+ * at http://forgerock.org/license/CDDLv1.0.html
+ * If applicable, add the following below the CDDL Header,
+ * with the fields enclosed by brackets [] replaced by
+ * your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ */
+
+package org.forgerock.openidm.provisioner.openicf.commons;
+
+/**
+ * Converts attribute values to one target type.
+ * <p/>
+ * Converters are shared per target type and resolved once per attribute, when the schema is
+ * loaded, by {@link ConnectorUtil#getValueConverter(Class)}. A value which already has the
+ * target type is returned as it is, the common source types are converted directly, and only
+ * the other values go through the type dispatch of
+ * {@link ConnectorUtil#coercedTypeCasting(Object, Class)}.
+ *
+ * @param <T> the target type
+ */
+public interface ValueConverter<T> {
+
+    /**
+     * @param source the value to convert, may be null
+     * @return the converted value, null if {@code source} is null
+     * @throws IllegalArgumentException if the value can not be converted
+     */
+    public T convert(Object source);
+}
@@ -0,0 +1,192 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright © 2013 ForgeRock AS. All rights reserved.
+ *
+ * The contents of this file are subject to the terms
+ * of the Common Development and Distribution License
+ * (the License). You may not use this file except in
+ * compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://forgerock.org/license/CDDLv1.0.html
+ * See the License for the specific language governing
+ * permission and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL
+ * Header Notice in each file and include the License file
+ * at http://forgerock.org/license/CDDLv1.0.html
+ * If applicable, add the following below the CDDL Header,
+ * with the fields enclosed by brackets [] replaced by
+ * your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ */
+
+package org.forgerock.openidm.provisioner.openicf.impl;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.forgerock.json.fluent.JsonValue;
+import org.forgerock.json.fluent.JsonValueException;
+import org.forgerock.json.resource.JsonResourceException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs the operations of bulk requests concurrently on a bounded pool of threads of one
+ * connector.
+ * <p/>
+ * The pool is sized after the connector pool: no more than {@code maxObjects} operations are
+ * in flight at once, over all the bulk requests, so the operations do not wait for a connector
+ * instance, and no more than {@code maxIdle} threads are kept when there is no work.
+ * <p/>
+ * Each operation is reported on its own: a failed operation does not stop the others.
+ */
+abstract class BulkOperationExecutor {
+
+    private static final Logger logger = LoggerFactory.getLogger(BulkOperationExecutor.class);
+
+    private static final long KEEP_ALIVE_SECONDS = 60;
+
+    private final ThreadPoolExecutor executor;
+    private final Semaphore permits;
+
+    /**
+     * @param maxObjects the maximum number of operations in flight
+     * @param maxIdle    the maximum number of threads kept idle
+     * @param name       the name the threads are named after
+     */
+    BulkOperationExecutor(int maxObjects, int maxIdle, final String name) {
+        int maxThreads = Math.max(1, maxObjects);
+        permits = new Semaphore(maxThreads);
+        executor = new ThreadPoolExecutor(Math.min(Math.max(0, maxIdle), maxThreads), maxThreads,
+                KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new SynchronousQueue<Runnable>(),
+                new ThreadFactory() {
+                    private final AtomicInteger count = new AtomicInteger();
+
+                    public Thread newThread(Runnable r) {
+                        Thread thread = new Thread(r, name + "-" + count.getAndIncrement());
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                },
+                new RejectedExecutionHandler() {
+                    public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
+                        if (executor.isShutdown()) {
+                            throw new RejectedExecutionException("Bulk operation executor is shut down");
+                        }
+                        // A thread which released its permit may not be back in the pool yet
+                        r.run();
+                    }
+                });
+    }
+
+    /**
+     * Processes one operation of a bulk request on a pool thread.
+     *
+     * @param operation the operation request, with its {@code method}, {@code id}, {@code rev},
+     *                  {@code value} and {@code params}
+     * @return the result of the operation
+     * @throws JsonResourceException if the operation failed
+     */
+    protected abstract JsonValue process(JsonValue operation) throws JsonResourceException;
+
+    /**
+     * Runs the operations and waits for all of them to complete.
+     *
+     * @param operations the operations
+     * @return the result of each operation, in the order of the operations
+     */
+    List<Object> execute(List<JsonValue> operations) {
+        final Object[] results = new Object[operations.size()];
+        final CountDownLatch done = new CountDownLatch(operations.size());
+        for (int i = 0; i < operations.size(); i++) {
+            final int index = i;
+            final JsonValue operation = operations.get(i);
+            permits.acquireUninterruptibly();
+            try {
+                executor.execute(new Runnable() {
+                    public void run() {
+                        try {
+                            results[index] = result(operation);
+                        } finally {
+                            permits.release();
+                            done.countDown();
+                        }
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                permits.release();
+                results[index] = failure(operation, JsonResourceException.UNAVAILABLE, e.getMessage());
+                done.countDown();
+            }
+        }
+        boolean interrupted = false;
+        while (true) {
+            try {
+                done.await();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        return Arrays.asList(results);
+    }
+
+    private Map<String, Object> result(JsonValue operation) {
+        try {
+            JsonValue value = process(operation);
+            Map<String, Object> result = entry(operation);
+            result.put("ok", true);
+            result.put("result", value == null ? null : value.getObject());
+            return result;
+        } catch (JsonResourceException e) {
+            return failure(operation, e.getCode(), e.getMessage());
+        } catch (JsonValueException e) {
+            return failure(operation, JsonResourceException.BAD_REQUEST, e.getMessage());
+        } catch (RuntimeException e) {
+            logger.debug("Bulk operation {} failed", operation.getObject(), e);
+            return failure(operation, JsonResourceException.INTERNAL_ERROR, e.getClass().getSimpleName());
+        }
+    }
+
+    private static Map<String, Object> failure(JsonValue operation, int code, String error) {
+        Map<String, Object> result = entry(operation);
+        result.put("ok", false);
+        result.put("code", code);
+        result.put("error", error);
+        return result;
+    }
+
+    private static Map<String, Object> entry(JsonValue operation) {
+        Map<String, Object> result = new LinkedHashMap<String, Object>(5);
+        if (operation.isMap()) {
+            result.put("id", operation.get("id").getObject());
+            result.put("method", operation.get("method").getObject());
+        }
+        return result;
+    }
+
+    /**
+     * Stops the threads once the operations in flight are complete. Operations submitted
+     * afterwards fail as unavailable.
+     */
+    void shutdown() {
+        executor.shutdown();
+    }
+}
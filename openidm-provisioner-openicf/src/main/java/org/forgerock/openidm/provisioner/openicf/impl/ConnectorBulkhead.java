@@ -0,0 +1,305 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright © 2013 ForgeRock AS. All rights reserved.
+ *
+ * The contents of this file are subject to the terms
+ * of the Common Development and Distribution License
+ * (the License). You may not use this file except in
+ * compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://forgerock.org/license/CDDLv1.0.html
+ * See the License for the specific language governing
+ * permission and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL
+ * Header Notice in each file and include the License file
+ * at http://forgerock.org/license/CDDLv1.0.html
+ * If applicable, add the following below the CDDL Header,
+ * with the fields enclosed by brackets [] replaced by
+ * your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ */
+
+package org.forgerock.openidm.provisioner.openicf.impl;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.forgerock.json.fluent.JsonValue;
+import org.forgerock.json.resource.JsonResourceException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Limits the operations one system runs at once, so a degraded system can not hold every
+ * thread of the server.
+ * <p/>
+ * At most {@code maxInFlight} operations run at once; up to {@code queueSize} more wait for
+ * a slot, each no longer than the current timeout, and any further operation is rejected at
+ * once. The timeout adapts to the system: it is {@code timeoutFactor} times the average
+ * latency of the recent successful operations, bounded by {@code minTimeout} and
+ * {@code maxTimeout}. The timeout only bounds the wait for a slot and classifies a completed
+ * operation as slow; it never interrupts or bounds an operation once it runs, which is left to
+ * the timeouts of the connector.
+ * <p/>
+ * A circuit breaker stops calling the system once {@code failureThreshold} operations in a
+ * row failed, either as unavailable or by taking longer than the timeout. The operations are
+ * then rejected until {@code openTimeout} has passed; the next operation is let through as a
+ * trial, and closes the circuit again if it succeeds.
+ * <p/>
+ * Queries take a slot like any operation, but their duration depends on the size of the result
+ * rather than on the health of the system. They are left out of the average latency and the
+ * failure count, are never the trial, and are rejected while the circuit is not closed.
+ */
+class ConnectorBulkhead {
+
+    private static final Logger logger = LoggerFactory.getLogger(ConnectorBulkhead.class);
+
+    /**
+     * The state of the circuit breaker.
+     */
+    enum State {
+        /** Operations run normally. */
+        CLOSED,
+        /** Operations are rejected. */
+        OPEN,
+        /** One trial operation decides whether the circuit closes. */
+        HALF_OPEN
+    }
+
+    // Weight of the latest operation in the average latency
+    private static final double LATENCY_WEIGHT = 0.2;
+
+    private final String name;
+    private final int maxInFlight;
+    private final int queueSize;
+    private final long minTimeout;
+    private final long maxTimeout;
+    private final double timeoutFactor;
+    private final int failureThreshold;
+    private final long openTimeout;
+
+    // Guarded by this
+    private int inFlight = 0;
+    private int queued = 0;
+    private double averageLatency = -1;
+    private int failures = 0;
+    private State state = State.CLOSED;
+    private long openedAt = 0;
+    private boolean trialInFlight = false;
+
+    ConnectorBulkhead(String name, int maxInFlight, int queueSize, long minTimeout, long maxTimeout,
+            double timeoutFactor, int failureThreshold, long openTimeout) {
+        this.name = name;
+        this.maxInFlight = Math.max(1, maxInFlight);
+        this.queueSize = Math.max(0, queueSize);
+        this.minTimeout = minTimeout;
+        this.maxTimeout = Math.max(minTimeout, maxTimeout);
+        this.timeoutFactor = timeoutFactor;
+        this.failureThreshold = Math.max(1, failureThreshold);
+        this.openTimeout = openTimeout;
+    }
+
+    /**
+     * Creates the bulkhead of a system from the {@code bulkhead} part of its configuration.
+     *
+     * @param name               the name of the system
+     * @param config             the bulkhead configuration, may be undefined
+     * @param defaultMaxInFlight the number of operations in flight if not configured
+     * @return the bulkhead
+     */
+    static ConnectorBulkhead forConfig(String name, JsonValue config, int defaultMaxInFlight) {
+        return new ConnectorBulkhead(name,
+                config.get("maxInFlight").defaultTo(defaultMaxInFlight).asInteger(),
+                config.get("queueSize").defaultTo(100).asInteger(),
+                config.get("minTimeout").defaultTo(1000).asLong(),
+                config.get("maxTimeout").defaultTo(60000).asLong(),
+                config.get("timeoutFactor").defaultTo(4).asNumber().doubleValue(),
+                config.get("failureThreshold").defaultTo(5).asInteger(),
+                config.get("openTimeout").defaultTo(30000).asLong());
+    }
+
+    /**
+     * Waits for a slot to run an operation.
+     * <p/>
+     * Each successful call must be followed by a call to {@link #release(boolean, long, boolean)}
+     * once the operation is complete.
+     *
+     * @return true if the operation is the trial of a half open circuit
+     * @throws JsonResourceException {@link JsonResourceException#UNAVAILABLE} if the circuit is
+     *                               open, the queue is full or no slot was free in time
+     */
+    synchronized boolean acquire() throws JsonResourceException {
+        checkCircuit();
+        if (waitForSlot()) {
+            // The circuit may have opened while waiting
+            checkCircuit();
+        }
+        inFlight++;
+        if (state == State.HALF_OPEN) {
+            trialInFlight = true;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Waits for a slot to run a query, whose duration and outcome are not recorded.
+     * <p/>
+     * Each successful call must be followed by a call to {@link #releaseQuery()} once the
+     * query is complete.
+     *
+     * @throws JsonResourceException {@link JsonResourceException#UNAVAILABLE} if the circuit is
+     *                               not closed, the queue is full or no slot was free in time
+     */
+    synchronized void acquireQuery() throws JsonResourceException {
+        checkQueryCircuit();
+        if (waitForSlot()) {
+            checkQueryCircuit();
+        }
+        inFlight++;
+    }
+
+    private void checkQueryCircuit() throws JsonResourceException {
+        if (getState() != State.CLOSED) {
+            throw new JsonResourceException(JsonResourceException.UNAVAILABLE,
+                    "Circuit breaker of system " + name + " is not closed");
+        }
+    }
+
+    /**
+     * @return true if the caller had to wait
+     */
+    private boolean waitForSlot() throws JsonResourceException {
+        if (inFlight >= maxInFlight) {
+            if (queued >= queueSize) {
+                throw new JsonResourceException(JsonResourceException.UNAVAILABLE,
+                        "Too many operations on system " + name);
+            }
+            queued++;
+            try {
+                long deadline = System.currentTimeMillis() + getTimeout();
+                while (inFlight >= maxInFlight) {
+                    long wait = deadline - System.currentTimeMillis();
+                    if (wait <= 0) {
+                        throw new JsonResourceException(JsonResourceException.UNAVAILABLE,
+                                "Timed out waiting for an operation slot on system " + name);
+                    }
+                    wait(wait);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new JsonResourceException(JsonResourceException.UNAVAILABLE,
+                        "Interrupted waiting for an operation slot on system " + name, e);
+            } finally {
+                queued--;
+            }
+            return true;
+        }
+        return false;
+    }
+
+    private void checkCircuit() throws JsonResourceException {
+        if (state == State.OPEN) {
+            if (System.currentTimeMillis() - openedAt < openTimeout) {
+                throw new JsonResourceException(JsonResourceException.UNAVAILABLE,
+                        "Circuit breaker of system " + name + " is open");
+            }
+            state = State.HALF_OPEN;
+        }
+        if (state == State.HALF_OPEN && trialInFlight) {
+            throw new JsonResourceException(JsonResourceException.UNAVAILABLE,
+                    "Circuit breaker of system " + name + " is half open");
+        }
+    }
+
+    /**
+     * Releases the slot of a completed operation and records its outcome.
+     *
+     * @param trial   the value returned by {@link #acquire()}
+     * @param latency the duration of the operation, in milliseconds
+     * @param healthy false if the operation failed because the system is unavailable
+     */
+    synchronized void release(boolean trial, long latency, boolean healthy) {
+        inFlight--;
+        notifyAll();
+        boolean success = healthy && latency <= getTimeout();
+        if (healthy) {
+            averageLatency = averageLatency < 0
+                    ? latency
+                    : averageLatency + LATENCY_WEIGHT * (latency - averageLatency);
+        }
+        if (trial) {
+            trialInFlight = false;
+            if (success) {
+                logger.info("Circuit breaker of system {} is closed", name);
+                state = State.CLOSED;
+                failures = 0;
+            } else {
+                open();
+            }
+        } else if (success) {
+            if (state == State.CLOSED) {
+                failures = 0;
+            }
+        } else {
+            failures++;
+            if (state == State.CLOSED && failures >= failureThreshold) {
+                open();
+            }
+        }
+    }
+
+    /**
+     * Releases the slot of a completed query.
+     */
+    synchronized void releaseQuery() {
+        inFlight--;
+        notifyAll();
+    }
+
+    private void open() {
+        logger.warn("Circuit breaker of system {} is open after {} failed operations", name, failures);
+        state = State.OPEN;
+        openedAt = System.currentTimeMillis();
+    }
+
+    /**
+     * Returns the time an operation waits for a slot, and the latency above which it counts as
+     * failed. The operation is not stopped once it runs longer.
+     *
+     * @return the timeout, in milliseconds
+     */
+    synchronized long getTimeout() {
+        if (averageLatency < 0) {
+            return maxTimeout;
+        }
+        return Math.max(minTimeout, Math.min(maxTimeout, (long) (timeoutFactor * averageLatency)));
+    }
+
+    /**
+     * @return the state of the circuit breaker
+     */
+    synchronized State getState() {
+        if (state == State.OPEN && System.currentTimeMillis() - openedAt >= openTimeout) {
+            return State.HALF_OPEN;
+        }
+        return state;
+    }
+
+    /**
+     * @return a report of the state of the bulkhead, for the status of the system
+     */
+    synchronized Map<String, Object> getStatus() {
+        Map<String, Object> status = new LinkedHashMap<String, Object>(6);
+        status.put("state", getState().name());
+        status.put("inFlight", inFlight);
+        status.put("queued", queued);
+        status.put("failures", failures);
+        status.put("averageLatency", averageLatency < 0 ? null : Math.round(averageLatency));
+        status.put("timeout", getTimeout());
+        return status;
+    }
+}
@@ -0,0 +1,59 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright © 2013 ForgeRock AS. All rights reserved.
+ *
+ * The contents of this file are subject to the terms
+ * of the Common Development and Distribution License
+ * (the License). You may not use this file except in
+ * compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://forgerock.org/license/CDDLv1.0.html
+ * See the License for the specific language governing
+ * permission and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL
+ * Header Notice in each file and include the License file
+ * at http://forgerock.org/license/CDDLv1.0.html
+ * If applicable, add the following below the CDDL Header,
+ * with the fields enclosed by brackets [] replaced by
+ * your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ */
+
+package org.forgerock.openidm.provisioner.openicf.impl;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Map;
+
+import org.forgerock.openidm.core.ServerConstants;
+import org.forgerock.openidm.provisioner.openicf.QueryResultHandler;
+
+/**
+ * Collects the result of a query-all-ids query, as streamed by an {@link IdResultsHandler}.
+ * <p/>
+ * Only the escaped UIDs of the objects are kept. The list still reads as the usual query
+ * result, each entry being an {@code _id} only object, but the entries are created on
+ * access rather than held for every object.
+ */
+class IdResultList extends AbstractList<Map<String, Object>> implements QueryResultHandler {
+
+    private final ArrayList<String> ids = new ArrayList<String>();
+
+    public boolean handle(Map<String, Object> object) {
+        return ids.add((String) object.get(ServerConstants.OBJECT_PROPERTY_ID));
+    }
+
+    @Override
+    public Map<String, Object> get(int index) {
+        return Collections.<String, Object>singletonMap(ServerConstants.OBJECT_PROPERTY_ID, ids.get(index));
+    }
+
+    @Override
+    public int size() {
+        return ids.size();
+    }
+}
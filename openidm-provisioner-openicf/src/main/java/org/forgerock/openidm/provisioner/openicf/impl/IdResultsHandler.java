@@ -0,0 +1,53 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright © 2013 ForgeRock AS. All rights reserved.
+ *
+ * The contents of this file are subject to the terms
+ * of the Common Development and Distribution License
+ * (the License). You may not use this file except in
+ * compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://forgerock.org/license/CDDLv1.0.html
+ * See the License for the specific language governing
+ * permission and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL
+ * Header Notice in each file and include the License file
+ * at http://forgerock.org/license/CDDLv1.0.html
+ * If applicable, add the following below the CDDL Header,
+ * with the fields enclosed by brackets [] replaced by
+ * your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ */
+
+package org.forgerock.openidm.provisioner.openicf.impl;
+
+import java.util.Collections;
+
+import org.forgerock.openidm.core.ServerConstants;
+import org.forgerock.openidm.provisioner.Id;
+import org.forgerock.openidm.provisioner.openicf.QueryResultHandler;
+import org.identityconnectors.framework.common.objects.ConnectorObject;
+import org.identityconnectors.framework.common.objects.ResultsHandler;
+
+/**
+ * Streams the result of a query-all-ids query to a {@link QueryResultHandler}.
+ * <p/>
+ * The connector objects are not converted; the handler receives an {@code _id} only
+ * object holding the escaped UID.
+ */
+class IdResultsHandler implements ResultsHandler {
+
+    private final QueryResultHandler handler;
+
+    IdResultsHandler(QueryResultHandler handler) {
+        this.handler = handler;
+    }
+
+    public boolean handle(ConnectorObject obj) {
+        return handler.handle(Collections.<String, Object>singletonMap(ServerConstants.OBJECT_PROPERTY_ID,
+                Id.escapeUid(obj.getUid().getUidValue())));
+    }
+}
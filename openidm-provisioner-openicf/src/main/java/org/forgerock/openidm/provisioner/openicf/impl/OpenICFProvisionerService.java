@@ -44,16 +44,22 @@ import org.forgerock.openidm.audit.util.Status;
 import org.forgerock.openidm.config.JSONEnhancedConfig;
 import org.forgerock.openidm.core.ServerConstants;
 import org.forgerock.openidm.crypto.CryptoService;
+import org.forgerock.openidm.objset.ObjectSetContext;
 import org.forgerock.openidm.provisioner.Id;
 import org.forgerock.openidm.provisioner.ProvisionerService;
+import org.forgerock.openidm.provisioner.SyncStageListener;
 import org.forgerock.openidm.provisioner.SystemIdentifier;
 import org.forgerock.openidm.provisioner.openicf.ConnectorInfoProvider;
 import org.forgerock.openidm.provisioner.openicf.ConnectorReference;
 import org.forgerock.openidm.provisioner.openicf.OperationHelper;
+import org.forgerock.openidm.provisioner.openicf.QueryResultHandler;
 import org.forgerock.openidm.provisioner.openicf.commons.ConnectorUtil;
 import org.forgerock.openidm.provisioner.openicf.internal.SystemAction;
+import org.forgerock.openidm.provisioner.openicf.query.QueryFilter;
+import org.forgerock.openidm.provisioner.openicf.syncfailure.AsyncRetrySyncFailureHandler;
 import org.forgerock.openidm.provisioner.openicf.syncfailure.SyncFailureHandler;
 import org.forgerock.openidm.provisioner.openicf.syncfailure.SyncFailureHandlerFactory;
+import org.forgerock.openidm.provisioner.openicf.syncfailure.SyncHandlerException;
 import org.forgerock.openidm.repo.QueryConstants;
 import org.forgerock.openidm.smartevent.EventEntry;
 import org.forgerock.openidm.smartevent.Publisher;
@@ -61,6 +67,7 @@ import org.forgerock.openidm.sync.SynchronizationListener;
 import org.identityconnectors.common.Pair;
 import org.identityconnectors.common.event.ConnectorEvent;
 import org.identityconnectors.common.event.ConnectorEventHandler;
+import org.identityconnectors.common.pooling.ObjectPoolConfiguration;
 import org.identityconnectors.common.security.GuardedString;
 import org.identityconnectors.framework.api.ConnectorFacade;
 import org.identityconnectors.framework.api.ConnectorFacadeFactory;
@@ -82,6 +89,7 @@ import java.io.Serializable;
 import java.io.StringWriter;
 import java.lang.reflect.Array;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -89,6 +97,11 @@ import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * The OpenICFProvisionerService is the implementation of {@link CollectionResourceProvider} interface
@@ -115,6 +128,8 @@ public class OpenICFProvisionerService implements ProvisionerService, ConnectorE
     // Monitoring event name prefix
     private static final String EVENT_PREFIX = "openidm/internal/system/";
 
+    private static final Set<String> BULK_METHODS = new HashSet<String>(Arrays.asList("create", "update", "delete"));
+
     private SimpleSystemIdentifier systemIdentifier = null;
     private OperationHelperBuilder operationHelperBuilder = null;
     private boolean allowModification = true;
@@ -125,6 +140,14 @@ public class OpenICFProvisionerService implements ProvisionerService, ConnectorE
     private Map<String, SystemAction> systemActions = new HashMap<String, SystemAction>();
     private static final ObjectMapper MAPPER = new ObjectMapper();
     private SyncFailureHandler syncFailureHandler = null;
+    private int liveSyncWorkers = 1;
+    private int liveSyncQueueSize = 1000;
+    private int liveSyncCheckpointDeltas = 1000;
+    private long liveSyncCheckpointInterval = 30000;
+    private int liveSyncMaxDeltas = 0;
+    private ExecutorService liveSyncExecutor = null;
+    private BulkOperationExecutor bulkExecutor = null;
+    private ConnectorBulkhead bulkhead = null;
 
     /**
      * ConnectorInfoProvider service.
@@ -159,7 +182,26 @@ public class OpenICFProvisionerService implements ProvisionerService, ConnectorE
             }
             connectorReference = ConnectorUtil.getConnectorReference(jsonConfiguration);
 
-            syncFailureHandler = syncFailureHandlerFactory.create(jsonConfiguration.get("syncFailureHandler"));
+            syncFailureHandler = syncFailureHandlerFactory.create(systemIdentifier.getName(),
+                    jsonConfiguration.get("syncFailureHandler"));
+            JsonValue liveSyncConfig = jsonConfiguration.get("liveSync");
+            liveSyncWorkers = liveSyncConfig.get("workers").defaultTo(1).asInteger();
+            liveSyncQueueSize = liveSyncConfig.get("queueSize").defaultTo(1000).asInteger();
+            liveSyncCheckpointDeltas = liveSyncConfig.get("checkpointDeltas").defaultTo(1000).asInteger();
+            liveSyncCheckpointInterval = liveSyncConfig.get("checkpointInterval").defaultTo(30).asLong() * 1000;
+            liveSyncMaxDeltas = liveSyncConfig.get("maxDeltas").defaultTo(0).asInteger();
+            if (liveSyncWorkers > 1) {
+                final String name = "liveSync-" + systemIdentifier.getName();
+                liveSyncExecutor = Executors.newCachedThreadPool(new ThreadFactory() {
+                    private final AtomicInteger count = new AtomicInteger();
+
+                    public Thread newThread(Runnable r) {
+                        Thread thread = new Thread(r, name + "-" + count.getAndIncrement());
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+            }
         } catch (Exception e) {
             logger.error("OpenICF Provisioner Service configuration has errors", e);
             throw new ComponentException("OpenICF Provisioner Service configuration has errors", e);
@@ -203,6 +245,24 @@ public class OpenICFProvisionerService implements ProvisionerService, ConnectorE
                     "OpenICF connector configuration has errors and the service can not be initiated.", e);
         }
         logger.debug("OpenICF connector configuration has no errors.");
+        ObjectPoolConfiguration poolConfiguration =
+                operationHelperBuilder.getRuntimeAPIConfiguration().getConnectorPoolConfiguration();
+        bulkhead = ConnectorBulkhead.forConfig(systemIdentifier.getName(), jsonConfiguration.get("bulkhead"),
+                poolConfiguration.getMaxObjects());
+        BulkOperationExecutor previousExecutor = bulkExecutor;
+        bulkExecutor = new BulkOperationExecutor(poolConfiguration.getMaxObjects(), poolConfiguration.getMaxIdle(),
+                "bulk-" + systemIdentifier.getName()) {
+            protected JsonValue process(JsonValue operation) throws JsonResourceException {
+                if (!BULK_METHODS.contains(operation.get("method").asString())) {
+                    throw new JsonResourceException(JsonResourceException.BAD_REQUEST,
+                            "Bulk operation method must be one of " + BULK_METHODS);
+                }
+                return handle(operation);
+            }
+        };
+        if (null != previousExecutor) {
+            previousExecutor.shutdown();
+        }
         ConnectorFacade facade = getConnectorFacade();
         if (null != facade && facade.getSupportedOperations().contains(TestApiOp.class)) {
             try {
@@ -224,6 +284,15 @@ public class OpenICFProvisionerService implements ProvisionerService, ConnectorE
     @Deactivate
     protected void deactivate(ComponentContext context) {
         connectorInfoProvider.deleteConnectorEventHandler(this);
+        syncFailureHandlerFactory.release(systemIdentifier.getName());
+        if (null != bulkExecutor) {
+            bulkExecutor.shutdown();
+            bulkExecutor = null;
+        }
+        if (null != liveSyncExecutor) {
+            liveSyncExecutor.shutdown();
+            liveSyncExecutor = null;
+        }
         serviceAvailable = true;
         systemIdentifier = null;
         operationHelperBuilder = null;
@@ -274,8 +343,11 @@ public class OpenICFProvisionerService implements ProvisionerService, ConnectorE
      * "name" : "LDAP",
      * "component.id" : "1",
      * "component.name" : "org.forgerock.openidm.provisioner.openicf.ProvisionerService",
+     * "circuitBreaker" : { "state" : "CLOSED", "inFlight" : 2, "queued" : 0, ... },
      * "ok" : true
      * }}
+     * <p/>
+     * The connector is not tested while the circuit breaker is open.
      *
      * @return
      */
@@ -284,6 +356,15 @@ public class OpenICFProvisionerService implements ProvisionerService, ConnectorE
         try {
             JsonValue jv = new JsonValue(result);
             jv.put("name", systemIdentifier.getName());
+            ConnectorBulkhead bulkhead = this.bulkhead;
+            if (null != bulkhead) {
+                jv.put("circuitBreaker", bulkhead.getStatus());
+                if (ConnectorBulkhead.State.OPEN.equals(bulkhead.getState())) {
+                    jv.put("reason", "Circuit breaker is open");
+                    jv.put("ok", false);
+                    return result;
+                }
+            }
             ConnectorFacade connectorFacade = getConnectorFacade();
             try {
                 connectorFacade.test();
@@ -310,6 +391,36 @@ public class OpenICFProvisionerService implements ProvisionerService, ConnectorE
            //TODO: better error message
            throw new JsonResourceException(JsonResourceException.UNAVAILABLE);
         }
+        ConnectorBulkhead bulkhead = this.bulkhead;
+        if ("query".equals(request.get("method").asString())) {
+            // The duration of a query depends on its result, it tells nothing of the health of the system
+            bulkhead.acquireQuery();
+            try {
+                return handleRequest(request);
+            } finally {
+                bulkhead.releaseQuery();
+            }
+        }
+        boolean trial = bulkhead.acquire();
+        long start = System.currentTimeMillis();
+        boolean healthy = true;
+        try {
+            return handleRequest(request);
+        } catch (JsonResourceException e) {
+            // The connection failures and timeouts of the connector are reported as unavailable
+            healthy = e.getCode() != JsonResourceException.UNAVAILABLE;
+            throw e;
+        } finally {
+            bulkhead.release(trial, System.currentTimeMillis() - start, healthy);
+        }
+    }
+
+    /**
+     * Handles a request within the limits of the bulkhead of this system.
+     *
+     * @see #handle(JsonValue)
+     */
+    private JsonValue handleRequest(JsonValue request) throws JsonResourceException {
         JsonValue before = null;
         JsonValue after = null;
         try {
@@ -547,11 +658,77 @@ public class OpenICFProvisionerService implements ProvisionerService, ConnectorE
         return null;
     }
 
+    /**
+     * {@inheritDoc}
+     * <p/>
+     * The requests run concurrently on a pool bounded by the {@code maxObjects} and
+     * {@code maxIdle} limits of the connector pool. Each request is handled as a single request
+     * would be, with its own activity log entry.
+     */
+    public JsonValue bulk(JsonValue operations) throws JsonResourceException {
+        BulkOperationExecutor executor = bulkExecutor;
+        if (!serviceAvailable || null == executor) {
+            throw new JsonResourceException(JsonResourceException.UNAVAILABLE);
+        }
+        List<JsonValue> items = new ArrayList<JsonValue>();
+        try {
+            for (JsonValue operation : operations.expect(List.class)) {
+                items.add(operation);
+            }
+        } catch (JsonValueException e) {
+            throw new JsonResourceException(JsonResourceException.BAD_REQUEST, e);
+        }
+        return new JsonValue(executor.execute(items));
+    }
+
 
     public JsonValue query(Id id, JsonValue params) throws Exception {
+        List<Map<String, Object>> resultList;
+        QueryResultHandler collector;
+        if (params.get("query").isNull()
+                && QueryConstants.QUERY_ALL_IDS.equals(params.get(QueryConstants.QUERY_ID).asString())) {
+            IdResultList idList = new IdResultList();
+            resultList = idList;
+            collector = idList;
+        } else {
+            final List<Map<String, Object>> objects = new ArrayList<Map<String, Object>>();
+            resultList = objects;
+            collector = new QueryResultHandler() {
+                public boolean handle(Map<String, Object> object) {
+                    return objects.add(object);
+                }
+            };
+        }
+        JsonValue result = query(id, params, collector);
+        if (result.isNull()) {
+            return new JsonValue(new HashMap<String, Object>());
+        }
+        result.put(QueryConstants.QUERY_RESULT, resultList);
+        return result;
+    }
+
+    /**
+     * Queries the end system and streams the converted objects to the {@code handler} as the
+     * connector returns them, instead of collecting them first.
+     * <p/>
+     * The handler runs on the searching thread, so a slow handler slows the search down and
+     * one returning false stops it. The objects of the query-all-ids query are not converted,
+     * the handler gets {@code _id} only objects. The query may be paged with
+     * {@link QueryConstants#PAGE_SIZE} and {@link QueryConstants#PAGED_RESULTS_COOKIE}; the
+     * cookie of the next page is returned in the query output.
+     *
+     * @param id      the id of the object set to query
+     * @param params  the query parameters
+     * @param handler the handler to pass the objects to
+     * @return the query output without the results, or a null {@link JsonValue} if the
+     *         operation is not permitted
+     * @throws Exception if the query failed
+     */
+    public JsonValue query(Id id, JsonValue params, QueryResultHandler handler) throws Exception {
         OperationHelper helper = operationHelperBuilder.build(id.getObjectType(), params, cryptoService);
-        JsonValue result = new JsonValue(new HashMap<String, Object>());
+        JsonValue result = new JsonValue(null);
         if (helper.isOperationPermitted(SearchApiOp.class)) {
+            result = new JsonValue(new HashMap<String, Object>());
             OperationOptionsBuilder operationOptionsBuilder = helper
                     .getOperationOptionsBuilder(SearchApiOp.class, null);
             JsonValue query = params.get("query");
@@ -560,12 +737,23 @@ public class OpenICFProvisionerService implements ProvisionerService, ConnectorE
                     .start(getQueryEventName(id, params, query.asMap(), queryId.asString()), null, id);
             try {
                 Filter filter = null;
+                Filter localFilter = null;
+                ResultsHandler resultsHandler = null;
                 if (!query.isNull()) {
-                    filter = helper.build(query.asMap(), params.get("params").asMap());
+                    QueryFilter queryFilter = helper.buildQueryFilter(query.asMap(), params.get("params").asMap());
+                    filter = queryFilter.getConnectorFilter();
+                    localFilter = queryFilter.getLocalFilter();
+                    if (!queryFilter.isFullyPushedDown()) {
+                        String pushdown = null == filter ? "none" : "partial";
+                        logger.debug("Query filter of {} pushed down to the connector: {}, the rest is evaluated locally",
+                                id, pushdown);
+                        result.put("filterPushdown", pushdown);
+                    }
+                    resultsHandler = helper.getResultsHandler(handler);
                 } else if (!queryId.isNull()) {
                     if (QueryConstants.QUERY_ALL_IDS.equals(queryId.asString())) {
-                        // TODO: optimize query for ids, for now default to query all
                         operationOptionsBuilder.setAttributesToGet(Uid.NAME);
+                        resultsHandler = new IdResultsHandler(handler);
                     } else {
                         // Unknown query id
                         throw new JsonResourceException(JsonResourceException.BAD_REQUEST,
@@ -575,9 +763,13 @@ public class OpenICFProvisionerService implements ProvisionerService, ConnectorE
                     throw new JsonResourceException(JsonResourceException.BAD_REQUEST,
                             "Query request does not contain valid query");
                 }
-                getConnectorFacade().search(helper.getObjectClass(), filter, helper.getResultsHandler(),
+                ResultsHandler pagedHandler = PagedResultsHandler.forParams(resultsHandler, localFilter,
+                        params.asMap());
+                getConnectorFacade().search(helper.getObjectClass(), filter, pagedHandler,
                         operationOptionsBuilder.build());
-                result.put("result", helper.getQueryResult());
+                if (pagedHandler instanceof PagedResultsHandler) {
+                    ((PagedResultsHandler) pagedHandler).setPagedResultsCookie(result.asMap());
+                }
                 measure.setResult(result);
             } finally {
                 measure.end();
@@ -805,6 +997,19 @@ public class OpenICFProvisionerService implements ProvisionerService, ConnectorE
      */
     public JsonValue liveSynchronize(final String objectType, JsonValue previousStage, final SynchronizationListener synchronizationListener) 
             throws JsonResourceException {
+        return liveSynchronize(objectType, previousStage, synchronizationListener, null);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p/>
+     * The stage is reported every {@code liveSync.checkpointDeltas} deltas or
+     * {@code liveSync.checkpointInterval} seconds, and a run stops after
+     * {@code liveSync.maxDeltas} deltas, as configured for the provisioner.
+     */
+    public JsonValue liveSynchronize(final String objectType, JsonValue previousStage,
+            final SynchronizationListener synchronizationListener, SyncStageListener stageListener)
+            throws JsonResourceException {
         if (!serviceAvailable) return previousStage;
         JsonValue stage = previousStage != null ? previousStage.copy() : new JsonValue(new LinkedHashMap<String, Object>());
         JsonValue connectorData = stage.get("connectorData");
@@ -830,65 +1035,75 @@ public class OpenICFProvisionerService implements ProvisionerService, ConnectorE
                     logger.debug("New LatestSyncToken has been fetched. New token is: {}", token);
                 } else {
                     final SyncToken[] lastToken = new SyncToken[]{token};
-                    final String[] failedRecord = new String[1];
+                    final AtomicReference<SyncDelta> failedDelta = new AtomicReference<SyncDelta>();
+                    final SyncCheckpoint checkpoint = new SyncCheckpoint(stage, stageListener,
+                            liveSyncCheckpointDeltas, liveSyncCheckpointInterval, liveSyncMaxDeltas);
                     OperationOptionsBuilder operationOptionsBuilder = helper.getOperationOptionsBuilder(SyncApiOp.class, previousStage);
                     try {
                         logger.debug("Execute sync(ObjectClass:{}, SyncToken:{})",
                                 new Object[]{helper.getObjectClass().getObjectClassValue(), token});
-                        operation.sync(helper.getObjectClass(), token, new SyncResultsHandler() {
-                            /**
-                             * Called to handle a delta in the stream. The Connector framework will call
-                             * this method multiple times, once for each result.
-                             * Although this method is callback, the framework will invoke it synchronously.
-                             * Thus, the framework guarantees that once an application's call to
-                             * {@link org.identityconnectors.framework.api.operations.SyncApiOp#sync(org.identityconnectors.framework.common.objects.ObjectClass, org.identityconnectors.framework.common.objects.SyncToken, org.identityconnectors.framework.common.objects.SyncResultsHandler, org.identityconnectors.framework.common.objects.OperationOptions)}  SyncApiOp#sync()} returns,
-                             * the framework will no longer call this method
-                             * to handle results from that <code>sync()</code> operation.
-                             *
-                             * @param syncDelta The change
-                             * @return True iff the application wants to continue processing more
-                             *         results.
-                             * @throws RuntimeException If the application encounters an exception. This will stop
-                             *                          iteration and the exception will propagate to
-                             *                          the application.
-                             */
-                            public boolean handle(SyncDelta syncDelta) {
-                                try {
-                                    switch (syncDelta.getDeltaType()) {
-                                        case CREATE_OR_UPDATE:
-                                            JsonValue deltaObject = helper.build(syncDelta.getObject());
-                                            if (null != syncDelta.getPreviousUid()) {
-                                                deltaObject.put("_previous-id", Id.escapeUid(syncDelta.getPreviousUid().getUidValue()));
-                                            }
-                                            synchronizationListener.onUpdate(helper.resolveQualifiedId(syncDelta.getUid()).toString(), null, new JsonValue(deltaObject));
-                                            break;
-                                        case DELETE:
-                                            synchronizationListener.onDelete(helper.resolveQualifiedId(syncDelta.getUid()).toString(), null);
-                                            break;
-                                    }
-                                } catch (Exception e) {
-                                    failedRecord[0] = SerializerUtil.serializeXmlObject(syncDelta, true);
-                                    if (logger.isDebugEnabled()) {
-                                        logger.error("Failed synchronise {} object, handle failure using {}", new Object[]{syncDelta.getUid(), syncFailureHandler}, e);
+                        if (liveSyncWorkers > 1) {
+                            // The workers synchronize in the context of the live sync run
+                            final JsonValue syncContext = ObjectSetContext.get();
+                            final ParallelSyncResultsHandler parallelHandler = new ParallelSyncResultsHandler(token,
+                                    liveSyncExecutor, liveSyncWorkers, liveSyncQueueSize) {
+                                protected void process(SyncDelta syncDelta) {
+                                    ObjectSetContext.push(syncContext);
+                                    try {
+                                        handleSyncDelta(helper, objectType, syncDelta, synchronizationListener);
+                                    } finally {
+                                        ObjectSetContext.pop();
                                     }
-                                    Map<String,Object> syncFailure = new HashMap<String,Object>(6);
-                                    syncFailure.put("token", syncDelta.getToken().getValue());
-                                    syncFailure.put("systemIdentifier", systemIdentifier.getName());
-                                    syncFailure.put("objectType", objectType);
-                                    syncFailure.put("uid", syncDelta.getUid().getUidValue());
-                                    syncFailure.put("failedRecord", failedRecord[0]);
-                                    syncFailureHandler.invoke(syncFailure, e);
                                 }
-                                // success (either by original sync or by failure handler)
-                                lastToken[0] = syncDelta.getToken();
-                                return true;
+                            };
+                            try {
+                                operation.sync(helper.getObjectClass(), token, new SyncResultsHandler() {
+                                    public boolean handle(SyncDelta syncDelta) {
+                                        boolean more = parallelHandler.handle(syncDelta);
+                                        return checkpoint.delta(parallelHandler.getLastToken()) && more;
+                                    }
+                                }, operationOptionsBuilder.build());
+                            } finally {
+                                lastToken[0] = parallelHandler.close();
+                                failedDelta.set(parallelHandler.getFailedDelta());
                             }
-                        }, operationOptionsBuilder.build());
+                            parallelHandler.checkFailure();
+                        } else {
+                            operation.sync(helper.getObjectClass(), token, new SyncResultsHandler() {
+                                /**
+                                 * Called to handle a delta in the stream. The Connector framework will call
+                                 * this method multiple times, once for each result.
+                                 * Although this method is callback, the framework will invoke it synchronously.
+                                 * Thus, the framework guarantees that once an application's call to
+                                 * {@link org.identityconnectors.framework.api.operations.SyncApiOp#sync(org.identityconnectors.framework.common.objects.ObjectClass, org.identityconnectors.framework.common.objects.SyncToken, org.identityconnectors.framework.common.objects.SyncResultsHandler, org.identityconnectors.framework.common.objects.OperationOptions)}  SyncApiOp#sync()} returns,
+                                 * the framework will no longer call this method
+                                 * to handle results from that <code>sync()</code> operation.
+                                 *
+                                 * @param syncDelta The change
+                                 * @return True iff the application wants to continue processing more
+                                 *         results.
+                                 * @throws RuntimeException If the application encounters an exception. This will stop
+                                 *                          iteration and the exception will propagate to
+                                 *                          the application.
+                                 */
+                                public boolean handle(SyncDelta syncDelta) {
+                                    try {
+                                        handleSyncDelta(helper, objectType, syncDelta, synchronizationListener);
+                                    } catch (RuntimeException e) {
+                                        failedDelta.set(syncDelta);
+                                        throw e;
+                                    }
+                                    // success (either by original sync or by failure handler)
+                                    lastToken[0] = syncDelta.getToken();
+                                    return checkpoint.delta(lastToken[0]);
+                                }
+                            }, operationOptionsBuilder.build());
+                        }
                     } catch (Throwable t) {
                         Map<String, Object> lastException = new LinkedHashMap<String, Object>(2);
                         lastException.put("throwable", t.getMessage());
-                        if (null != failedRecord[0]) {
-                            lastException.put("syncDelta", failedRecord[0]);
+                        if (null != failedDelta.get()) {
+                            lastException.put("syncDelta", SerializerUtil.serializeXmlObject(failedDelta.get(), true));
                         }
                         stage.put("lastException", lastException);
                         logger.warn("Live synchronization of {} failed on {}",
@@ -918,6 +1133,52 @@ public class OpenICFProvisionerService implements ProvisionerService, ConnectorE
         return stage;
     }
 
+    /**
+     * Sends a sync delta to the {@code synchronizationListener}, handing it to the sync failure
+     * handler if that fails.
+     *
+     * @throws SyncHandlerException if the failure handler gives up on the delta
+     */
+    private void handleSyncDelta(OperationHelper helper, String objectType, SyncDelta syncDelta,
+            SynchronizationListener synchronizationListener) {
+        try {
+            switch (syncDelta.getDeltaType()) {
+                case CREATE_OR_UPDATE:
+                    JsonValue deltaObject = helper.build(syncDelta.getObject());
+                    if (null != syncDelta.getPreviousUid()) {
+                        deltaObject.put("_previous-id", Id.escapeUid(syncDelta.getPreviousUid().getUidValue()));
+                    }
+                    synchronizationListener.onUpdate(helper.resolveQualifiedId(syncDelta.getUid()).toString(), null, new JsonValue(deltaObject));
+                    break;
+                case DELETE:
+                    synchronizationListener.onDelete(helper.resolveQualifiedId(syncDelta.getUid()).toString(), null);
+                    break;
+            }
+            if (syncFailureHandler instanceof AsyncRetrySyncFailureHandler) {
+                // An earlier failure of the object queued for retry is superseded by this change
+                AsyncRetrySyncFailureHandler retryHandler = (AsyncRetrySyncFailureHandler) syncFailureHandler;
+                retryHandler.clear(objectType, syncDelta.getUid().getUidValue());
+                if (null != syncDelta.getPreviousUid()) {
+                    retryHandler.clear(objectType, syncDelta.getPreviousUid().getUidValue());
+                }
+            }
+        } catch (Exception e) {
+            if (logger.isDebugEnabled()) {
+                logger.error("Failed synchronise {} object, handle failure using {}", new Object[]{syncDelta.getUid(), syncFailureHandler}, e);
+            }
+            Map<String,Object> syncFailure = new HashMap<String,Object>(8);
+            syncFailure.put("token", syncDelta.getToken().getValue());
+            syncFailure.put("systemIdentifier", systemIdentifier.getName());
+            syncFailure.put("objectType", objectType);
+            syncFailure.put("uid", syncDelta.getUid().getUidValue());
+            syncFailure.put("id", helper.resolveQualifiedId(syncDelta.getUid()).toString());
+            syncFailure.put("deltaType", syncDelta.getDeltaType().name());
+            syncFailure.put("failedRecord", SerializerUtil.serializeXmlObject(syncDelta, true));
+            // Parallel live sync workers invoke the failure handler concurrently, the handlers are thread-safe
+            syncFailureHandler.invoke(syncFailure, e);
+        }
+    }
+
     ConnectorFacade getConnectorFacade() {
         if (null == connectorFacade) {
             ConnectorFacadeFactory connectorFacadeFactory = ConnectorFacadeFactory.getInstance();
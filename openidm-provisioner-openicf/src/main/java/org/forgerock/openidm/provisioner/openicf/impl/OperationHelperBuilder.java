@@ -43,6 +43,8 @@ import org.identityconnectors.framework.common.serializer.SerializerUtil;
 import org.identityconnectors.framework.impl.api.APIConfigurationImpl;
 
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * @author $author$
@@ -54,6 +56,9 @@ public class OperationHelperBuilder {
     private Map<String, ObjectClassInfoHelper> supportedObjectTypes;
     private Map<String, Map<Class<? extends APIOperation>, OperationOptionInfoHelper>> operationOptionHelpers;
     private String systemName;
+    // The helpers are immutable, one is kept per object type
+    private final ConcurrentMap<String, OperationHelperImpl> helpers =
+            new ConcurrentHashMap<String, OperationHelperImpl>();
 
     public OperationHelperBuilder(String system, JsonValue jsonConfiguration, APIConfiguration defaultAPIConfiguration) throws SchemaException, JsonValueException {
         runtimeAPIConfiguration = (APIConfigurationImpl) defaultAPIConfiguration;
@@ -64,6 +69,10 @@ public class OperationHelperBuilder {
     }
 
     public OperationHelper build(String objectType, JsonValue object, CryptoService cryptoService) throws JsonResourceException {
+        OperationHelperImpl helper = helpers.get(objectType);
+        if (null != helper && helper.getCryptoService() == cryptoService) {
+            return helper;
+        }
         ObjectClassInfoHelper objectClassInfoHelper = supportedObjectTypes.get(objectType);
         if (null == objectClassInfoHelper) {
             throw new JsonResourceException(400, "Unsupported object type: " + objectType
@@ -77,7 +86,9 @@ public class OperationHelperBuilder {
 //        }
 
 
-        return new OperationHelperImpl(new Id(systemName, objectType), objectClassInfoHelper, operationOptionHelpers.get(objectType), cryptoService);
+        helper = new OperationHelperImpl(new Id(systemName, objectType), objectClassInfoHelper, operationOptionHelpers.get(objectType), cryptoService);
+        helpers.put(objectType, helper);
+        return helper;
     }
 
 
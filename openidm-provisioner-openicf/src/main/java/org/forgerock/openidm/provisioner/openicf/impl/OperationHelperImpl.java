@@ -33,9 +33,12 @@ import org.forgerock.openidm.core.ServerConstants;
 import org.forgerock.openidm.crypto.CryptoService;
 import org.forgerock.openidm.provisioner.Id;
 import org.forgerock.openidm.provisioner.openicf.OperationHelper;
+import org.forgerock.openidm.provisioner.openicf.QueryResultHandler;
 import org.forgerock.openidm.provisioner.openicf.commons.ObjectClassInfoHelper;
 import org.forgerock.openidm.provisioner.openicf.commons.OperationOptionInfoHelper;
 import org.forgerock.openidm.provisioner.openicf.query.OperatorFactory;
+import org.forgerock.openidm.provisioner.openicf.query.QueryFilter;
+import org.forgerock.openidm.provisioner.openicf.query.operators.BetweenOperator;
 import org.forgerock.openidm.provisioner.openicf.query.operators.BooleanOperator;
 import org.forgerock.openidm.provisioner.openicf.query.operators.Operator;
 import org.identityconnectors.common.Assertions;
@@ -47,7 +50,7 @@ import org.identityconnectors.framework.common.objects.filter.Filter;
 import java.io.IOException;
 import java.lang.reflect.UndeclaredThrowableException;
 import java.net.URI;
-import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -62,7 +65,6 @@ public class OperationHelperImpl implements OperationHelper {
 
     private final ObjectClassInfoHelper objectClassInfoHelper;
     private final Map<Class<? extends APIOperation>, OperationOptionInfoHelper> operations;
-    private final List<Map<String, Object>> resultList = new ArrayList<Map<String, Object>>();
     private final Id systemObjectSetId;
     private final CryptoService cryptoService;
 
@@ -82,8 +84,12 @@ public class OperationHelperImpl implements OperationHelper {
         this.cryptoService = cryptoService;
     }
 
-
-
+    /**
+     * @return the crypto service the helper was built with
+     */
+    CryptoService getCryptoService() {
+        return cryptoService;
+    }
 
     public boolean isOperationPermitted(Class<? extends APIOperation> operation) throws JsonResourceException {
         OperationOptionInfoHelper operationOptionInfoHelper = operations.get(operation);
@@ -117,6 +123,10 @@ public class OperationHelperImpl implements OperationHelper {
         return operator.createFilter();
     }
 
+    public QueryFilter buildQueryFilter(Map<String, Object> query, Map<String, Object> params) throws Exception {
+        return QueryFilter.split(createOperator(query, params));
+    }
+
 
     public Pair<ObjectClass, Set<Attribute>> build(Class<? extends APIOperation> operation, JsonValue source) throws Exception {
         return objectClassInfoHelper.build(operation, source, cryptoService);
@@ -162,18 +172,19 @@ public class OperationHelperImpl implements OperationHelper {
     }
 
 
-    public ResultsHandler getResultsHandler() {
-        resultList.clear();
-        return new ConnectorObjectResultsHandler();
+    public ResultsHandler getResultsHandler(QueryResultHandler handler) {
+        return new ConnectorObjectResultsHandler(Assertions.nullChecked(handler, "handler"));
     }
 
 
-    public List<Map<String, Object>> getQueryResult() {
-        return resultList;
-    }
+    private class ConnectorObjectResultsHandler implements ResultsHandler {
 
+        private final QueryResultHandler handler;
+
+        ConnectorObjectResultsHandler(QueryResultHandler handler) {
+            this.handler = handler;
+        }
 
-    private class ConnectorObjectResultsHandler implements ResultsHandler {
         /**
          * Call-back method to do whatever it is the caller wants to do with
          * each {@link org.identityconnectors.framework.common.objects.ConnectorObject} that is returned in the result of
@@ -187,7 +198,7 @@ public class OperationHelperImpl implements OperationHelper {
          */
         public boolean handle(ConnectorObject obj) {
             try {
-                return resultList.add(objectClassInfoHelper.build(obj, cryptoService).asMap());
+                return handler.handle(objectClassInfoHelper.build(obj, cryptoService).asMap());
             } catch (IOException e) {
                 throw new IllegalArgumentException(e);
             } catch (JsonCryptoException e) {
@@ -205,9 +216,16 @@ public class OperationHelperImpl implements OperationHelper {
 
             BooleanOperator booleanOperator = OperatorFactory.createBooleanOperator(nodeName);
 
-            List<Object> parts = (List<Object>) node.get(nodeName);
+            Object value = node.get(nodeName);
+            List<Object> parts = value instanceof Map
+                    ? Collections.singletonList(value)
+                    : (List<Object>) value;
 
-            if (parts.size() < 2) {
+            if (nodeName.equals(OPERATOR_NOT)) {
+                if (parts.size() != 1) {
+                    throw new IllegalArgumentException("The 'NOT'-object must have exactly 1 element (" + parts.size() + ")");
+                }
+            } else if (parts.size() < 2) {
                 throw new IllegalArgumentException("To few elements in the 'BooleanOperator'-object (" + parts.size() + "). Must be 2 or more");
             }
 
@@ -230,6 +248,12 @@ public class OperationHelperImpl implements OperationHelper {
         Map<String, Object> nodeValueMap = (Map<String, Object>) node.get(operatorName);
 
         String field = (String) nodeValueMap.get("field");
+
+        if (operatorName.equals(OPERATOR_PRESENT)) {
+            // Only the native name of the attribute is needed, there is no value to convert
+            return OperatorFactory.createFunctionalOperator(operatorName, objectClassInfoHelper.build(field, null, cryptoService));
+        }
+
         List<String> values = (List<String>) nodeValueMap.get("values");
 
         if (values == null) {
@@ -242,14 +266,32 @@ public class OperationHelperImpl implements OperationHelper {
             values = (List<String>) params.get(field);
         }
 
+        if (operatorName.equals(OPERATOR_BETWEEN)) {
+            return createBetweenOperator(field, values);
+        }
+
         return OperatorFactory.createFunctionalOperator(operatorName, objectClassInfoHelper.build(field, values, cryptoService));
     }
 
+    private Operator createBetweenOperator(String field, List<?> values) throws Exception {
+        if (values.size() != 2) {
+            throw new IllegalArgumentException("The 'Between'-object must have 2 values, the lower and the upper bound (" + values.size() + ")");
+        }
+        Attribute lower = null == values.get(0)
+                ? null
+                : objectClassInfoHelper.build(field, Collections.singletonList(values.get(0)), cryptoService);
+        Attribute upper = null == values.get(1)
+                ? null
+                : objectClassInfoHelper.build(field, Collections.singletonList(values.get(1)), cryptoService);
+        return new BetweenOperator(lower, upper);
+    }
+
     private boolean isBooleanOperator(String key) {
         return key.equals(OPERATOR_AND)
                 || key.equals(OPERATOR_OR)
                 || key.equals(OPERATOR_NOR)
-                || key.equals(OPERATOR_NAND);
+                || key.equals(OPERATOR_NAND)
+                || key.equals(OPERATOR_NOT);
 
     }
 
@@ -0,0 +1,162 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright © 2013 ForgeRock AS. All rights reserved.
+ *
+ * The contents of this file are subject to the terms
+ * of the Common Development and Distribution License
+ * (the License). You may not use this file except in
+ * compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://forgerock.org/license/CDDLv1.0.html
+ * See the License for the specific language governing
+ * permission and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL
+ * Header Notice in each file and include the License file
+ * at http://forgerock.org/license/CDDLv1.0.html
+ * If applicable, add the following below the CDDL Header,
+ * with the fields enclosed by brackets [] replaced by
+ * your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ */
+
+package org.forgerock.openidm.provisioner.openicf.impl;
+
+import java.util.Map;
+
+import org.forgerock.json.resource.JsonResourceException;
+import org.forgerock.openidm.objset.BadRequestException;
+import org.forgerock.openidm.repo.QueryConstants;
+import org.forgerock.openidm.repo.util.PagedResults;
+import org.identityconnectors.framework.common.objects.ConnectorObject;
+import org.identityconnectors.framework.common.objects.ResultsHandler;
+import org.identityconnectors.framework.common.objects.filter.Filter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A {@link ResultsHandler} which returns one page of the connector search results.
+ * <p/>
+ * The connector framework has no paged search, so the page is cut out of the full result
+ * set. The paged results cookie carries the UID of the last object of the page, hex encoded
+ * like the repository cookies: the next page starts after that object, the objects before it
+ * are skipped without being converted, and the search is stopped as soon as the page is
+ * complete. Objects created or deleted in the pages already returned do not shift the
+ * following pages, but each page still runs the search from the start.
+ * <p/>
+ * Reading page n therefore reads the n - 1 pages before it from the connector, and paging
+ * through all the results reads a quadratic number of objects. A warning is logged once a
+ * page starts after more than {@link #WARN_PAGES} pages.
+ */
+class PagedResultsHandler implements ResultsHandler {
+    private final static Logger logger = LoggerFactory.getLogger(PagedResultsHandler.class);
+
+    /**
+     * Number of pages skipped to reach a page above which a warning is logged
+     */
+    final static int WARN_PAGES = 10;
+
+    private final ResultsHandler handler;
+    private final Filter filter;
+    private final int pageSize;
+    private final String afterUid;
+    private boolean resumed;
+    private int skipped = 0;
+    private int returned = 0;
+    private String lastUid = null;
+    private boolean hasMore = false;
+
+    /**
+     * @param handler  the handler to pass the objects of the page to
+     * @param filter   the filter the objects must match, evaluated locally, or null
+     * @param pageSize the page size, 0 to pass on all the objects after {@code afterUid}
+     * @param afterUid the UID of the last object of the previous page, null for the first page
+     */
+    PagedResultsHandler(ResultsHandler handler, Filter filter, int pageSize, String afterUid) {
+        this.handler = handler;
+        this.filter = filter;
+        this.pageSize = pageSize;
+        this.afterUid = afterUid;
+        this.resumed = afterUid == null;
+    }
+
+    /**
+     * Creates a handler for the page requested by the query parameters.
+     *
+     * @param handler the handler to pass the objects of the page to
+     * @param filter  the filter the objects must match, evaluated locally, or null
+     * @param params  the query parameters
+     * @return the paging handler, or {@code handler} itself if the query is neither paged
+     *         nor filtered locally
+     * @throws JsonResourceException if the page size or cookie is invalid
+     */
+    static ResultsHandler forParams(ResultsHandler handler, Filter filter, Map<String, Object> params)
+            throws JsonResourceException {
+        int pageSize = 0;
+        String afterUid = null;
+        if (params != null) {
+            try {
+                pageSize = PagedResults.getPageSize(params);
+                afterUid = PagedResults.getLastId(params);
+            } catch (BadRequestException e) {
+                throw new JsonResourceException(JsonResourceException.BAD_REQUEST, e.getMessage(), e);
+            }
+        }
+        if (pageSize == 0 && afterUid == null && filter == null) {
+            return handler;
+        }
+        return new PagedResultsHandler(handler, filter, pageSize, afterUid);
+    }
+
+    public boolean handle(ConnectorObject obj) {
+        String uid = obj.getUid().getUidValue();
+        if (!resumed) {
+            // Matched before filtering, the last object may have changed since
+            resumed = uid.equals(afterUid);
+            skipped++;
+            return true;
+        }
+        if (filter != null && !filter.accept(obj)) {
+            return true;
+        }
+        if (pageSize > 0 && returned >= pageSize) {
+            // One object past the page is enough to know there is a next page
+            hasMore = true;
+            return false;
+        }
+        returned++;
+        lastUid = uid;
+        return handler.handle(obj);
+    }
+
+    /**
+     * Populates the query output with the cookie for the next page, if the search found
+     * objects beyond the current page.
+     *
+     * @param result the query output map
+     * @throws JsonResourceException if the object the page starts after was not found
+     */
+    void setPagedResultsCookie(Map<String, Object> result) throws JsonResourceException {
+        if (!resumed) {
+            throw new JsonResourceException(JsonResourceException.CONFLICT, "The object " + afterUid
+                    + " the page starts after is no longer returned, the query must be started over");
+        }
+        if (pageSize > 0 && skipped > WARN_PAGES * pageSize) {
+            logger.warn("Paged query read {} objects from the connector to skip to the page after {}. "
+                    + "Each page searches from the start, use a larger page size or a query without paging "
+                    + "to read many pages", skipped, afterUid);
+        }
+        if (hasMore) {
+            result.put(QueryConstants.PAGED_RESULTS_COOKIE, PagedResults.encodeCookie(lastUid));
+        }
+    }
+
+    /**
+     * @return the number of objects read from the connector before the page
+     */
+    int getSkipped() {
+        return skipped;
+    }
+}
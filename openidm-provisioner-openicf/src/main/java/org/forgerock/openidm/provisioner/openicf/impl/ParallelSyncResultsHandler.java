@@ -0,0 +1,266 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright © 2013 ForgeRock AS. All rights reserved.
+ *
+ * The contents of this file are subject to the terms
+ * of the Common Development and Distribution License
+ * (the License). You may not use this file except in
+ * compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://forgerock.org/license/CDDLv1.0.html
+ * See the License for the specific language governing
+ * permission and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL
+ * Header Notice in each file and include the License file
+ * at http://forgerock.org/license/CDDLv1.0.html
+ * If applicable, add the following below the CDDL Header,
+ * with the fields enclosed by brackets [] replaced by
+ * your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ */
+
+package org.forgerock.openidm.provisioner.openicf.impl;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+
+import org.identityconnectors.framework.common.objects.SyncDelta;
+import org.identityconnectors.framework.common.objects.SyncResultsHandler;
+import org.identityconnectors.framework.common.objects.SyncToken;
+import org.identityconnectors.framework.common.objects.Uid;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A {@link SyncResultsHandler} which processes the sync deltas on a number of worker threads.
+ * <p/>
+ * The deltas are partitioned over the workers by the hash of their UID, so the changes of one
+ * object are still processed in the order the connector reported them. A delta renaming an
+ * object goes to the partition of its previous UID, and so do the later deltas of the new UID.
+ * Each worker has a bounded queue; once it is full the connector is held back until the
+ * worker catches up. The workers run on the given executor, which must start them all at once.
+ * <p/>
+ * The sync token only advances over a contiguous run of completed deltas: a delta completed
+ * ahead of an earlier one still in progress does not move the token. The token therefore
+ * never covers a delta which has not been processed, and a sync resumed from it replays at
+ * most the deltas which were in flight.
+ * <p/>
+ * A delta failing stops the sync. The deltas before it are still processed, those after it
+ * are not, and the token is left before it, as with serial processing.
+ */
+abstract class ParallelSyncResultsHandler implements SyncResultsHandler {
+
+    private static final Logger logger = LoggerFactory.getLogger(ParallelSyncResultsHandler.class);
+
+    /**
+     * A delta queued for a worker, with its position in the sync stream.
+     */
+    private static class Entry {
+        final long sequence;
+        final SyncDelta delta;
+
+        Entry(long sequence, SyncDelta delta) {
+            this.sequence = sequence;
+            this.delta = delta;
+        }
+    }
+
+    private static final Entry END = new Entry(-1, null);
+
+    private final List<BlockingQueue<Entry>> queues;
+    private final CountDownLatch stopped;
+
+    // Dispatching happens on the connector's thread only
+    private long dispatched = 0;
+    private final Map<String, Integer> renamed = new HashMap<String, Integer>();
+
+    // Guarded by this
+    private final Map<Long, SyncToken> completed = new HashMap<Long, SyncToken>();
+    private long nextToComplete = 0;
+    private SyncToken lastToken;
+
+    private volatile RuntimeException failure = null;
+    private volatile long failedSequence = Long.MAX_VALUE;
+    // Guarded by this
+    private SyncDelta failedDelta = null;
+
+    /**
+     * Creates the handler and starts its workers.
+     *
+     * @param token     the token the sync starts from
+     * @param executor  the executor running the workers, reused over the sync runs
+     * @param workers   the number of workers
+     * @param queueSize the maximum number of deltas queued per worker
+     */
+    ParallelSyncResultsHandler(SyncToken token, Executor executor, int workers, int queueSize) {
+        this.lastToken = token;
+        this.queues = new ArrayList<BlockingQueue<Entry>>(workers);
+        this.stopped = new CountDownLatch(workers);
+        for (int i = 0; i < workers; i++) {
+            queues.add(new ArrayBlockingQueue<Entry>(queueSize));
+        }
+        for (final BlockingQueue<Entry> queue : queues) {
+            executor.execute(new Runnable() {
+                public void run() {
+                    try {
+                        work(queue);
+                    } finally {
+                        stopped.countDown();
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * Processes a delta on a worker thread.
+     *
+     * @param delta the delta to process
+     * @throws RuntimeException if the delta could not be processed and the sync must stop
+     */
+    protected abstract void process(SyncDelta delta);
+
+    public boolean handle(SyncDelta delta) {
+        if (failure != null) {
+            return false;
+        }
+        try {
+            queues.get(partition(delta)).put(new Entry(dispatched++, delta));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+        return failure == null;
+    }
+
+    /**
+     * Returns the partition of a delta, the one of its previous UID for a rename.
+     */
+    private int partition(SyncDelta delta) {
+        String uid = delta.getUid().getUidValue();
+        Uid previousUid = delta.getPreviousUid();
+        String key = previousUid != null ? previousUid.getUidValue() : uid;
+        Integer partition = renamed.get(key);
+        if (partition == null) {
+            partition = (key.hashCode() & Integer.MAX_VALUE) % queues.size();
+        }
+        if (!key.equals(uid)) {
+            renamed.put(uid, partition);
+        }
+        return partition;
+    }
+
+    private void work(BlockingQueue<Entry> queue) {
+        while (true) {
+            Entry entry;
+            try {
+                entry = queue.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            if (entry == END) {
+                return;
+            }
+            if (entry.sequence > failedSequence) {
+                // Keep draining so the dispatcher is never blocked, but skip the deltas after a failure
+                continue;
+            }
+            try {
+                process(entry.delta);
+                completed(entry.sequence, entry.delta.getToken());
+            } catch (RuntimeException e) {
+                fail(entry, e);
+            } catch (Error e) {
+                fail(entry, new IllegalStateException(e));
+            }
+        }
+    }
+
+    private synchronized void fail(Entry entry, RuntimeException e) {
+        if (entry.sequence < failedSequence) {
+            if (failure != null) {
+                logger.debug("Live sync failure superseded by an earlier delta failing", failure);
+            }
+            failure = e;
+            failedDelta = entry.delta;
+            failedSequence = entry.sequence;
+        } else {
+            logger.debug("Further live sync failure after the sync was stopped", e);
+        }
+    }
+
+    private synchronized void completed(long sequence, SyncToken token) {
+        completed.put(sequence, token);
+        SyncToken next;
+        while ((next = completed.remove(nextToComplete)) != null) {
+            lastToken = next;
+            nextToComplete++;
+        }
+    }
+
+    /**
+     * @return the token of the last delta of the contiguous run of completed deltas
+     */
+    synchronized SyncToken getLastToken() {
+        return lastToken;
+    }
+
+    /**
+     * @return the earliest delta which failed and stopped the sync, or null
+     */
+    synchronized SyncDelta getFailedDelta() {
+        return failedDelta;
+    }
+
+    /**
+     * Waits for the workers to finish the queued deltas and stops them.
+     *
+     * @return the token of the last delta of the contiguous run of completed deltas
+     */
+    SyncToken close() {
+        boolean interrupted = false;
+        for (BlockingQueue<Entry> queue : queues) {
+            while (true) {
+                try {
+                    queue.put(END);
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        }
+        while (true) {
+            try {
+                stopped.await();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        return getLastToken();
+    }
+
+    /**
+     * Rethrows the failure which stopped the sync, if any.
+     *
+     * @throws RuntimeException the failure of a delta
+     */
+    void checkFailure() {
+        if (failure != null) {
+            throw failure;
+        }
+    }
+}
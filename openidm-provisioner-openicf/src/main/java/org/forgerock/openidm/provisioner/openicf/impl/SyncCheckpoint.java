@@ -0,0 +1,105 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright © 2013 ForgeRock AS. All rights reserved.
+ *
+ * The contents of this file are subject to the terms
+ * of the Common Development and Distribution License
+ * (the License). You may not use this file except in
+ * compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://forgerock.org/license/CDDLv1.0.html
+ * See the License for the specific language governing
+ * permission and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL
+ * Header Notice in each file and include the License file
+ * at http://forgerock.org/license/CDDLv1.0.html
+ * If applicable, add the following below the CDDL Header,
+ * with the fields enclosed by brackets [] replaced by
+ * your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ */
+
+package org.forgerock.openidm.provisioner.openicf.impl;
+
+import org.forgerock.json.fluent.JsonValue;
+import org.forgerock.openidm.provisioner.SyncStageListener;
+import org.forgerock.openidm.provisioner.openicf.commons.ConnectorUtil;
+import org.identityconnectors.framework.common.objects.SyncToken;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Tracks the progress of a live synchronization run, reporting the stage to a
+ * {@link SyncStageListener} every so many deltas or seconds, and bounding the number of
+ * deltas handled in one run.
+ * <p/>
+ * It is called on the connector's thread only.
+ */
+class SyncCheckpoint {
+
+    private static final Logger logger = LoggerFactory.getLogger(SyncCheckpoint.class);
+
+    private final JsonValue stage;
+    private final SyncStageListener listener;
+    private final int checkpointDeltas;
+    private final long checkpointInterval;
+    private final int maxDeltas;
+
+    private int deltas = 0;
+    private int checkpointedDeltas = 0;
+    private long checkpointed = System.currentTimeMillis();
+    private SyncToken checkpointedToken = null;
+
+    /**
+     * @param stage              the stage the run started with, the checkpoints are copies of it
+     * @param listener           the listener to report the stage to, null to not report it
+     * @param checkpointDeltas   the number of deltas after which the stage is reported, 0 for no limit
+     * @param checkpointInterval the time, in milliseconds, after which the stage is reported, 0 for no limit
+     * @param maxDeltas          the maximum number of deltas to handle in the run, 0 for no limit
+     */
+    SyncCheckpoint(JsonValue stage, SyncStageListener listener, int checkpointDeltas, long checkpointInterval,
+            int maxDeltas) {
+        this.stage = stage;
+        this.listener = listener;
+        this.checkpointDeltas = checkpointDeltas;
+        this.checkpointInterval = checkpointInterval;
+        this.maxDeltas = maxDeltas;
+    }
+
+    /**
+     * Records a delta handed to the synchronization, reporting the stage if it is due.
+     *
+     * @param token the token of the last delta completed, as far as the deltas are completed in order
+     * @return true if the run may continue with the next delta, false if it reached its bound
+     */
+    boolean delta(SyncToken token) {
+        deltas++;
+        if (listener != null && token != null && !token.equals(checkpointedToken)
+                && ((checkpointDeltas > 0 && deltas - checkpointedDeltas >= checkpointDeltas)
+                || (checkpointInterval > 0 && System.currentTimeMillis() - checkpointed >= checkpointInterval))) {
+            checkpoint(token);
+        }
+        if (maxDeltas > 0 && deltas >= maxDeltas) {
+            logger.debug("Live synchronization stops after {} deltas, the rest is left to the next run", deltas);
+            return false;
+        }
+        return true;
+    }
+
+    private void checkpoint(SyncToken token) {
+        JsonValue current = stage.copy();
+        current.put("connectorData", ConnectorUtil.convertFromSyncToken(token));
+        try {
+            listener.onCheckpoint(current);
+            checkpointedToken = token;
+        } catch (Exception e) {
+            // The stage is saved at the end of the run anyway, a missed checkpoint only costs replays
+            logger.warn("Failed to save the live synchronization stage at token {}", token.getValue(), e);
+        }
+        checkpointedDeltas = deltas;
+        checkpointed = System.currentTimeMillis();
+    }
+}
@@ -47,6 +47,9 @@ public class OperatorFactory {
         else if (operatorName.equals(OPERATOR_NOR)) {
             return new NorOperator();
         }
+        else if (operatorName.equals(OPERATOR_NOT)) {
+            return new NotOperator();
+        }
         else {
             throw new IllegalArgumentException("No such operator: " + operatorName);
         }
@@ -81,6 +84,9 @@ public class OperatorFactory {
         else if (operatorName.equals(OPERATOR_LESSTHANOREQUAL)) {
             return new LessThanOrEqualOperator(attribute);
         }
+        else if (operatorName.equals(OPERATOR_PRESENT)) {
+            return new PresentOperator(attribute);
+        }
         else {
             throw new IllegalArgumentException("No such operator: " + operatorName);
         }
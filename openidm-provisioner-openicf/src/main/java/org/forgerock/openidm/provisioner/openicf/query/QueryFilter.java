@@ -0,0 +1,125 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright © 2013 ForgeRock AS. All rights reserved.
+ *
+ * The contents of this file are subject to the terms
+ * of the Common Development and Distribution License
+ * (the License). You may not use this file except in
+ * compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://forgerock.org/license/CDDLv1.0.html
+ * See the License for the specific language governing
+ * permission and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL
+ * Header Notice in each file and include the License file
+ * at http://forgerock.org/license/CDDLv1.0.html
+ * If applicable, add the following below the CDDL Header,
+ * with the fields enclosed by brackets [] replaced by
+ * your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ *
+ * $Id$
+ */
+
+package org.forgerock.openidm.provisioner.openicf.query;
+
+import org.forgerock.openidm.provisioner.openicf.query.operators.AndOperator;
+import org.forgerock.openidm.provisioner.openicf.query.operators.BooleanOperator;
+import org.forgerock.openidm.provisioner.openicf.query.operators.LocalOperator;
+import org.forgerock.openidm.provisioner.openicf.query.operators.Operator;
+import org.identityconnectors.framework.common.objects.filter.AndFilter;
+import org.identityconnectors.framework.common.objects.filter.Filter;
+
+/**
+ * A query filter split into the part the connector evaluates and the part OpenIDM evaluates
+ * on the objects the connector returns.
+ * <p/>
+ * As much of the query as the connector framework can express is pushed down to the
+ * connector. The operands of a top level {@code AND} are split one by one, any other operator
+ * containing a {@link LocalOperator} is evaluated locally as a whole.
+ */
+public class QueryFilter {
+
+    private final Filter connectorFilter;
+    private final Filter localFilter;
+
+    QueryFilter(Filter connectorFilter, Filter localFilter) {
+        this.connectorFilter = connectorFilter;
+        this.localFilter = localFilter;
+    }
+
+    /**
+     * Splits the filter of an operator.
+     * <p/>
+     * The filter of each operator is created once only, the boolean operators consume their
+     * operands while creating it.
+     *
+     * @param operator the root of the query
+     * @return the split filter
+     */
+    public static QueryFilter split(Operator operator) {
+        if (!isLocal(operator)) {
+            return new QueryFilter(operator.createFilter(), null);
+        }
+        if (operator instanceof AndOperator) {
+            Filter connectorFilter = null;
+            Filter localFilter = null;
+            for (Operator operand : ((AndOperator) operator).getOperators()) {
+                QueryFilter part = split(operand);
+                connectorFilter = and(connectorFilter, part.connectorFilter);
+                localFilter = and(localFilter, part.localFilter);
+            }
+            return new QueryFilter(connectorFilter, localFilter);
+        }
+        return new QueryFilter(null, operator.createFilter());
+    }
+
+    private static boolean isLocal(Operator operator) {
+        if (operator instanceof LocalOperator) {
+            return true;
+        }
+        if (operator instanceof BooleanOperator) {
+            for (Operator operand : ((BooleanOperator) operator).getOperators()) {
+                if (isLocal(operand)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static Filter and(Filter left, Filter right) {
+        if (null == left) {
+            return right;
+        }
+        if (null == right) {
+            return left;
+        }
+        return new AndFilter(left, right);
+    }
+
+    /**
+     * @return the filter to pass to the connector, or {@code null} to return all the objects
+     */
+    public Filter getConnectorFilter() {
+        return connectorFilter;
+    }
+
+    /**
+     * @return the filter to apply to the objects the connector returns, or {@code null} if the
+     *         connector filter is the whole query
+     */
+    public Filter getLocalFilter() {
+        return localFilter;
+    }
+
+    /**
+     * @return true if the connector evaluates the whole query
+     */
+    public boolean isFullyPushedDown() {
+        return null == localFilter;
+    }
+}
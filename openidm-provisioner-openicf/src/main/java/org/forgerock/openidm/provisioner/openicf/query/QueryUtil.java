@@ -6,6 +6,7 @@ public abstract class QueryUtil {
     public static final String OPERATOR_OR = "OR";
     public static final String OPERATOR_NAND = "NAND";
     public static final String OPERATOR_NOR = "NOR";
+    public static final String OPERATOR_NOT = "NOT";
 
     public static final String OPERATOR_EQUALS = "Equals";
     public static final String OPERATOR_STARTSWITH = "StartsWith";
@@ -16,4 +17,6 @@ public abstract class QueryUtil {
     public static final String OPERATOR_GREATERTHAN = "GreaterThan";
     public static final String OPERATOR_GREATERTHANOREQUAL = "GreaterThanOrEqual";
     public static final String OPERATOR_LESSTHANOREQUAL = "LessThanOrEqual";
+    public static final String OPERATOR_BETWEEN = "Between";
+    public static final String OPERATOR_PRESENT = "Present";
 }
\ No newline at end of file
@@ -0,0 +1,65 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright © 2013 ForgeRock AS. All rights reserved.
+ *
+ * The contents of this file are subject to the terms
+ * of the Common Development and Distribution License
+ * (the License). You may not use this file except in
+ * compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://forgerock.org/license/CDDLv1.0.html
+ * See the License for the specific language governing
+ * permission and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL
+ * Header Notice in each file and include the License file
+ * at http://forgerock.org/license/CDDLv1.0.html
+ * If applicable, add the following below the CDDL Header,
+ * with the fields enclosed by brackets [] replaced by
+ * your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ *
+ * $Id$
+ */
+
+package org.forgerock.openidm.provisioner.openicf.query.operators;
+
+import org.identityconnectors.framework.common.objects.Attribute;
+import org.identityconnectors.framework.common.objects.filter.AndFilter;
+import org.identityconnectors.framework.common.objects.filter.Filter;
+import org.identityconnectors.framework.common.objects.filter.GreaterThanOrEqualFilter;
+import org.identityconnectors.framework.common.objects.filter.LessThanOrEqualFilter;
+
+/**
+ * Matches the values of an attribute within an inclusive range.
+ * <p/>
+ * Either bound may be left open, the range then becomes a single comparison.
+ */
+public class BetweenOperator implements Operator {
+
+    private final Attribute lower;
+    private final Attribute upper;
+
+    /**
+     * @param lower the lower bound, or {@code null} if the range has none
+     * @param upper the upper bound, or {@code null} if the range has none
+     */
+    public BetweenOperator(Attribute lower, Attribute upper) {
+        if (null == lower && null == upper) {
+            throw new IllegalArgumentException("A range must have at least one bound");
+        }
+        this.lower = lower;
+        this.upper = upper;
+    }
+
+    public Filter createFilter() {
+        if (null == upper) {
+            return new GreaterThanOrEqualFilter(lower);
+        } else if (null == lower) {
+            return new LessThanOrEqualFilter(upper);
+        }
+        return new AndFilter(new GreaterThanOrEqualFilter(lower), new LessThanOrEqualFilter(upper));
+    }
+}
@@ -26,6 +26,8 @@
 
 package org.forgerock.openidm.provisioner.openicf.query.operators;
 
+import java.util.Collections;
+import java.util.List;
 import java.util.Stack;
 
 public abstract class BooleanOperator implements Operator {
@@ -40,4 +42,11 @@ public abstract class BooleanOperator implements Operator {
         operators.push(operator);
     }
 
+    /**
+     * @return the operands added so far, in the order they were added
+     */
+    public List<Operator> getOperators() {
+        return Collections.unmodifiableList(operators);
+    }
+
 }
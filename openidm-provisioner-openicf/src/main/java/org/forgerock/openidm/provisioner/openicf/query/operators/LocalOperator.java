@@ -0,0 +1,37 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright © 2013 ForgeRock AS. All rights reserved.
+ *
+ * The contents of this file are subject to the terms
+ * of the Common Development and Distribution License
+ * (the License). You may not use this file except in
+ * compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://forgerock.org/license/CDDLv1.0.html
+ * See the License for the specific language governing
+ * permission and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL
+ * Header Notice in each file and include the License file
+ * at http://forgerock.org/license/CDDLv1.0.html
+ * If applicable, add the following below the CDDL Header,
+ * with the fields enclosed by brackets [] replaced by
+ * your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ *
+ * $Id$
+ */
+
+package org.forgerock.openidm.provisioner.openicf.query.operators;
+
+/**
+ * Marks an {@link Operator} the connector framework has no filter for.
+ * <p/>
+ * The {@link org.identityconnectors.framework.common.objects.filter.Filter} it creates is only
+ * evaluated by OpenIDM against the objects the connector returns, it must never be passed to
+ * the connector.
+ */
+public interface LocalOperator extends Operator {
+}
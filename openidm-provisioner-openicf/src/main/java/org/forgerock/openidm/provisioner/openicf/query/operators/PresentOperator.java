@@ -0,0 +1,60 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright © 2013 ForgeRock AS. All rights reserved.
+ *
+ * The contents of this file are subject to the terms
+ * of the Common Development and Distribution License
+ * (the License). You may not use this file except in
+ * compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://forgerock.org/license/CDDLv1.0.html
+ * See the License for the specific language governing
+ * permission and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL
+ * Header Notice in each file and include the License file
+ * at http://forgerock.org/license/CDDLv1.0.html
+ * If applicable, add the following below the CDDL Header,
+ * with the fields enclosed by brackets [] replaced by
+ * your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ *
+ * $Id$
+ */
+
+package org.forgerock.openidm.provisioner.openicf.query.operators;
+
+import java.util.List;
+
+import org.identityconnectors.framework.common.objects.Attribute;
+import org.identityconnectors.framework.common.objects.ConnectorObject;
+import org.identityconnectors.framework.common.objects.filter.Filter;
+
+/**
+ * Matches the objects which have at least one value of the attribute.
+ * <p/>
+ * The connector framework has no presence filter, so this one is evaluated locally.
+ */
+public class PresentOperator extends FunctionalOperator implements LocalOperator {
+
+    public PresentOperator(Attribute attribute) {
+        super(attribute);
+    }
+
+    @Override
+    public Filter createFilter() {
+        final String name = attribute.getName();
+        return new Filter() {
+            public boolean accept(ConnectorObject obj) {
+                Attribute present = obj.getAttributeByName(name);
+                if (null == present) {
+                    return false;
+                }
+                List<Object> values = present.getValue();
+                return null != values && !values.isEmpty();
+            }
+        };
+    }
+}
@@ -0,0 +1,333 @@
+/*
+ * Copyright 2013 ForgeRock, AS.
+ *
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ */
+package org.forgerock.openidm.provisioner.openicf.syncfailure;
+
+import org.forgerock.json.fluent.JsonValue;
+import org.forgerock.json.resource.JsonResourceAccessor;
+import org.forgerock.json.resource.JsonResourceException;
+import org.forgerock.openidm.repo.QueryConstants;
+import org.forgerock.openidm.util.Accessor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.UnsupportedEncodingException;
+import java.lang.reflect.UndeclaredThrowableException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+
+/**
+ * Handle a LiveSync failure by saving it to a retry queue, so the live sync can move on to
+ * the next change while the failed one is retried in the background.
+ * <p/>
+ * The queue is implemented as a repository target, synchronisation/retryQueue/&lt;name&gt;
+ * where &lt;name&gt; is the name of the provisioner, with one entry per failed object: a later
+ * failure of the same object replaces the earlier one, and a later change of the object
+ * which succeeds removes it, see {@link #clear(String, String)}. A background worker calls
+ * {@link #retry()} periodically, which queries the due entries with the
+ * {@code retry-queue-due} repository query and replays each through the synchronization
+ * service, reading the current state of the object from the system. The delay between the
+ * attempts doubles after each failed attempt, up to a maximum; once the retries are exhausted
+ * the failure is passed to the post-retry handler.
+ */
+public class AsyncRetrySyncFailureHandler implements SyncFailureHandler {
+
+    /** Logger */
+    private static final Logger logger = LoggerFactory.getLogger(AsyncRetrySyncFailureHandler.class);
+
+    /** the repository target of the retry queues */
+    public static final String RETRY_QUEUE = "repo/synchronisation/retryQueue/";
+
+    /**
+     * the query of the entries due for a retry, with the current time as the {@code now}
+     * number and the {@code nowKey} string, compared with the {@code nextAttempt} and
+     * {@code nextAttemptKey} properties of the entries
+     */
+    public static final String QUERY_DUE = "retry-queue-due";
+
+    /* retry entry properties */
+    private static final String ATTEMPTS = "attempts";
+    private static final String NEXT_ATTEMPT = "nextAttempt";
+    private static final String NEXT_ATTEMPT_KEY = "nextAttemptKey";
+    private static final String FAILURE_CAUSE = "failureCause";
+
+    /** the repository target of the retry queue of the system */
+    private final String queueId;
+
+    /** accessor to the router */
+    private final Accessor<JsonResourceAccessor> accessor;
+
+    /** how many times to retry a failed object, -1 for ever */
+    private final int maxRetries;
+
+    /** the handler to call after the retries are exhausted */
+    private final SyncFailureHandler postRetryHandler;
+
+    /** the delay before the first retry, in milliseconds */
+    private final long initialDelay;
+
+    /** the maximum delay between two retries, in milliseconds */
+    private final long maxDelay;
+
+    /**
+     * Construct this live sync failure handler.
+     *
+     * @param systemIdentifier the name of the provisioner
+     * @param accessor         an accessor to the router
+     * @param maxRetries       the number of retries, -1 to retry for ever
+     * @param postRetryHandler the handler to call after the retries are exhausted
+     * @param initialDelay     the delay before the first retry, in milliseconds
+     * @param maxDelay         the maximum delay between two retries, in milliseconds
+     */
+    public AsyncRetrySyncFailureHandler(String systemIdentifier, Accessor<JsonResourceAccessor> accessor,
+            int maxRetries, SyncFailureHandler postRetryHandler, long initialDelay, long maxDelay) {
+        this.queueId = RETRY_QUEUE + systemIdentifier;
+        this.accessor = accessor;
+        this.maxRetries = maxRetries;
+        this.postRetryHandler = postRetryHandler;
+        this.initialDelay = initialDelay;
+        this.maxDelay = Math.max(initialDelay, maxDelay);
+    }
+
+    /**
+     * Handle sync failure by saving it to the retry queue.
+     *
+     * @param syncFailure contains sync failure data
+     * @param failureCause the cause of the sync failure
+     * @throws SyncHandlerException when the failure could not be saved to the retry queue
+     */
+    public synchronized void invoke(Map<String, Object> syncFailure, Exception failureCause)
+        throws SyncHandlerException {
+
+        String id = getEntryId(syncFailure);
+        Map<String, Object> entry = new HashMap<String, Object>(syncFailure);
+        entry.put(FAILURE_CAUSE, failureCause.toString());
+        entry.put(ATTEMPTS, 0);
+        setNextAttempt(entry, System.currentTimeMillis() + initialDelay);
+
+        try {
+            JsonResourceAccessor repo = accessor.access();
+            JsonValue existing = read(repo, id);
+            if (null == existing) {
+                repo.create(id, new JsonValue(entry));
+            } else {
+                repo.update(id, existing.get("_rev").asString(), new JsonValue(entry));
+            }
+            logger.info("{} saved to retry queue", syncFailure.get("uid"));
+        } catch (JsonResourceException e) {
+            throw new SyncHandlerException("Failed reading/writing " + id, e);
+        }
+    }
+
+    /**
+     * Removes the entry of an object from the retry queue, once a later change of the object
+     * was synchronized successfully. Retrying the earlier failure would be redundant at best.
+     * <p/>
+     * The entry is read from the repository by its id, which is derived from the object, so
+     * the entries saved by the other nodes or before a restart are removed too.
+     *
+     * @param objectType the object type of the object
+     * @param uid        the uid of the object
+     */
+    public synchronized void clear(String objectType, String uid) {
+        String id = getEntryId(objectType, uid);
+        try {
+            JsonResourceAccessor repo = accessor.access();
+            JsonValue existing = read(repo, id);
+            if (null != existing) {
+                repo.delete(id, existing.get("_rev").asString());
+                logger.info("{} removed from retry queue after a later change succeeded", uid);
+            }
+        } catch (JsonResourceException e) {
+            logger.warn("Failed to remove {} from retry queue", id, e);
+        }
+    }
+
+    /**
+     * Replays the entries of the retry queue which are due.
+     * <p/>
+     * Called periodically by the background worker; all the failures are logged, none is
+     * thrown.
+     */
+    public void retry() {
+        JsonResourceAccessor repo = accessor.access();
+        List<String> ids = new ArrayList<String>();
+        try {
+            JsonValue params = new JsonValue(new HashMap<String, Object>());
+            params.put(QueryConstants.QUERY_ID, QUERY_DUE);
+            long now = System.currentTimeMillis();
+            params.put("now", now);
+            params.put("nowKey", getTimeKey(now));
+            for (JsonValue entry : repo.query(queueId, params).get(QueryConstants.QUERY_RESULT)) {
+                ids.add(queueId + "/" + entry.get("_id").asString());
+            }
+        } catch (Exception e) {
+            logger.warn("Failed to query retry queue {}", queueId, e);
+            return;
+        }
+        for (String id : ids) {
+            if (Thread.currentThread().isInterrupted()) {
+                return;
+            }
+            try {
+                retry(repo, id);
+            } catch (Exception e) {
+                logger.warn("Failed to retry {}", id, e);
+            }
+        }
+    }
+
+    private void retry(JsonResourceAccessor repo, String id) throws Exception {
+        JsonValue entry;
+        synchronized (this) {
+            entry = read(repo, id);
+        }
+        if (null == entry || entry.get(NEXT_ATTEMPT).asLong() > System.currentTimeMillis()) {
+            return;
+        }
+
+        Exception failure = null;
+        try {
+            replay(repo, entry);
+        } catch (JsonResourceException e) {
+            failure = e;
+        }
+
+        synchronized (this) {
+            String rev = entry.get("_rev").asString();
+            JsonValue current = read(repo, id);
+            if (null == current || !rev.equals(current.get("_rev").asString())) {
+                // A new failure of the object was saved during the replay, it is retried on its own
+                return;
+            }
+            if (null == failure) {
+                repo.delete(id, rev);
+                logger.info("{} retried successfully", entry.get("uid").getObject());
+                return;
+            }
+            int attempts = entry.get(ATTEMPTS).asInteger() + 1;
+            if (maxRetries >= 0 && attempts >= maxRetries) {
+                logger.info("{}:{} sync retries = {}/{}, retries exhausted",
+                        new Object[]{entry.get("systemIdentifier").getObject(), entry.get("uid").getObject(),
+                        attempts, maxRetries});
+                postRetryHandler.invoke(getSyncFailure(entry), failure);
+                repo.delete(id, rev);
+            } else {
+                logger.info("{}:{} sync retries = {}/{}, retrying",
+                        new Object[]{entry.get("systemIdentifier").getObject(), entry.get("uid").getObject(),
+                        attempts, maxRetries});
+                Map<String, Object> next = getSyncFailure(entry);
+                next.put(FAILURE_CAUSE, failure.toString());
+                next.put(ATTEMPTS, attempts);
+                setNextAttempt(next, System.currentTimeMillis() + getDelay(attempts));
+                repo.update(id, rev, new JsonValue(next));
+            }
+        }
+    }
+
+    /**
+     * Replays the change of the object, the synchronization service reads its current state.
+     * A delete is only replayed while the object is still absent from the system; an object
+     * which is back is synchronized as updated instead.
+     */
+    private void replay(JsonResourceAccessor repo, JsonValue entry) throws JsonResourceException {
+        String id = entry.get("id").required().asString();
+        boolean delete = "DELETE".equals(entry.get("deltaType").asString());
+        if (delete && null != read(repo, id)) {
+            logger.info("{} is back on the system, its delete is retried as an update", id);
+            delete = false;
+        }
+        JsonValue params = new JsonValue(new HashMap<String, Object>(2));
+        params.put("_action", delete ? "ONDELETE" : "ONUPDATE");
+        params.put("id", id);
+        repo.action("sync", params, null);
+    }
+
+    /**
+     * @param attempts the number of failed retries
+     * @return the delay before the next retry, in milliseconds
+     */
+    long getDelay(int attempts) {
+        long delay = initialDelay;
+        for (int i = 0; i < attempts && delay < maxDelay; i++) {
+            delay *= 2;
+        }
+        return Math.min(delay, maxDelay);
+    }
+
+    private JsonValue read(JsonResourceAccessor repo, String id) throws JsonResourceException {
+        try {
+            return repo.read(id);
+        } catch (JsonResourceException e) {
+            if (e.getCode() == JsonResourceException.NOT_FOUND) {
+                return null;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * @return the sync failure data of a retry entry, without the repository and retry properties
+     */
+    private Map<String, Object> getSyncFailure(JsonValue entry) {
+        Map<String, Object> syncFailure = new HashMap<String, Object>(entry.asMap());
+        syncFailure.remove("_id");
+        syncFailure.remove("_rev");
+        syncFailure.remove(ATTEMPTS);
+        syncFailure.remove(NEXT_ATTEMPT);
+        syncFailure.remove(NEXT_ATTEMPT_KEY);
+        return syncFailure;
+    }
+
+    /**
+     * Sets the time of the next attempt of a retry entry, both as a number and as a key which
+     * sorts as a string, for the repositories which store the properties as strings.
+     */
+    private void setNextAttempt(Map<String, Object> entry, long nextAttempt) {
+        entry.put(NEXT_ATTEMPT, nextAttempt);
+        entry.put(NEXT_ATTEMPT_KEY, getTimeKey(nextAttempt));
+    }
+
+    /**
+     * @return the time zero-padded to a fixed width, so the string order is the time order
+     */
+    static String getTimeKey(long time) {
+        return String.format("%019d", time);
+    }
+
+    /**
+     * @return the id of the retry entry of the failed object, the hex encoded object type and uid
+     */
+    String getEntryId(Map<String, Object> syncFailure) {
+        return getEntryId((String) syncFailure.get("objectType"), (String) syncFailure.get("uid"));
+    }
+
+    private String getEntryId(String objectType, String uid) {
+        try {
+            byte[] bytes = (objectType + "/" + uid).getBytes("UTF-8");
+            StringBuilder id = new StringBuilder(queueId).append("/");
+            for (byte b : bytes) {
+                id.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return id.toString();
+        } catch (UnsupportedEncodingException e) {
+            // Should never happen.
+            throw new UndeclaredThrowableException(e);
+        }
+    }
+}
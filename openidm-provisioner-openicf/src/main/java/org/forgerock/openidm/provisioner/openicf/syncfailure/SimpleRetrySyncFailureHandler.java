@@ -18,11 +18,16 @@ package org.forgerock.openidm.provisioner.openicf.syncfailure;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.LinkedHashMap;
 import java.util.Map;
 
 
 /**
  * A simple sync failure handler that counts retries.
+ * <p>
+ * The retries are counted per sync token. Parallel live sync workers may fail on several
+ * deltas of a run at once, and the run is retried from the earliest of them, so each failed
+ * token keeps its own count. The handler is safe for concurrent use.
  *
  * @author brmiller
  */
@@ -37,11 +42,18 @@ public class SimpleRetrySyncFailureHandler implements SyncFailureHandler {
     /** the handler to call after the retries are exhausted */
     private final SyncFailureHandler postRetryHandler;
 
-    /** current token being retried */
-    private Object currentSyncToken;
+    /** the number of most recently failed tokens to keep the retries of */
+    private static final int MAX_TOKENS = 1000;
 
-    /** number of retries on current token */
-    private int currentRetries;
+    /** number of retries per token being retried, guarded by itself */
+    private final Map<Object, Integer> retries = new LinkedHashMap<Object, Integer>() {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Object, Integer> eldest) {
+            return size() > MAX_TOKENS;
+        }
+    };
 
     /**
      * Construct the SyncFailureHandler.
@@ -66,12 +78,11 @@ public class SimpleRetrySyncFailureHandler implements SyncFailureHandler {
 
         final Object token = syncFailure.get("token");
 
-        if (token != null && token.equals(currentSyncToken)) {
-            currentRetries++;
-        }
-        else {
-            currentSyncToken = token;
-            currentRetries = 0;
+        final int currentRetries;
+        synchronized (retries) {
+            Integer previous = retries.get(token);
+            currentRetries = previous == null ? 0 : previous.intValue() + 1;
+            retries.put(token, Integer.valueOf(currentRetries));
         }
 
         if (currentRetries >= syncFailureRetries) {
@@ -31,5 +31,23 @@ public interface SyncFailureHandlerFactory {
      * @return the SyncFailureHandler
      */
     public SyncFailureHandler create(JsonValue config);
+
+    /**
+     * Create a <em>SyncFailureHandler</em> for a system from the config.  Unlike
+     * {@link #create(JsonValue)}, this also supports the handlers which retry the failures of the
+     * system in the background.
+     *
+     * @param systemIdentifier the name of the system
+     * @param config the config for the SyncFailureHandler
+     * @return the SyncFailureHandler
+     */
+    public SyncFailureHandler create(String systemIdentifier, JsonValue config);
+
+    /**
+     * Stop the background retries of a system, when it is no longer available.
+     *
+     * @param systemIdentifier the name of the system
+     */
+    public void release(String systemIdentifier);
 }
 
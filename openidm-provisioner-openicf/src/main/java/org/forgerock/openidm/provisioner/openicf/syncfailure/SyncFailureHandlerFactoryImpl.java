@@ -17,6 +17,7 @@ package org.forgerock.openidm.provisioner.openicf.syncfailure;
 
 import org.apache.felix.scr.annotations.Component;
 import org.apache.felix.scr.annotations.ConfigurationPolicy;
+import org.apache.felix.scr.annotations.Deactivate;
 import org.apache.felix.scr.annotations.Reference;
 import org.apache.felix.scr.annotations.ReferenceCardinality;
 import org.apache.felix.scr.annotations.ReferencePolicy;
@@ -24,9 +25,20 @@ import org.apache.felix.scr.annotations.Service;
 import org.forgerock.json.fluent.JsonValue;
 import org.forgerock.json.resource.JsonResource;
 import org.forgerock.json.resource.JsonResourceAccessor;
+import org.forgerock.json.resource.JsonResourceContext;
 import org.forgerock.openidm.objset.ObjectSetContext;
 import org.forgerock.openidm.scope.ScopeFactory;
 import org.forgerock.openidm.util.Accessor;
+import org.osgi.service.component.ComponentContext;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * A factory service to create the SyncFailureHandler strategy from config.
@@ -48,6 +60,13 @@ public class SyncFailureHandlerFactoryImpl implements SyncFailureHandlerFactory
     protected static final String CONFIG_DEAD_LETTER = "dead-letter-queue";
     protected static final String CONFIG_LOGGED_IGNORE = "logged-ignore";
     protected static final String CONFIG_SCRIPT = "script";
+    protected static final String CONFIG_ASYNC_RETRY = "asyncRetry";
+    protected static final String CONFIG_INITIAL_DELAY = "initialDelay";
+    protected static final String CONFIG_MAX_DELAY = "maxDelay";
+    protected static final String CONFIG_POLL_INTERVAL = "pollInterval";
+
+    /** the number of threads running the background retries of all the systems */
+    private static final int RETRY_THREADS = 2;
 
     /** Scope factory service. */
     @Reference(
@@ -74,6 +93,35 @@ public class SyncFailureHandlerFactoryImpl implements SyncFailureHandlerFactory
             target = "(service.pid=org.forgerock.openidm.router)")
     private JsonResource router;
 
+    /** accessor to the router, in the context of the caller */
+    private final Accessor<JsonResourceAccessor> routerAccessor = new Accessor<JsonResourceAccessor>() {
+        public JsonResourceAccessor access() {
+            return new JsonResourceAccessor(router, ObjectSetContext.get());
+        }
+    };
+
+    /** runs the background retries */
+    private final ScheduledExecutorService retryExecutor = Executors.newScheduledThreadPool(RETRY_THREADS,
+            new ThreadFactory() {
+                private final AtomicInteger count = new AtomicInteger();
+
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "syncFailureRetry-" + count.getAndIncrement());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+
+    /** the background retries of each system */
+    private final ConcurrentMap<String, ScheduledFuture<?>> retryWorkers =
+            new ConcurrentHashMap<String, ScheduledFuture<?>>();
+
+    @Deactivate
+    protected void deactivate(ComponentContext context) {
+        retryExecutor.shutdownNow();
+        retryWorkers.clear();
+    }
+
     /**
      * Create a <em>SyncFailureHandler</em> from the config.  The config should optionally
      * describe
@@ -91,6 +139,39 @@ public class SyncFailureHandlerFactoryImpl implements SyncFailureHandlerFactory
      * @return the SyncFailureHandler
      */
     public SyncFailureHandler create(JsonValue config) {
+        return create(null, config);
+    }
+
+    /**
+     * Create a <em>SyncFailureHandler</em> for a system from the config.  In addition to the
+     * config of {@link #create(JsonValue)}, an {@code asyncRetry} object makes the failures
+     * be saved to a retry queue and retried in the background
+     * <ul>
+     *     <li>{@code initialDelay}: the delay before the first retry, in seconds</li>
+     *     <li>{@code maxDelay}: the maximum delay between two retries, in seconds; the delay
+     *     doubles after each failed retry up to this value</li>
+     *     <li>{@code pollInterval}: how often the retry queue is checked, in seconds</li>
+     * </ul>
+     *
+     * @param systemIdentifier the name of the system, null if the handler is not for a system
+     * @param config the config for the SyncFailureHandler
+     * @return the SyncFailureHandler
+     */
+    public SyncFailureHandler create(String systemIdentifier, JsonValue config) {
+
+        if (null != systemIdentifier) {
+            // A new handler replaces the previous one of the system
+            release(systemIdentifier);
+        }
+
+        if (null != systemIdentifier && null != config && config.get(CONFIG_ASYNC_RETRY).isMap()) {
+            JsonValue maxRetries = config.get(CONFIG_MAX_RETRIES);
+            if (maxRetries.isNull() || maxRetries.asInteger() != 0) {
+                return createAsyncRetryHandler(systemIdentifier, config.get(CONFIG_ASYNC_RETRY),
+                        maxRetries.isNull() || maxRetries.asInteger() < 0 ? -1 : maxRetries.asInteger(),
+                        config.get(CONFING_POST_RETRY));
+            }
+        }
 
         if (null == config || config.isNull()) {
             return InfiniteRetrySyncFailureHandler.INSTANCE;
@@ -109,6 +190,55 @@ public class SyncFailureHandlerFactoryImpl implements SyncFailureHandlerFactory
         }
     }
 
+    /**
+     * Create the SyncFailureHandler which retries the failures of a system in the background,
+     * and schedule its background retries.
+     *
+     * @param systemIdentifier the name of the system
+     * @param config the asyncRetry config
+     * @param maxRetries the number of retries, -1 to retry for ever
+     * @param postRetry the config of the handler to execute when the retries are exhausted
+     * @return the SyncFailureHandler
+     */
+    private SyncFailureHandler createAsyncRetryHandler(String systemIdentifier, JsonValue config,
+            int maxRetries, JsonValue postRetry) {
+        final AsyncRetrySyncFailureHandler handler = new AsyncRetrySyncFailureHandler(systemIdentifier,
+                routerAccessor, maxRetries, getPostRetryHandler(postRetry),
+                config.get(CONFIG_INITIAL_DELAY).defaultTo(10).asLong() * 1000,
+                config.get(CONFIG_MAX_DELAY).defaultTo(3600).asLong() * 1000);
+        long pollInterval = Math.max(1, config.get(CONFIG_POLL_INTERVAL).defaultTo(10).asLong());
+        ScheduledFuture<?> worker = retryExecutor.scheduleWithFixedDelay(new Runnable() {
+            public void run() {
+                // The retries run outside of any request, the same way the scheduled jobs do
+                ObjectSetContext.push(JsonResourceContext.newContext("sync-retry",
+                        JsonResourceContext.newRootContext()));
+                try {
+                    handler.retry();
+                } finally {
+                    ObjectSetContext.pop();
+                }
+            }
+        }, pollInterval, pollInterval, TimeUnit.SECONDS);
+        ScheduledFuture<?> previous = retryWorkers.put(systemIdentifier, worker);
+        if (null != previous) {
+            previous.cancel(false);
+        }
+        return handler;
+    }
+
+    /**
+     * Stop the background retries of a system.  The retry queue is kept in the repository and
+     * is retried again once a new handler is created for the system.
+     *
+     * @param systemIdentifier the name of the system
+     */
+    public void release(String systemIdentifier) {
+        ScheduledFuture<?> worker = retryWorkers.remove(systemIdentifier);
+        if (null != worker) {
+            worker.cancel(false);
+        }
+    }
+
     /**
      * Create the SycFailureHandler to execute when the retries are exhausted (or if no retries are configured).
      * The config passed here is the value side of
@@ -124,12 +254,7 @@ public class SyncFailureHandlerFactoryImpl implements SyncFailureHandlerFactory
     private SyncFailureHandler getPostRetryHandler(JsonValue config) {
         if (config.isString()) {
             if (CONFIG_DEAD_LETTER.equals(config.asString())) {
-                return new DeadLetterQueueHandler(
-                        new Accessor<JsonResourceAccessor>() {
-                            public JsonResourceAccessor access() {
-                                return new JsonResourceAccessor(router, ObjectSetContext.get());
-                            }
-                        });
+                return new DeadLetterQueueHandler(routerAccessor);
             } else if (CONFIG_LOGGED_IGNORE.equals(config.asString())) {
                 return new LoggedIgnoreHandler();
             }
@@ -139,12 +264,7 @@ public class SyncFailureHandlerFactoryImpl implements SyncFailureHandlerFactory
                 return new ScriptedSyncFailureHandler(scopeFactory, config.get(CONFIG_SCRIPT),
                         // pass internal handlers so a script can call them if desired
                         new LoggedIgnoreHandler(),
-                        new DeadLetterQueueHandler(
-                                new Accessor<JsonResourceAccessor>() {
-                                    public JsonResourceAccessor access() {
-                                        return new JsonResourceAccessor(router, ObjectSetContext.get());
-                                    }
-                                }));
+                        new DeadLetterQueueHandler(routerAccessor));
             }
         }
 
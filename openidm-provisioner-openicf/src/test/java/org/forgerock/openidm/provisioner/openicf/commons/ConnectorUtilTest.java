@@ -188,6 +188,8 @@ public class ConnectorUtilTest {
 
         OperationHelper helper = operationHelperBuilder.build("__ACCOUNT__", null, null);
         Assert.assertEquals(helper.getObjectClass().getObjectClassValue(), "__ACCOUNT__");
+        // The helper of an object type is built once and shared
+        Assert.assertSame(operationHelperBuilder.build("__ACCOUNT__", null, null), helper);
     }
 
     @Test(expectedExceptions = JsonResourceException.class, expectedExceptionsMessageRegExp = ".*__NONE__.*")
@@ -208,6 +210,24 @@ public class ConnectorUtilTest {
         Assert.assertEquals(floatValue, 636.0f);
     }
 
+    @Test
+    public void testValueConverter() throws Exception {
+        String stringValue = "636";
+        Assert.assertSame(ConnectorUtil.getValueConverter(String.class).convert(stringValue), stringValue);
+        Assert.assertEquals(ConnectorUtil.getValueConverter(int.class).convert(stringValue), (Integer) 636);
+        Assert.assertEquals(ConnectorUtil.getValueConverter(BigInteger.class).convert(20).intValue(), 20);
+        Assert.assertNull(ConnectorUtil.getValueConverter(String.class).convert(null));
+        Assert.assertSame(ConnectorUtil.getValueConverter(Object.class).convert(stringValue), stringValue);
+        Map<String, Object> mapValue = new LinkedHashMap<String, Object>();
+        Assert.assertSame(ConnectorUtil.getValueConverter(Object.class).convert(mapValue), mapValue);
+        Assert.assertSame(ConnectorUtil.getValueConverter(String.class), ConnectorUtil.getValueConverter(String.class));
+        Integer intValue = 636;
+        Assert.assertSame(ConnectorUtil.getValueConverter(int.class).convert(intValue), intValue);
+        Assert.assertEquals(ConnectorUtil.getValueConverter(String.class).convert(intValue), "636");
+        Assert.assertEquals(ConnectorUtil.getValueConverter(Long.class).convert(intValue), (Long) 636L);
+        Assert.assertEquals(ConnectorUtil.getValueConverter(long.class).convert("636"), (Long) 636L);
+    }
+
     public APIConfiguration getRuntimeAPIConfiguration() {
         Assertions.nullCheck(runtimeAPIConfiguration, "runtimeAPIConfiguration");
         //clone in case application tries to modify
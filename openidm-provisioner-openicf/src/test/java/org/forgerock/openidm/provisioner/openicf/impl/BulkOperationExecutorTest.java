@@ -0,0 +1,114 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright © 2013 ForgeRock AS. All rights reserved.
+ *
+ * The contents of this file are subject to the terms
+ * of the Common Development and Distribution License
+ * (the License). You may not use this file except in
+ * compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://forgerock.org/license/CDDLv1.0.html
+ * See the License for the specific language governing
+ * permission and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL
+ * Header Notice in each file and include the License file
+ * at http://forgerock.org/license/CDDLv1.0.html
+ * If applicable, add the following below the CDDL Header,
+ * with the fields enclosed by brackets [] replaced by
+ * your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ */
+
+package org.forgerock.openidm.provisioner.openicf.impl;
+
+import org.forgerock.json.fluent.JsonValue;
+import org.forgerock.json.resource.JsonResourceException;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class BulkOperationExecutorTest {
+
+    private List<JsonValue> operations(int count) {
+        List<JsonValue> operations = new ArrayList<JsonValue>(count);
+        for (int i = 0; i < count; i++) {
+            Map<String, Object> operation = new LinkedHashMap<String, Object>();
+            operation.put("method", "delete");
+            operation.put("id", "system/TEST/account/" + i);
+            operations.add(new JsonValue(operation));
+        }
+        return operations;
+    }
+
+    @Test
+    public void testResultsInOrderWithinLimit() throws Exception {
+        final AtomicInteger inFlight = new AtomicInteger();
+        final AtomicInteger maxInFlight = new AtomicInteger();
+        BulkOperationExecutor executor = new BulkOperationExecutor(3, 1, "test") {
+            protected JsonValue process(JsonValue operation) throws JsonResourceException {
+                int current = inFlight.incrementAndGet();
+                synchronized (maxInFlight) {
+                    maxInFlight.set(Math.max(maxInFlight.get(), current));
+                }
+                try {
+                    Thread.sleep(5);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                inFlight.decrementAndGet();
+                return operation.get("id");
+            }
+        };
+        List<Object> results = executor.execute(operations(30));
+        executor.shutdown();
+
+        Assert.assertEquals(results.size(), 30);
+        for (int i = 0; i < 30; i++) {
+            Map<?, ?> result = (Map<?, ?>) results.get(i);
+            Assert.assertEquals(result.get("ok"), true);
+            Assert.assertEquals(result.get("result"), "system/TEST/account/" + i);
+        }
+        Assert.assertTrue(maxInFlight.get() <= 3, "In flight: " + maxInFlight.get());
+    }
+
+    @Test
+    public void testFailureIsReportedPerItem() throws Exception {
+        BulkOperationExecutor executor = new BulkOperationExecutor(2, 2, "test") {
+            protected JsonValue process(JsonValue operation) throws JsonResourceException {
+                if (operation.get("id").asString().endsWith("/1")) {
+                    throw new JsonResourceException(JsonResourceException.NOT_FOUND, "Not found");
+                }
+                return null;
+            }
+        };
+        List<Object> results = executor.execute(operations(3));
+        executor.shutdown();
+
+        Assert.assertEquals(((Map<?, ?>) results.get(0)).get("ok"), true);
+        Map<?, ?> failed = (Map<?, ?>) results.get(1);
+        Assert.assertEquals(failed.get("ok"), false);
+        Assert.assertEquals(failed.get("code"), JsonResourceException.NOT_FOUND);
+        Assert.assertEquals(failed.get("id"), "system/TEST/account/1");
+        Assert.assertEquals(((Map<?, ?>) results.get(2)).get("ok"), true);
+    }
+
+    @Test
+    public void testShutdownExecutorReportsUnavailable() throws Exception {
+        BulkOperationExecutor executor = new BulkOperationExecutor(2, 0, "test") {
+            protected JsonValue process(JsonValue operation) throws JsonResourceException {
+                return null;
+            }
+        };
+        executor.shutdown();
+        List<Object> results = executor.execute(operations(2));
+        Assert.assertEquals(((Map<?, ?>) results.get(0)).get("code"), JsonResourceException.UNAVAILABLE);
+    }
+}
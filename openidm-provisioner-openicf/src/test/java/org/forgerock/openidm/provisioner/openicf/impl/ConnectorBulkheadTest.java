@@ -0,0 +1,146 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright © 2013 ForgeRock AS. All rights reserved.
+ *
+ * The contents of this file are subject to the terms
+ * of the Common Development and Distribution License
+ * (the License). You may not use this file except in
+ * compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://forgerock.org/license/CDDLv1.0.html
+ * See the License for the specific language governing
+ * permission and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL
+ * Header Notice in each file and include the License file
+ * at http://forgerock.org/license/CDDLv1.0.html
+ * If applicable, add the following below the CDDL Header,
+ * with the fields enclosed by brackets [] replaced by
+ * your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ */
+
+package org.forgerock.openidm.provisioner.openicf.impl;
+
+import org.forgerock.json.resource.JsonResourceException;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class ConnectorBulkheadTest {
+
+    @Test
+    public void testQueueLimit() throws Exception {
+        ConnectorBulkhead bulkhead = new ConnectorBulkhead("test", 1, 0, 10, 50, 4, 5, 1000);
+        boolean trial = bulkhead.acquire();
+        try {
+            bulkhead.acquire();
+            Assert.fail("No slot and no queue left");
+        } catch (JsonResourceException e) {
+            Assert.assertEquals(e.getCode(), JsonResourceException.UNAVAILABLE);
+        }
+        bulkhead.release(trial, 1, true);
+        bulkhead.release(bulkhead.acquire(), 1, true);
+    }
+
+    @Test
+    public void testQueuedOperationTimesOut() throws Exception {
+        ConnectorBulkhead bulkhead = new ConnectorBulkhead("test", 1, 1, 10, 50, 4, 5, 1000);
+        bulkhead.acquire();
+        long start = System.currentTimeMillis();
+        try {
+            bulkhead.acquire();
+            Assert.fail("The slot was never released");
+        } catch (JsonResourceException e) {
+            Assert.assertEquals(e.getCode(), JsonResourceException.UNAVAILABLE);
+        }
+        Assert.assertTrue(System.currentTimeMillis() - start >= 50);
+    }
+
+    @Test
+    public void testTimeoutAdaptsToLatency() throws Exception {
+        ConnectorBulkhead bulkhead = new ConnectorBulkhead("test", 1, 1, 10, 1000, 4, 5, 1000);
+        Assert.assertEquals(bulkhead.getTimeout(), 1000);
+        for (int i = 0; i < 50; i++) {
+            bulkhead.release(bulkhead.acquire(), 20, true);
+        }
+        Assert.assertEquals(bulkhead.getTimeout(), 80);
+        for (int i = 0; i < 50; i++) {
+            bulkhead.release(bulkhead.acquire(), 1, true);
+        }
+        Assert.assertEquals(bulkhead.getTimeout(), 10);
+    }
+
+    @Test
+    public void testCircuitBreaker() throws Exception {
+        ConnectorBulkhead bulkhead = new ConnectorBulkhead("test", 2, 0, 10, 1000, 4, 3, 50);
+        for (int i = 0; i < 3; i++) {
+            Assert.assertEquals(bulkhead.getState(), ConnectorBulkhead.State.CLOSED);
+            bulkhead.release(bulkhead.acquire(), 1, false);
+        }
+        Assert.assertEquals(bulkhead.getState(), ConnectorBulkhead.State.OPEN);
+        try {
+            bulkhead.acquire();
+            Assert.fail("The circuit is open");
+        } catch (JsonResourceException e) {
+            Assert.assertEquals(e.getCode(), JsonResourceException.UNAVAILABLE);
+        }
+        Thread.sleep(60);
+        Assert.assertEquals(bulkhead.getState(), ConnectorBulkhead.State.HALF_OPEN);
+
+        // A failed trial opens the circuit again
+        Assert.assertTrue(bulkhead.acquire());
+        bulkhead.release(true, 1, false);
+        Assert.assertEquals(bulkhead.getState(), ConnectorBulkhead.State.OPEN);
+        Thread.sleep(60);
+
+        // Only one trial at a time, a successful one closes the circuit
+        Assert.assertTrue(bulkhead.acquire());
+        try {
+            bulkhead.acquire();
+            Assert.fail("The trial is in flight");
+        } catch (JsonResourceException e) {
+            Assert.assertEquals(e.getCode(), JsonResourceException.UNAVAILABLE);
+        }
+        bulkhead.release(true, 1, true);
+        Assert.assertEquals(bulkhead.getState(), ConnectorBulkhead.State.CLOSED);
+        Assert.assertFalse(bulkhead.acquire());
+    }
+
+    @Test
+    public void testQueriesAreNotAccounted() throws Exception {
+        ConnectorBulkhead bulkhead = new ConnectorBulkhead("test", 1, 0, 10, 1000, 4, 3, 50);
+        bulkhead.release(bulkhead.acquire(), 20, true);
+        Assert.assertEquals(bulkhead.getTimeout(), 80);
+
+        // A query takes a slot, but does not change the timeout
+        bulkhead.acquireQuery();
+        try {
+            bulkhead.acquire();
+            Assert.fail("The query holds the only slot");
+        } catch (JsonResourceException e) {
+            Assert.assertEquals(e.getCode(), JsonResourceException.UNAVAILABLE);
+        }
+        bulkhead.releaseQuery();
+        Assert.assertEquals(bulkhead.getTimeout(), 80);
+
+        // Queries are rejected until a trial closes the circuit again
+        for (int i = 0; i < 3; i++) {
+            bulkhead.release(bulkhead.acquire(), 1, false);
+        }
+        Thread.sleep(60);
+        Assert.assertEquals(bulkhead.getState(), ConnectorBulkhead.State.HALF_OPEN);
+        try {
+            bulkhead.acquireQuery();
+            Assert.fail("A query is never the trial");
+        } catch (JsonResourceException e) {
+            Assert.assertEquals(e.getCode(), JsonResourceException.UNAVAILABLE);
+        }
+        Assert.assertTrue(bulkhead.acquire());
+        bulkhead.release(true, 1, true);
+        bulkhead.acquireQuery();
+        bulkhead.releaseQuery();
+        Assert.assertEquals(bulkhead.getState(), ConnectorBulkhead.State.CLOSED);
+    }
+}
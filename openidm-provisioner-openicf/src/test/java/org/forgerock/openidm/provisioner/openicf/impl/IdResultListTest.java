@@ -0,0 +1,55 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright © 2013 ForgeRock AS. All rights reserved.
+ *
+ * The contents of this file are subject to the terms
+ * of the Common Development and Distribution License
+ * (the License). You may not use this file except in
+ * compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://forgerock.org/license/CDDLv1.0.html
+ * See the License for the specific language governing
+ * permission and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL
+ * Header Notice in each file and include the License file
+ * at http://forgerock.org/license/CDDLv1.0.html
+ * If applicable, add the following below the CDDL Header,
+ * with the fields enclosed by brackets [] replaced by
+ * your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ */
+
+package org.forgerock.openidm.provisioner.openicf.impl;
+
+import org.forgerock.json.fluent.JsonValue;
+import org.forgerock.openidm.provisioner.Id;
+import org.identityconnectors.framework.common.objects.ConnectorObjectBuilder;
+import org.identityconnectors.framework.common.objects.ObjectClass;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class IdResultListTest {
+
+    @Test
+    public void testIdsReadAsQueryResult() throws Exception {
+        IdResultList ids = new IdResultList();
+        String[] uids = { "cn=Jane Doe,ou=people", "jdoe" };
+        for (String uid : uids) {
+            ConnectorObjectBuilder builder = new ConnectorObjectBuilder();
+            builder.setObjectClass(ObjectClass.ACCOUNT);
+            builder.setUid(uid);
+            builder.setName(uid);
+            Assert.assertTrue(new IdResultsHandler(ids).handle(builder.build()));
+        }
+
+        Assert.assertEquals(ids.size(), 2);
+        int i = 0;
+        for (JsonValue obj : new JsonValue(ids)) {
+            Assert.assertEquals(obj.get("_id").asString(), Id.escapeUid(uids[i++]));
+            Assert.assertEquals(obj.size(), 1);
+        }
+    }
+}
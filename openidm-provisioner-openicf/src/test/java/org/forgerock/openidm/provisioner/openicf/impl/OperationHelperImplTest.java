@@ -29,8 +29,14 @@ package org.forgerock.openidm.provisioner.openicf.impl;
 import org.codehaus.jackson.map.ObjectMapper;
 import org.forgerock.json.fluent.JsonValue;
 import org.forgerock.openidm.provisioner.openicf.OperationHelper;
+import org.forgerock.openidm.provisioner.openicf.query.QueryFilter;
 import org.identityconnectors.framework.api.APIConfiguration;
+import org.identityconnectors.framework.common.objects.AttributeBuilder;
+import org.identityconnectors.framework.common.objects.ConnectorObject;
+import org.identityconnectors.framework.common.objects.ConnectorObjectBuilder;
+import org.identityconnectors.framework.common.objects.ObjectClass;
 import org.identityconnectors.framework.common.objects.filter.Filter;
+import org.identityconnectors.framework.common.objects.filter.LessThanOrEqualFilter;
 import org.identityconnectors.framework.impl.api.APIConfigurationImpl;
 import org.testng.Assert;
 import org.testng.annotations.BeforeTest;
@@ -54,6 +60,12 @@ public class OperationHelperImplTest {
 
     private String superChained = "{ \"AND\": [ { \"Equals\": { \"field\" : \"address\", \"values\": [ \"Oslo\" ] } }, { \"EndsWith\": { \"field\" : \"test\", \"values\" : [ \"tull\" ] } }, { \"OR\": [ { \"EndsWith\": { \"field\" : \"lastname\", \"values\" : [ \"en\" ] } }, { \"EndsWith\": { \"field\" : \"lastname\", \"values\" : [ \"on\" ] } } ] } ] }";
 
+    private String partialPushdown = "{ \"AND\": [ { \"Between\": { \"field\" : \"age\", \"values\": [ 20, 30 ] } }, { \"Present\": { \"field\" : \"email\" } }, { \"NOT\": { \"Equals\": { \"field\" : \"lastname\", \"values\" : [ \"Smith\" ] } } } ] }";
+
+    private String noPushdown = "{ \"OR\": [ { \"Present\": { \"field\" : \"email\" } }, { \"Equals\": { \"field\" : \"lastname\", \"values\" : [ \"Smith\" ] } } ] }";
+
+    private String openRange = "{ \"Between\": { \"field\" : \"age\", \"values\": [ null, 30 ] } }";
+
     @BeforeTest
     public void beforeTest() throws Exception {
         String configurationFile = "/config/" + OpenICFProvisionerServiceXMLConnectorTest.class.getCanonicalName() + ".json";
@@ -89,4 +101,41 @@ public class OperationHelperImplTest {
         Assert.assertNotNull(filter);
 
     }
+
+    @Test
+    public void testBuildQueryFilter() throws Exception {
+        OperationHelper helper = builder.build("account", null, null);
+        ObjectMapper mapper = new ObjectMapper();
+
+        QueryFilter queryFilter = helper.buildQueryFilter(mapper.readValue(partialPushdown, Map.class), null);
+        Assert.assertFalse(queryFilter.isFullyPushedDown());
+        Assert.assertNotNull(queryFilter.getConnectorFilter());
+        Assert.assertTrue(queryFilter.getConnectorFilter().accept(account("Doe", 25, "jdoe@example.com")));
+        Assert.assertFalse(queryFilter.getConnectorFilter().accept(account("Doe", 35, "jdoe@example.com")));
+        Assert.assertFalse(queryFilter.getConnectorFilter().accept(account("Smith", 25, "jdoe@example.com")));
+        Assert.assertTrue(queryFilter.getLocalFilter().accept(account("Doe", 25, "jdoe@example.com")));
+        Assert.assertFalse(queryFilter.getLocalFilter().accept(account("Doe", 25, null)));
+
+        queryFilter = helper.buildQueryFilter(mapper.readValue(noPushdown, Map.class), null);
+        Assert.assertNull(queryFilter.getConnectorFilter());
+        Assert.assertTrue(queryFilter.getLocalFilter().accept(account("Smith", 25, null)));
+        Assert.assertFalse(queryFilter.getLocalFilter().accept(account("Doe", 25, null)));
+
+        queryFilter = helper.buildQueryFilter(mapper.readValue(openRange, Map.class), null);
+        Assert.assertTrue(queryFilter.isFullyPushedDown());
+        Assert.assertTrue(queryFilter.getConnectorFilter() instanceof LessThanOrEqualFilter);
+    }
+
+    private ConnectorObject account(String lastname, int age, String email) {
+        ConnectorObjectBuilder builder = new ConnectorObjectBuilder();
+        builder.setObjectClass(ObjectClass.ACCOUNT);
+        builder.setUid(lastname);
+        builder.setName(lastname);
+        builder.addAttribute(AttributeBuilder.build("lastname", lastname));
+        builder.addAttribute(AttributeBuilder.build("age", age));
+        if (null != email) {
+            builder.addAttribute(AttributeBuilder.build("email", email));
+        }
+        return builder.build();
+    }
 }
@@ -0,0 +1,184 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright © 2013 ForgeRock AS. All rights reserved.
+ *
+ * The contents of this file are subject to the terms
+ * of the Common Development and Distribution License
+ * (the License). You may not use this file except in
+ * compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://forgerock.org/license/CDDLv1.0.html
+ * See the License for the specific language governing
+ * permission and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL
+ * Header Notice in each file and include the License file
+ * at http://forgerock.org/license/CDDLv1.0.html
+ * If applicable, add the following below the CDDL Header,
+ * with the fields enclosed by brackets [] replaced by
+ * your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ */
+
+package org.forgerock.openidm.provisioner.openicf.impl;
+
+import org.forgerock.json.resource.JsonResourceException;
+import org.forgerock.openidm.repo.QueryConstants;
+import org.forgerock.openidm.repo.util.PagedResults;
+import org.identityconnectors.framework.common.objects.ConnectorObject;
+import org.identityconnectors.framework.common.objects.ConnectorObjectBuilder;
+import org.identityconnectors.framework.common.objects.ObjectClass;
+import org.identityconnectors.framework.common.objects.ResultsHandler;
+import org.identityconnectors.framework.common.objects.filter.Filter;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class PagedResultsHandlerTest {
+
+    private static class CollectingHandler implements ResultsHandler {
+        final List<String> uids = new ArrayList<String>();
+
+        public boolean handle(ConnectorObject obj) {
+            uids.add(obj.getUid().getUidValue());
+            return true;
+        }
+    }
+
+    /**
+     * Feeds the objects 0..count-1 to the handler, the way a connector search would.
+     *
+     * @return the number of objects the handler accepted before stopping the search
+     */
+    private int search(ResultsHandler handler, int count) {
+        List<String> uids = new ArrayList<String>();
+        for (int i = 0; i < count; i++) {
+            uids.add(Integer.toString(i));
+        }
+        return search(handler, uids);
+    }
+
+    private int search(ResultsHandler handler, List<String> uids) {
+        for (int i = 0; i < uids.size(); i++) {
+            ConnectorObjectBuilder builder = new ConnectorObjectBuilder();
+            builder.setObjectClass(ObjectClass.ACCOUNT);
+            builder.setUid(uids.get(i));
+            builder.setName(uids.get(i));
+            if (!handler.handle(builder.build())) {
+                return i;
+            }
+        }
+        return uids.size();
+    }
+
+    private String nextCookie(ResultsHandler paged) throws Exception {
+        Map<String, Object> result = new HashMap<String, Object>();
+        ((PagedResultsHandler) paged).setPagedResultsCookie(result);
+        return (String) result.get(QueryConstants.PAGED_RESULTS_COOKIE);
+    }
+
+    @Test
+    public void testUnpagedQueryIsNotWrapped() throws Exception {
+        CollectingHandler handler = new CollectingHandler();
+        Assert.assertSame(PagedResultsHandler.forParams(handler, null, new HashMap<String, Object>()), handler);
+        Assert.assertSame(PagedResultsHandler.forParams(handler, null, null), handler);
+    }
+
+    @Test
+    public void testPagesFollowCookie() throws Exception {
+        Map<String, Object> params = new HashMap<String, Object>();
+        params.put(QueryConstants.PAGE_SIZE, 2);
+
+        CollectingHandler first = new CollectingHandler();
+        ResultsHandler paged = PagedResultsHandler.forParams(first, null, params);
+        Assert.assertEquals(search(paged, 5), 2);
+        Assert.assertEquals(first.uids.toString(), "[0, 1]");
+        Map<String, Object> result = new HashMap<String, Object>();
+        ((PagedResultsHandler) paged).setPagedResultsCookie(result);
+        Assert.assertNotNull(result.get(QueryConstants.PAGED_RESULTS_COOKIE));
+
+        params.put(QueryConstants.PAGED_RESULTS_COOKIE, result.get(QueryConstants.PAGED_RESULTS_COOKIE));
+        CollectingHandler second = new CollectingHandler();
+        paged = PagedResultsHandler.forParams(second, null, params);
+        search(paged, 5);
+        Assert.assertEquals(second.uids.toString(), "[2, 3]");
+        result.clear();
+        ((PagedResultsHandler) paged).setPagedResultsCookie(result);
+
+        params.put(QueryConstants.PAGED_RESULTS_COOKIE, result.get(QueryConstants.PAGED_RESULTS_COOKIE));
+        CollectingHandler last = new CollectingHandler();
+        paged = PagedResultsHandler.forParams(last, null, params);
+        search(paged, 5);
+        Assert.assertEquals(last.uids.toString(), "[4]");
+        // The pages before are read again
+        Assert.assertEquals(((PagedResultsHandler) paged).getSkipped(), 4);
+        result.clear();
+        ((PagedResultsHandler) paged).setPagedResultsCookie(result);
+        Assert.assertFalse(result.containsKey(QueryConstants.PAGED_RESULTS_COOKIE));
+    }
+
+    @Test
+    public void testPagesDoNotShiftOnDelete() throws Exception {
+        List<String> uids = new ArrayList<String>(Arrays.asList("a", "b", "c", "d", "e"));
+        Map<String, Object> params = new HashMap<String, Object>();
+        params.put(QueryConstants.PAGE_SIZE, 2);
+
+        CollectingHandler first = new CollectingHandler();
+        ResultsHandler paged = PagedResultsHandler.forParams(first, null, params);
+        search(paged, uids);
+        Assert.assertEquals(first.uids.toString(), "[a, b]");
+        params.put(QueryConstants.PAGED_RESULTS_COOKIE, nextCookie(paged));
+
+        // An object of the first page is processed and deleted before the next page is read
+        uids.remove("a");
+        CollectingHandler second = new CollectingHandler();
+        paged = PagedResultsHandler.forParams(second, null, params);
+        search(paged, uids);
+        Assert.assertEquals(second.uids.toString(), "[c, d]");
+    }
+
+    @Test(expectedExceptions = JsonResourceException.class)
+    public void testMissingLastObject() throws Exception {
+        Map<String, Object> params = new HashMap<String, Object>();
+        params.put(QueryConstants.PAGE_SIZE, 2);
+        params.put(QueryConstants.PAGED_RESULTS_COOKIE, PagedResults.encodeCookie("gone"));
+        ResultsHandler paged = PagedResultsHandler.forParams(new CollectingHandler(), null, params);
+        search(paged, 5);
+        nextCookie(paged);
+    }
+
+    @Test
+    public void testFilteredBeforePaging() throws Exception {
+        Map<String, Object> params = new HashMap<String, Object>();
+        params.put(QueryConstants.PAGE_SIZE, 2);
+        Filter odd = new Filter() {
+            public boolean accept(ConnectorObject obj) {
+                return Integer.parseInt(obj.getUid().getUidValue()) % 2 == 1;
+            }
+        };
+        CollectingHandler first = new CollectingHandler();
+        ResultsHandler paged = PagedResultsHandler.forParams(first, odd, params);
+        search(paged, 8);
+        Assert.assertEquals(first.uids.toString(), "[1, 3]");
+        Assert.assertNotNull(nextCookie(paged));
+
+        // Not paged, only filtered
+        CollectingHandler all = new CollectingHandler();
+        search(PagedResultsHandler.forParams(all, odd, null), 8);
+        Assert.assertEquals(all.uids.toString(), "[1, 3, 5, 7]");
+    }
+
+    @Test(expectedExceptions = JsonResourceException.class)
+    public void testInvalidCookie() throws Exception {
+        Map<String, Object> params = new HashMap<String, Object>();
+        params.put(QueryConstants.PAGED_RESULTS_COOKIE, "zz");
+        PagedResultsHandler.forParams(new CollectingHandler(), null, params);
+    }
+}
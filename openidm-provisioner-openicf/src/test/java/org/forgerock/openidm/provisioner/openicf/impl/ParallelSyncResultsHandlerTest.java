@@ -0,0 +1,196 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright © 2013 ForgeRock AS. All rights reserved.
+ *
+ * The contents of this file are subject to the terms
+ * of the Common Development and Distribution License
+ * (the License). You may not use this file except in
+ * compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://forgerock.org/license/CDDLv1.0.html
+ * See the License for the specific language governing
+ * permission and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL
+ * Header Notice in each file and include the License file
+ * at http://forgerock.org/license/CDDLv1.0.html
+ * If applicable, add the following below the CDDL Header,
+ * with the fields enclosed by brackets [] replaced by
+ * your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ */
+
+package org.forgerock.openidm.provisioner.openicf.impl;
+
+import org.identityconnectors.framework.common.objects.ConnectorObjectBuilder;
+import org.identityconnectors.framework.common.objects.SyncDelta;
+import org.identityconnectors.framework.common.objects.SyncDeltaBuilder;
+import org.identityconnectors.framework.common.objects.SyncDeltaType;
+import org.identityconnectors.framework.common.objects.SyncToken;
+import org.identityconnectors.framework.common.objects.Uid;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+public class ParallelSyncResultsHandlerTest {
+
+    private ExecutorService executor;
+
+    @BeforeMethod
+    public void setUp() {
+        executor = Executors.newCachedThreadPool();
+    }
+
+    @AfterMethod
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    private SyncDelta delta(int token, String uid) {
+        SyncDeltaBuilder builder = new SyncDeltaBuilder();
+        builder.setDeltaType(SyncDeltaType.DELETE);
+        builder.setToken(new SyncToken(token));
+        builder.setUid(new Uid(uid));
+        return builder.build();
+    }
+
+    private SyncDelta rename(int token, String previousUid, String uid) {
+        SyncDeltaBuilder builder = new SyncDeltaBuilder();
+        builder.setDeltaType(SyncDeltaType.CREATE_OR_UPDATE);
+        builder.setToken(new SyncToken(token));
+        builder.setPreviousUid(new Uid(previousUid));
+        builder.setUid(new Uid(uid));
+        builder.setObject(new ConnectorObjectBuilder().setUid(uid).setName(uid).build());
+        return builder.build();
+    }
+
+    @Test
+    public void testDeltasOfAnObjectStayInOrder() throws Exception {
+        final Map<String, List<Integer>> processed =
+                Collections.synchronizedMap(new HashMap<String, List<Integer>>());
+        ParallelSyncResultsHandler handler = new ParallelSyncResultsHandler(new SyncToken(0), executor, 4, 2) {
+            protected void process(SyncDelta delta) {
+                List<Integer> tokens;
+                synchronized (processed) {
+                    tokens = processed.get(delta.getUid().getUidValue());
+                    if (tokens == null) {
+                        tokens = new ArrayList<Integer>();
+                        processed.put(delta.getUid().getUidValue(), tokens);
+                    }
+                }
+                tokens.add((Integer) delta.getToken().getValue());
+            }
+        };
+        for (int i = 1; i <= 100; i++) {
+            Assert.assertTrue(handler.handle(delta(i, "uid" + (i % 7))));
+        }
+        Assert.assertEquals(handler.close().getValue(), 100);
+        handler.checkFailure();
+
+        Assert.assertEquals(processed.size(), 7);
+        for (List<Integer> tokens : processed.values()) {
+            List<Integer> sorted = new ArrayList<Integer>(tokens);
+            Collections.sort(sorted);
+            Assert.assertEquals(tokens, sorted);
+        }
+    }
+
+    @Test
+    public void testTokenStopsBeforeFailedDelta() throws Exception {
+        ParallelSyncResultsHandler handler = new ParallelSyncResultsHandler(new SyncToken(0), executor, 4, 10) {
+            protected void process(SyncDelta delta) {
+                if (Integer.valueOf(5).equals(delta.getToken().getValue())) {
+                    throw new IllegalStateException("failed");
+                }
+            }
+        };
+        for (int i = 1; i <= 20; i++) {
+            if (!handler.handle(delta(i, "uid" + i))) {
+                break;
+            }
+        }
+        Assert.assertEquals(handler.close().getValue(), 4);
+        try {
+            handler.checkFailure();
+            Assert.fail("The failure of the delta was not reported");
+        } catch (IllegalStateException e) {
+            Assert.assertEquals(e.getMessage(), "failed");
+        }
+    }
+
+    @Test
+    public void testRenamedObjectStaysInOrder() throws Exception {
+        final List<Integer> processed = Collections.synchronizedList(new ArrayList<Integer>());
+        ParallelSyncResultsHandler handler = new ParallelSyncResultsHandler(new SyncToken(0), executor, 4, 10) {
+            protected void process(SyncDelta delta) {
+                if ("old".equals(delta.getUid().getUidValue())) {
+                    try {
+                        Thread.sleep(20);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                processed.add((Integer) delta.getToken().getValue());
+            }
+        };
+        // "old" and "new" hash to different partitions
+        int token = 0;
+        for (int i = 0; i < 3; i++) {
+            Assert.assertTrue(handler.handle(delta(++token, "old")));
+        }
+        Assert.assertTrue(handler.handle(rename(++token, "old", "new")));
+        for (int i = 0; i < 3; i++) {
+            Assert.assertTrue(handler.handle(delta(++token, "new")));
+        }
+        Assert.assertEquals(handler.close().getValue(), token);
+        handler.checkFailure();
+
+        List<Integer> sorted = new ArrayList<Integer>(processed);
+        Collections.sort(sorted);
+        Assert.assertEquals(processed, sorted);
+        Assert.assertEquals(processed.size(), token);
+    }
+
+    @Test
+    public void testFailedDeltaIsTheEarliest() throws Exception {
+        ParallelSyncResultsHandler handler = new ParallelSyncResultsHandler(new SyncToken(0), executor, 4, 10) {
+            protected void process(SyncDelta delta) {
+                Integer token = (Integer) delta.getToken().getValue();
+                if (token == 3) {
+                    try {
+                        Thread.sleep(50);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    throw new IllegalStateException("failed 3");
+                } else if (token == 4) {
+                    throw new IllegalStateException("failed 4");
+                }
+            }
+        };
+        for (int i = 1; i <= 20; i++) {
+            if (!handler.handle(delta(i, "uid" + i))) {
+                break;
+            }
+        }
+        Assert.assertEquals(handler.close().getValue(), 2);
+        Assert.assertEquals(handler.getFailedDelta().getToken().getValue(), 3);
+        try {
+            handler.checkFailure();
+            Assert.fail("The failure of the delta was not reported");
+        } catch (IllegalStateException e) {
+            Assert.assertEquals(e.getMessage(), "failed 3");
+        }
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright © 2013 ForgeRock AS. All rights reserved.
+ *
+ * The contents of this file are subject to the terms
+ * of the Common Development and Distribution License
+ * (the License). You may not use this file except in
+ * compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://forgerock.org/license/CDDLv1.0.html
+ * See the License for the specific language governing
+ * permission and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL
+ * Header Notice in each file and include the License file
+ * at http://forgerock.org/license/CDDLv1.0.html
+ * If applicable, add the following below the CDDL Header,
+ * with the fields enclosed by brackets [] replaced by
+ * your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ */
+
+package org.forgerock.openidm.provisioner.openicf.impl;
+
+import org.forgerock.json.fluent.JsonValue;
+import org.forgerock.json.resource.JsonResourceException;
+import org.forgerock.openidm.provisioner.SyncStageListener;
+import org.forgerock.openidm.provisioner.openicf.commons.ConnectorUtil;
+import org.identityconnectors.framework.common.objects.SyncToken;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+public class SyncCheckpointTest {
+
+    @Test
+    public void testCheckpointEveryNDeltasAndBoundRun() throws Exception {
+        final List<Object> checkpoints = new ArrayList<Object>();
+        SyncStageListener listener = new SyncStageListener() {
+            public void onCheckpoint(JsonValue stage) throws JsonResourceException {
+                checkpoints.add(ConnectorUtil.convertToSyncToken(stage.get("connectorData")).getValue());
+            }
+        };
+        JsonValue stage = new JsonValue(new LinkedHashMap<String, Object>());
+        SyncCheckpoint checkpoint = new SyncCheckpoint(stage, listener, 3, 0, 8);
+
+        int handled = 0;
+        for (int i = 1; i <= 20; i++) {
+            handled++;
+            if (!checkpoint.delta(new SyncToken(i))) {
+                break;
+            }
+        }
+        Assert.assertEquals(handled, 8);
+        Assert.assertEquals(checkpoints.size(), 2);
+        Assert.assertEquals(checkpoints.get(0), 3);
+        Assert.assertEquals(checkpoints.get(1), 6);
+        // The stage the run started with is left alone
+        Assert.assertTrue(stage.get("connectorData").isNull());
+    }
+}
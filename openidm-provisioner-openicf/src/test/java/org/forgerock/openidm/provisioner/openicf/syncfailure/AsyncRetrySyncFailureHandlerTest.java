@@ -0,0 +1,209 @@
+/*
+ * Copyright 2013 ForgeRock, AS.
+ *
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ */
+package org.forgerock.openidm.provisioner.openicf.syncfailure;
+
+import org.forgerock.json.fluent.JsonValue;
+import org.forgerock.json.resource.JsonResourceAccessor;
+import org.forgerock.json.resource.JsonResourceException;
+import org.forgerock.openidm.util.Accessor;
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.mockito.ArgumentCaptor;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyMap;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class AsyncRetrySyncFailureHandlerTest {
+
+    private static final String QUEUE = AsyncRetrySyncFailureHandler.RETRY_QUEUE + "test";
+
+    private JsonResourceAccessor repo;
+    private SyncFailureHandler postRetryHandler;
+    private AsyncRetrySyncFailureHandler handler;
+
+    @BeforeMethod
+    public void setUp() throws Exception {
+        repo = mock(JsonResourceAccessor.class);
+        postRetryHandler = mock(SyncFailureHandler.class);
+        handler = new AsyncRetrySyncFailureHandler("test", new Accessor<JsonResourceAccessor>() {
+            public JsonResourceAccessor access() {
+                return repo;
+            }
+        }, 2, postRetryHandler, 1000, 5000);
+    }
+
+    private Map<String, Object> syncFailure() {
+        Map<String, Object> syncFailure = new HashMap<String, Object>();
+        syncFailure.put("token", 1);
+        syncFailure.put("systemIdentifier", "test");
+        syncFailure.put("objectType", "account");
+        syncFailure.put("uid", "1");
+        syncFailure.put("id", "system/test/account/1");
+        syncFailure.put("deltaType", "CREATE_OR_UPDATE");
+        return syncFailure;
+    }
+
+    private String entryId() {
+        return handler.getEntryId(syncFailure());
+    }
+
+    private void queue(int attempts, String deltaType) throws Exception {
+        String localId = entryId().substring(QUEUE.length() + 1);
+        List<Object> ids = new ArrayList<Object>();
+        Map<String, Object> id = new HashMap<String, Object>();
+        id.put("_id", localId);
+        ids.add(id);
+        Map<String, Object> result = new HashMap<String, Object>();
+        result.put("result", ids);
+        when(repo.query(eq(QUEUE), any(JsonValue.class))).thenReturn(new JsonValue(result));
+
+        Map<String, Object> entry = syncFailure();
+        entry.put("deltaType", deltaType);
+        entry.put("_id", localId);
+        entry.put("_rev", "1");
+        entry.put("attempts", attempts);
+        entry.put("nextAttempt", 0L);
+        when(repo.read(entryId())).thenReturn(new JsonValue(entry));
+    }
+
+    private void queue(int attempts) throws Exception {
+        queue(attempts, "CREATE_OR_UPDATE");
+    }
+
+    private String replayedAction() throws Exception {
+        ArgumentCaptor<JsonValue> params = ArgumentCaptor.forClass(JsonValue.class);
+        verify(repo).action(eq("sync"), params.capture(), any(JsonValue.class));
+        return params.getValue().get("_action").asString();
+    }
+
+    @Test
+    public void testDelayDoubles() {
+        Assert.assertEquals(handler.getDelay(0), 1000);
+        Assert.assertEquals(handler.getDelay(1), 2000);
+        Assert.assertEquals(handler.getDelay(2), 4000);
+        Assert.assertEquals(handler.getDelay(3), 5000);
+        Assert.assertEquals(handler.getDelay(100), 5000);
+    }
+
+    @Test
+    public void testTimeKeysSortAsTimes() {
+        Assert.assertEquals(AsyncRetrySyncFailureHandler.getTimeKey(1000).length(),
+                AsyncRetrySyncFailureHandler.getTimeKey(System.currentTimeMillis()).length());
+        Assert.assertTrue(AsyncRetrySyncFailureHandler.getTimeKey(999).compareTo(
+                AsyncRetrySyncFailureHandler.getTimeKey(1000)) < 0);
+    }
+
+    @Test
+    public void testFailureIsQueued() throws Exception {
+        when(repo.read(anyString())).thenThrow(new JsonResourceException(JsonResourceException.NOT_FOUND));
+        handler.invoke(syncFailure(), new Exception("failed"));
+        ArgumentCaptor<JsonValue> entry = ArgumentCaptor.forClass(JsonValue.class);
+        verify(repo).create(eq(handler.getEntryId(syncFailure())), entry.capture());
+        Assert.assertEquals(entry.getValue().get("nextAttemptKey").asString(),
+                AsyncRetrySyncFailureHandler.getTimeKey(entry.getValue().get("nextAttempt").asLong()));
+        Assert.assertTrue(handler.getEntryId(syncFailure()).startsWith(QUEUE + "/"));
+    }
+
+    @Test
+    public void testSuccessfulRetryRemovesEntry() throws Exception {
+        queue(0);
+        handler.retry();
+        ArgumentCaptor<JsonValue> query = ArgumentCaptor.forClass(JsonValue.class);
+        verify(repo).query(eq(QUEUE), query.capture());
+        Assert.assertEquals(query.getValue().get("_queryId").asString(), AsyncRetrySyncFailureHandler.QUERY_DUE);
+        Assert.assertTrue(query.getValue().get("now").isNumber());
+        Assert.assertEquals(query.getValue().get("nowKey").asString(),
+                AsyncRetrySyncFailureHandler.getTimeKey(query.getValue().get("now").asLong()));
+        Assert.assertEquals(replayedAction(), "ONUPDATE");
+        verify(repo).delete(entryId(), "1");
+        verify(postRetryHandler, never()).invoke(anyMap(), any(Exception.class));
+    }
+
+    @Test
+    public void testFailedRetryIsRescheduled() throws Exception {
+        queue(0);
+        when(repo.action(eq("sync"), any(JsonValue.class), any(JsonValue.class)))
+                .thenThrow(new JsonResourceException(JsonResourceException.INTERNAL_ERROR));
+        handler.retry();
+        verify(repo).update(eq(entryId()), eq("1"), any(JsonValue.class));
+        verify(repo, never()).delete(anyString(), anyString());
+    }
+
+    @Test
+    public void testExhaustedRetriesGoToPostRetryHandler() throws Exception {
+        queue(1);
+        when(repo.action(eq("sync"), any(JsonValue.class), any(JsonValue.class)))
+                .thenThrow(new JsonResourceException(JsonResourceException.INTERNAL_ERROR));
+        handler.retry();
+        verify(postRetryHandler).invoke(anyMap(), any(Exception.class));
+        verify(repo).delete(entryId(), "1");
+    }
+
+    @Test
+    public void testDeleteOfAbsentObjectIsReplayed() throws Exception {
+        queue(0, "DELETE");
+        when(repo.read("system/test/account/1")).thenThrow(new JsonResourceException(JsonResourceException.NOT_FOUND));
+        handler.retry();
+        Assert.assertEquals(replayedAction(), "ONDELETE");
+    }
+
+    @Test
+    public void testDeleteOfObjectBackIsReplayedAsUpdate() throws Exception {
+        queue(0, "DELETE");
+        when(repo.read("system/test/account/1")).thenReturn(new JsonValue(new HashMap<String, Object>()));
+        handler.retry();
+        Assert.assertEquals(replayedAction(), "ONUPDATE");
+    }
+
+    @Test
+    public void testLaterSuccessRemovesEntry() throws Exception {
+        queue(0);
+        handler.clear("account", "2");
+        verify(repo, never()).delete(anyString(), anyString());
+        handler.clear("account", "1");
+        verify(repo).delete(entryId(), "1");
+        verify(repo, never()).query(anyString(), any(JsonValue.class));
+    }
+
+    @Test
+    public void testLaterSuccessRemovesEntryOfAnotherHandler() throws Exception {
+        // The entry was saved by another node, or before a restart
+        AsyncRetrySyncFailureHandler other = new AsyncRetrySyncFailureHandler("test",
+                new Accessor<JsonResourceAccessor>() {
+                    public JsonResourceAccessor access() {
+                        return repo;
+                    }
+                }, 2, postRetryHandler, 1000, 5000);
+        other.invoke(syncFailure(), new Exception("failed"));
+        verify(repo).create(eq(entryId()), any(JsonValue.class));
+
+        queue(0);
+        handler.clear("account", "1");
+        verify(repo).delete(entryId(), "1");
+    }
+}
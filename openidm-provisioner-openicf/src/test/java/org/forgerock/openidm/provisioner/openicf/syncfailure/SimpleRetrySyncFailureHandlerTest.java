@@ -0,0 +1,65 @@
+/*
+ * Copyright 2013 ForgeRock, AS.
+ *
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ */
+package org.forgerock.openidm.provisioner.openicf.syncfailure;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyMap;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+public class SimpleRetrySyncFailureHandlerTest {
+
+    private Map<String, Object> syncFailure(String token) {
+        Map<String, Object> syncFailure = new HashMap<String, Object>();
+        syncFailure.put("token", token);
+        syncFailure.put("systemIdentifier", "ldap");
+        syncFailure.put("uid", "uid-" + token);
+        return syncFailure;
+    }
+
+    private boolean retried(SyncFailureHandler handler, String token) {
+        try {
+            handler.invoke(syncFailure(token), new Exception("failed"));
+            return false;
+        } catch (SyncHandlerException e) {
+            return true;
+        }
+    }
+
+    /**
+     * Parallel workers fail on several deltas of a run, the retries of each token still add up.
+     */
+    @Test
+    public void testInterleavedTokensExhaustRetries() throws Exception {
+        SyncFailureHandler postRetryHandler = mock(SyncFailureHandler.class);
+        SyncFailureHandler handler = new SimpleRetrySyncFailureHandler(2, postRetryHandler);
+
+        for (int run = 0; run < 2; run++) {
+            Assert.assertTrue(retried(handler, "5"));
+            Assert.assertTrue(retried(handler, "7"));
+        }
+        Assert.assertFalse(retried(handler, "5"));
+        Assert.assertFalse(retried(handler, "7"));
+        verify(postRetryHandler, times(2)).invoke(anyMap(), any(Exception.class));
+    }
+}
@@ -78,4 +78,43 @@ public interface ProvisionerService extends JsonResource {
      */
     public JsonValue liveSynchronize(String objectType, JsonValue previousStage, final SynchronizationListener synchronizationListener)
             throws JsonResourceException;
+
+    /**
+     * Synchronise the changes from the end system for the given {@code objectType}, reporting the
+     * intermediate stage to the {@code stageListener} while the changes are processed.
+     * <p/>
+     * The implementation decides how often it reports the stage, and may stop before all the
+     * changes have been processed; the remaining changes are processed by the next call.
+     *
+     * @param objectType
+     * @param previousStage           The previously returned object. If null then it's the first execution.
+     * @param synchronizationListener The listener to send the changes to.
+     * @param stageListener           The listener to report the intermediate stage to, may be null.
+     * @return The new updated stage object. This will be the {@code previousStage} at next call.
+     * @throws JsonResourceException if a failure occurred during live sync
+     * @see #liveSynchronize(String, JsonValue, SynchronizationListener)
+     */
+    public JsonValue liveSynchronize(String objectType, JsonValue previousStage,
+            SynchronizationListener synchronizationListener, SyncStageListener stageListener)
+            throws JsonResourceException;
+
+    /**
+     * Runs a list of {@code create}, {@code update} and {@code delete} requests on the objects
+     * of this system.
+     * <p/>
+     * Each request has the {@code method}, {@code id}, {@code rev}, {@code value} and
+     * {@code params} of the equivalent single request, and is a child context of the bulk
+     * request. The implementation may run the requests concurrently, so their order of execution
+     * is not defined.
+     * <p/>
+     * The result has an entry for each request, in the order of the requests:
+     * {@code {"id": ..., "method": ..., "ok": true, "result": ...}} for the requests which
+     * succeeded, {@code {"id": ..., "method": ..., "ok": false, "code": 404, "error": ...}}
+     * for those which failed.
+     *
+     * @param operations the list of requests
+     * @return the list of the results
+     * @throws JsonResourceException if the requests could not be run at all
+     */
+    public JsonValue bulk(JsonValue operations) throws JsonResourceException;
 }
@@ -0,0 +1,49 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright © 2013 ForgeRock AS. All rights reserved.
+ *
+ * The contents of this file are subject to the terms
+ * of the Common Development and Distribution License
+ * (the License). You may not use this file except in
+ * compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://forgerock.org/license/CDDLv1.0.html
+ * See the License for the specific language governing
+ * permission and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL
+ * Header Notice in each file and include the License file
+ * at http://forgerock.org/license/CDDLv1.0.html
+ * If applicable, add the following below the CDDL Header,
+ * with the fields enclosed by brackets [] replaced by
+ * your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ */
+
+package org.forgerock.openidm.provisioner;
+
+import org.forgerock.json.fluent.JsonValue;
+import org.forgerock.json.resource.JsonResourceException;
+
+/**
+ * Receives the intermediate <b>stage</b> objects of a long running live synchronization.
+ * <p/>
+ * A provisioner may report the stage as of the last change it completed while it is still
+ * working through the changes of the end system. Saving it allows a synchronization which is
+ * interrupted, for example by a restart, to resume from there rather than from the stage
+ * the run started with.
+ */
+public interface SyncStageListener {
+
+    /**
+     * Called with the stage as of the last change completed so far.
+     *
+     * @param stage the intermediate stage object, in the same form as the one returned by
+     *              {@link ProvisionerService#liveSynchronize(String, JsonValue,
+     *              org.forgerock.openidm.sync.SynchronizationListener)}
+     * @throws JsonResourceException if the stage could not be saved
+     */
+    public void onCheckpoint(JsonValue stage) throws JsonResourceException;
+}
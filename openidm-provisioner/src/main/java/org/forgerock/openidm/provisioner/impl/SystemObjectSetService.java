@@ -28,11 +28,13 @@ import org.apache.felix.scr.annotations.*;
 import org.forgerock.json.fluent.JsonValue;
 import org.forgerock.json.fluent.JsonValueException;
 import org.forgerock.json.resource.JsonResource;
+import org.forgerock.json.resource.JsonResourceContext;
 import org.forgerock.json.resource.JsonResourceException;
 import org.forgerock.openidm.core.ServerConstants;
 import org.forgerock.openidm.provisioner.ConfigurationService;
 import org.forgerock.openidm.provisioner.Id;
 import org.forgerock.openidm.provisioner.ProvisionerService;
+import org.forgerock.openidm.provisioner.SyncStageListener;
 import org.forgerock.openidm.provisioner.SystemIdentifier;
 import org.forgerock.openidm.quartz.impl.ExecutionException;
 import org.forgerock.openidm.quartz.impl.ScheduledService;
@@ -43,7 +45,10 @@ import org.osgi.service.component.ComponentConstants;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 
 // JSON Resource
@@ -132,6 +137,8 @@ public class SystemObjectSetService implements JsonResource,
                     TRACE.debug("liveSync called with explicit source parameter {}", source);
                 }
                 return liveSync(source, detailedFailure);
+            } else if ("bulk".equalsIgnoreCase(action)) {
+                return bulk(request);
             } else {
                 return locateService(request).handle(request);
             }
@@ -266,29 +273,13 @@ public class SystemObjectSetService implements JsonResource,
             readRequest.put("method", "read");
             readRequest.put("id", previousStageId);
             previousStage = router.handle(readRequest);
-
-            JsonValue updateRequest = new JsonValue(new HashMap());
-            updateRequest.put("type", "resource");
-            updateRequest.put("method", "update");
-            updateRequest.put("id", previousStageId);
-            updateRequest.put("rev", previousStage.get("_rev"));
-            response = locateService(id).liveSynchronize(id.getObjectType(), previousStage != null ? previousStage : null, this);
-            updateRequest.put("value", response.asMap());
-            router.handle(updateRequest);
         } catch (JsonResourceException e) {
-            if (null == previousStage) {
-                TRACE.info("PooledSyncStage object {} is not found. First execution.");
-                JsonValue createRequest = new JsonValue(new HashMap());
-                createRequest.put("type", "resource");
-                createRequest.put("method", "create");
-                createRequest.put("id", previousStageId);
-                response = locateService(id).liveSynchronize(id.getObjectType(), null, this);
-                createRequest.put("value", response.asMap());
-                router.handle(createRequest);
-            } else {
-                throw e;
-            }
+            TRACE.info("PooledSyncStage object {} is not found. First execution.", previousStageId);
         }
+        // The provisioner may save intermediate stages, each write moves the revision on
+        SyncStageWriter stageWriter = new SyncStageWriter(previousStageId, previousStage);
+        response = locateService(id).liveSynchronize(id.getObjectType(), previousStage, this, stageWriter);
+        stageWriter.onCheckpoint(response);
         if (response != null && !detailedFailure) {
             // The detailedFailure option handling ideally should move into provisioners
             response.get("lastException").remove("syncDelta");
@@ -296,6 +287,129 @@ public class SystemObjectSetService implements JsonResource,
         return response;
     }
 
+    /**
+     * Runs a list of create, update and delete requests, each on its own system object.
+     * <p/>
+     * The requests are grouped by system and each group is passed in one call to the
+     * provisioner of the system, which may run the requests of its group concurrently. Each
+     * request is passed as a child context of the bulk request, so it is logged with the
+     * requester and the root and parent activity of the bulk request.
+     * <p/>
+     * {@code {"results": [ ... ]}} has an entry for each request, in the order of the requests,
+     * as described in {@link ProvisionerService#bulk(JsonValue)}.
+     *
+     * @param request the bulk request, with the list of requests as its value
+     * @return the results of the requests
+     * @throws JsonResourceException if the value of {@code request} is not a list
+     */
+    private JsonValue bulk(JsonValue request) throws JsonResourceException {
+        JsonValue operations = request.get("value");
+        try {
+            operations.expect(List.class);
+        } catch (JsonValueException e) {
+            throw new JsonResourceException(JsonResourceException.BAD_REQUEST, e);
+        }
+        List<Object> results = new ArrayList<Object>(operations.size());
+        Map<ProvisionerService, List<Integer>> groups = new LinkedHashMap<ProvisionerService, List<Integer>>();
+        for (int i = 0; i < operations.size(); i++) {
+            JsonValue operation = operations.get(i);
+            results.add(null);
+            try {
+                ProvisionerService service = locateService(operation);
+                List<Integer> group = groups.get(service);
+                if (group == null) {
+                    group = new ArrayList<Integer>();
+                    groups.put(service, group);
+                }
+                group.add(i);
+            } catch (JsonResourceException e) {
+                results.set(i, bulkFailure(operation, e));
+            } catch (JsonValueException e) {
+                results.set(i, bulkFailure(operation, new JsonResourceException(JsonResourceException.BAD_REQUEST, e)));
+            }
+        }
+        for (Map.Entry<ProvisionerService, List<Integer>> group : groups.entrySet()) {
+            List<Object> groupOperations = new ArrayList<Object>(group.getValue().size());
+            for (Integer index : group.getValue()) {
+                groupOperations.add(bulkRequest(request, operations.get(index)).getObject());
+            }
+            try {
+                JsonValue groupResults = group.getKey().bulk(new JsonValue(groupOperations));
+                for (int i = 0; i < group.getValue().size(); i++) {
+                    results.set(group.getValue().get(i), groupResults.get(i).getObject());
+                }
+            } catch (JsonResourceException e) {
+                TRACE.debug("Bulk requests on {} failed", group.getKey().getSystemIdentifier(), e);
+                for (Integer index : group.getValue()) {
+                    results.set(index, bulkFailure(operations.get(index), e));
+                }
+            }
+        }
+        JsonValue response = new JsonValue(new LinkedHashMap<String, Object>());
+        response.put("results", results);
+        return response;
+    }
+
+    /**
+     * Returns a request of a bulk request as a child context of the bulk request.
+     */
+    private JsonValue bulkRequest(JsonValue request, JsonValue operation) {
+        JsonValue context = JsonResourceContext.newContext("resource", request);
+        for (String key : operation.keys()) {
+            if (!context.isDefined(key)) {
+                context.put(key, operation.get(key).getObject());
+            }
+        }
+        return context;
+    }
+
+    private Map<String, Object> bulkFailure(JsonValue operation, JsonResourceException e) {
+        Map<String, Object> result = new LinkedHashMap<String, Object>(5);
+        if (operation.isMap()) {
+            result.put("id", operation.get("id").getObject());
+            result.put("method", operation.get("method").getObject());
+        }
+        result.put("ok", false);
+        result.put("code", e.getCode());
+        result.put("error", e.getMessage());
+        return result;
+    }
+
+    /**
+     * Saves the stage of a live synchronization to the repository, creating it on first use.
+     */
+    private class SyncStageWriter implements SyncStageListener {
+
+        private final String stageId;
+        private boolean exists;
+        private String rev;
+
+        /**
+         * @param stageId       the repository id of the stage object
+         * @param previousStage the stage object as read from the repository, null if there is none
+         */
+        SyncStageWriter(String stageId, JsonValue previousStage) {
+            this.stageId = stageId;
+            this.exists = previousStage != null;
+            this.rev = previousStage != null ? previousStage.get("_rev").asString() : null;
+        }
+
+        public void onCheckpoint(JsonValue stage) throws JsonResourceException {
+            JsonValue request = new JsonValue(new HashMap());
+            request.put("type", "resource");
+            request.put("id", stageId);
+            if (exists) {
+                request.put("method", "update");
+                request.put("rev", rev);
+            } else {
+                request.put("method", "create");
+            }
+            request.put("value", stage.asMap());
+            rev = router.handle(request).get("_rev").asString();
+            exists = true;
+        }
+    }
+
     /** 
      * @param value to convert to boolean
      * Allows boolean values both as Boolean or in String-ified form. 
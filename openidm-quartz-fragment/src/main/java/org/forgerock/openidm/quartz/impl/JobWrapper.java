@@ -38,6 +38,7 @@ import org.quartz.JobPersistenceException;
 public class JobWrapper {
     
     private String serialized;
+    private Map<String, Object> jobDetail;
     private String key;
     private String revision;
     private boolean paused = false;
@@ -51,7 +52,10 @@ public class JobWrapper {
      */
     public JobWrapper(JobDetail jobDetail, boolean paused) throws JobPersistenceException {
         this.key = jobDetail.getKey().toString();
-        this.serialized = RepoJobStoreUtils.serialize(jobDetail);
+        this.jobDetail = RepoJobStoreUtils.jobDetailToJson(jobDetail);
+        if (this.jobDetail == null) {
+            this.serialized = RepoJobStoreUtils.serialize(jobDetail);
+        }
         this.paused = paused;
     }
     
@@ -62,6 +66,7 @@ public class JobWrapper {
      */
     public JobWrapper(Map<String, Object> map) {
         serialized = (String)map.get("serialized");
+        jobDetail = (Map<String, Object>)map.get("jobDetail");
         key = (String)map.get("key");
         paused = (Boolean)map.get("paused");
         revision = (String)map.get("_rev");
@@ -74,7 +79,11 @@ public class JobWrapper {
      */
     public JsonValue getValue() {
         Map<String, Object> map = new HashMap<String, Object>();
-        map.put("serialized", serialized);
+        if (jobDetail != null) {
+            map.put("jobDetail", jobDetail);
+        } else {
+            map.put("serialized", serialized);
+        }
         map.put("key", key);
         map.put("paused", paused);
         return new JsonValue(map);
@@ -83,7 +92,7 @@ public class JobWrapper {
     /**
      * Returns the serialized JobDetail object
      * 
-     * @return  the serialized JobDetail object
+     * @return  the serialized JobDetail object, or null if the JobDetail is stored as JSON
      */
     public String getSerialized() {
         return serialized;
@@ -99,12 +108,15 @@ public class JobWrapper {
     }
     
     /**
-     * Returns the deserialized JobDetail object.
+     * Returns the JobDetail object.
      * 
      * @return the JobDetail object
      * @throws Exception
      */
     public JobDetail getJobDetail() throws Exception {
+        if (jobDetail != null) {
+            return RepoJobStoreUtils.jobDetailFromJson(jobDetail);
+        }
         return (JobDetail)RepoJobStoreUtils.deserialize(serialized);
     }
     
@@ -26,16 +26,20 @@
 package org.forgerock.openidm.quartz.impl;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
-import java.util.NoSuchElementException;
 import java.util.Set;
-import java.util.TreeSet;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.atomic.AtomicLong;
 
 import org.forgerock.json.fluent.JsonValue;
@@ -75,7 +79,33 @@ public class RepoJobStore implements JobStore {
 
     private final static Logger logger = LoggerFactory.getLogger(RepoJobStore.class);
     
+    /**
+     * Guards structural changes: creating and removing jobs, triggers, calendars and groups,
+     * and the lists of their names.
+     */
     private final static Object lock = new Object();
+
+    /**
+     * Guards the waiting triggers index and the waiting and acquired triggers lists.
+     * No other lock is acquired while holding it.
+     */
+    private final static Object waitingLock = new Object();
+
+    /**
+     * Number of stripes of the job and trigger group locks.
+     */
+    private final static int LOCK_STRIPES = 64;
+
+    /**
+     * Striped job locks, serializing the firing and completion of the same job. A fixed
+     * number of locks is shared by all jobs, so no lock is kept per removed job.
+     */
+    private final static Object[] jobLocks = newLocks(LOCK_STRIPES);
+
+    /**
+     * Striped trigger group locks, serializing trigger state changes within a group.
+     */
+    private final static Object[] triggerGroupLocks = newLocks(LOCK_STRIPES);
     
     /**
      * An identifier used to create unique keys for Jobs and Triggers.
@@ -93,7 +123,7 @@ public class RepoJobStore implements JobStore {
     private ClassLoadHelper loadHelper;
     
     /**
-     * The instance ID (currently unused)
+     * The instance ID, identifying this node in the lists of acquired triggers and leases
      */
     private String instanceId;
     
@@ -115,7 +145,7 @@ public class RepoJobStore implements JobStore {
     /**
      * A list of all "blocked" jobs.
      */
-    private List<String> blockedJobs = new ArrayList<String>();
+    private List<String> blockedJobs = Collections.synchronizedList(new ArrayList<String>());
     
     /**
      * An AtomicLong used for creating record IDs
@@ -126,7 +156,87 @@ public class RepoJobStore implements JobStore {
      * The Repository Service Accessor
      */
     private static JsonResourceAccessor accessor = null;
-    
+
+    /**
+     * The order triggers fire in
+     */
+    private static final TriggerComparator triggerComparator = new TriggerComparator();
+
+    /**
+     * The in-memory index of the "waiting" triggers, shared by the instances of this node
+     */
+    private static final WaitingTriggerIndex sharedWaitingTriggerIndex = new WaitingTriggerIndex(triggerComparator);
+
+    /**
+     * Write-through cache of the trigger repo objects, keyed by repo ID, shared by the instances
+     * of this node. Entries are replaced on every successful write and evicted when a write
+     * fails, so a concurrent modification (a revision mismatch) causes the next access to read
+     * the trigger from the repo again.
+     */
+    private static final ConcurrentMap<String, Map<String, Object>> sharedTriggerCache =
+            new ConcurrentHashMap<String, Map<String, Object>>();
+
+    /**
+     * The index of the "waiting" triggers used by this instance
+     */
+    private WaitingTriggerIndex waitingTriggerIndex = sharedWaitingTriggerIndex;
+
+    /**
+     * The trigger cache used by this instance
+     */
+    private ConcurrentMap<String, Map<String, Object>> triggerCache = sharedTriggerCache;
+
+    /**
+     * Write-through cache of the acquired triggers repo object. Guarded by waitingLock, the
+     * check in timer and the scheduler threads both update it.
+     */
+    private Map<String, Object> acquiredTriggersCache = null;
+
+    /**
+     * Interval (in milliseconds) after which the revision of the waiting triggers is verified
+     * against the repo, to pick up changes made by other nodes.
+     */
+    private long indexVerifyInterval = 10000;
+
+    /**
+     * True if the repo is shared with the schedulers of other nodes, false if this is the only one.
+     * Enabled with the openidm.scheduler.repo.clustered property.
+     */
+    private boolean clustered = false;
+
+    /**
+     * Duration (in milliseconds) of the lease on an acquired trigger, counted from the time
+     * the trigger is due to fire. Another node may take over the trigger once it expires.
+     */
+    private long leaseDuration = 120000;
+
+    /**
+     * Interval (in milliseconds) at which this node checks in, and recovers the triggers
+     * acquired by failed nodes.
+     */
+    private long checkinInterval = 30000;
+
+    /**
+     * Time (in milliseconds) after its last check in a node is considered failed.
+     */
+    private long failureThreshold = 120000;
+
+    /**
+     * Number of triggers acquired from the repo at once.
+     */
+    private int acquireBatchSize = 1;
+
+    /**
+     * Triggers acquired in the last batch, not yet handed to the scheduler, in fire time order.
+     * Guarded by waitingLock.
+     */
+    private final LinkedList<Trigger> acquiredBatch = new LinkedList<Trigger>();
+
+    /**
+     * Timer running the cluster check ins.
+     */
+    private Timer checkinTimer;
+
     /**
      * Creates a new <code>RepoJobStore</code>.
      */
@@ -146,7 +256,28 @@ public class RepoJobStore implements JobStore {
         this.loadHelper = loadHelper;
         // Set the number of retries for failed writes to the repository
         this.writeRetries = Integer.parseInt(IdentityServer.getInstance().getProperty("openidm.scheduler.repo.retry", "-1"));
+        // Set the interval for verifying the waiting triggers index against the repo
+        this.indexVerifyInterval = Long.parseLong(IdentityServer.getInstance().getProperty(
+                "openidm.scheduler.repo.indexVerifyInterval", "10000"));
+        // Set the cluster settings
+        this.clustered = Boolean.parseBoolean(IdentityServer.getInstance().getProperty(
+                "openidm.scheduler.repo.clustered", "false"));
+        this.leaseDuration = Long.parseLong(IdentityServer.getInstance().getProperty(
+                "openidm.scheduler.repo.leaseDuration", "120000"));
+        this.checkinInterval = Long.parseLong(IdentityServer.getInstance().getProperty(
+                "openidm.scheduler.repo.checkinInterval", "30000"));
+        this.failureThreshold = Long.parseLong(IdentityServer.getInstance().getProperty(
+                "openidm.scheduler.repo.failureThreshold", "120000"));
+        this.acquireBatchSize = Math.max(1, Integer.parseInt(IdentityServer.getInstance().getProperty(
+                "openidm.scheduler.repo.acquireBatchSize", "1")));
         synchronized (lock) {
+            clearCaches();
+            try {
+                // Convert triggers and jobs stored by earlier versions
+                migrateSerializedObjects();
+            } catch (Exception e) {
+                logger.warn("Error migrating serialized triggers and jobs", e);
+            }
             try {
                 // Make sure all available triggers are "waiting"
                 logger.trace("Getting Acquired Triggers");
@@ -157,8 +288,8 @@ public class RepoJobStore implements JobStore {
                     Trigger t = it.next();
                     if (hasTriggerMisfired(t)) {
                         logger.trace("Trigger {} has misfired", t.getName());
-                        processTriggerMisfired(getTriggerWrapper(t.getGroup(), t.getName()));
-                        if (t.getNextFireTime() != null) {
+                        t = processTriggerMisfired(t.getGroup(), t.getName());
+                        if (t != null && t.getNextFireTime() != null) {
                             // Add the trigger to the "waiting" triggers tree
                             addWaitingTrigger(t);
                             // Remove the trigger from the "acquired" triggers list
@@ -175,6 +306,50 @@ public class RepoJobStore implements JobStore {
         }
     }
 
+    /**
+     * Rewrites the triggers and jobs stored as serialized Java objects, by earlier versions
+     * of this JobStore, in their JSON representation. Objects that cannot be represented in
+     * JSON remain serialized.
+     *
+     * @throws Exception
+     */
+    private void migrateSerializedObjects() throws Exception {
+        int migrated = 0;
+        for (String group : getTriggerGroupNames(null)) {
+            for (String name : getTriggerNames(null, group)) {
+                TriggerWrapper tw = getTriggerWrapper(group, name);
+                if (tw != null && tw.getSerialized() != null) {
+                    tw.updateTrigger(tw.getTrigger());
+                    if (tw.getSerialized() == null) {
+                        logger.debug("Migrating serialized trigger {} in group {}", name, group);
+                        updateTriggerInRepo(group, name, tw, tw.getRevision());
+                        migrated++;
+                    }
+                }
+            }
+        }
+        for (String group : getJobGroupNames(null)) {
+            String[] names = getJobNames(null, group);
+            if (names == null) {
+                continue;
+            }
+            for (String name : names) {
+                JobWrapper jw = getJobWrapper(group, name);
+                if (jw != null && jw.getSerialized() != null) {
+                    JobWrapper newJw = new JobWrapper(jw.getJobDetail(), jw.isPaused());
+                    if (newJw.getSerialized() == null) {
+                        logger.debug("Migrating serialized job {} in group {}", name, group);
+                        accessor.update(getJobsRepoId(group, name), jw.getRevision(), newJw.getValue());
+                        migrated++;
+                    }
+                }
+            }
+        }
+        if (migrated > 0) {
+            logger.info("Migrated {} serialized triggers and jobs to JSON", migrated);
+        }
+    }
+
     /**
      * Sets the Repository Service Router and returns true if successful, false otherwise.
      * 
@@ -187,33 +362,125 @@ public class RepoJobStore implements JobStore {
             RepositoryService repoService = RepositoryService.class.cast(ctx.getService(serviceReference));
             if (repoService != null) {
                 accessor = new JsonResourceAccessor(repoService, null);
+                clearCaches();
             }
             return !(accessor == null);
         }
         return true;
     }
-    
+
     /**
      * An external method for setting the router (used in test cases).
-     * 
+     *
      * @param router the router to set
      */
     public void setRepositoryService(RepositoryService service) {
-        accessor = new JsonResourceAccessor(service, null);
+        setService(service);
+        clearCaches();
     }
-    
+
     /**
      * An external method for setting the router (used in test cases).
-     * 
+     *
      * @param router the router to set
      */
     public static void setService(RepositoryService service) {
-        accessor = new JsonResourceAccessor(service, null);
+        synchronized (lock) {
+            accessor = new JsonResourceAccessor(service, null);
+            clearSharedCaches();
+        }
+    }
+
+    /**
+     * Discards all cached repo state, which is reloaded on next use.
+     */
+    private void clearCaches() {
+        synchronized (waitingLock) {
+            clearSharedCaches();
+            waitingTriggerIndex.invalidate();
+            triggerCache.clear();
+            acquiredTriggersCache = null;
+        }
+    }
+
+    /**
+     * Discards the repo state cached for all instances.
+     */
+    private static void clearSharedCaches() {
+        synchronized (waitingLock) {
+            sharedWaitingTriggerIndex.invalidate();
+            sharedTriggerCache.clear();
+        }
+    }
+
+    /**
+     * Gives this instance a waiting triggers index and a trigger cache of its own, rather than
+     * those shared by the instances of this node, so it behaves as the instance of another
+     * node would. Used to test clusters within one JVM.
+     */
+    void usePrivateCaches() {
+        synchronized (waitingLock) {
+            waitingTriggerIndex = new WaitingTriggerIndex(triggerComparator);
+            triggerCache = new ConcurrentHashMap<String, Map<String, Object>>();
+        }
+    }
+
+    /**
+     * Returns the lock object for a job.
+     *
+     * @param group the job group
+     * @param name  the job name
+     * @return the lock object
+     */
+    private Object getJobLock(String group, String name) {
+        return getLock(jobLocks, getJobId(group, name));
+    }
+
+    /**
+     * Returns the lock object for a trigger group.
+     *
+     * @param group the trigger group
+     * @return the lock object
+     */
+    private Object getTriggerGroupLock(String group) {
+        return getLock(triggerGroupLocks, group);
+    }
+
+    /**
+     * Returns the stripe guarding a key. Only one lock of a stripe set is held at a time,
+     * so keys sharing a stripe can not deadlock.
+     *
+     * @param locks the lock stripes
+     * @param key   the job ID or trigger group
+     * @return the lock object
+     */
+    private static Object getLock(Object[] locks, String key) {
+        return locks[(key.hashCode() & Integer.MAX_VALUE) % locks.length];
+    }
+
+    private static Object[] newLocks(int stripes) {
+        Object[] locks = new Object[stripes];
+        for (int i = 0; i < stripes; i++) {
+            locks[i] = new Object();
+        }
+        return locks;
     }
     
     @Override
     public void schedulerStarted() throws SchedulerException {
         logger.debug("Job Scheduler Started");
+        if (clustered) {
+            synchronized (this) {
+                if (checkinTimer == null) {
+                    checkinTimer = new Timer("RepoJobStore check in " + instanceId, true);
+                    checkinTimer.schedule(new TimerTask() {
+                        public void run() {
+                            clusterCheckin();
+                        }
+                    }, 0, checkinInterval);
+                }
+            }
+        }
     }
     
     /**
@@ -349,6 +616,16 @@ public class RepoJobStore implements JobStore {
         return sb.append(getIdPrefix()).append("acquiredTriggers").toString();
     }
 
+    /**
+     * Gets the repository ID of the node check ins.
+     * 
+     * @return  the repository ID
+     */
+    private String getCheckinsRepoId() {
+        StringBuilder sb = new StringBuilder();
+        return sb.append(getIdPrefix()).append("checkins").toString();
+    }
+
     /**
      * Gets the Trigger ID.
      * 
@@ -391,6 +668,25 @@ public class RepoJobStore implements JobStore {
     @Override
     public void shutdown() {
         logger.debug("Job Scheduler Stopped");
+        synchronized (this) {
+            if (checkinTimer != null) {
+                checkinTimer.cancel();
+                checkinTimer = null;
+            }
+        }
+        // Hand the triggers acquired, but not yet fired, back to the other nodes
+        List<Trigger> unfired;
+        synchronized (waitingLock) {
+            unfired = new ArrayList<Trigger>(acquiredBatch);
+            acquiredBatch.clear();
+        }
+        for (Trigger trigger : unfired) {
+            try {
+                releaseAcquiredTrigger(null, trigger);
+            } catch (JobPersistenceException e) {
+                logger.warn("Error releasing acquired trigger {}", trigger.getFullName(), e);
+            }
+        }
     }
     
     @Override
@@ -546,7 +842,7 @@ public class RepoJobStore implements JobStore {
                     TriggerWrapper oldTw = getTriggerWrapper(groupName, triggerName);
                     // Update trigger
                     logger.debug("Updating Trigger {}", triggerId);
-                    accessor.update(triggerId, oldTw.getRevision(), tw.getValue());
+                    updateTriggerInRepo(groupName, triggerName, tw, oldTw.getRevision());
                 } else {
                     // Add trigger name to list
                     tgw.addTrigger(triggerName);
@@ -555,7 +851,8 @@ public class RepoJobStore implements JobStore {
 
                     // Create trigger
                     logger.debug("Creating Trigger {}", triggerId);
-                    accessor.create(triggerId, tw.getValue());
+                    JsonValue value = tw.getValue();
+                    cacheTrigger(triggerId, value, accessor.create(triggerId, value));
                 }
             } catch (JsonResourceException e) {
                 logger.warn("Error storing trigger", e);
@@ -566,101 +863,180 @@ public class RepoJobStore implements JobStore {
         }
     }
     
+    /**
+     * Acquires the next trigger to fire. Triggers are acquired from the repo in batches of
+     * acquireBatchSize, the rest of a batch is handed out by the following calls unless a
+     * trigger due earlier has been added since.
+     */
     @Override
     public Trigger acquireNextTrigger(SchedulingContext context, long noLaterThan)
             throws JobPersistenceException {
-        synchronized (lock) {
-            Trigger trigger = null;
-            WaitingTriggers waitingTriggers = null;
-            while (trigger == null) {
-                try {
-                    waitingTriggers = getWaitingTriggers();
-                    trigger = waitingTriggers.getTriggers().first();
-                } catch (NoSuchElementException e1) {
-                    logger.debug("No waiting triggers to acquire");
-                    return null;
+        synchronized (waitingLock) {
+            if (!acquiredBatch.isEmpty()) {
+                Trigger first = getWaitingTriggerIndex().first();
+                if (first != null && triggerComparator.compare(first, acquiredBatch.getFirst()) < 0) {
+                    List<Trigger> earlier = acquireTriggers(noLaterThan, 1);
+                    if (!earlier.isEmpty()) {
+                        return earlier.get(0);
+                    }
                 }
-                
-                if (trigger == null) {
-                    logger.debug("No waiting triggers to acquire");
-                    return null;
+            } else {
+                acquiredBatch.addAll(acquireTriggers(noLaterThan, acquireBatchSize));
+            }
+            while (!acquiredBatch.isEmpty()) {
+                Trigger trigger = acquiredBatch.removeFirst();
+                TriggerWrapper tw = getTriggerWrapper(trigger.getGroup(), trigger.getName());
+                if (tw != null && tw.isAcquired() && isOwner(tw) && tw.getState() == Trigger.STATE_NORMAL) {
+                    logger.debug("Acquiring next trigger {} to be fired at {}", new Object[]{trigger.getName(), trigger.getNextFireTime()});
+                    return trigger;
                 }
-                
+                // Paused, removed or taken over since it was acquired
+                logger.debug("Trigger {} in group {} is no longer acquired, skipping",
+                        new Object[] {trigger.getName(), trigger.getGroup()});
+                removeAcquiredTrigger(trigger, instanceId);
+            }
+            logger.debug("No waiting triggers to acquire");
+            return null;
+        }
+    }
 
+    /**
+     * Acquires up to maxCount triggers due to fire no later than the given time, in fire time
+     * order. Each trigger is leased to this instance in the repo, and the waiting and acquired
+     * triggers lists are updated once for the whole batch.
+     * 
+     * @param context       the scheduling context
+     * @param noLaterThan   the time, in milliseconds, the triggers must fire before (if > 0)
+     * @param maxCount      the maximum number of triggers to acquire
+     * @return  the acquired triggers, an empty list if none are due
+     * @throws JobPersistenceException
+     */
+    public List<Trigger> acquireNextTriggers(SchedulingContext context, long noLaterThan, int maxCount)
+            throws JobPersistenceException {
+        synchronized (waitingLock) {
+            return acquireTriggers(noLaterThan, maxCount);
+        }
+    }
+
+    private List<Trigger> acquireTriggers(long noLaterThan, int maxCount) throws JobPersistenceException {
+        List<Trigger> acquired = new ArrayList<Trigger>();
+        boolean more = true;
+        while (more && acquired.size() < maxCount) {
+            // The index is ordered by next fire time, so only its first triggers are looked at
+            int count = maxCount - acquired.size();
+            List<Trigger> candidates = getWaitingTriggerIndex().first(count);
+            more = candidates.size() == count;
+            List<Trigger> claimed = new ArrayList<Trigger>();
+            List<Trigger> done = new ArrayList<Trigger>();
+            for (Trigger trigger : candidates) {
                 Date nextFireTime = trigger.getNextFireTime();
                 if (nextFireTime == null) {
                     logger.debug("Trigger next fire time = null, removing");
-                    removeWaitingTrigger(trigger);
-                    trigger = null;
+                    done.add(trigger);
                     continue;
                 }
 
-                if(!removeWaitingTrigger(trigger)) {
-                    trigger = null;
-                    continue;
+                boolean misfired = hasTriggerMisfired(trigger);
+                // A trigger due later can be left in place, a misfired trigger is always due earlier
+                if (noLaterThan > 0 && nextFireTime.getTime() > noLaterThan && !misfired) {
+                    logger.debug("No waiting triggers to acquire before {}", noLaterThan);
+                    more = false;
+                    break;
                 }
-                
-                TriggerWrapper tw = getTriggerWrapper(trigger.getGroup(), trigger.getName());
 
-                if (hasTriggerMisfired(trigger)) {
+                if (misfired) {
                     logger.debug("Attempting to process misfired trigger");
-                    processTriggerMisfired(tw);
-                    if (trigger.getNextFireTime() != null) {
-                        addWaitingTrigger(trigger);
+                    Trigger updated = processTriggerMisfired(trigger.getGroup(), trigger.getName());
+                    if (updated != null && updated.getNextFireTime() != null) {
+                        // Moves the trigger to its new place in the index
+                        addWaitingTrigger(updated);
+                    } else {
+                        done.add(trigger);
                     }
-                    trigger = null;
+                    more = true;
                     continue;
                 }
-                
-                if (noLaterThan > 0) {
-                    if (nextFireTime.getTime() > noLaterThan) {
-                        addWaitingTrigger(trigger);
-                        return null;
-                    }
-                }
-                
-                tw.setAcquired(true);
+
                 trigger.setFireInstanceId(getFiredTriggerRecordId());
-                try {
-                    tw.updateTrigger(trigger);
-                } catch (Exception e) {
-                    logger.warn("Error serializing trigger", e);
-                    throw new JobPersistenceException("Error serializing trigger", e);
+                if (claimTrigger(trigger) != null) {
+                    claimed.add(trigger);
+                } else {
+                    logger.debug("Trigger {} in group {} is no longer available, skipping",
+                            new Object[] {trigger.getName(), trigger.getGroup()});
                 }
+                done.add(trigger);
+            }
+            removeWaitingTriggers(done);
+            addAcquiredTriggers(claimed, instanceId);
+            acquired.addAll(claimed);
+        }
+        return acquired;
+    }
 
-                updateTriggerInRepo(trigger.getGroup(), trigger.getName(), tw, tw.getRevision());
-                
-                addAcquiredTrigger(trigger, instanceId);
+    /**
+     * Returns true if the trigger is leased to this instance.
+     * 
+     * @param tw    the trigger
+     * @return  true if this instance holds the lease
+     */
+    private boolean isOwner(TriggerWrapper tw) {
+        return instanceId == null ? tw.getOwner() == null : instanceId.equals(tw.getOwner());
+    }
 
-                logger.debug("Acquiring next trigger {} to be fired at {}", new Object[]{trigger.getName(), trigger.getNextFireTime()});
-                return (Trigger)trigger.clone();
+    /**
+     * Puts a trigger in the "acquired" state, leased to this instance. The lease is claimed
+     * with the revision the trigger was read at, so of several nodes acquiring the same
+     * trigger only one succeeds.
+     * 
+     * @param trigger   the trigger to acquire, with its fire instance ID set
+     * @return  the acquired TriggerWrapper, or null if the trigger is not available
+     * @throws JobPersistenceException
+     */
+    private TriggerWrapper claimTrigger(final Trigger trigger) throws JobPersistenceException {
+        final long now = System.currentTimeMillis();
+        final long leaseExpires = Math.max(now, trigger.getNextFireTime().getTime()) + leaseDuration;
+        return updateTrigger(trigger.getGroup(), trigger.getName(), new TriggerUpdate() {
+            boolean apply(TriggerWrapper tw) throws JobPersistenceException {
+                if (tw.getState() != Trigger.STATE_NORMAL) {
+                    // Paused or blocked since it was added to the waiting triggers
+                    return false;
+                }
+                if (tw.isLeasedByOther(instanceId, now)) {
+                    return false;
+                }
+                tw.acquire(instanceId, leaseExpires);
+                tw.updateTrigger(trigger);
+                return true;
             }
-            logger.debug("No waiting triggers to acquire");
-            return null;
-        }
+        });
     }
 
-    
-    
     @Override
     public void releaseAcquiredTrigger(SchedulingContext arg0, Trigger trigger)
             throws JobPersistenceException {
-        synchronized (lock) {
-            TriggerWrapper tw = getTriggerWrapper(trigger.getGroup(), trigger.getName());
+        synchronized (getTriggerGroupLock(trigger.getGroup())) {
+            TriggerWrapper tw = updateTrigger(trigger.getGroup(), trigger.getName(), new TriggerUpdate() {
+                boolean apply(TriggerWrapper tw) {
+                    if (!tw.isAcquired() || !isOwner(tw)) {
+                        return false;
+                    }
+                    tw.release();
+                    return true;
+                }
+            });
             if (tw == null) {
-                logger.debug("Cannot release acquired trigger {} in group {}, trigger does not exist", 
-                        new Object[] {trigger.getName(),trigger.getGroup()});
-                return;
-            }
-            if (tw.isAcquired()) {
-                tw.setAcquired(false);
-                updateTriggerInRepo(trigger.getGroup(), trigger.getName(), tw, tw.getRevision());
-                addWaitingTrigger(trigger);
                 removeAcquiredTrigger(trigger, instanceId);
-            } else {
-                logger.warn("Cannot release acquired trigger {} in group {}, trigger has not been acquired", 
-                        new Object[] {trigger.getName(),trigger.getGroup()});
+                if (getTriggerWrapper(trigger.getGroup(), trigger.getName()) == null) {
+                    logger.debug("Cannot release acquired trigger {} in group {}, trigger does not exist", 
+                            new Object[] {trigger.getName(),trigger.getGroup()});
+                } else {
+                    logger.warn("Cannot release acquired trigger {} in group {}, trigger is not acquired by this node", 
+                            new Object[] {trigger.getName(),trigger.getGroup()});
+                }
+                return;
             }
+            addWaitingTrigger(trigger);
+            removeAcquiredTrigger(trigger, instanceId);
         }
     }
     
@@ -847,24 +1223,26 @@ public class RepoJobStore implements JobStore {
     @Override
     public Trigger[] getTriggersForJob(SchedulingContext context, String jobName, String groupName) 
             throws JobPersistenceException {
-        synchronized (lock) {
-            String[] triggerNames = getTriggerNames(context, groupName);
-            List<Trigger> triggers = new ArrayList<Trigger>();
-            for (String name : triggerNames) {
-                TriggerWrapper tw = getTriggerWrapper(groupName, name);
-                Trigger trigger = tw.getTrigger();
-                if (trigger.getJobName().equals(jobName)) {
-                    triggers.add(trigger);
-                }
+        String[] triggerNames = getTriggerNames(context, groupName);
+        List<Trigger> triggers = new ArrayList<Trigger>();
+        for (String name : triggerNames) {
+            TriggerWrapper tw = getTriggerWrapper(groupName, name);
+            if (tw == null) {
+                // Removed concurrently
+                continue;
+            }
+            Trigger trigger = tw.getTrigger();
+            if (jobName.equals(trigger.getJobName())) {
+                triggers.add(trigger);
             }
-            logger.debug("Found {} triggers for group {}", new Object[] {triggers.size(), groupName});
-            return triggers.toArray(new Trigger[triggers.size()]);
         }
+        logger.debug("Found {} triggers for group {}", new Object[] {triggers.size(), groupName});
+        return triggers.toArray(new Trigger[triggers.size()]);
     }
 
     @Override
     public boolean isClustered() {
-        return true;
+        return clustered;
     }
 
     @Override
@@ -929,25 +1307,21 @@ public class RepoJobStore implements JobStore {
     @Override
     public void pauseTrigger(SchedulingContext context, String triggerName, String triggerGroup)
             throws JobPersistenceException {
-        synchronized (lock) {
-            TriggerWrapper tw = getTriggerWrapper(triggerGroup, triggerName);
+        synchronized (getTriggerGroupLock(triggerGroup)) {
+            // Update the trigger
+            TriggerWrapper tw = updateTrigger(triggerGroup, triggerName, new TriggerUpdate() {
+                boolean apply(TriggerWrapper tw) {
+                    tw.pause();
+                    return true;
+                }
+            });
             if (tw == null) {
                 logger.warn("Cannot pause trigger {} in group {}, trigger does not exist", 
                         new Object [] {triggerName, triggerGroup});
                 return;
             }
-            Trigger trigger;
-            try {
-                trigger = tw.getTrigger();
-            } catch (Exception e) {
-                logger.warn("Error deserializing trigger", e);
-                throw new JobPersistenceException("Error deserializing trigger", e);
-            }
-            tw.pause();
-            // Update the trigger
-            updateTriggerInRepo(triggerGroup, triggerName, tw, tw.getRevision());
             // Remove trigger from waitingTriggers
-            removeWaitingTrigger(trigger);
+            removeWaitingTrigger(tw.getTrigger());
         }
     }
 
@@ -1088,6 +1462,7 @@ public class RepoJobStore implements JobStore {
                     // Delete trigger
                     rev = tw.getRevision();
                     logger.debug("Deleting trigger {} in group {}", new Object[]{triggerName, groupName});
+                    triggerCache.remove(triggerId);
                     accessor.delete(triggerId, rev);
                     
                     String jobName = tw.getTrigger().getJobName();
@@ -1213,25 +1588,21 @@ public class RepoJobStore implements JobStore {
     @Override
     public void resumeTrigger(SchedulingContext arg0, String triggerName, String triggerGroup)
             throws JobPersistenceException {
-        synchronized (lock) {
-            TriggerWrapper tw = getTriggerWrapper(triggerGroup, triggerName);
+        synchronized (getTriggerGroupLock(triggerGroup)) {
+            // Update the trigger
+            TriggerWrapper tw = updateTrigger(triggerGroup, triggerName, new TriggerUpdate() {
+                boolean apply(TriggerWrapper tw) {
+                    tw.resume();
+                    return true;
+                }
+            });
             if (tw == null) {
                 logger.warn("Cannot resume trigger {} in group {}, trigger does not exist", 
                         new Object[]{triggerName, triggerGroup});
                 return;
             }
-            Trigger trigger;
-            try {
-                trigger = tw.getTrigger();
-            } catch (Exception e) {
-                logger.warn("Error deserializing trigger", e);
-                throw new JobPersistenceException("Error deserializing trigger", e);
-            }
-            tw.resume();
-            // Update the trigger
-            updateTriggerInRepo(triggerGroup, triggerName, tw, tw.getRevision());
             // Add trigger to waitingTriggers
-            addWaitingTrigger(trigger);
+            addWaitingTrigger(tw.getTrigger());
         }
     }
 
@@ -1278,47 +1649,43 @@ public class RepoJobStore implements JobStore {
     @Override
     public Calendar retrieveCalendar(SchedulingContext context, String name)
             throws JobPersistenceException {
-        synchronized (lock) {
-            if (!setAccessor()) {
-                throw new JobPersistenceException("Repo router is null");
-            }
-            if (name != null) {
-                CalendarWrapper cw = getCalendarWrapper(name);
-                if (cw != null) {
-                    try {
-                        return cw.getCalendar();
-                    } catch (Exception e) {
-                        logger.warn("Error retrieving calendar", e);
-                        throw new JobPersistenceException("Error retrieving calendar", e);
-                    }
+        if (!setAccessor()) {
+            throw new JobPersistenceException("Repo router is null");
+        }
+        if (name != null) {
+            CalendarWrapper cw = getCalendarWrapper(name);
+            if (cw != null) {
+                try {
+                    return cw.getCalendar();
+                } catch (Exception e) {
+                    logger.warn("Error retrieving calendar", e);
+                    throw new JobPersistenceException("Error retrieving calendar", e);
                 }
             }
-            return null;
         }
+        return null;
     }
 
     @Override
     public JobDetail retrieveJob(SchedulingContext context, String jobName,
             String jobGroup) throws JobPersistenceException {
-        synchronized (lock) {
-            if (!setAccessor()) {
-                throw new JobPersistenceException("Repo router is null");
+        if (!setAccessor()) {
+            throw new JobPersistenceException("Repo router is null");
+        }
+            if (logger.isTraceEnabled()) {
+                logger.trace("Getting job {}", getJobsRepoId(jobGroup, jobName));
+            }
+            JobWrapper jw = getJobWrapper(jobGroup, jobName);
+            if (jw == null) {
+                return null;
+            }
+            try {
+                return jw.getJobDetail();
+            } catch (Exception e) {
+                logger.warn("Error retrieving job", e);
+                throw new JobPersistenceException("Error retrieving job", e);
             }
-                if (logger.isTraceEnabled()) {
-                    logger.trace("Getting job {}", getJobsRepoId(jobGroup, jobName));
-                }
-                JobWrapper jw = getJobWrapper(jobGroup, jobName);
-                if (jw == null) {
-                    return null;
-                }
-                try {
-                    return jw.getJobDetail();
-                } catch (Exception e) {
-                    logger.warn("Error retrieving job", e);
-                    throw new JobPersistenceException("Error retrieving job", e);
-                }
 
-        }
     }
     
     public JobWrapper getJobWrapper(String jobGroup, String jobName) throws JobPersistenceException {
@@ -1343,48 +1710,44 @@ public class RepoJobStore implements JobStore {
     
     public CalendarWrapper getCalendarWrapper(String name)
             throws JobPersistenceException {
-        synchronized (lock) {
-            try {
-                if (logger.isTraceEnabled()) {
-                    logger.trace("Getting calendar {}", getCalendarsRepoId(name));
-                }
-                Map<String, Object> calMap = readFromRepo(getCalendarsRepoId(name)).asMap();
-                if (calMap == null) {
-                    return null;
-                }
-                CalendarWrapper cal = new CalendarWrapper(calMap);
-                return cal;
-            } catch (ObjectSetException e) {
-                logger.warn("Error retrieving calendar", e);
-                throw new JobPersistenceException("Error retrieving calendar", e);
-            } catch (Exception e) {
-                logger.warn("Error retrieving calendar", e);
-                throw new JobPersistenceException("Error retrieving calendar", e);
+        try {
+            if (logger.isTraceEnabled()) {
+                logger.trace("Getting calendar {}", getCalendarsRepoId(name));
+            }
+            Map<String, Object> calMap = readFromRepo(getCalendarsRepoId(name)).asMap();
+            if (calMap == null) {
+                return null;
             }
+            CalendarWrapper cal = new CalendarWrapper(calMap);
+            return cal;
+        } catch (ObjectSetException e) {
+            logger.warn("Error retrieving calendar", e);
+            throw new JobPersistenceException("Error retrieving calendar", e);
+        } catch (Exception e) {
+            logger.warn("Error retrieving calendar", e);
+            throw new JobPersistenceException("Error retrieving calendar", e);
         }
     }
     
     @Override
     public Trigger retrieveTrigger(SchedulingContext context, String triggerName, String triggerGroup) 
             throws JobPersistenceException {
-        synchronized (lock) {
-            try {
-                TriggerWrapper tw = getTriggerWrapper(triggerGroup, triggerName);
-                if (tw == null) {
-                    return null;
-                }
-                return tw.getTrigger();
-            } catch (Exception e) {
-                logger.warn("Error retrieving trigger", e);
-                throw new JobPersistenceException("Error retrieving trigger", e);
+        try {
+            TriggerWrapper tw = getTriggerWrapper(triggerGroup, triggerName);
+            if (tw == null) {
+                return null;
             }
+            return tw.getTrigger();
+        } catch (Exception e) {
+            logger.warn("Error retrieving trigger", e);
+            throw new JobPersistenceException("Error retrieving trigger", e);
         }
     }
 
     @Override
     public TriggerFiredBundle triggerFired(SchedulingContext context, Trigger trigger)
             throws JobPersistenceException {
-        synchronized (lock) {
+        synchronized (getJobLock(trigger.getJobGroup(), trigger.getJobName())) {
             TriggerWrapper tw;
             try {
                 tw = getTriggerWrapper(trigger.getGroup(), trigger.getName());
@@ -1425,9 +1788,33 @@ public class RepoJobStore implements JobStore {
             Date previousFireTime = trigger.getPreviousFireTime();
             removeWaitingTrigger(trigger);
 
-            localTrigger.triggered(triggerCalendar);
-            tw.updateTrigger(localTrigger);
-            updateTriggerInRepo(localTrigger.getGroup(), localTrigger.getName(), tw, tw.getRevision());
+            final Calendar calendar = triggerCalendar;
+            final Trigger[] fired = new Trigger[1];
+            tw = updateTrigger(trigger.getGroup(), trigger.getName(), new TriggerUpdate() {
+                boolean apply(TriggerWrapper tw) throws JobPersistenceException {
+                    if (!tw.isAcquired() || !isOwner(tw)) {
+                        // The lease expired and was recovered, possibly claimed by another node
+                        return false;
+                    }
+                    fired[0] = tw.getTrigger();
+                    fired[0].triggered(calendar);
+                    tw.updateTrigger(fired[0]);
+                    // Fired, the lease is no longer needed
+                    tw.release();
+                    return true;
+                }
+            });
+            if (tw == null) {
+                if (getTriggerWrapper(trigger.getGroup(), trigger.getName()) == null) {
+                    logger.warn("Error setting trigger fired, trigger does not exist");
+                } else {
+                    logger.warn("Trigger {} in group {} not fired, its lease is no longer held by {}",
+                            new Object[] {trigger.getName(), trigger.getGroup(), instanceId});
+                }
+                removeAcquiredTrigger(trigger, instanceId);
+                return null;
+            }
+            localTrigger = fired[0];
 
             trigger.triggered(triggerCalendar);
             
@@ -1448,13 +1835,16 @@ public class RepoJobStore implements JobStore {
             if (job.isStateful()) {
                 Trigger[] triggers = getTriggersForJob(context, job.getName(), job.getGroup());
                 for (Trigger t : triggers) {
-                    TriggerWrapper tmpTw = getTriggerWrapper(t.getGroup(), t.getName());
-                    if (tmpTw != null) {
-                        if (tmpTw.getState() == Trigger.STATE_NORMAL || tmpTw.getState() == Trigger.STATE_PAUSED) {
-                            tmpTw.block();
+                    // update trigger in repo
+                    TriggerWrapper tmpTw = updateTrigger(t.getGroup(), t.getName(), new TriggerUpdate() {
+                        boolean apply(TriggerWrapper tw) {
+                            if (tw.getState() == Trigger.STATE_NORMAL || tw.getState() == Trigger.STATE_PAUSED) {
+                                tw.block();
+                            }
+                            return true;
                         }
-                        // update trigger in repo
-                        updateTriggerInRepo(t.getGroup(), tmpTw.getName(), tmpTw, tmpTw.getRevision());
+                    });
+                    if (tmpTw != null) {
                         removeWaitingTrigger(t);
                     }
                 }
@@ -1469,7 +1859,7 @@ public class RepoJobStore implements JobStore {
     @Override
     public void triggeredJobComplete(SchedulingContext context, Trigger trigger,
             JobDetail jobDetail, int triggerInstCode) throws JobPersistenceException {
-        synchronized(lock) {
+        synchronized (getJobLock(jobDetail.getGroup(), jobDetail.getName())) {
             String jobKey = getJobNameKey(jobDetail);
             JobWrapper jw = getJobWrapper(jobDetail.getGroup(), jobDetail.getName());
             JsonValue triggerValue = getTriggerFromRepo(trigger.getGroup(), trigger.getName());
@@ -1496,20 +1886,7 @@ public class RepoJobStore implements JobStore {
                     }
                     jd.setJobDataMap(newData);
                     blockedJobs.remove(getJobNameKey(jd));
-                    Trigger[] triggers = getTriggersForJob(context, jd.getName(), jd.getGroup());
-                    for (Trigger t : triggers) {
-                        TriggerWrapper tmpTw = getTriggerWrapper(t.getGroup(), t.getName());
-                        if (tmpTw != null) {
-                            if (tmpTw.getState() == Trigger.STATE_BLOCKED) {
-                                tmpTw.unblock();
-                            }
-                            // update trigger in repo
-                            updateTriggerInRepo(t.getGroup(), tmpTw.getName(), tmpTw, tmpTw.getRevision());
-                            if (!tmpTw.isPaused()) {
-                                addWaitingTrigger(t);
-                            }
-                        }
-                    }
+                    unblockTriggers(jd.getName(), jd.getGroup());
                     schedulerSignaler.signalSchedulingChange(0L);
                 }
             } else {
@@ -1674,21 +2051,22 @@ public class RepoJobStore implements JobStore {
      * @throws ObjectSetException
      */
     private void addWaitingTrigger(Trigger trigger) throws JobPersistenceException {
-        synchronized (lock) {
+        synchronized (waitingLock) {
             try {
                 int retries = 0;
                 while (writeRetries == -1 || retries <= writeRetries) {
                     try {
-                        // update repo
-                        addRepoListName(getTriggerId(trigger.getGroup(), trigger.getName()), 
-                                getWaitingTriggersRepoId(), "names");
+                        // update repo and index
+                        updateWaitingTriggers(Collections.singletonList(trigger), true);
                         break;
                     } catch (PreconditionFailedException e) {
                         logger.debug("Adding waiting trigger failed {}, retrying", e);
+                        waitingTriggerIndex.invalidate();
                         retries++;
                     }
                 }
             } catch (JsonResourceException e) {
+                waitingTriggerIndex.invalidate();
                 throw new JobPersistenceException("Error adding waiting trigger", e);
             }
         }
@@ -1702,26 +2080,123 @@ public class RepoJobStore implements JobStore {
      * @throws ObjectSetException
      */
     private boolean removeWaitingTrigger(Trigger trigger) throws JobPersistenceException {
-        synchronized (lock) {
+        return removeWaitingTriggers(Collections.singletonList(trigger));
+    }
+
+    /**
+     * Removes Triggers from the list of waiting triggers, in a single update.
+     * 
+     * @param triggers  the Triggers to remove
+     * @return  true if the list of waiting triggers changed, false otherwise
+     * @throws JobPersistenceException
+     */
+    private boolean removeWaitingTriggers(List<Trigger> triggers) throws JobPersistenceException {
+        if (triggers.isEmpty()) {
+            return false;
+        }
+        synchronized (waitingLock) {
             try {
                 boolean result = false;
                 int retries = 0;
                 while (writeRetries == -1 || retries <= writeRetries) {
                     try {
-                        result = removeRepoListName(getTriggerId(trigger.getGroup(), trigger.getName()), 
-                                getWaitingTriggersRepoId(), "names");
+                        result = updateWaitingTriggers(triggers, false);
                         break;
                     } catch (PreconditionFailedException e) {
                         logger.debug("Removing waiting trigger failed {}, retrying", e);
+                        waitingTriggerIndex.invalidate();
                         retries++;
                     }
                 }
                 return result;
             } catch (JsonResourceException e) {
+                waitingTriggerIndex.invalidate();
                 throw new JobPersistenceException("Error removing waiting trigger", e);
             }
         }
     }
+
+    /**
+     * Adds Triggers to, or removes them from, the list of waiting triggers in the repo and
+     * in the waiting triggers index. The list is written with the revision the index holds,
+     * a concurrent modification fails the write and has the index reloaded on retry.
+     *
+     * @param triggers  the Triggers to add or remove
+     * @param add       true to add the Triggers, false to remove them
+     * @return  true if the list of waiting triggers changed, false otherwise
+     * @throws JobPersistenceException
+     * @throws JsonResourceException
+     */
+    private boolean updateWaitingTriggers(List<Trigger> triggers, boolean add)
+            throws JobPersistenceException, JsonResourceException {
+        WaitingTriggerIndex index = getWaitingTriggerIndex();
+        List<String> names = index.getIds();
+        List<Trigger> changed = new ArrayList<Trigger>();
+        for (Trigger trigger : triggers) {
+            String id = getTriggerId(trigger.getGroup(), trigger.getName());
+            if (index.contains(id) == add) {
+                if (add) {
+                    // Already waiting, only the fire time may have changed
+                    index.put(id, trigger);
+                }
+            } else {
+                if (add) {
+                    names.add(id);
+                } else {
+                    names.remove(id);
+                }
+                changed.add(trigger);
+            }
+        }
+        if (changed.isEmpty()) {
+            return false;
+        }
+        Map<String, Object> map = new HashMap<String, Object>();
+        map.put("names", names);
+        JsonValue result = accessor.update(getWaitingTriggersRepoId(), index.getRevision(), new JsonValue(map));
+        for (Trigger trigger : changed) {
+            String id = getTriggerId(trigger.getGroup(), trigger.getName());
+            if (add) {
+                index.put(id, trigger);
+            } else {
+                index.remove(id);
+            }
+        }
+        index.setRevision(getRevision(result));
+        return true;
+    }
+
+    /**
+     * Returns the index of the triggers in the "waiting" state, loading it if necessary.
+     * The revision of the index is verified against the repo every indexVerifyInterval
+     * milliseconds, and the index reloaded if the repo holds a different revision.
+     *
+     * @return  the waiting triggers index
+     * @throws JobPersistenceException
+     */
+    private WaitingTriggerIndex getWaitingTriggerIndex() throws JobPersistenceException {
+        synchronized (waitingLock) {
+            if (waitingTriggerIndex.isLoaded()
+                    && System.currentTimeMillis() - waitingTriggerIndex.getVerified() >= indexVerifyInterval) {
+                try {
+                    String revision = getRevision(readFromRepo(getWaitingTriggersRepoId()));
+                    if (revision != null && revision.equals(waitingTriggerIndex.getRevision())) {
+                        waitingTriggerIndex.setRevision(revision);
+                    } else {
+                        logger.debug("Waiting triggers changed in repo, reloading");
+                        waitingTriggerIndex.invalidate();
+                    }
+                } catch (JsonResourceException e) {
+                    logger.warn("Error verifying waiting triggers", e);
+                    waitingTriggerIndex.invalidate();
+                }
+            }
+            if (!waitingTriggerIndex.isLoaded()) {
+                loadWaitingTriggers();
+            }
+            return waitingTriggerIndex;
+        }
+    }
     
     /**
      * Adds a Trigger to the list of acquired triggers.
@@ -1732,13 +2207,30 @@ public class RepoJobStore implements JobStore {
      * @throws ObjectSetException
      */
     private void addAcquiredTrigger(Trigger trigger, String instanceId) throws JobPersistenceException {
-        synchronized (lock) {
+        addAcquiredTriggers(Collections.singletonList(trigger), instanceId);
+    }
+
+    /**
+     * Adds Triggers to the list of acquired triggers, in a single update.
+     * 
+     * @param triggers   the Triggers to add
+     * @param instanceId the instance ID
+     * @throws JobPersistenceException
+     */
+    private void addAcquiredTriggers(List<Trigger> triggers, String instanceId) throws JobPersistenceException {
+        if (triggers.isEmpty()) {
+            return;
+        }
+        List<String> ids = new ArrayList<String>(triggers.size());
+        for (Trigger trigger : triggers) {
+            ids.add(getTriggerId(trigger.getGroup(), trigger.getName()));
+        }
+        synchronized (waitingLock) {
             try {
                 int retries = 0;
                 while (writeRetries == -1 || retries <= writeRetries) {
                     try {
-                        addRepoListName(getTriggerId(trigger.getGroup(), trigger.getName()), 
-                                getAcquiredTriggersRepoId(), instanceId);
+                        addRepoListNames(ids, getAcquiredTriggersRepoId(), instanceId);
                         break;
                     } catch (PreconditionFailedException e) {
                         logger.debug("Adding acquired trigger failed {}, retrying", e);
@@ -1760,7 +2252,7 @@ public class RepoJobStore implements JobStore {
      * @throws ObjectSetException
      */
     private boolean removeAcquiredTrigger(Trigger trigger, String instanceId) throws JobPersistenceException {
-        synchronized (lock) {
+        synchronized (waitingLock) {
             try {
                 boolean result = false;
                 int retries = 0;
@@ -1790,7 +2282,7 @@ public class RepoJobStore implements JobStore {
      * @throws JobPersistenceException
      */
     private boolean updateAcquiredTriggers(AcquiredTriggers acquiredTriggers, String instanceId) throws JobPersistenceException {
-        synchronized (lock) {
+        synchronized (waitingLock) {
             String id = getAcquiredTriggersRepoId();
             if (!setAccessor()) {
                 throw new JobPersistenceException("Repo router is null");
@@ -1809,6 +2301,7 @@ public class RepoJobStore implements JobStore {
                 }
                 List<Trigger> triggers = acquiredTriggers.getTriggers();
                 map.put(instanceId, triggers);
+                acquiredTriggersCache = null;
                 // update repo
                 JsonValue newValue = accessor.update(id, (String)map.get("_rev"), new JsonValue(map));
                 acquiredTriggers.setRevision((String)newValue.asMap().get("_rev"));
@@ -1827,6 +2320,9 @@ public class RepoJobStore implements JobStore {
      * @throws JobPersistenceException
      */
     private AcquiredTriggers getAcquiredTriggers(String instanceId) throws JobPersistenceException {
+        synchronized (waitingLock) {
+            acquiredTriggersCache = null;
+        }
         List<Trigger> acquiredTriggers = new ArrayList<Trigger>();
         List<String> acquiredTriggerIds = new ArrayList<String>();
         String repoId = getAcquiredTriggersRepoId();
@@ -1876,13 +2372,12 @@ public class RepoJobStore implements JobStore {
     }
     
     /**
-     * Returns the a WaitingTriggers object which wraps the Tree of all triggers in the "waiting" state
+     * Loads all triggers in the "waiting" state from the repo into the waiting triggers index.
      * 
-     * @return  the WaitingTriggers object
      * @throws JobPersistenceException
      */
-    private WaitingTriggers getWaitingTriggers() throws JobPersistenceException {
-        TreeSet<Trigger> waitingTriggers = new TreeSet(new TriggerComparator());
+    private void loadWaitingTriggers() throws JobPersistenceException {
+        Map<String, Trigger> waitingTriggers = new HashMap<String, Trigger>();
         List<String> waitingTriggersRepoList = null;
         String repoId = getWaitingTriggersRepoId();
         String revision = null;
@@ -1921,10 +2416,11 @@ public class RepoJobStore implements JobStore {
                     logger.warn("Could not add {} to list of waiting Triggers. Trigger not found in repo", id);
                 } else {
                     logger.debug("Found waiting trigger {} in group {}", new Object[]{tw.getName(),tw.getGroup()});
-                    waitingTriggers.add(tw.getTrigger());
+                    waitingTriggers.put(id, tw.getTrigger());
                 }
             }
-            return new WaitingTriggers(waitingTriggers, revision);
+            logger.debug("Loaded {} waiting triggers", waitingTriggers.size());
+            waitingTriggerIndex.load(waitingTriggers, revision);
         } catch (JsonResourceException e) {
             logger.warn("Error intializing waiting triggers", e);
             throw new JobPersistenceException("Error intializing waiting triggers", e);
@@ -1965,25 +2461,37 @@ public class RepoJobStore implements JobStore {
      */
     private boolean addRepoListName(String name, String id, String list) 
             throws JobPersistenceException, JsonResourceException {
-        synchronized (lock) {
-            if (!setAccessor()) {
-                throw new JobPersistenceException("Repo router is null");
-            }
-            logger.debug("Adding name: {} to {}", new Object[]{name, id});
-            Map<String, Object> map = getOrCreateRepo(id);
-            String rev = (String)map.get("_rev");
-            
-            List<String> names = (List<String>) map.get(list);
-            if (names == null) {
-                names = new ArrayList<String>();
-                map.put(list, names);
-            }
-            boolean result = names.add(name);
-            // update repo
-            accessor.update(id, rev, new JsonValue(map));
-            return result;
-        }
+        return addRepoListNames(Collections.singletonList(name), id, list);
+    }
 
+    /**
+     * Adds names to a list of names in the repo, in a single update.
+     * 
+     * @param names the names to add
+     * @param id    the repo id
+     * @param list  the name of the list in the repo object
+     * @return  true if the list changed
+     * @throws JobPersistenceException
+     * @throws JsonResourceException
+     */
+    private boolean addRepoListNames(List<String> names, String id, String list) 
+            throws JobPersistenceException, JsonResourceException {
+        if (!setAccessor()) {
+            throw new JobPersistenceException("Repo router is null");
+        }
+        logger.debug("Adding names: {} to {}", new Object[]{names, id});
+        Map<String, Object> map = getRepoListObject(id);
+        String rev = (String)map.get("_rev");
+        
+        List<String> existing = (List<String>) map.get(list);
+        if (existing == null) {
+            existing = new ArrayList<String>();
+            map.put(list, existing);
+        }
+        boolean result = existing.addAll(names);
+        // update repo
+        updateRepoList(id, rev, map);
+        return result;
     }
     
     /**
@@ -1997,47 +2505,95 @@ public class RepoJobStore implements JobStore {
      */
      private boolean removeRepoListName(String name, String id, String list) 
             throws JobPersistenceException, JsonResourceException {
-        synchronized (lock) {
-            if (!setAccessor()) {
-                throw new JobPersistenceException("Repo router is null");
-            }
-            logger.debug("Removing name: {} to {}", new Object[]{name, id});
-            Map<String, Object> map = getOrCreateRepo(id);
-            String rev = (String)map.get("_rev");
-            
-            List<String> names = (List<String>) map.get(list);
-            if (names == null) {
-                names = new ArrayList<String>();
-                map.put(list, names);
-            }
-            boolean result = names.remove(name);
-            if (result) {
-                // update repo
-                accessor.update(id, rev, new JsonValue(map));
+        if (!setAccessor()) {
+            throw new JobPersistenceException("Repo router is null");
+        }
+        logger.debug("Removing name: {} to {}", new Object[]{name, id});
+        Map<String, Object> map = getRepoListObject(id);
+        String rev = (String)map.get("_rev");
+        
+        List<String> names = (List<String>) map.get(list);
+        if (names == null) {
+            names = new ArrayList<String>();
+            map.put(list, names);
+        }
+        boolean result = names.remove(name);
+        if (result) {
+            // update repo
+            updateRepoList(id, rev, map);
+        }
+        return result;
+
+    }
+
+    /**
+     * Gets a repo object holding lists of names, creating it if it doesn't already exist.
+     * The acquired triggers object is served from its write-through cache.
+     *
+     * @param repoId    the repo id
+     * @return  the repo object
+     * @throws JobPersistenceException
+     * @throws JsonResourceException
+     */
+    private Map<String, Object> getRepoListObject(String repoId)
+            throws JobPersistenceException, JsonResourceException {
+        if (!repoId.equals(getAcquiredTriggersRepoId())) {
+            return getOrCreateRepo(repoId);
+        }
+        synchronized (waitingLock) {
+            if (acquiredTriggersCache == null) {
+                acquiredTriggersCache = getOrCreateRepo(repoId);
             }
-            return result;
+            return acquiredTriggersCache;
         }
+    }
 
+    /**
+     * Updates a repo object holding lists of names, keeping the acquired triggers cache current.
+     *
+     * @param repoId    the repo id
+     * @param rev       the revision of the repo object
+     * @param map       the updated repo object
+     * @throws JsonResourceException
+     */
+    private void updateRepoList(String repoId, String rev, Map<String, Object> map)
+            throws JsonResourceException {
+        if (!repoId.equals(getAcquiredTriggersRepoId())) {
+            accessor.update(repoId, rev, new JsonValue(map));
+            return;
+        }
+        synchronized (waitingLock) {
+            try {
+                String newRev = getRevision(accessor.update(repoId, rev, new JsonValue(map)));
+                if (newRev != null) {
+                    map.put("_rev", newRev);
+                    acquiredTriggersCache = map;
+                } else {
+                    acquiredTriggersCache = null;
+                }
+            } catch (JsonResourceException e) {
+                acquiredTriggersCache = null;
+                throw e;
+            }
+        }
     }
     
     private Map<String, Object> getOrCreateRepo(String repoId) 
             throws JobPersistenceException, JsonResourceException {
-        synchronized (lock) {
-            if (!setAccessor()) {
-                throw new JobPersistenceException("Repo router is null");
-            }
-            Map<String, Object> map;
+        if (!setAccessor()) {
+            throw new JobPersistenceException("Repo router is null");
+        }
+        Map<String, Object> map;
 
-            map = readFromRepo(repoId).asMap();
-            
-            if (map == null) {
-                map = new HashMap<String, Object>();
-                // create in repo
-                logger.debug("Creating repo {}", repoId);
-                map = accessor.create(repoId, new JsonValue(map)).asMap();
-            }
-            return map;
+        map = readFromRepo(repoId).asMap();
+        
+        if (map == null) {
+            map = new HashMap<String, Object>();
+            // create in repo
+            logger.debug("Creating repo {}", repoId);
+            map = accessor.create(repoId, new JsonValue(map)).asMap();
         }
+        return map;
     }
     
     private List<String> getOrCreateRepoList(String repoId, String listId) 
@@ -2085,17 +2641,24 @@ public class RepoJobStore implements JobStore {
      */
     private JsonValue getTriggerFromRepo(String group, String name) 
             throws JobPersistenceException {
-        synchronized (lock) {
-            if (!setAccessor()) {
-                throw new JobPersistenceException("Repo router is null");
-            }
-            try {
-                logger.trace("Getting trigger {} in group {} from repo", name, group);
-                return readFromRepo(getTriggersRepoId(group, name));
-            } catch (JsonResourceException e) {
-                logger.warn("Error getting trigger from repo", e);
-                throw new JobPersistenceException("Error getting trigger from repo", e);
+        if (!setAccessor()) {
+            throw new JobPersistenceException("Repo router is null");
+        }
+        String repoId = getTriggersRepoId(group, name);
+        Map<String, Object> cached = triggerCache.get(repoId);
+        if (cached != null) {
+            return new JsonValue(new HashMap<String, Object>(cached));
+        }
+        try {
+            logger.trace("Getting trigger {} in group {} from repo", name, group);
+            JsonValue value = readFromRepo(repoId);
+            if (!value.isNull()) {
+                triggerCache.put(repoId, new HashMap<String, Object>(value.asMap()));
             }
+            return value;
+        } catch (JsonResourceException e) {
+            logger.warn("Error getting trigger from repo", e);
+            throw new JobPersistenceException("Error getting trigger from repo", e);
         }
     }
 
@@ -2109,23 +2672,116 @@ public class RepoJobStore implements JobStore {
      */
     private void updateTriggerInRepo(String group, String name, TriggerWrapper tw, String rev) 
             throws JobPersistenceException {
-        synchronized (lock) {
-            if (!setAccessor()) {
-                throw new JobPersistenceException("Repo router is null");
+        if (!setAccessor()) {
+            throw new JobPersistenceException("Repo router is null");
+        }
+        try {
+            writeTrigger(group, name, tw, rev);
+        } catch (JsonResourceException e) {
+            logger.warn("Error updating trigger in repo", e);
+            throw new JobPersistenceException("Error updating trigger in repo", e);
+        }
+    }
+
+    /**
+     * Writes a trigger to the repo, if the repo still holds the given revision of it.
+     *
+     * @param group the group id of the trigger
+     * @param name the name of the trigger
+     * @param tw the TriggerWrapper representing the updated trigger
+     * @param rev the revision the update is based on
+     * @throws JsonResourceException if the write fails, a PreconditionFailedException
+     *         if the trigger was modified concurrently
+     */
+    private void writeTrigger(String group, String name, TriggerWrapper tw, String rev)
+            throws JsonResourceException {
+        String repoId = getTriggersRepoId(group, name);
+        if (logger.isTraceEnabled()) {
+            logger.trace("Updating trigger {}", repoId);
+        }
+        triggerCache.remove(repoId);
+        JsonValue value = tw.getValue();
+        JsonValue result = accessor.update(repoId, rev, value);
+        String newRev = cacheTrigger(repoId, value, result);
+        if (newRev != null) {
+            tw.setRevision(newRev);
+        }
+    }
+
+    /**
+     * Applies an update to a trigger optimistically: the trigger is read (usually from the
+     * trigger cache), updated and written back with the revision it was read at. If the
+     * trigger was modified concurrently, the update is applied again to a fresh copy.
+     *
+     * @param group the group id of the trigger
+     * @param name the name of the trigger
+     * @param update the update to apply
+     * @return the updated TriggerWrapper, or null if the trigger does not exist or the
+     *         update was not applied
+     * @throws JobPersistenceException
+     */
+    private TriggerWrapper updateTrigger(String group, String name, TriggerUpdate update)
+            throws JobPersistenceException {
+        if (!setAccessor()) {
+            throw new JobPersistenceException("Repo router is null");
+        }
+        int retries = 0;
+        while (true) {
+            TriggerWrapper tw = getTriggerWrapper(group, name);
+            if (tw == null || !update.apply(tw)) {
+                return null;
             }
             try {
-                if (logger.isTraceEnabled()) {
-                    logger.trace("Getting trigger {}", getTriggersRepoId(group, name));
+                writeTrigger(group, name, tw, tw.getRevision());
+                return tw;
+            } catch (PreconditionFailedException e) {
+                if (writeRetries != -1 && retries >= writeRetries) {
+                    logger.warn("Error updating trigger in repo", e);
+                    throw new JobPersistenceException("Error updating trigger in repo", e);
                 }
-                String repoId = getTriggersRepoId(group, name);
-                accessor.update(repoId, rev, tw.getValue());
+                logger.debug("Trigger {} in group {} modified concurrently, retrying", name, group);
+                retries++;
             } catch (JsonResourceException e) {
                 logger.warn("Error updating trigger in repo", e);
                 throw new JobPersistenceException("Error updating trigger in repo", e);
             }
         }
     }
-    
+
+    /**
+     * Adds a trigger, as just written to the repo, to the trigger cache.
+     *
+     * @param repoId the repo id of the trigger
+     * @param value the trigger value written to the repo
+     * @param result the result of the write
+     * @return the new revision of the trigger, or null if unknown (the trigger is then not cached)
+     */
+    private String cacheTrigger(String repoId, JsonValue value, JsonValue result) {
+        String rev = getRevision(result);
+        if (rev != null) {
+            Map<String, Object> map = new HashMap<String, Object>(value.asMap());
+            map.put("_rev", rev);
+            triggerCache.put(repoId, map);
+        } else {
+            triggerCache.remove(repoId);
+        }
+        return rev;
+    }
+
+    /**
+     * Returns the revision of a repo object, or of the result of a write to the repo.
+     *
+     * @param value the repo object or write result
+     * @return the revision, or null if not present
+     */
+    private static String getRevision(JsonValue value) {
+        if (value == null || !value.isMap()) {
+            return null;
+        }
+        Object rev = value.asMap().get("_rev");
+        return rev == null ? null : rev.toString();
+    }
+
     /**
      * Gets a trigger as a TriggerWrapper object.
      * 
@@ -2174,25 +2830,276 @@ public class RepoJobStore implements JobStore {
     /**
      * Processes a misfired Trigger.
      * 
-     * @param trigger the Trigger to process
+     * @param group the group of the Trigger to process
+     * @param name the name of the Trigger to process
+     * @return the updated Trigger, or null if the Trigger does not exist
      * @throws JobPersistenceException
      */
-    private void processTriggerMisfired(TriggerWrapper triggerWrapper) 
+    private Trigger processTriggerMisfired(String group, String name) 
             throws JobPersistenceException {
-        Trigger trigger = triggerWrapper.getTrigger();
+        final Trigger[] misfired = new Trigger[2];
+        TriggerWrapper triggerWrapper = updateTrigger(group, name, new TriggerUpdate() {
+            boolean apply(TriggerWrapper tw) throws JobPersistenceException {
+                Trigger trigger = tw.getTrigger();
+                misfired[0] = (Trigger) trigger.clone();
+                Calendar calendar = retrieveCalendar(null, trigger.getCalendarName());
+                trigger.updateAfterMisfire(calendar);
+                tw.updateTrigger(trigger);
+                if (trigger.getNextFireTime() == null) {
+                    tw.setState(Trigger.STATE_COMPLETE);
+                }
+                misfired[1] = trigger;
+                return true;
+            }
+        });
+        if (triggerWrapper == null) {
+            return null;
+        }
+        Trigger trigger = misfired[1];
         logger.trace("Signaling Trigger Listener Misfired");
-        schedulerSignaler.notifyTriggerListenersMisfired(trigger);
-        Calendar calendar = retrieveCalendar(null, trigger.getCalendarName());
-        trigger.updateAfterMisfire(calendar);
-        triggerWrapper.updateTrigger(trigger);
-        updateTriggerInRepo(trigger.getGroup(), trigger.getName(), triggerWrapper, triggerWrapper.getRevision());
+        schedulerSignaler.notifyTriggerListenersMisfired(misfired[0]);
         if (trigger.getNextFireTime() == null) {
             schedulerSignaler.notifySchedulerListenersFinalized(trigger);
-            triggerWrapper.setState(Trigger.STATE_COMPLETE);
-            // update trigger in repo
-            updateTriggerInRepo(trigger.getGroup(), trigger.getName(), triggerWrapper, triggerWrapper.getRevision());
             removeWaitingTrigger(trigger);
         }
+        return trigger;
+    }
+
+    /**
+     * Unblocks the triggers of a stateful job, putting them back in the "waiting" state
+     * unless paused.
+     * 
+     * @param jobName   the name of the job
+     * @param jobGroup  the group of the job
+     * @throws JobPersistenceException
+     */
+    private void unblockTriggers(String jobName, String jobGroup) throws JobPersistenceException {
+        Trigger[] triggers = getTriggersForJob(null, jobName, jobGroup);
+        for (Trigger t : triggers) {
+            // update trigger in repo
+            TriggerWrapper tw = updateTrigger(t.getGroup(), t.getName(), new TriggerUpdate() {
+                boolean apply(TriggerWrapper tw) {
+                    if (tw.getState() == Trigger.STATE_BLOCKED) {
+                        tw.unblock();
+                    }
+                    return true;
+                }
+            });
+            if (tw != null && !tw.isPaused()) {
+                addWaitingTrigger(t);
+            }
+        }
+    }
+
+    /**
+     * Checks this node in, and recovers the triggers acquired by failed nodes or whose
+     * lease has expired. Runs every checkinInterval milliseconds once the scheduler is started.
+     */
+    private void clusterCheckin() {
+        clusterCheckin(System.currentTimeMillis());
+    }
+
+    /**
+     * Checks this node in, and recovers the triggers of failed nodes, as of the given time.
+     * 
+     * @param now   the current time, in milliseconds
+     */
+    void clusterCheckin(long now) {
+        try {
+            if (!setAccessor()) {
+                logger.debug("Repo router is null, skipping check in");
+                return;
+            }
+            Map<String, Object> checkins = checkin(now);
+            recoverTriggers(checkins, now);
+        } catch (Exception e) {
+            logger.warn("Error checking in scheduler instance {}", instanceId, e);
+        }
+    }
+
+    /**
+     * Records the check in time of this node.
+     * 
+     * @param now   the current time, in milliseconds
+     * @return  the check in times of all nodes, keyed by instance ID
+     * @throws JobPersistenceException
+     */
+    private Map<String, Object> checkin(long now) throws JobPersistenceException {
+        String repoId = getCheckinsRepoId();
+        int retries = 0;
+        while (true) {
+            try {
+                Map<String, Object> map = getRepoListObject(repoId);
+                map.put(instanceId, now);
+                updateRepoList(repoId, (String) map.get("_rev"), map);
+                return map;
+            } catch (PreconditionFailedException e) {
+                if (writeRetries != -1 && retries >= writeRetries) {
+                    throw new JobPersistenceException("Error checking in", e);
+                }
+                logger.debug("Checking in failed {}, retrying", e);
+                retries++;
+            } catch (JsonResourceException e) {
+                throw new JobPersistenceException("Error checking in", e);
+            }
+        }
+    }
+
+    /**
+     * Recovers the triggers acquired by other nodes that have failed (not checked in within
+     * failureThreshold milliseconds), or whose lease has expired. A node without a check in
+     * record, such as one not running clustered, is not considered failed, only its expired
+     * leases are recovered. The lists of failed nodes are removed once all their triggers
+     * are recovered.
+     * 
+     * @param checkins  the check in times of all nodes, keyed by instance ID
+     * @param now       the current time, in milliseconds
+     * @throws JobPersistenceException
+     */
+    private void recoverTriggers(Map<String, Object> checkins, long now) throws JobPersistenceException {
+        synchronized (waitingLock) {
+            // Other nodes write to the acquired triggers, read them from the repo
+            acquiredTriggersCache = null;
+            Map<String, Object> acquired;
+            try {
+                acquired = readFromRepo(getAcquiredTriggersRepoId()).asMap();
+            } catch (JsonResourceException e) {
+                throw new JobPersistenceException("Error reading acquired triggers", e);
+            }
+            if (acquired == null) {
+                return;
+            }
+            for (Map.Entry<String, Object> entry : acquired.entrySet()) {
+                String nodeId = entry.getKey();
+                if (nodeId.startsWith("_") || nodeId.equals(instanceId) || !(entry.getValue() instanceof List)) {
+                    continue;
+                }
+                Object checkin = checkins.get(nodeId);
+                boolean failed = checkin instanceof Number
+                        && now - ((Number) checkin).longValue() > failureThreshold;
+                if (failed) {
+                    logger.info("Scheduler instance {} has failed, recovering its triggers", nodeId);
+                }
+                boolean recovered = true;
+                for (Object id : new ArrayList<Object>((List<?>) entry.getValue())) {
+                    if (id instanceof String) {
+                        recovered &= recoverTrigger((String) id, nodeId, failed, now);
+                    }
+                }
+                if (failed && recovered) {
+                    removeRepoListKey(getAcquiredTriggersRepoId(), nodeId);
+                    removeRepoListKey(getCheckinsRepoId(), nodeId);
+                }
+            }
+        }
+    }
+
+    /**
+     * Recovers a trigger acquired by another node, if that node has failed or the lease on
+     * the trigger has expired. The trigger is released and put back in the "waiting" state,
+     * with its misfire instruction applied if it has misfired. The triggers of a stateful job
+     * left blocked by a failed node are unblocked.
+     * 
+     * @param id        the trigger ID
+     * @param nodeId    the ID of the instance that acquired the trigger
+     * @param failed    true if that instance has failed
+     * @param now       the current time, in milliseconds
+     * @return  true if the trigger is no longer acquired by that instance
+     * @throws JobPersistenceException
+     */
+    private boolean recoverTrigger(String id, final String nodeId, final boolean failed, final long now)
+            throws JobPersistenceException {
+        String group = getGroupFromId(id);
+        String name = getNameFromId(id);
+        final boolean[] blocked = new boolean[1];
+        TriggerWrapper tw = updateTrigger(group, name, new TriggerUpdate() {
+            boolean apply(TriggerWrapper tw) {
+                blocked[0] = failed && tw.getState() == Trigger.STATE_BLOCKED;
+                boolean owned = tw.getOwner() == null ? failed : tw.getOwner().equals(nodeId);
+                if (tw.isAcquired() && owned && (failed || tw.isLeaseExpired(now))) {
+                    tw.release();
+                    return true;
+                }
+                return blocked[0];
+            }
+        });
+        if (tw == null) {
+            TriggerWrapper current = getTriggerWrapper(group, name);
+            if (current == null || !current.isAcquired() || !nodeId.equals(current.getOwner())) {
+                // Already fired or released, only the list entry is left
+                if (failed) {
+                    removeAcquiredTriggerId(id, nodeId);
+                }
+                return true;
+            }
+            return false;
+        }
+        Trigger trigger = tw.getTrigger();
+        logger.debug("Recovering trigger {} in group {} acquired by {}", new Object[] {name, group, nodeId});
+        if (blocked[0]) {
+            unblockTriggers(trigger.getJobName(), trigger.getJobGroup());
+        } else if (hasTriggerMisfired(trigger)) {
+            trigger = processTriggerMisfired(group, name);
+            if (trigger != null && trigger.getNextFireTime() != null) {
+                addWaitingTrigger(trigger);
+            }
+        } else if (trigger.getNextFireTime() != null) {
+            addWaitingTrigger(trigger);
+        }
+        removeAcquiredTriggerId(id, nodeId);
+        schedulerSignaler.signalSchedulingChange(0L);
+        return true;
+    }
+
+    /**
+     * Removes a trigger ID from the acquired triggers list of an instance.
+     * 
+     * @param id        the trigger ID
+     * @param nodeId    the instance ID
+     * @throws JobPersistenceException
+     */
+    private void removeAcquiredTriggerId(String id, String nodeId) throws JobPersistenceException {
+        try {
+            int retries = 0;
+            while (writeRetries == -1 || retries <= writeRetries) {
+                try {
+                    removeRepoListName(id, getAcquiredTriggersRepoId(), nodeId);
+                    break;
+                } catch (PreconditionFailedException e) {
+                    logger.debug("Removing acquired trigger failed {}, retrying", e);
+                    retries++;
+                }
+            }
+        } catch (JsonResourceException e) {
+            throw new JobPersistenceException("Error removing acquired trigger", e);
+        }
+    }
+
+    /**
+     * Removes a key, such as the list of a failed instance, from a repo object.
+     * 
+     * @param repoId    the repo id
+     * @param key       the key to remove
+     * @throws JobPersistenceException
+     */
+    private void removeRepoListKey(String repoId, String key) throws JobPersistenceException {
+        try {
+            int retries = 0;
+            while (writeRetries == -1 || retries <= writeRetries) {
+                try {
+                    Map<String, Object> map = getRepoListObject(repoId);
+                    if (map.remove(key) != null) {
+                        updateRepoList(repoId, (String) map.get("_rev"), map);
+                    }
+                    break;
+                } catch (PreconditionFailedException e) {
+                    logger.debug("Removing {} from {} failed {}, retrying", new Object[] {key, repoId, e});
+                    retries++;
+                }
+            }
+        } catch (JsonResourceException e) {
+            throw new JobPersistenceException("Error removing " + key + " from " + repoId, e);
+        }
     }
 
     /**
@@ -2206,10 +3113,27 @@ public class RepoJobStore implements JobStore {
                 .append(jobDetail.getName()).toString();
     }
 
+    /**
+     * An update of a trigger, applied by {@link RepoJobStore#updateTrigger}. It may be
+     * applied more than once, to fresh copies of the trigger, if the trigger is modified
+     * concurrently.
+     */
+    private static abstract class TriggerUpdate {
+
+        /**
+         * Applies the update.
+         *
+         * @param tw the current trigger
+         * @return true if the trigger should be written, false to leave it unchanged
+         * @throws JobPersistenceException
+         */
+        abstract boolean apply(TriggerWrapper tw) throws JobPersistenceException;
+    }
+
     /**
      * A Comparator used to compare two Triggers
      */
-    protected class TriggerComparator implements Comparator {
+    protected static class TriggerComparator implements Comparator {
 
         public int compare(Object t1, Object t2) {
             Trigger trigger1 = (Trigger)t1;
@@ -2228,43 +3152,6 @@ public class RepoJobStore implements JobStore {
         }
     }
 
-    /**
-     * A wrapper for the tree of waiting triggers
-     */
-    protected class WaitingTriggers {
-        
-        private TreeSet<Trigger> triggers;
-        private String revision;
-        
-        public WaitingTriggers(TreeSet<Trigger> triggers, String rev) {
-            this.triggers = triggers;
-            revision = rev;
-        }
-
-        public TreeSet<Trigger> getTriggers() {
-            return triggers;
-        }
-
-        public String getRevision() {
-            return revision;
-        }
-
-        public void setRevision(String rev) {
-            revision = rev;
-        }
-        
-        public List<String> getTriggerNamesList() {
-            List<String> names = new ArrayList<String>();
-            Iterator<Trigger> iterator = triggers.iterator();
-            while (iterator.hasNext()) {
-                Trigger t = iterator.next();
-                names.add(getTriggerId(t.getGroup(), t.getName()));
-            }
-            return names;
-        }
-        
-    }
-    
     /**
      * A wrapper for the list of acquired triggers
      */
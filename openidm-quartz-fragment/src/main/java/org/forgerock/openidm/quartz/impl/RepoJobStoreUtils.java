@@ -30,12 +30,34 @@ import java.io.ByteArrayOutputStream;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TimeZone;
 
 import org.apache.commons.codec.binary.Base64;
+import org.quartz.CronTrigger;
+import org.quartz.JobDataMap;
+import org.quartz.JobDetail;
 import org.quartz.JobPersistenceException;
+import org.quartz.SimpleTrigger;
+import org.quartz.Trigger;
 
 public class RepoJobStoreUtils {
 
+    /**
+     * The trigger type of a JSON mapped CronTrigger.
+     */
+    public static final String TRIGGER_TYPE_CRON = "cron";
+
+    /**
+     * The trigger type of a JSON mapped SimpleTrigger.
+     */
+    public static final String TRIGGER_TYPE_SIMPLE = "simple";
+
     /**
      * Converts a serializable object into a String.
      * 
@@ -79,4 +101,287 @@ public class RepoJobStoreUtils {
             throw new JobPersistenceException(e.getMessage());
         }
     }
+
+    /**
+     * Converts a Trigger into a JSON object model (a Map of JSON compatible values), so it can
+     * be stored in, and queried from, the repo without Java serialization.
+     * <p/>
+     * Only CronTrigger and SimpleTrigger, with a JobDataMap holding JSON compatible values,
+     * are mapped. Other triggers have to be stored serialized.
+     *
+     * @param trigger the Trigger to convert
+     * @return the JSON object model of the Trigger, or null if the Trigger cannot be mapped
+     */
+    public static Map<String, Object> triggerToJson(Trigger trigger) {
+        Map<String, Object> map = new HashMap<String, Object>();
+        if (trigger.getClass() == CronTrigger.class) {
+            CronTrigger cronTrigger = (CronTrigger) trigger;
+            map.put("type", TRIGGER_TYPE_CRON);
+            map.put("cronExpression", cronTrigger.getCronExpression());
+            if (cronTrigger.getTimeZone() != null) {
+                map.put("timeZone", cronTrigger.getTimeZone().getID());
+            }
+        } else if (trigger.getClass() == SimpleTrigger.class) {
+            SimpleTrigger simpleTrigger = (SimpleTrigger) trigger;
+            map.put("type", TRIGGER_TYPE_SIMPLE);
+            map.put("repeatCount", simpleTrigger.getRepeatCount());
+            map.put("repeatInterval", simpleTrigger.getRepeatInterval());
+            map.put("timesTriggered", simpleTrigger.getTimesTriggered());
+        } else {
+            return null;
+        }
+        Map<String, Object> jobDataMap = jobDataMapToJson(trigger.getJobDataMap());
+        if (jobDataMap == null) {
+            return null;
+        }
+        map.put("jobDataMap", jobDataMap);
+        map.put("name", trigger.getName());
+        map.put("group", trigger.getGroup());
+        map.put("jobName", trigger.getJobName());
+        map.put("jobGroup", trigger.getJobGroup());
+        map.put("description", trigger.getDescription());
+        map.put("calendarName", trigger.getCalendarName());
+        map.put("fireInstanceId", trigger.getFireInstanceId());
+        map.put("priority", trigger.getPriority());
+        map.put("misfireInstruction", trigger.getMisfireInstruction());
+        map.put("volatile", trigger.isVolatile());
+        map.put("listeners", toList(trigger.getTriggerListenerNames()));
+        map.put("startTime", fromDate(trigger.getStartTime()));
+        map.put("endTime", fromDate(trigger.getEndTime()));
+        map.put("nextFireTime", fromDate(trigger.getNextFireTime()));
+        map.put("previousFireTime", fromDate(trigger.getPreviousFireTime()));
+        return map;
+    }
+
+    /**
+     * Converts the JSON object model of a Trigger, as returned by {@link #triggerToJson(Trigger)},
+     * back into a Trigger.
+     *
+     * @param map the JSON object model of the Trigger
+     * @return the Trigger
+     * @throws JobPersistenceException if the object model does not represent a valid Trigger
+     */
+    public static Trigger triggerFromJson(Map<String, Object> map) throws JobPersistenceException {
+        try {
+            String type = (String) map.get("type");
+            Trigger trigger;
+            if (TRIGGER_TYPE_CRON.equals(type)) {
+                CronTrigger cronTrigger = new CronTrigger();
+                String timeZone = (String) map.get("timeZone");
+                if (timeZone != null) {
+                    cronTrigger.setTimeZone(TimeZone.getTimeZone(timeZone));
+                }
+                cronTrigger.setCronExpression((String) map.get("cronExpression"));
+                trigger = cronTrigger;
+            } else if (TRIGGER_TYPE_SIMPLE.equals(type)) {
+                SimpleTrigger simpleTrigger = new SimpleTrigger();
+                simpleTrigger.setRepeatCount(toInt(map.get("repeatCount")));
+                simpleTrigger.setRepeatInterval(toLong(map.get("repeatInterval")));
+                simpleTrigger.setTimesTriggered(toInt(map.get("timesTriggered")));
+                trigger = simpleTrigger;
+            } else {
+                throw new JobPersistenceException("Unsupported trigger type " + type);
+            }
+            trigger.setName((String) map.get("name"));
+            trigger.setGroup((String) map.get("group"));
+            if (map.get("jobName") != null) {
+                trigger.setJobName((String) map.get("jobName"));
+                trigger.setJobGroup((String) map.get("jobGroup"));
+            }
+            trigger.setDescription((String) map.get("description"));
+            trigger.setCalendarName((String) map.get("calendarName"));
+            trigger.setFireInstanceId((String) map.get("fireInstanceId"));
+            trigger.setPriority(toInt(map.get("priority")));
+            trigger.setMisfireInstruction(toInt(map.get("misfireInstruction")));
+            trigger.setVolatility(Boolean.TRUE.equals(map.get("volatile")));
+            List<String> listeners = (List<String>) map.get("listeners");
+            if (listeners != null) {
+                for (String listener : listeners) {
+                    trigger.addTriggerListener(listener);
+                }
+            }
+            // The start time has to be set before the end time, which is validated against it
+            if (map.get("startTime") != null) {
+                trigger.setStartTime(toDate(map.get("startTime")));
+            }
+            trigger.setEndTime(toDate(map.get("endTime")));
+            if (trigger instanceof CronTrigger) {
+                ((CronTrigger) trigger).setNextFireTime(toDate(map.get("nextFireTime")));
+                ((CronTrigger) trigger).setPreviousFireTime(toDate(map.get("previousFireTime")));
+            } else {
+                ((SimpleTrigger) trigger).setNextFireTime(toDate(map.get("nextFireTime")));
+                ((SimpleTrigger) trigger).setPreviousFireTime(toDate(map.get("previousFireTime")));
+            }
+            trigger.setJobDataMap(jobDataMapFromJson((Map<String, Object>) map.get("jobDataMap")));
+            return trigger;
+        } catch (JobPersistenceException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new JobPersistenceException("Error reading trigger " + map.get("group") + "." + map.get("name"), e);
+        }
+    }
+
+    /**
+     * Converts a JobDetail into a JSON object model (a Map of JSON compatible values).
+     *
+     * @param jobDetail the JobDetail to convert
+     * @return the JSON object model of the JobDetail, or null if its JobDataMap holds values
+     *         that are not JSON compatible
+     */
+    public static Map<String, Object> jobDetailToJson(JobDetail jobDetail) {
+        if (jobDetail.getClass() != JobDetail.class) {
+            return null;
+        }
+        Map<String, Object> jobDataMap = jobDataMapToJson(jobDetail.getJobDataMap());
+        if (jobDataMap == null) {
+            return null;
+        }
+        Map<String, Object> map = new HashMap<String, Object>();
+        map.put("name", jobDetail.getName());
+        map.put("group", jobDetail.getGroup());
+        map.put("description", jobDetail.getDescription());
+        map.put("jobClass", jobDetail.getJobClass() != null ? jobDetail.getJobClass().getName() : null);
+        map.put("durable", jobDetail.isDurable());
+        map.put("volatile", jobDetail.isVolatile());
+        map.put("requestsRecovery", jobDetail.requestsRecovery());
+        map.put("listeners", toList(jobDetail.getJobListenerNames()));
+        map.put("jobDataMap", jobDataMap);
+        return map;
+    }
+
+    /**
+     * Converts the JSON object model of a JobDetail, as returned by
+     * {@link #jobDetailToJson(JobDetail)}, back into a JobDetail.
+     *
+     * @param map the JSON object model of the JobDetail
+     * @return the JobDetail
+     * @throws JobPersistenceException if the object model does not represent a valid JobDetail
+     */
+    public static JobDetail jobDetailFromJson(Map<String, Object> map) throws JobPersistenceException {
+        try {
+            JobDetail jobDetail = new JobDetail();
+            jobDetail.setName((String) map.get("name"));
+            jobDetail.setGroup((String) map.get("group"));
+            jobDetail.setDescription((String) map.get("description"));
+            String jobClass = (String) map.get("jobClass");
+            if (jobClass != null) {
+                jobDetail.setJobClass(loadClass(jobClass));
+            }
+            jobDetail.setDurability(Boolean.TRUE.equals(map.get("durable")));
+            jobDetail.setVolatility(Boolean.TRUE.equals(map.get("volatile")));
+            jobDetail.setRequestsRecovery(Boolean.TRUE.equals(map.get("requestsRecovery")));
+            List<String> listeners = (List<String>) map.get("listeners");
+            if (listeners != null) {
+                for (String listener : listeners) {
+                    jobDetail.addJobListener(listener);
+                }
+            }
+            jobDetail.setJobDataMap(jobDataMapFromJson((Map<String, Object>) map.get("jobDataMap")));
+            return jobDetail;
+        } catch (JobPersistenceException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new JobPersistenceException("Error reading job " + map.get("group") + "." + map.get("name"), e);
+        }
+    }
+
+    /**
+     * Converts a JobDataMap into a Map, if all its values are JSON compatible and
+     * survive a round trip through the repo with their type unchanged (top level
+     * Long and Float values, for example, may come back as Integer and Double).
+     *
+     * @param jobDataMap the JobDataMap, may be null
+     * @return the converted Map, or null if the JobDataMap holds other values
+     */
+    private static Map<String, Object> jobDataMapToJson(JobDataMap jobDataMap) {
+        Map<String, Object> map = new HashMap<String, Object>();
+        if (jobDataMap == null) {
+            return map;
+        }
+        for (Iterator<?> it = jobDataMap.entrySet().iterator(); it.hasNext();) {
+            Map.Entry<?, ?> entry = (Map.Entry<?, ?>) it.next();
+            Object value = entry.getValue();
+            if (!(entry.getKey() instanceof String)) {
+                return null;
+            }
+            if (value != null && !(value instanceof String) && !(value instanceof Boolean)
+                    && !(value instanceof Integer) && !(value instanceof Double) && !isJsonContainer(value)) {
+                return null;
+            }
+            map.put((String) entry.getKey(), value);
+        }
+        return map;
+    }
+
+    private static JobDataMap jobDataMapFromJson(Map<String, Object> map) {
+        JobDataMap jobDataMap = new JobDataMap();
+        if (map != null) {
+            jobDataMap.putAll(map);
+        }
+        jobDataMap.clearDirtyFlag();
+        return jobDataMap;
+    }
+
+    private static boolean isJsonContainer(Object value) {
+        if (value instanceof Map) {
+            for (Object entry : ((Map<?, ?>) value).entrySet()) {
+                Map.Entry<?, ?> e = (Map.Entry<?, ?>) entry;
+                if (!(e.getKey() instanceof String) || !isJsonValue(e.getValue())) {
+                    return false;
+                }
+            }
+            return true;
+        } else if (value instanceof List) {
+            for (Object element : (List<?>) value) {
+                if (!isJsonValue(element)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+
+    private static boolean isJsonValue(Object value) {
+        return value == null || value instanceof String || value instanceof Number
+                || value instanceof Boolean || isJsonContainer(value);
+    }
+
+    private static Class<?> loadClass(String name) throws ClassNotFoundException {
+        try {
+            return Class.forName(name, true, RepoJobStoreUtils.class.getClassLoader());
+        } catch (ClassNotFoundException e) {
+            ClassLoader loader = Thread.currentThread().getContextClassLoader();
+            if (loader == null) {
+                throw e;
+            }
+            return Class.forName(name, true, loader);
+        }
+    }
+
+    private static List<String> toList(String[] values) {
+        List<String> list = new ArrayList<String>();
+        if (values != null) {
+            for (String value : values) {
+                list.add(value);
+            }
+        }
+        return list;
+    }
+
+    private static Long fromDate(Date date) {
+        return date == null ? null : Long.valueOf(date.getTime());
+    }
+
+    private static Date toDate(Object value) {
+        return value == null ? null : new Date(((Number) value).longValue());
+    }
+
+    private static int toInt(Object value) {
+        return value == null ? 0 : ((Number) value).intValue();
+    }
+
+    private static long toLong(Object value) {
+        return value == null ? 0 : ((Number) value).longValue();
+    }
 }
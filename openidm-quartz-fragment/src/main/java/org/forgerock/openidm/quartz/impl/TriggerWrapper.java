@@ -38,10 +38,13 @@ import org.quartz.Trigger;
 public class TriggerWrapper {
     
     private String serialized;
+    private Map<String, Object> trigger;
     private String name;
     private String group;
     private String revision;
     private boolean acquired;
+    private String owner;
+    private long leaseExpires;
     private int state;
     private int previous_state = Trigger.STATE_NONE;
     
@@ -53,7 +56,8 @@ public class TriggerWrapper {
      * @throws Exception
      */
     public TriggerWrapper(Trigger trigger, boolean paused) throws Exception {
-        this(trigger.getName(), trigger.getGroup(), RepoJobStoreUtils.serialize(trigger), paused);
+        this(trigger.getName(), trigger.getGroup(), null, paused);
+        updateTrigger(trigger);
     }
     
     /**
@@ -86,10 +90,13 @@ public class TriggerWrapper {
     public TriggerWrapper(JsonValue value, boolean paused) {
         //this(value.asMap(), paused);
         serialized = value.get("serialized").asString();
+        trigger = value.get("trigger").isNull() ? null : value.get("trigger").asMap();
         name = value.get("name").asString();
         group = value.get("group").asString();
         previous_state = value.get("previous_state").asInteger();
         acquired = value.get("acquired").asBoolean();
+        owner = value.get("owner").asString();
+        leaseExpires = value.get("leaseExpires").isNull() ? 0 : value.get("leaseExpires").asLong();
         revision = value.get("_rev").asString();
         if (paused) {
             state = Trigger.STATE_PAUSED;
@@ -125,11 +132,14 @@ public class TriggerWrapper {
      */
     public TriggerWrapper(Map<String, Object> map) {
         serialized = (String)map.get("serialized");
+        trigger = (Map<String, Object>)map.get("trigger");
         name = (String)map.get("name");
         group = (String)map.get("group");
         state = (Integer)map.get("state");
         previous_state = (Integer)map.get("previous_state");
         acquired = (Boolean)map.get("acquired");
+        owner = (String)map.get("owner");
+        leaseExpires = map.get("leaseExpires") == null ? 0 : ((Number)map.get("leaseExpires")).longValue();
         revision = (String)map.get("_rev");
     }
 
@@ -204,29 +214,34 @@ public class TriggerWrapper {
     }
     
     /**
-     * Updates the TriggerWrappers serialized Trigger object
+     * Updates the TriggerWrappers Trigger object. The Trigger is stored as JSON if it can
+     * be mapped, and serialized otherwise.
      * 
      * @param trigger   The trigger update
      * @throws JobPersistenceException
      */
     public void updateTrigger(Trigger trigger) throws JobPersistenceException {
-        serialized = RepoJobStoreUtils.serialize(trigger);
+        this.trigger = RepoJobStoreUtils.triggerToJson(trigger);
+        serialized = this.trigger == null ? RepoJobStoreUtils.serialize(trigger) : null;
     }
     
     /**
-     * Deserializes and returns the Trigger object for this TriggerWrapper
+     * Returns the Trigger object for this TriggerWrapper
      * 
-     * @return  the deserialized Trigger object
+     * @return  the Trigger object
      * @throws JobPersistenceException
      */
     public Trigger getTrigger() throws JobPersistenceException {
+        if (trigger != null) {
+            return RepoJobStoreUtils.triggerFromJson(trigger);
+        }
         return (Trigger)RepoJobStoreUtils.deserialize(serialized);
     }
     
     /**
      * Gets the seriailized Trigger object.
      * 
-     * @return  the serialized Trigger object
+     * @return  the serialized Trigger object, or null if the Trigger is stored as JSON
      */
     public String getSerialized() {
         return serialized;
@@ -266,12 +281,20 @@ public class TriggerWrapper {
      */
     public JsonValue getValue() {
         Map<String, Object> map = new HashMap<String, Object>();
-        map.put("serialized", serialized);
+        if (trigger != null) {
+            map.put("trigger", trigger);
+        } else {
+            map.put("serialized", serialized);
+        }
         map.put("name", name);
         map.put("group", group);
         map.put("previous_state", previous_state);
         map.put("state", state);
         map.put("acquired", acquired);
+        if (owner != null) {
+            map.put("owner", owner);
+            map.put("leaseExpires", leaseExpires);
+        }
         return new JsonValue(map);
     }
 
@@ -287,6 +310,7 @@ public class TriggerWrapper {
         sb.append("state:    ").append(state).append("\n");
         sb.append("p-state:  ").append(previous_state).append("\n");
         sb.append("acquired: ").append(acquired).append("\n");
+        sb.append("owner:    ").append(owner).append("\n");
         return sb.toString();
     }
     
@@ -326,6 +350,58 @@ public class TriggerWrapper {
         this.acquired = acquired;
     }
 
+    /**
+     * Puts the Trigger in the "acquired" state, leased to a scheduler instance.
+     * 
+     * @param owner         the ID of the instance acquiring the Trigger
+     * @param leaseExpires  the time, in milliseconds, the lease expires at
+     */
+    public void acquire(String owner, long leaseExpires) {
+        this.acquired = true;
+        this.owner = owner;
+        this.leaseExpires = leaseExpires;
+    }
+
+    /**
+     * Takes the Trigger out of the "acquired" state, giving up its lease.
+     */
+    public void release() {
+        this.acquired = false;
+        this.owner = null;
+        this.leaseExpires = 0;
+    }
+
+    /**
+     * Returns the ID of the instance holding the lease on the Trigger.
+     * 
+     * @return  the instance ID, or null if the Trigger is not leased
+     */
+    public String getOwner() {
+        return owner;
+    }
+
+    /**
+     * Returns true if the Trigger is leased to an instance other than the given one, and the
+     * lease has not expired.
+     * 
+     * @param instanceId    the ID of the instance asking
+     * @param now           the current time, in milliseconds
+     * @return  true if another instance holds a valid lease on the Trigger
+     */
+    public boolean isLeasedByOther(String instanceId, long now) {
+        return acquired && owner != null && !owner.equals(instanceId) && leaseExpires > now;
+    }
+
+    /**
+     * Returns true if the lease on the Trigger has expired.
+     * 
+     * @param now   the current time, in milliseconds
+     * @return  true if the lease has expired
+     */
+    public boolean isLeaseExpired(long now) {
+        return leaseExpires <= now;
+    }
+
     /**
      * Returns the revision, as set by the repo
      * 
@@ -334,4 +410,13 @@ public class TriggerWrapper {
     public String getRevision() {
         return revision;
     }
+
+    /**
+     * Sets the revision, as returned by the repo after an update
+     *
+     * @param revision the repo revision
+     */
+    public void setRevision(String revision) {
+        this.revision = revision;
+    }
 }
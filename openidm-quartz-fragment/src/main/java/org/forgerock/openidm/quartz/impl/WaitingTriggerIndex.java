@@ -0,0 +1,204 @@
+/**
+* DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+*
+* Copyright (c) 2013 ForgeRock AS. All Rights Reserved
+*
+* The contents of this file are subject to the terms
+* of the Common Development and Distribution License
+* (the License). You may not use this file except in
+* compliance with the License.
+*
+* You can obtain a copy of the License at
+* http://forgerock.org/license/CDDLv1.0.html
+* See the License for the specific language governing
+* permission and limitations under the License.
+*
+* When distributing Covered Code, include this CDDL
+* Header Notice in each file and include the License file
+* at http://forgerock.org/license/CDDLv1.0.html
+* If applicable, add the following below the CDDL Header,
+* with the fields enclosed by brackets [] replaced by
+* your own identifying information:
+* "Portions Copyrighted [year] [name of copyright owner]"
+*
+*/
+
+package org.forgerock.openidm.quartz.impl;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+import org.quartz.Trigger;
+
+/**
+ * An in-memory index of the triggers in the "waiting" state, ordered by next fire time,
+ * priority and name.
+ * <p/>
+ * The index mirrors the waiting triggers repo document at the revision it was loaded or
+ * last written with. It is kept current by writing through every change made to that
+ * document, and is reloaded when the repo holds a different revision.
+ * <p/>
+ * The index holds copies of the triggers added to it, so callers may freely modify the
+ * triggers they pass in or get back without corrupting the ordering. It is not thread
+ * safe; access is guarded by the job store.
+ */
+class WaitingTriggerIndex {
+
+    private final TreeSet<Trigger> ordered;
+    private final Map<String, Trigger> triggers = new LinkedHashMap<String, Trigger>();
+    private String revision;
+    private boolean loaded;
+    private long verified;
+
+    /**
+     * Creates a new, unloaded, index.
+     *
+     * @param comparator the comparator used to order the triggers
+     */
+    @SuppressWarnings("unchecked")
+    WaitingTriggerIndex(Comparator comparator) {
+        ordered = new TreeSet<Trigger>(comparator);
+    }
+
+    /**
+     * Replaces the content of the index.
+     *
+     * @param waiting  the waiting triggers, keyed by trigger ID
+     * @param revision the revision of the waiting triggers repo document
+     */
+    void load(Map<String, Trigger> waiting, String revision) {
+        ordered.clear();
+        triggers.clear();
+        for (Map.Entry<String, Trigger> entry : waiting.entrySet()) {
+            put(entry.getKey(), entry.getValue());
+        }
+        this.revision = revision;
+        this.loaded = true;
+        this.verified = System.currentTimeMillis();
+    }
+
+    /**
+     * Discards the content of the index, forcing a reload on next use.
+     */
+    void invalidate() {
+        ordered.clear();
+        triggers.clear();
+        revision = null;
+        loaded = false;
+    }
+
+    /**
+     * @return true if the index has been loaded and not invalidated since
+     */
+    boolean isLoaded() {
+        return loaded;
+    }
+
+    /**
+     * @return the revision of the waiting triggers repo document the index mirrors
+     */
+    String getRevision() {
+        return revision;
+    }
+
+    /**
+     * Records a new revision of the waiting triggers repo document, after a successful
+     * write or verification against the repo.
+     *
+     * @param revision the new revision
+     */
+    void setRevision(String revision) {
+        this.revision = revision;
+        this.verified = System.currentTimeMillis();
+    }
+
+    /**
+     * @return the time, in milliseconds, the revision was last known to match the repo
+     */
+    long getVerified() {
+        return verified;
+    }
+
+    /**
+     * @param id the trigger ID
+     * @return true if the trigger is in the index
+     */
+    boolean contains(String id) {
+        return triggers.containsKey(id);
+    }
+
+    /**
+     * Adds a trigger to the index, replacing any previous version of it.
+     *
+     * @param id      the trigger ID
+     * @param trigger the trigger
+     */
+    void put(String id, Trigger trigger) {
+        remove(id);
+        Trigger copy = (Trigger) trigger.clone();
+        triggers.put(id, copy);
+        ordered.add(copy);
+    }
+
+    /**
+     * Removes a trigger from the index.
+     *
+     * @param id the trigger ID
+     * @return true if the trigger was in the index
+     */
+    boolean remove(String id) {
+        Trigger existing = triggers.remove(id);
+        if (existing != null) {
+            ordered.remove(existing);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Returns a copy of the trigger to fire next.
+     *
+     * @return the first trigger, or null if the index is empty
+     */
+    Trigger first() {
+        if (ordered.isEmpty()) {
+            return null;
+        }
+        return (Trigger) ordered.first().clone();
+    }
+
+    /**
+     * Returns copies of the triggers to fire next, in order.
+     *
+     * @param count the maximum number of triggers to return
+     * @return the first triggers, an empty list if the index is empty
+     */
+    List<Trigger> first(int count) {
+        List<Trigger> first = new ArrayList<Trigger>(Math.min(count, ordered.size()));
+        for (Trigger trigger : ordered) {
+            if (first.size() >= count) {
+                break;
+            }
+            first.add((Trigger) trigger.clone());
+        }
+        return first;
+    }
+
+    /**
+     * @return the IDs of the triggers in the index, as persisted in the repo
+     */
+    List<String> getIds() {
+        return new ArrayList<String>(triggers.keySet());
+    }
+
+    /**
+     * @return the number of triggers in the index
+     */
+    int size() {
+        return triggers.size();
+    }
+}
@@ -54,7 +54,7 @@ public class MockRepositoryService implements RepositoryService {
     }
 
     @Override
-    public JsonValue handle(JsonValue request) throws JsonResourceException {
+    public synchronized JsonValue handle(JsonValue request) throws JsonResourceException {
 
             try {
                 Method method = request.get("method").asEnum(Method.class);
@@ -0,0 +1,134 @@
+/**
+* DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+*
+* Copyright (c) 2013 ForgeRock AS. All Rights Reserved
+*
+* The contents of this file are subject to the terms
+* of the Common Development and Distribution License
+* (the License). You may not use this file except in
+* compliance with the License.
+*
+* You can obtain a copy of the License at
+* http://forgerock.org/license/CDDLv1.0.html
+* See the License for the specific language governing
+* permission and limitations under the License.
+*
+* When distributing Covered Code, include this CDDL
+* Header Notice in each file and include the License file
+* at http://forgerock.org/license/CDDLv1.0.html
+* If applicable, add the following below the CDDL Header,
+* with the fields enclosed by brackets [] replaced by
+* your own identifying information:
+* "Portions Copyrighted [year] [name of copyright owner]"
+*
+*/
+
+package org.forgerock.openidm.quartz.impl;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TimeZone;
+
+import junit.framework.TestCase;
+
+import org.quartz.CronTrigger;
+import org.quartz.JobDetail;
+import org.quartz.SimpleTrigger;
+import org.quartz.Trigger;
+
+/**
+ * Test class that contains unit tests for the JSON mapping in RepoJobStoreUtils.
+ */
+public class TestRepoJobStoreUtils extends TestCase {
+
+    public void testCronTriggerToJsonAndBack() throws Exception {
+        CronTrigger trigger = new CronTrigger("trigger1", "group1", "job1", "group1", "0 0/5 * * * ?");
+        trigger.setTimeZone(TimeZone.getTimeZone("Europe/Oslo"));
+        trigger.setMisfireInstruction(CronTrigger.MISFIRE_INSTRUCTION_DO_NOTHING);
+        trigger.getJobDataMap().put("invokeService", "sync");
+        trigger.computeFirstFireTime(null);
+
+        Map<String, Object> json = RepoJobStoreUtils.triggerToJson(trigger);
+        assertNotNull(json);
+        assertEquals(RepoJobStoreUtils.TRIGGER_TYPE_CRON, json.get("type"));
+
+        CronTrigger copy = (CronTrigger) RepoJobStoreUtils.triggerFromJson(json);
+        assertEquals(trigger, copy);
+        assertEquals("job1", copy.getJobName());
+        assertEquals(trigger.getCronExpression(), copy.getCronExpression());
+        assertEquals(trigger.getTimeZone(), copy.getTimeZone());
+        assertEquals(trigger.getMisfireInstruction(), copy.getMisfireInstruction());
+        assertEquals(trigger.getNextFireTime(), copy.getNextFireTime());
+        assertEquals("sync", copy.getJobDataMap().get("invokeService"));
+    }
+
+    public void testSimpleTriggerToJsonAndBack() throws Exception {
+        long now = System.currentTimeMillis();
+        SimpleTrigger trigger = new SimpleTrigger("trigger1", "group1", new Date(now), new Date(now + 60000), 5, 1000);
+        trigger.computeFirstFireTime(null);
+        trigger.triggered(null);
+
+        SimpleTrigger copy = (SimpleTrigger) RepoJobStoreUtils.triggerFromJson(
+                RepoJobStoreUtils.triggerToJson(trigger));
+        assertEquals(trigger, copy);
+        assertEquals(5, copy.getRepeatCount());
+        assertEquals(1000, copy.getRepeatInterval());
+        assertEquals(1, copy.getTimesTriggered());
+        assertEquals(trigger.getStartTime(), copy.getStartTime());
+        assertEquals(trigger.getEndTime(), copy.getEndTime());
+        assertEquals(trigger.getNextFireTime(), copy.getNextFireTime());
+        assertEquals(trigger.getPreviousFireTime(), copy.getPreviousFireTime());
+    }
+
+    public void testJobDetailToJsonAndBack() throws Exception {
+        JobDetail job = new JobDetail("job1", "group1", SimpleJob.class);
+        Map<String, Object> context = new HashMap<String, Object>();
+        List<Object> values = new ArrayList<Object>();
+        values.add("value");
+        values.add(1);
+        context.put("values", values);
+        job.getJobDataMap().put("invokeContext", context);
+        job.setDurability(true);
+
+        Map<String, Object> json = RepoJobStoreUtils.jobDetailToJson(job);
+        assertNotNull(json);
+        JobDetail copy = RepoJobStoreUtils.jobDetailFromJson(json);
+        assertEquals(job, copy);
+        assertEquals(SimpleJob.class, copy.getJobClass());
+        assertTrue(copy.isDurable());
+        assertEquals(context, copy.getJobDataMap().get("invokeContext"));
+    }
+
+    public void testJobDetailWithSerializableValueIsNotMapped() throws Exception {
+        JobDetail job = new JobDetail("job1", "group1", SimpleJob.class);
+        job.getJobDataMap().put("started", new Date());
+        assertNull(RepoJobStoreUtils.jobDetailToJson(job));
+
+        // The wrapper falls back to Java serialization
+        JobWrapper jw = new JobWrapper(job, false);
+        assertNotNull(jw.getSerialized());
+        assertEquals(job, jw.getJobDetail());
+    }
+
+    public void testSerializedTriggerIsMigrated() throws Exception {
+        Trigger trigger = new SimpleTrigger("trigger1", "group1", new Date());
+        Map<String, Object> map = new HashMap<String, Object>();
+        map.put("serialized", RepoJobStoreUtils.serialize(trigger));
+        map.put("name", trigger.getName());
+        map.put("group", trigger.getGroup());
+        map.put("state", Trigger.STATE_NORMAL);
+        map.put("previous_state", Trigger.STATE_NONE);
+        map.put("acquired", false);
+
+        TriggerWrapper tw = new TriggerWrapper(map);
+        assertEquals(trigger, tw.getTrigger());
+
+        tw.updateTrigger(tw.getTrigger());
+        assertNull(tw.getSerialized());
+        assertNotNull(tw.getValue().get("trigger").asMap());
+        assertEquals(trigger, tw.getTrigger());
+    }
+}
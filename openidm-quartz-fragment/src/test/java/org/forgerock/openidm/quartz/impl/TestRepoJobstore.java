@@ -25,14 +25,23 @@
 
 package org.forgerock.openidm.quartz.impl;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import junit.framework.TestCase;
 
 import org.quartz.JobDetail;
 import org.quartz.SimpleTrigger;
 import org.quartz.Trigger;
+import org.quartz.spi.TriggerFiredBundle;
 
 /**
  * Test class that contains unit tests for the RepoJobStore class.
@@ -121,6 +130,211 @@ public class TestRepoJobstore extends TestCase {
         assertEquals(0, jobStore.getPausedTriggerGroups(null).size());
     }
     
+    public void testAcquireNextTriggerInFireTimeOrder() throws Exception {
+        long currentTime = System.currentTimeMillis();
+        Trigger trigger1 = new SimpleTrigger("trigger1", "group1", new Date(currentTime + 10000));
+        Trigger trigger2 = new SimpleTrigger("trigger2", "group1", new Date(currentTime + 20000));
+        trigger1.computeFirstFireTime(null);
+        trigger2.computeFirstFireTime(null);
+
+        jobStore.storeTrigger(null, trigger2, false);
+        jobStore.storeTrigger(null, trigger1, false);
+
+        // Nothing is due yet, the waiting triggers are left in place
+        assertNull(jobStore.acquireNextTrigger(null, currentTime + 5000));
+        assertEquals(trigger1, jobStore.acquireNextTrigger(null, currentTime + 60000));
+        assertEquals(trigger2, jobStore.acquireNextTrigger(null, currentTime + 60000));
+        assertNull(jobStore.acquireNextTrigger(null, currentTime + 60000));
+
+        jobStore.removeTrigger(null, trigger1.getName(), trigger1.getGroup());
+        jobStore.removeTrigger(null, trigger2.getName(), trigger2.getGroup());
+    }
+
+    public void testAcquireNextTriggersInBatch() throws Exception {
+        long currentTime = System.currentTimeMillis();
+        Trigger trigger1 = new SimpleTrigger("trigger1", "group1", new Date(currentTime + 10000));
+        Trigger trigger2 = new SimpleTrigger("trigger2", "group1", new Date(currentTime + 20000));
+        Trigger trigger3 = new SimpleTrigger("trigger3", "group1", new Date(currentTime + 30000));
+        trigger1.computeFirstFireTime(null);
+        trigger2.computeFirstFireTime(null);
+        trigger3.computeFirstFireTime(null);
+
+        jobStore.setInstanceId("node1");
+        jobStore.storeTrigger(null, trigger3, false);
+        jobStore.storeTrigger(null, trigger2, false);
+        jobStore.storeTrigger(null, trigger1, false);
+
+        List<Trigger> acquired = jobStore.acquireNextTriggers(null, currentTime + 60000, 2);
+        assertEquals(2, acquired.size());
+        assertEquals(trigger1, acquired.get(0));
+        assertEquals(trigger2, acquired.get(1));
+        assertEquals(trigger3, jobStore.acquireNextTrigger(null, currentTime + 60000));
+        assertNull(jobStore.acquireNextTrigger(null, currentTime + 60000));
+
+        // A released trigger can be acquired again
+        jobStore.releaseAcquiredTrigger(null, trigger2);
+        assertEquals(trigger2, jobStore.acquireNextTrigger(null, currentTime + 60000));
+
+        jobStore.removeTrigger(null, trigger1.getName(), trigger1.getGroup());
+        jobStore.removeTrigger(null, trigger2.getName(), trigger2.getGroup());
+        jobStore.removeTrigger(null, trigger3.getName(), trigger3.getGroup());
+    }
+
+    public void testConcurrentStoreAcquireComplete() throws Exception {
+        final int jobCount = 20;
+        final long currentTime = System.currentTimeMillis();
+        jobStore.setInstanceId("node1");
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<Object>> stored = new ArrayList<Future<Object>>();
+            for (int i = 0; i < jobCount; i++) {
+                final String name = Integer.toString(i);
+                stored.add(executor.submit(new Callable<Object>() {
+                    public Object call() throws Exception {
+                        JobDetail job = new JobDetail("job" + name, "group1", SimpleJob.class);
+                        Trigger trigger = new SimpleTrigger("trigger" + name, "group" + name.length(), 
+                                job.getName(), job.getGroup(), new Date(currentTime + 1000), null, 0, 0);
+                        trigger.computeFirstFireTime(null);
+                        jobStore.storeJobAndTrigger(null, job, trigger);
+                        return null;
+                    }
+                }));
+            }
+            for (Future<Object> future : stored) {
+                future.get();
+            }
+
+            // Each trigger is acquired, fired and completed by exactly one of the threads
+            final Set<String> fired = Collections.synchronizedSet(new HashSet<String>());
+            final List<String> duplicates = Collections.synchronizedList(new ArrayList<String>());
+            List<Future<Object>> workers = new ArrayList<Future<Object>>();
+            for (int i = 0; i < 4; i++) {
+                workers.add(executor.submit(new Callable<Object>() {
+                    public Object call() throws Exception {
+                        Trigger trigger;
+                        while ((trigger = jobStore.acquireNextTrigger(null, currentTime + 60000)) != null) {
+                            if (!fired.add(trigger.getFullName())) {
+                                duplicates.add(trigger.getFullName());
+                            }
+                            TriggerFiredBundle bundle = jobStore.triggerFired(null, trigger);
+                            assertNotNull(bundle);
+                            jobStore.triggeredJobComplete(null, trigger, bundle.getJobDetail(), 
+                                    Trigger.INSTRUCTION_DELETE_TRIGGER);
+                        }
+                        return null;
+                    }
+                }));
+            }
+            for (Future<Object> future : workers) {
+                future.get();
+            }
+
+            assertTrue(duplicates.toString(), duplicates.isEmpty());
+            assertEquals(jobCount, fired.size());
+            assertNull(jobStore.acquireNextTrigger(null, currentTime + 60000));
+            for (int i = 0; i < jobCount; i++) {
+                String name = Integer.toString(i);
+                assertNull(jobStore.retrieveTrigger(null, "trigger" + name, "group" + name.length()));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Stores a trigger firing 10 seconds after the given time, acquired by node1.
+     */
+    private Trigger acquireOnNode1(long currentTime) throws Exception {
+        Trigger trigger = new SimpleTrigger("leased", "group1", new Date(currentTime + 10000));
+        trigger.computeFirstFireTime(null);
+        jobStore.setInstanceId("node1");
+        jobStore.storeTrigger(null, trigger, false);
+        assertEquals(trigger, jobStore.acquireNextTrigger(null, currentTime + 60000));
+        return trigger;
+    }
+
+    private RepoJobStore newNode2() {
+        RepoJobStore node2 = new RepoJobStore();
+        node2.setSchedulerSignaler(signaler);
+        node2.setInstanceId("node2");
+        return node2;
+    }
+
+    public void testRecoverTriggersOfFailedNode() throws Exception {
+        long currentTime = System.currentTimeMillis();
+        Trigger trigger = acquireOnNode1(currentTime);
+        RepoJobStore node2 = newNode2();
+        jobStore.clusterCheckin(currentTime);
+
+        // Not checked in for longer than the failure threshold, the lease has not expired yet
+        node2.clusterCheckin(currentTime + 125000);
+        assertEquals(trigger, node2.acquireNextTrigger(null, currentTime + 60000));
+
+        node2.removeTrigger(null, trigger.getName(), trigger.getGroup());
+    }
+
+    public void testRecoverExpiredLease() throws Exception {
+        long currentTime = System.currentTimeMillis();
+        Trigger trigger = acquireOnNode1(currentTime);
+        RepoJobStore node2 = newNode2();
+        jobStore.clusterCheckin(currentTime + 60000);
+
+        // node1 is alive, but the lease expired 120 seconds after the fire time
+        node2.clusterCheckin(currentTime + 150000);
+        assertEquals(trigger, node2.acquireNextTrigger(null, currentTime + 60000));
+
+        node2.removeTrigger(null, trigger.getName(), trigger.getGroup());
+    }
+
+    public void testKeepLeaseOfLiveNode() throws Exception {
+        long currentTime = System.currentTimeMillis();
+        Trigger trigger = acquireOnNode1(currentTime);
+        RepoJobStore node2 = newNode2();
+        jobStore.clusterCheckin(currentTime + 60000);
+
+        node2.clusterCheckin(currentTime + 100000);
+        assertNull(node2.acquireNextTrigger(null, currentTime + 60000));
+
+        jobStore.removeTrigger(null, trigger.getName(), trigger.getGroup());
+    }
+
+    public void testKeepLeaseOfNodeWithoutCheckin() throws Exception {
+        long currentTime = System.currentTimeMillis();
+        Trigger trigger = acquireOnNode1(currentTime);
+        RepoJobStore node2 = newNode2();
+
+        // node1 does not run clustered, it is not considered failed
+        node2.clusterCheckin(currentTime + 100000);
+        assertNull(node2.acquireNextTrigger(null, currentTime + 60000));
+
+        jobStore.removeTrigger(null, trigger.getName(), trigger.getGroup());
+    }
+
+    public void testStaleNodeDoesNotFireRecoveredTrigger() throws Exception {
+        long currentTime = System.currentTimeMillis();
+        JobDetail job = new JobDetail("leasedJob", "group1", SimpleJob.class);
+        Trigger trigger = new SimpleTrigger("leased", "group1", job.getName(), job.getGroup(),
+                new Date(currentTime + 10000), null, 0, 0);
+        trigger.computeFirstFireTime(null);
+        jobStore.setInstanceId("node1");
+        jobStore.storeJobAndTrigger(null, job, trigger);
+        assertEquals(trigger, jobStore.acquireNextTrigger(null, currentTime + 60000));
+
+        // node2 runs in its own JVM, it does not see the caches of node1
+        RepoJobStore node2 = newNode2();
+        node2.usePrivateCaches();
+        jobStore.clusterCheckin(currentTime + 60000);
+        node2.clusterCheckin(currentTime + 150000);
+        Trigger claimed = node2.acquireNextTrigger(null, currentTime + 60000);
+        assertEquals(trigger, claimed);
+
+        // node1 was too slow, its lease expired and the trigger fires on node2 only
+        assertNull(jobStore.triggerFired(null, trigger));
+        assertNotNull(node2.triggerFired(null, claimed));
+
+        node2.removeJob(null, job.getName(), job.getGroup());
+    }
+
     /*public void testAcquireNextTrigger() throws Exception {
         long currentTime = System.currentTimeMillis();
         Date start1 = new Date(currentTime + 10000);
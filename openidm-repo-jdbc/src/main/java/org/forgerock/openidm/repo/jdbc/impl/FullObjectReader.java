@@ -0,0 +1,167 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright © 2013 ForgeRock AS. All rights reserved.
+ *
+ * The contents of this file are subject to the terms
+ * of the Common Development and Distribution License
+ * (the License). You may not use this file except in
+ * compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://forgerock.org/license/CDDLv1.0.html
+ * See the License for the specific language governing
+ * permission and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL
+ * Header Notice in each file and include the License file
+ * at http://forgerock.org/license/CDDLv1.0.html
+ * If applicable, add the following below the CDDL Header,
+ * with the fields enclosed by brackets [] replaced by
+ * your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ */
+
+package org.forgerock.openidm.repo.jdbc.impl;
+
+import java.io.CharArrayWriter;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.Map;
+
+import org.codehaus.jackson.JsonGenerator;
+import org.codehaus.jackson.map.ObjectMapper;
+
+/**
+ * Reader over the JSON serialization of an object, generated as the reader is consumed.
+ * <p/>
+ * The object tree is walked one token at a time, and only the JSON of the tokens not read
+ * yet is buffered, so the driver can stream the fullobject column without the whole JSON
+ * being held in memory. A single scalar value is still written out whole.
+ */
+class FullObjectReader extends Reader {
+
+    // Number of characters generated ahead of the reader
+    private static final int CHUNK_SIZE = 4096;
+
+    private final Chunk chunk = new Chunk();
+    private final JsonGenerator generator;
+    private final Deque<Frame> stack = new ArrayDeque<Frame>();
+
+    // The next value to write, NONE once written
+    private Object pending;
+    private boolean done = false;
+    private int position = 0;
+
+    private static final Object NONE = new Object();
+
+    /**
+     * An open JSON object or array.
+     */
+    private static final class Frame {
+        final Iterator<?> values;
+        final boolean object;
+
+        Frame(Iterator<?> values, boolean object) {
+            this.values = values;
+            this.object = object;
+        }
+    }
+
+    /**
+     * Character buffer exposing its content without copying it.
+     */
+    private static final class Chunk extends CharArrayWriter {
+        Chunk() {
+            super(CHUNK_SIZE);
+        }
+
+        void copy(int position, char[] cbuf, int off, int len) {
+            System.arraycopy(buf, position, cbuf, off, len);
+        }
+    }
+
+    FullObjectReader(ObjectMapper mapper, Map<String, Object> obj) throws IOException {
+        this.generator = mapper.getJsonFactory().createJsonGenerator(chunk);
+        this.pending = obj;
+    }
+
+    @Override
+    public int read(char[] cbuf, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (position == chunk.size()) {
+            chunk.reset();
+            position = 0;
+            fill();
+            if (chunk.size() == 0) {
+                return -1;
+            }
+        }
+        int count = Math.min(len, chunk.size() - position);
+        chunk.copy(position, cbuf, off, count);
+        position += count;
+        return count;
+    }
+
+    /**
+     * Generates the next tokens, until at least a chunk is buffered or the object is complete.
+     */
+    private void fill() throws IOException {
+        while (!done && chunk.size() < CHUNK_SIZE) {
+            next();
+            generator.flush();
+        }
+    }
+
+    private void next() throws IOException {
+        if (pending != NONE) {
+            Object value = pending;
+            pending = NONE;
+            write(value);
+        } else if (stack.isEmpty()) {
+            generator.close();
+            done = true;
+        } else {
+            Frame frame = stack.peek();
+            if (!frame.values.hasNext()) {
+                stack.pop();
+                if (frame.object) {
+                    generator.writeEndObject();
+                } else {
+                    generator.writeEndArray();
+                }
+            } else if (frame.object) {
+                Map.Entry<?, ?> entry = (Map.Entry<?, ?>) frame.values.next();
+                generator.writeFieldName(String.valueOf(entry.getKey()));
+                pending = entry.getValue();
+            } else {
+                pending = frame.values.next();
+            }
+        }
+    }
+
+    private void write(Object value) throws IOException {
+        if (value instanceof Map) {
+            generator.writeStartObject();
+            stack.push(new Frame(((Map<?, ?>) value).entrySet().iterator(), true));
+        } else if (value instanceof Collection) {
+            generator.writeStartArray();
+            stack.push(new Frame(((Collection<?>) value).iterator(), false));
+        } else {
+            generator.writeObject(value);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        done = true;
+        chunk.reset();
+        position = 0;
+    }
+}
@@ -24,6 +24,7 @@
 package org.forgerock.openidm.repo.jdbc.impl;
 
 import org.codehaus.jackson.map.ObjectMapper;
+import org.codehaus.jackson.map.ObjectReader;
 import org.codehaus.jackson.type.TypeReference;
 import org.forgerock.json.fluent.JsonValue;
 import org.forgerock.json.fluent.JsonPointer;
@@ -41,6 +42,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.io.Reader;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
@@ -73,9 +75,9 @@ public class GenericTableHandler implements TableHandler {
     final String dbSchemaName;
 
     // Jackson parser
-    final ObjectMapper mapper = new ObjectMapper();
-    // Type information for the Jackson parser
-    final TypeReference<LinkedHashMap<String,Object>> typeRef = new TypeReference<LinkedHashMap<String,Object>>() {};
+    static final ObjectMapper mapper = new ObjectMapper();
+    // Thread-safe Jackson reader for the fullobject column, type information resolved once
+    static final ObjectReader fullObjectReader = mapper.reader(new TypeReference<LinkedHashMap<String,Object>>() {});
     
     final TableQueries queries;
 
@@ -185,8 +187,7 @@ public class GenericTableHandler implements TableHandler {
             rs = readStatement.executeQuery();
             if (rs.next()) {
                 String rev = rs.getString("rev");
-                String objString = rs.getString("fullobject");
-                result = mapper.readValue(objString, typeRef);
+                result = readFullObject(rs);
                 result.put("_rev", rev);
                 logger.debug(" full id: {}, rev: {}, obj {}", new Object[]{fullId, rev, result});
             } else {
@@ -217,14 +218,13 @@ public class GenericTableHandler implements TableHandler {
             String rev = "0";
             obj.put("_id", localId); // Save the id in the object
             obj.put("_rev", rev); // Save the rev in the object, and return the changed rev from the create.
-            String objString = mapper.writeValueAsString(obj);
     
             logger.trace("Populating statement {} with params {}, {}, {}, {}",
-                    new Object[]{createStatement, typeId, localId, rev, objString});
+                    new Object[]{createStatement, typeId, localId, rev, obj});
             createStatement.setLong(1, typeId);
             createStatement.setString(2, localId);
             createStatement.setString(3, rev);
-            createStatement.setString(4, objString);
+            setFullObject(createStatement, 4, obj);
             logger.debug("Executing: {}", createStatement);
             int val = createStatement.executeUpdate();
     
@@ -513,12 +513,11 @@ public class GenericTableHandler implements TableHandler {
                 newLocalId = localId; // If it hasn't changed, use the existing ID
                 obj.put("_id", newLocalId); // Ensure the ID is saved in the object
             }
-            String objString = mapper.writeValueAsString(obj);
     
-            logger.trace("Populating prepared statement {} for {} {} {} {} {}", new Object[]{updateStatement, fullId, newLocalId, newRev, objString, dbId});
+            logger.trace("Populating prepared statement {} for {} {} {} {} {}", new Object[]{updateStatement, fullId, newLocalId, newRev, obj, dbId});
             updateStatement.setString(1, newLocalId);
             updateStatement.setString(2, newRev);
-            updateStatement.setString(3, objString);
+            setFullObject(updateStatement, 3, obj);
             updateStatement.setLong(4, dbId);
             logger.debug("Update statement: {}", updateStatement);
             int updateCount = updateStatement.executeUpdate();
@@ -616,16 +615,49 @@ public class GenericTableHandler implements TableHandler {
     protected PreparedStatement getPreparedStatement(Connection connection, QueryDefinition queryDefinition) throws SQLException {
         return queries.getPreparedStatement(connection, queryMap.get(queryDefinition));
     }
+
+    /**
+     * Parses the fullobject column of the current row. The JSON is streamed from the 
+     * column rather than first materialized as a String.
+     * 
+     * @param rs the result set positioned on the row to read
+     * @return the parsed object, or null if the column is null
+     * @throws SQLException if reading the column failed
+     * @throws IOException if the column content is not a valid JSON object
+     */
+    static Map<String, Object> readFullObject(ResultSet rs) throws SQLException, IOException {
+        Reader reader = rs.getCharacterStream("fullobject");
+        if (reader == null) {
+            return null;
+        }
+        try {
+            Map<String, Object> obj = fullObjectReader.readValue(reader);
+            return obj;
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Sets the serialized object as fullobject statement parameter. The driver reads the
+     * JSON as character stream, which generates it while it is consumed, so neither the
+     * whole JSON nor a String of it is held in memory.
+     * 
+     * @param statement the statement to populate
+     * @param parameterIndex the index of the fullobject parameter
+     * @param obj the object to serialize
+     * @throws SQLException if setting the parameter failed
+     * @throws IOException if the object could not be serialized
+     */
+    static void setFullObject(PreparedStatement statement, int parameterIndex, Map<String, Object> obj) 
+            throws SQLException, IOException {
+        statement.setCharacterStream(parameterIndex, new FullObjectReader(mapper, obj));
+    }
 }
 
 class GenericQueryResultMapper implements QueryResultMapper {
     final static Logger logger = LoggerFactory.getLogger(GenericQueryResultMapper.class);
     
-    // Jackson parser
-    ObjectMapper mapper = new ObjectMapper();
-    // Type information for the Jackson parser
-    TypeReference<LinkedHashMap<String,Object>> typeRef = new TypeReference<LinkedHashMap<String,Object>>() {};
-    
     public List<Map<String, Object>> mapQueryToObject(ResultSet rs, String queryId, String type, Map<String, Object> params,  TableQueries tableQueries) 
             throws SQLException, IOException {
         List<Map<String, Object>> result = new ArrayList<Map<String, Object>>();
@@ -643,8 +675,7 @@ class GenericQueryResultMapper implements QueryResultMapper {
         }
         while (rs.next()) {
             if (hasFullObject) {
-                String objString = rs.getString("fullobject");
-                Map<String, Object> obj = mapper.readValue(objString, typeRef);
+                Map<String, Object> obj = GenericTableHandler.readFullObject(rs);
 
                 // TODO: remove data logging            
                 logger.trace("Query result for queryId: {} type: {} converted obj: {}", new Object[] {queryId, type, obj});  
@@ -27,11 +27,16 @@ import java.io.IOException;
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Dictionary;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Hashtable;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.naming.InitialContext;
 import javax.naming.NamingException;
@@ -46,6 +51,9 @@ import org.apache.felix.scr.annotations.Modified;
 import org.apache.felix.scr.annotations.Properties;
 import org.apache.felix.scr.annotations.Property;
 import org.apache.felix.scr.annotations.Reference;
+import org.apache.felix.scr.annotations.ReferenceCardinality;
+import org.apache.felix.scr.annotations.ReferencePolicy;
+import org.apache.felix.scr.annotations.ReferenceStrategy;
 import org.apache.felix.scr.annotations.Service;
 import org.codehaus.jackson.map.ObjectMapper;
 import org.forgerock.json.fluent.JsonValue;
@@ -54,6 +62,7 @@ import org.forgerock.json.resource.JsonResource;
 import org.forgerock.openidm.config.EnhancedConfig;
 import org.forgerock.openidm.config.InvalidException;
 import org.forgerock.openidm.config.JSONEnhancedConfig;
+import org.forgerock.openidm.core.ServerConstants;
 import org.forgerock.openidm.crypto.CryptoService;
 import org.forgerock.openidm.objset.BadRequestException;
 import org.forgerock.openidm.objset.ConflictException;
@@ -66,6 +75,7 @@ import org.forgerock.openidm.objset.Patch;
 import org.forgerock.openidm.objset.PreconditionFailedException;
 import org.forgerock.openidm.osgi.OsgiName;
 import org.forgerock.openidm.osgi.ServiceUtil;
+import org.forgerock.openidm.repo.CacheInvalidationHook;
 import org.forgerock.openidm.repo.QueryConstants;
 import org.forgerock.openidm.repo.RepoBootService;
 import org.forgerock.openidm.repo.RepositoryService;
@@ -73,6 +83,12 @@ import org.forgerock.openidm.repo.jdbc.DatabaseType;
 import org.forgerock.openidm.repo.jdbc.ErrorType;
 import org.forgerock.openidm.repo.jdbc.TableHandler;
 import org.forgerock.openidm.repo.jdbc.impl.pool.DataSourceFactory;
+import org.forgerock.openidm.repo.util.ObjectCache;
+import org.forgerock.openidm.repo.util.PagedResults;
+import org.forgerock.openidm.smartevent.EventEntry;
+import org.forgerock.openidm.smartevent.Gauge;
+import org.forgerock.openidm.smartevent.Name;
+import org.forgerock.openidm.smartevent.Publisher;
 import org.forgerock.openidm.util.Accessor;
 import org.osgi.framework.BundleContext;
 import org.osgi.framework.ServiceRegistration;
@@ -100,10 +116,39 @@ public class JDBCRepoService extends ObjectSetJsonResource implements Repository
 
     public static final String PID = "org.forgerock.openidm.repo.jdbc";
 
+    /** Monitoring event name for the time taken to obtain a pooled connection */
+    public static final Name EVENT_CONNECTION_ACQUIRE = Name.get("openidm/internal/repo/jdbc/connection/acquire");
+
     /** CryptoService for detecting whether a value is encrypted */
     @Reference
     protected CryptoService cryptoService;
 
+    /** Hooks keeping the object cache consistent across a cluster */
+    @Reference(
+        name = "ref_JDBCRepoService_CacheInvalidationHook",
+        referenceInterface = CacheInvalidationHook.class,
+        bind = "bindCacheInvalidationHook",
+        unbind = "unbindCacheInvalidationHook",
+        cardinality = ReferenceCardinality.OPTIONAL_MULTIPLE,
+        policy = ReferencePolicy.DYNAMIC,
+        strategy = ReferenceStrategy.EVENT
+    )
+    protected final HashSet<CacheInvalidationHook> cacheHooks = new HashSet<CacheInvalidationHook>();
+    protected synchronized void bindCacheInvalidationHook(CacheInvalidationHook hook) {
+        cacheHooks.add(hook);
+        if (cache != null) {
+            cache.addHook(hook);
+            hook.register(cache);
+        }
+    }
+    protected synchronized void unbindCacheInvalidationHook(CacheInvalidationHook hook) {
+        cacheHooks.remove(hook);
+        if (cache != null) {
+            cache.removeHook(hook);
+            hook.unregister(cache);
+        }
+    }
+
     ObjectMapper mapper = new ObjectMapper();
 
     private static ServiceRegistration sharedDataSource = null;
@@ -119,10 +164,14 @@ public class JDBCRepoService extends ObjectSetJsonResource implements Repository
     public static final String CONFIG_PASSWORD = "password";
     public static final String CONFIG_DB_SCHEMA = "defaultCatalog";
     public static final String CONFIG_MAX_BATCH_SIZE = "maxBatchSize";
+    public static final String CONFIG_CACHE = "cache";
+    public static final String CONFIG_READ_REPLICAS = "readReplicas";
 
     private boolean useDataSource;
     private String jndiName;
     private DataSource ds;
+    /** Whether ds is a pool created by this service, rather than looked up, and must be closed on deactivation */
+    private boolean ownsDataSource;
     private String dbDriver;
     private String dbUrl;
     private String user;
@@ -130,6 +179,19 @@ public class JDBCRepoService extends ObjectSetJsonResource implements Repository
 
     private int maxTxRetry = 5;
 
+    /** Read-only replica data sources, empty if none are configured */
+    private volatile List<DataSource> replicas = Collections.emptyList();
+    private final AtomicInteger nextReplica = new AtomicInteger();
+    /** Whether reads by identifier are routed to replicas */
+    private boolean replicaReads;
+    /** Query identifiers routed to replicas, containing "*" to route all queries */
+    private Set<String> replicaQueryIds = Collections.emptySet();
+
+    /** Optional read-through object cache, null if not enabled */
+    private volatile ObjectCache cache;
+    /** Resource types to cache, null to cache all */
+    private List<String> cachedResources;
+
     Map<String, TableHandler> tableHandlers;
     TableHandler defaultTableHandler;
 
@@ -160,16 +222,32 @@ public class JDBCRepoService extends ObjectSetJsonResource implements Repository
             throw new NotFoundException("The object identifier did not include sufficient information to determine the object type: " + fullId);
         }
 
+        ObjectCache objectCache = isCached(type) ? cache : null;
+        // Objects read from a replica may lag behind local writes, do not cache those
+        boolean useReplica = replicaReads && !replicas.isEmpty();
+        long cacheStamp = 0;
+        if (objectCache != null) {
+            Map<String, Object> cached = objectCache.get(fullId);
+            if (cached != null) {
+                logger.trace("Read of {} served from the object cache", fullId);
+                return cached;
+            }
+            cacheStamp = objectCache.stamp();
+        }
+
         Connection connection = null;
         Map<String, Object> result = null;
         try {
-            connection = getConnection();
+            connection = getReadConnection(useReplica);
             connection.setAutoCommit(true); // Ensure this does not get transaction isolation handling
             TableHandler handler = getTableHandler(type);
             if (handler == null) {
                 throw new ObjectSetException("No handler configured for resource type " + type);
             }
             result = handler.read(fullId, type, localId, connection);
+            if (objectCache != null && !useReplica) {
+                objectCache.put(fullId, result, cacheStamp);
+            }
         } catch (SQLException ex) {
             if (logger.isDebugEnabled()) {
                 logger.debug("SQL Exception in read of {} with error code {}, sql state {}",
@@ -230,6 +308,7 @@ public class JDBCRepoService extends ObjectSetJsonResource implements Repository
 
                 connection.commit();
                 logger.debug("Commited created object for id: {}", fullId);
+                invalidateCached(type, fullId);
 
             } catch (SQLException ex) {
                 if (logger.isDebugEnabled()) {
@@ -318,6 +397,7 @@ public class JDBCRepoService extends ObjectSetJsonResource implements Repository
 
                 connection.commit();
                 logger.debug("Commited updated object for id: {}", fullId);
+                invalidateCached(type, fullId);
             } catch (SQLException ex) {
                 if (logger.isDebugEnabled()) {
                     logger.debug("SQL Exception in update of {} with error code {}, sql state {}",
@@ -397,6 +477,7 @@ public class JDBCRepoService extends ObjectSetJsonResource implements Repository
 
                 connection.commit();
                 logger.debug("Commited deleted object for id: {}", fullId);
+                invalidateCached(type, fullId);
             } catch (IOException ex) {
                 logger.debug("IO Exception in delete of {}", fullId, ex);
                 rollback(connection);
@@ -456,6 +537,7 @@ public class JDBCRepoService extends ObjectSetJsonResource implements Repository
      * The returned map is structured as follow:
      * - The top level map contains meta-data about the query, plus an entry with the actual result records.
      * - The <code>QueryConstants</code> defines the map keys, including the result records (QUERY_RESULT)
+     * - If a PAGE_SIZE was requested and further records may exist, the PAGED_RESULTS_COOKIE for the next page
      *
      * @param fullId identifies the object to query.
      * @param params the parameters of the query to perform.
@@ -477,13 +559,14 @@ public class JDBCRepoService extends ObjectSetJsonResource implements Repository
             if (handler == null) {
                 throw new ObjectSetException("No handler configured for resource type " + type);
             }
-            connection = getConnection();
+            connection = getReadConnection(isReplicaQuery(params));
             connection.setAutoCommit(true); // Ensure we do not implicitly start transaction isolation
 
             long start = System.currentTimeMillis();
             List<Map<String, Object>> docs = handler.query(type, params, connection);
             long end = System.currentTimeMillis();
             result.put(QueryConstants.QUERY_RESULT, docs);
+            PagedResults.setPagedResultsCookie(result, docs, PagedResults.getPageSize(params));
             // TODO: split out conversion time
             //result.put(QueryConstants.STATISTICS_CONVERSION_TIME, Long.valueOf(convEnd-convStart));
 
@@ -510,8 +593,162 @@ public class JDBCRepoService extends ObjectSetJsonResource implements Repository
         return result;
     }
 
+    /**
+     * Supports the {@code updateBatch} action, updating a list of objects of the resource
+     * type identified by {@code fullId} in one transaction.
+     *
+     * @param fullId the identifier of the resource type
+     * @param params the action parameters, including the action name and the objects to update
+     * @return the result of the action
+     * @throws BadRequestException if the action is not supported or its objects are invalid
+     * @see RepositoryService#ACTION_UPDATE_BATCH
+     */
     public Map<String, Object> action(String fullId, Map<String, Object> params) throws ObjectSetException {
-        throw new UnsupportedOperationException("JDBC repository does not support action");
+        Object action = params.get(ServerConstants.ACTION_NAME);
+        if (RepositoryService.ACTION_UPDATE_BATCH.equals(action)) {
+            return updateBatch(fullId, params.get("_entity"));
+        }
+        throw new BadRequestException("Unsupported action " + action + " on the JDBC repository, supported: "
+                + RepositoryService.ACTION_UPDATE_BATCH);
+    }
+
+    /**
+     * Updates a batch of objects in one transaction, each only if its revision still matches.
+     * Objects changed or deleted since they were read are skipped. The whole batch is retried
+     * on a retryable failure, such as a deadlock.
+     *
+     * @param type the resource type of the objects
+     * @param entity the list of objects to update, each with its _id and _rev
+     * @return the _id and new _rev of the updated objects under the "updated" key
+     * @throws BadRequestException if the entity is not a list of objects with _id and _rev
+     */
+    private Map<String, Object> updateBatch(String type, Object entity) throws ObjectSetException {
+        if (!(entity instanceof List)) {
+            throw new BadRequestException("Batch update expects a list of objects to update");
+        }
+        List<Map<String, Object>> objects = new ArrayList<Map<String, Object>>();
+        for (Object obj : (List<?>) entity) {
+            if (!(obj instanceof Map) || ((Map<?, ?>) obj).get("_id") == null || ((Map<?, ?>) obj).get("_rev") == null) {
+                throw new BadRequestException("Batch update expects objects with _id and _rev: " + obj);
+            }
+            objects.add((Map<String, Object>) obj);
+        }
+
+        List<Map<String, Object>> updated = null;
+        Connection connection = null;
+        Integer previousIsolationLevel = null;
+        boolean retry = false;
+        int tryCount = 0;
+        do {
+            TableHandler handler = getTableHandler(type);
+            if (handler == null) {
+                throw new ObjectSetException("No handler configured for resource type " + type);
+            }
+            retry = false;
+            ++tryCount;
+            updated = new ArrayList<Map<String, Object>>();
+            try {
+                connection = getConnection();
+                previousIsolationLevel = new Integer(connection.getTransactionIsolation());
+                connection.setTransactionIsolation(Connection.TRANSACTION_READ_COMMITTED);
+                connection.setAutoCommit(false);
+
+                for (Map<String, Object> obj : objects) {
+                    String localId = obj.get("_id").toString();
+                    String fullId = type + "/" + localId;
+                    // The handler sets the new revision in the object, keep the original for a retry
+                    Map<String, Object> written = new HashMap<String, Object>(obj);
+                    try {
+                        handler.update(fullId, type, localId, obj.get("_rev").toString(), written, connection);
+                    } catch (PreconditionFailedException ex) {
+                        logger.debug("Batch update skips {}, {}", fullId, ex.getMessage());
+                        continue;
+                    } catch (NotFoundException ex) {
+                        logger.debug("Batch update skips {}, {}", fullId, ex.getMessage());
+                        continue;
+                    }
+                    Map<String, Object> result = new HashMap<String, Object>();
+                    result.put("_id", written.get("_id"));
+                    result.put("_rev", written.get("_rev"));
+                    updated.add(result);
+                }
+
+                connection.commit();
+                logger.debug("Commited batch update of {} out of {} {} objects",
+                        new Object[] {updated.size(), objects.size(), type});
+                for (Map<String, Object> obj : objects) {
+                    invalidateCached(type, type + "/" + obj.get("_id"));
+                }
+            } catch (SQLException ex) {
+                if (logger.isDebugEnabled()) {
+                    logger.debug("SQL Exception in batch update of {} with error code {}, sql state {}",
+                            new Object[] {type, ex.getErrorCode(), ex.getSQLState(), ex});
+                }
+                rollback(connection);
+                if (handler.isRetryable(ex, connection)) {
+                    if (tryCount <= maxTxRetry) {
+                        retry = true;
+                        logger.debug("Retryable exception encountered, retry {}", ex.getMessage());
+                    }
+                }
+                if (!retry) {
+                   throw new InternalServerErrorException("Batch update failed " + ex.getMessage(), ex);
+                }
+            } catch (ObjectSetException ex) {
+                logger.debug("ObjectSetException in batch update of {}", type, ex);
+                rollback(connection);
+                throw ex;
+            } catch (java.io.IOException ex) {
+                logger.debug("IO Exception in batch update of {}", type, ex);
+                rollback(connection);
+                throw new InternalServerErrorException("Conversion of object to update failed", ex);
+            } catch (RuntimeException ex) {
+                logger.debug("Runtime Exception in batch update of {}", type, ex);
+                rollback(connection);
+                throw new InternalServerErrorException("Batch update failed with unexpected failure: " + ex.getMessage(), ex);
+            } finally {
+                if (connection != null) {
+                    try {
+                        if (previousIsolationLevel != null) {
+                            connection.setTransactionIsolation(previousIsolationLevel.intValue());
+                        }
+                    } catch (SQLException ex) {
+                        logger.warn("Failure in resetting connection isolation level ", ex);
+                    }
+                    CleanupHelper.loggedClose(connection);
+                }
+            }
+        } while (retry);
+
+        Map<String, Object> result = new HashMap<String, Object>();
+        result.put(RepositoryService.BATCH_UPDATED, updated);
+        return result;
+    }
+
+    /**
+     * @param type the resource type
+     * @return true if the object cache is enabled for the resource type
+     */
+    private boolean isCached(String type) {
+        if (cache == null) {
+            return false;
+        }
+        if (cachedResources == null) {
+            return true;
+        }
+        for (String resource : cachedResources) {
+            if (type.equals(resource) || type.startsWith(resource + "/")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Invalidates a changed object in the object cache, if cached 
+    private void invalidateCached(String type, String fullId) {
+        if (isCached(type)) {
+            cache.invalidate(fullId);
+        }
     }
 
     // Utility method to cleanly roll back including logging
@@ -555,12 +792,53 @@ public class JDBCRepoService extends ObjectSetJsonResource implements Repository
 
     Connection getConnection() throws SQLException {
         if (useDataSource) {
-            return ds.getConnection();
+            EventEntry measure = Publisher.start(EVENT_CONNECTION_ACQUIRE, null, null);
+            try {
+                return ds.getConnection();
+            } finally {
+                measure.end();
+            }
         } else {
             return DriverManager.getConnection(dbUrl, user, password);
         }
     }
 
+    /**
+     * Gets a connection for reading outside of a write transaction
+     * 
+     * @param useReplica whether to prefer a read replica, if configured
+     * @return a replica connection, or a primary connection if no replica is available
+     * @throws SQLException if no connection could be obtained from the primary
+     */
+    Connection getReadConnection(boolean useReplica) throws SQLException {
+        List<DataSource> available = replicas;
+        if (useReplica && !available.isEmpty()) {
+            DataSource replica = available.get((nextReplica.getAndIncrement() & Integer.MAX_VALUE) % available.size());
+            try {
+                return replica.getConnection();
+            } catch (SQLException ex) {
+                logger.warn("Read replica unavailable, reading from the primary database: {}", ex.getMessage());
+            }
+        }
+        return getConnection();
+    }
+
+    /**
+     * @param params the query parameters
+     * @return true if the query is configured to be routed to read replicas
+     */
+    private boolean isReplicaQuery(Map<String, Object> params) {
+        if (replicas.isEmpty()) {
+            return false;
+        }
+        if (replicaQueryIds.contains("*")) {
+            return true;
+        }
+        Object queryId = params.get(QueryConstants.QUERY_ID);
+        return queryId != null && params.get(QueryConstants.QUERY_EXPRESSION) == null
+                && replicaQueryIds.contains(queryId.toString());
+    }
+
     TableHandler getTableHandler(String type) {
         TableHandler handler = tableHandlers.get(type);
         if (handler != null) {
@@ -620,8 +898,25 @@ public class JDBCRepoService extends ObjectSetJsonResource implements Repository
     @Deactivate
     void deactivate(ComponentContext compContext) {
         logger.debug("Deactivating Service {}", compContext);
+        closeDataSources();
         logger.info("Repository stopped.");
     }
+
+    /**
+     * Closes the connection pools created by this service, the primary pool and the read replicas,
+     * as a reconfiguration creates new ones
+     */
+    void closeDataSources() {
+        if (ownsDataSource) {
+            DataSourceFactory.close(ds);
+            ownsDataSource = false;
+        }
+        List<DataSource> closing = replicas;
+        replicas = Collections.emptyList();
+        for (DataSource replica : closing) {
+            DataSourceFactory.close(replica);
+        }
+    }
     
     /** 
      * Handles configuration updates without interrupting the service
@@ -726,17 +1021,20 @@ public class JDBCRepoService extends ObjectSetJsonResource implements Repository
                 if (null == sharedDataSource) {
                     Dictionary<String, String> serviceParams = new Hashtable<String, String>(1);
                     serviceParams.put("osgi.jndi.service.name", "jdbc/openidm");
-                    sharedDataSource = bundleContext.registerService(DataSource.class.getName(), DataSourceFactory.newInstance(connectionConfig), serviceParams);
+                    sharedDataSource = bundleContext.registerService(DataSource.class.getName(), DataSourceFactory.newInstance(connectionConfig, "shared"), serviceParams);
                 }
                 if (enableConnectionPool) {
-                    ds = DataSourceFactory.newInstance(connectionConfig);
+                    ds = DataSourceFactory.newInstance(connectionConfig, "repo");
                     useDataSource = true;
+                    ownsDataSource = true;
                     logger.info("DataSource connection pool enabled.");
                 } else {
                     logger.info("No DataSource connection pool enabled.");
                 }
             }
 
+            initReplicas(connectionConfig);
+
             // Table handling configuration
             String dbSchemaName = connectionConfig.get(CONFIG_DB_SCHEMA).defaultTo(null).asString();
             JsonValue genericQueries = config.get("queries").get("genericTables");
@@ -787,6 +1085,8 @@ public class JDBCRepoService extends ObjectSetJsonResource implements Repository
                 }
             }
 
+            initCache(config.get(CONFIG_CACHE));
+
             JsonValue explicitQueries = config.get("queries").get("explicitTables");
             JsonValue explicitMapping = config.get("resourceMapping").get("explicitMapping");
             if (!explicitMapping.isNull()) {
@@ -839,6 +1139,106 @@ public class JDBCRepoService extends ObjectSetJsonResource implements Repository
         }
     }
 
+    /**
+     * Sets up the optional read-only replicas. Replica connections inherit 
+     * the settings of the primary connection they do not override, e.g.
+     * "readReplicas" : { "read" : false, "queryIds" : [ "query-all-ids" ], 
+     *                    "connections" : [ { "jdbcUrl" : "jdbc:mysql://replica1:3306/openidm" } ] }
+     * <p/>
+     * Writes, and reads for update, always use the primary connection.
+     * 
+     * @param connectionConfig the primary connection configuration
+     */
+    void initReplicas(JsonValue connectionConfig) {
+        JsonValue replicaConfig = connectionConfig.get(CONFIG_READ_REPLICAS);
+        if (replicaConfig.isNull()) {
+            replicas = Collections.emptyList();
+            return;
+        }
+        List<DataSource> replicaSources = new ArrayList<DataSource>();
+        int count = 0;
+        for (JsonValue replica : replicaConfig.get("connections").required().expect(List.class)) {
+            Map<String, Object> merged = new HashMap<String, Object>(connectionConfig.asMap());
+            merged.remove(CONFIG_READ_REPLICAS);
+            merged.putAll(replica.expect(Map.class).asMap());
+            JsonValue mergedConfig = new JsonValue(merged);
+            String replicaDriver = mergedConfig.get(CONFIG_DB_DRIVER).required().asString();
+            try {
+                Class.forName(replicaDriver);
+            } catch (ClassNotFoundException ex) {
+                throw new InvalidException("Could not find configured database driver "
+                        + replicaDriver + " for read replica", ex);
+            }
+            replicaSources.add(DataSourceFactory.newInstance(mergedConfig, "replica" + count++));
+            logger.info("Read replica configured with URL {}", mergedConfig.get(CONFIG_DB_URL).asString());
+        }
+        replicaReads = replicaConfig.get("read").defaultTo(Boolean.FALSE).asBoolean();
+        Set<String> queryIds = new HashSet<String>();
+        for (JsonValue queryId : replicaConfig.get("queryIds").defaultTo(new ArrayList<Object>()).expect(List.class)) {
+            queryIds.add(queryId.asString());
+        }
+        replicaQueryIds = queryIds;
+        replicas = replicaSources;
+    }
+
+    /**
+     * Sets up the optional object cache, e.g.
+     * "cache" : { "enabled" : true, "maxEntries" : 10000, "timeToLiveInSeconds" : 60, 
+     *             "resources" : [ "managed/user", "internal/user" ] }
+     * 
+     * @param cacheConfig the cache configuration
+     */
+    synchronized void initCache(JsonValue cacheConfig) {
+        ObjectCache previous = cache;
+        if (previous != null) {
+            for (CacheInvalidationHook hook : cacheHooks) {
+                hook.unregister(previous);
+            }
+        }
+        if (!cacheConfig.get("enabled").defaultTo(Boolean.FALSE).asBoolean()) {
+            cache = null;
+            logger.debug("Object cache not enabled");
+            return;
+        }
+        cachedResources = null;
+        if (!cacheConfig.get("resources").isNull()) {
+            cachedResources = new ArrayList<String>();
+            for (JsonValue resource : cacheConfig.get("resources").expect(List.class)) {
+                cachedResources.add(resource.required().asString());
+            }
+        }
+        final ObjectCache newCache = new ObjectCache(
+                cacheConfig.get("maxEntries").defaultTo(10000).asInteger().intValue(),
+                cacheConfig.get("timeToLiveInSeconds").defaultTo(60).asLong().longValue() * 1000);
+        for (CacheInvalidationHook hook : cacheHooks) {
+            newCache.addHook(hook);
+            hook.register(newCache);
+        }
+        Name.get("openidm/internal/repo/jdbc/cache/hits").setGauge(new Gauge() {
+            public long getValue() {
+                return newCache.getHits();
+            }
+        });
+        Name.get("openidm/internal/repo/jdbc/cache/misses").setGauge(new Gauge() {
+            public long getValue() {
+                return newCache.getMisses();
+            }
+        });
+        Name.get("openidm/internal/repo/jdbc/cache/invalidations").setGauge(new Gauge() {
+            public long getValue() {
+                return newCache.getInvalidations();
+            }
+        });
+        Name.get("openidm/internal/repo/jdbc/cache/size").setGauge(new Gauge() {
+            public long getValue() {
+                return newCache.size();
+            }
+        });
+        cache = newCache;
+        logger.info("Object cache enabled for {} with up to {} entries", 
+                cachedResources == null ? "all resources" : cachedResources, newCache.getMaxEntries());
+    }
+
     GenericTableHandler getGenericTableHandler(DatabaseType databaseType,
             JsonValue tableConfig, String dbSchemaName, JsonValue queries, int maxBatchSize) {
 
@@ -106,12 +106,11 @@ public class MSSQLTableHandler extends GenericTableHandler {
                 newLocalId = localId; // If it hasn't changed, use the existing ID
                 obj.put("_id", newLocalId); // Ensure the ID is saved in the object
             }
-            String objString = mapper.writeValueAsString(obj);
     
-            logger.trace("Populating prepared statement {} for {} {} {} {} {} {}", new Object[]{updateStatement, fullId, newLocalId, newRev, objString, dbId, existingRev});
+            logger.trace("Populating prepared statement {} for {} {} {} {} {} {}", new Object[]{updateStatement, fullId, newLocalId, newRev, obj, dbId, existingRev});
             updateStatement.setString(1, newLocalId);
             updateStatement.setString(2, newRev);
-            updateStatement.setString(3, objString);
+            setFullObject(updateStatement, 3, obj);
             updateStatement.setLong(4, dbId);
             updateStatement.setString(5, existingRev);
             logger.debug("Update statement: {}", updateStatement);
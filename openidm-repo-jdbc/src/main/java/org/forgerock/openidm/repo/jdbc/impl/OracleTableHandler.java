@@ -84,14 +84,13 @@ public class OracleTableHandler extends GenericTableHandler {
             String rev = "0";
             obj.put("_id", localId); // Save the id in the object
             obj.put("_rev", rev); // Save the rev in the object, and return the changed rev from the create.
-            String objString = mapper.writeValueAsString(obj);
     
             logger.trace("Populating statement {} with params {}, {}, {}, {}",
-                    new Object[]{createStatement, typeId, localId, rev, objString});
+                    new Object[]{createStatement, typeId, localId, rev, obj});
             createStatement.setLong(1, typeId);
             createStatement.setString(2, localId);
             createStatement.setString(3, rev);
-            createStatement.setString(4, objString);
+            setFullObject(createStatement, 4, obj);
             logger.debug("Executing: {}", createStatement);
             int val = createStatement.executeUpdate();
     
@@ -0,0 +1,90 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright © 2013 ForgeRock AS. All rights reserved.
+ *
+ * The contents of this file are subject to the terms
+ * of the Common Development and Distribution License
+ * (the License). You may not use this file except in
+ * compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://forgerock.org/license/CDDLv1.0.html
+ * See the License for the specific language governing
+ * permission and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL
+ * Header Notice in each file and include the License file
+ * at http://forgerock.org/license/CDDLv1.0.html
+ * If applicable, add the following below the CDDL Header,
+ * with the fields enclosed by brackets [] replaced by
+ * your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ */
+package org.forgerock.openidm.repo.jdbc.impl.pool;
+
+import javax.sql.DataSource;
+
+import org.codehaus.jackson.map.DeserializationConfig;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.forgerock.json.fluent.JsonValue;
+import org.forgerock.openidm.smartevent.Gauge;
+import org.forgerock.openidm.smartevent.Name;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.jolbox.bonecp.BoneCPDataSource;
+
+/**
+ * Pool provider using BoneCP. The BoneCP settings are read from the 
+ * connection configuration by their BoneCP property names.
+ */
+public class BoneCPPoolProvider implements PoolProvider {
+    private final static Logger logger = LoggerFactory.getLogger(BoneCPPoolProvider.class);
+
+    /**
+     * @inheritDoc
+     */
+    public DataSource newDataSource(JsonValue config, String eventNamePrefix) {
+        ObjectMapper mapper = new ObjectMapper();
+        mapper.getDeserializationConfig().set(DeserializationConfig.Feature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+        BoneCPDataSource ds = mapper.convertValue(config.asMap(), BoneCPDataSource.class);
+        final DatabaseShutdownHook hook = new DatabaseShutdownHook();
+        ds.setConnectionHook(hook);
+        ds.setTransactionRecoveryEnabled(true);// Important: This should be enabled
+
+        // Defaults if not explicitly set
+        if (!config.isDefined("acquireRetryAttempts")) {
+            ds.setAcquireRetryAttempts(10);//default is 5
+        }
+        if (!config.isDefined("releaseHelperThreads")) {
+            ds.setReleaseHelperThreads(5);
+        }
+        if (ds.getMaxConnectionsPerPartition() < 1) {
+            ds.setMinConnectionsPerPartition(1);
+            ds.setMaxConnectionsPerPartition(20);
+        }
+
+        /*
+        // Settings to enable connection testing with BoneCP 0.8 snapshot
+        ds.setDetectUnclosedStatements(true); // Debug setting
+        ds.setCloseConnectionWatchTimeoutInMs(1000); // Debug setting, not for production
+        ds.setCloseConnectionWatch(true); // Debug setting, not for production
+        ds.setStatementsCacheSize(20); // This caching may already be done by DB driver
+        */
+
+        Name.get(eventNamePrefix + "active").setGauge(new Gauge() {
+            public long getValue() {
+                return hook.getActiveConnections();
+            }
+        });
+        Name.get(eventNamePrefix + "idle").setGauge(new Gauge() {
+            public long getValue() {
+                return hook.getIdleConnections();
+            }
+        });
+
+        logger.debug("BoneCPDataSource: {}", ds);
+        return ds;
+    }
+}
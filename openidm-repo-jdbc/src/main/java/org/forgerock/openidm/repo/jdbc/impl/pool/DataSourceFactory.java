@@ -23,47 +23,66 @@
  */
 package org.forgerock.openidm.repo.jdbc.impl.pool;
 
-import com.jolbox.bonecp.BoneCPDataSource;
-import org.codehaus.jackson.map.DeserializationConfig;
-import org.codehaus.jackson.map.ObjectMapper;
 import org.forgerock.json.fluent.JsonValue;
+import org.forgerock.json.fluent.JsonValueException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.sql.DataSource;
 
+import com.jolbox.bonecp.BoneCPDataSource;
+
 /**
+ * Creates the pooled data source using the {@link PoolProvider} selected 
+ * by the "poolType" connection setting
+ * 
  * @author $author$
  * @version $Revision$ $Date$
  */
 public class DataSourceFactory {
     private final static Logger logger = LoggerFactory.getLogger(DataSourceFactory.class);
 
+    public static final String CONFIG_POOL_TYPE = "poolType";
+    public static final String POOL_TYPE_BONECP = "bonecp";
+    public static final String POOL_TYPE_LOCKFREE = "lockfree";
+
     public static DataSource newInstance(JsonValue config) {
-        //TODO Make CP implementation independent
-        ObjectMapper mapper = new ObjectMapper();
-        mapper.getDeserializationConfig().set(DeserializationConfig.Feature.FAIL_ON_UNKNOWN_PROPERTIES, false);
-        BoneCPDataSource ds = mapper.convertValue(config.asMap(), BoneCPDataSource.class);
-        ds.setConnectionHook(new DatabaseShutdownHook());
-        ds.setTransactionRecoveryEnabled(true);// Important: This should be enabled
-        ds.setAcquireRetryAttempts(10);//default is 5
-        ds.setReleaseHelperThreads(5);
-        
-        // Default if not explicitly set
-        if (ds.getMaxConnectionsPerPartition() < 1) {
-            ds.setMinConnectionsPerPartition(1);
-            ds.setMaxConnectionsPerPartition(20);
+        return newInstance(config, "repo");
+    }
+
+    /**
+     * @param config the connection configuration
+     * @param poolName name distinguishing the pool in the monitoring statistics
+     * @return the pooled data source
+     */
+    public static DataSource newInstance(JsonValue config, String poolName) {
+        JsonValue poolType = config.get(CONFIG_POOL_TYPE).defaultTo(POOL_TYPE_BONECP);
+        PoolProvider provider = null;
+        if (POOL_TYPE_BONECP.equalsIgnoreCase(poolType.asString())) {
+            provider = new BoneCPPoolProvider();
+        } else if (POOL_TYPE_LOCKFREE.equalsIgnoreCase(poolType.asString())) {
+            provider = new LockFreePoolProvider();
+        } else {
+            throw new JsonValueException(poolType, "Unknown pool type " + poolType.asString() 
+                    + ", supported are " + POOL_TYPE_BONECP + " and " + POOL_TYPE_LOCKFREE);
         }
+        logger.debug("Creating {} connection pool {}", poolType.asString(), poolName);
+        return provider.newDataSource(config, "openidm/internal/repo/jdbc/pool/" + poolName + "/");
+    }
 
-        /*
-        // Settings to enable connection testing with BoneCP 0.8 snapshot
-        ds.setDetectUnclosedStatements(true); // Debug setting
-        ds.setCloseConnectionWatchTimeoutInMs(1000); // Debug setting, not for production
-        ds.setCloseConnectionWatch(true); // Debug setting, not for production
-        ds.setStatementsCacheSize(20); // This caching may already be done by DB driver
-        */
-        
-        logger.debug("BoneCPDataSource: {}", ds);
-        return ds;
+    /**
+     * Closes a pooled data source created by this factory, releasing its connections.
+     * Data sources of other types are left alone.
+     * 
+     * @param ds the data source to close, may be null
+     */
+    public static void close(DataSource ds) {
+        if (ds instanceof BoneCPDataSource) {
+            ((BoneCPDataSource) ds).close();
+            logger.debug("Closed connection pool {}", ds);
+        } else if (ds instanceof LockFreeDataSource) {
+            ((LockFreeDataSource) ds).close();
+            logger.debug("Closed connection pool {}", ds);
+        }
     }
 }
@@ -30,6 +30,8 @@ import org.forgerock.openidm.util.DateUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.concurrent.atomic.AtomicInteger;
+
 /**
  * @author $author$
  * @version $Revision$ $Date$
@@ -39,6 +41,48 @@ public class DatabaseShutdownHook extends AbstractConnectionHook {
     // Only used for logging, so it's okay to use the default timezone
     private final static DateUtil dateUtil = DateUtil.getDateUtil();
 
+    // Pool state for monitoring
+    private final AtomicInteger openConnections = new AtomicInteger();
+    private final AtomicInteger activeConnections = new AtomicInteger();
+
+    @Override
+    public void onAcquire(ConnectionHandle connection) {
+        openConnections.incrementAndGet();
+        super.onAcquire(connection);
+    }
+
+    @Override
+    public void onDestroy(ConnectionHandle connection) {
+        openConnections.decrementAndGet();
+        super.onDestroy(connection);
+    }
+
+    @Override
+    public void onCheckOut(ConnectionHandle connection) {
+        activeConnections.incrementAndGet();
+        super.onCheckOut(connection);
+    }
+
+    @Override
+    public void onCheckIn(ConnectionHandle connection) {
+        activeConnections.decrementAndGet();
+        super.onCheckIn(connection);
+    }
+
+    /**
+     * @return the number of connections currently handed out by the pool
+     */
+    public int getActiveConnections() {
+        return activeConnections.get();
+    }
+
+    /**
+     * @return the number of open connections available in the pool
+     */
+    public int getIdleConnections() {
+        return Math.max(0, openConnections.get() - activeConnections.get());
+    }
+
     @Override
     public boolean onConnectionException(ConnectionHandle connection, String state, Throwable t) {
         // handle notifications here: SNMP or SMTP
@@ -0,0 +1,362 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright © 2013 ForgeRock AS. All rights reserved.
+ *
+ * The contents of this file are subject to the terms
+ * of the Common Development and Distribution License
+ * (the License). You may not use this file except in
+ * compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://forgerock.org/license/CDDLv1.0.html
+ * See the License for the specific language governing
+ * permission and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL
+ * Header Notice in each file and include the License file
+ * at http://forgerock.org/license/CDDLv1.0.html
+ * If applicable, add the following below the CDDL Header,
+ * with the fields enclosed by brackets [] replaced by
+ * your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ */
+package org.forgerock.openidm.repo.jdbc.impl.pool;
+
+import java.io.PrintWriter;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.sql.DataSource;
+
+import org.forgerock.openidm.smartevent.EventEntry;
+import org.forgerock.openidm.smartevent.Name;
+import org.forgerock.openidm.smartevent.Publisher;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Connection pool without a global lock.
+ * <p/>
+ * Idle connections are kept in a non-blocking queue and the number of 
+ * connections is bounded by a semaphore. Acquiring and releasing a connection 
+ * on a pool that is not exhausted only performs compare-and-set operations; 
+ * threads only block, up to the configured timeout, when all connections are in use.
+ * <p/>
+ * Connections handed out are proxies, closing them returns the underlying 
+ * connection to the pool.
+ */
+public class LockFreeDataSource implements DataSource {
+    private final static Logger logger = LoggerFactory.getLogger(LockFreeDataSource.class);
+
+    private final String jdbcUrl;
+    private final String username;
+    private final String password;
+    private final int maxConnections;
+    private final long connectionTimeoutInMs;
+    private final long idleConnectionTestPeriodInMs;
+
+    private final Name waitEventName;
+
+    private final ConcurrentLinkedQueue<PooledConnection> idle = new ConcurrentLinkedQueue<PooledConnection>();
+    private final Semaphore permits;
+    private final AtomicInteger activeCount = new AtomicInteger();
+    private final AtomicInteger idleCount = new AtomicInteger();
+    private final AtomicInteger waitingCount = new AtomicInteger();
+    private volatile boolean closed = false;
+
+    private volatile PrintWriter logWriter;
+    private volatile int loginTimeout;
+
+    /**
+     * @param jdbcUrl the JDBC URL to connect to, the driver must already be registered
+     * @param username the DB user
+     * @param password the DB password
+     * @param maxConnections the maximum number of connections, in use and idle
+     * @param connectionTimeoutInMs how long to wait for a connection when all are in use
+     * @param idleConnectionTestPeriodInMs connections idle for longer are validated before use
+     * @param waitEventName the event to publish for the time spent waiting on an exhausted pool
+     */
+    public LockFreeDataSource(String jdbcUrl, String username, String password, int maxConnections,
+            long connectionTimeoutInMs, long idleConnectionTestPeriodInMs, Name waitEventName) {
+        this.jdbcUrl = jdbcUrl;
+        this.username = username;
+        this.password = password;
+        this.maxConnections = maxConnections;
+        this.connectionTimeoutInMs = connectionTimeoutInMs;
+        this.idleConnectionTestPeriodInMs = idleConnectionTestPeriodInMs;
+        this.waitEventName = waitEventName;
+        this.permits = new Semaphore(maxConnections);
+    }
+
+    /**
+     * @inheritDoc
+     */
+    public Connection getConnection() throws SQLException {
+        if (closed) {
+            throw new SQLException("Connection pool for " + jdbcUrl + " is closed");
+        }
+        if (!permits.tryAcquire()) {
+            awaitPermit();
+        }
+        try {
+            PooledConnection pooled = null;
+            while (pooled == null && (pooled = idle.poll()) != null) {
+                idleCount.decrementAndGet();
+                if (!pooled.isUsable()) {
+                    pooled.closePhysical();
+                    pooled = null;
+                }
+            }
+            if (pooled == null) {
+                pooled = new PooledConnection(DriverManager.getConnection(jdbcUrl, username, password));
+                logger.debug("Opened new pooled connection to {}", jdbcUrl);
+            }
+            activeCount.incrementAndGet();
+            return pooled.checkOut();
+        } catch (SQLException ex) {
+            permits.release();
+            throw ex;
+        } catch (RuntimeException ex) {
+            permits.release();
+            throw ex;
+        }
+    }
+
+    /**
+     * Blocks until a connection is returned to the exhausted pool, or the timeout passes
+     */
+    private void awaitPermit() throws SQLException {
+        waitingCount.incrementAndGet();
+        EventEntry measure = Publisher.start(waitEventName, null, null);
+        try {
+            if (!permits.tryAcquire(connectionTimeoutInMs, TimeUnit.MILLISECONDS)) {
+                throw new SQLException("Timed out after " + connectionTimeoutInMs 
+                        + " ms waiting for a connection, all " + maxConnections + " connections are in use");
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted waiting for a connection", ex);
+        } finally {
+            waitingCount.decrementAndGet();
+            measure.end();
+        }
+    }
+
+    /**
+     * Returns a connection handed out to the pool
+     */
+    void release(PooledConnection pooled) {
+        activeCount.decrementAndGet();
+        try {
+            if (closed || !pooled.reset()) {
+                pooled.closePhysical();
+            } else {
+                idleCount.incrementAndGet();
+                idle.offer(pooled);
+            }
+        } finally {
+            permits.release();
+        }
+    }
+
+    /**
+     * Closes the idle connections; connections in use are closed when they are returned
+     */
+    public void close() {
+        closed = true;
+        PooledConnection pooled = null;
+        while ((pooled = idle.poll()) != null) {
+            idleCount.decrementAndGet();
+            pooled.closePhysical();
+        }
+    }
+
+    /**
+     * @return the number of connections currently handed out
+     */
+    public int getActiveConnections() {
+        return activeCount.get();
+    }
+
+    /**
+     * @return the number of open connections available in the pool
+     */
+    public int getIdleConnections() {
+        return idleCount.get();
+    }
+
+    /**
+     * @return the number of threads waiting for a connection
+     */
+    public int getWaitingThreads() {
+        return waitingCount.get();
+    }
+
+    /**
+     * @inheritDoc
+     */
+    public Connection getConnection(String username, String password) throws SQLException {
+        throw new SQLFeatureNotSupportedException("Connections of a pool use the configured credentials");
+    }
+
+    public PrintWriter getLogWriter() throws SQLException {
+        return logWriter;
+    }
+
+    public void setLogWriter(PrintWriter out) throws SQLException {
+        this.logWriter = out;
+    }
+
+    public void setLoginTimeout(int seconds) throws SQLException {
+        this.loginTimeout = seconds;
+    }
+
+    public int getLoginTimeout() throws SQLException {
+        return loginTimeout;
+    }
+
+    public java.util.logging.Logger getParentLogger() throws SQLFeatureNotSupportedException {
+        throw new SQLFeatureNotSupportedException();
+    }
+
+    public <T> T unwrap(Class<T> iface) throws SQLException {
+        if (iface.isInstance(this)) {
+            return iface.cast(this);
+        }
+        throw new SQLException("Not a wrapper for " + iface);
+    }
+
+    public boolean isWrapperFor(Class<?> iface) throws SQLException {
+        return iface.isInstance(this);
+    }
+
+    @Override
+    public String toString() {
+        return "LockFreeDataSource [" + jdbcUrl + ", max: " + maxConnections + ", active: " + activeCount.get() 
+                + ", idle: " + idleCount.get() + ", waiting: " + waitingCount.get() + "]";
+    }
+
+    /**
+     * A physical connection owned by the pool
+     */
+    final class PooledConnection {
+        final Connection connection;
+        volatile long lastUsed = System.currentTimeMillis();
+        volatile boolean broken = false;
+
+        PooledConnection(Connection connection) {
+            this.connection = connection;
+        }
+
+        /**
+         * @return a proxy to hand out, which returns the connection to the pool when closed
+         */
+        Connection checkOut() {
+            return (Connection) Proxy.newProxyInstance(LockFreeDataSource.class.getClassLoader(), 
+                    new Class[] {Connection.class}, new CheckedOutHandler(this));
+        }
+
+        /**
+         * @return true if the connection can be handed out again, 
+         * validating it if it has been idle for longer than the test period
+         */
+        boolean isUsable() {
+            if (System.currentTimeMillis() - lastUsed < idleConnectionTestPeriodInMs) {
+                return true;
+            }
+            try {
+                return connection.isValid(5);
+            } catch (SQLException ex) {
+                logger.debug("Validation of idle pooled connection failed", ex);
+                return false;
+            }
+        }
+
+        /**
+         * Roll back left over work and restore auto-commit before the connection is re-used
+         * @return false if the connection is not fit for re-use
+         */
+        boolean reset() {
+            if (broken) {
+                return false;
+            }
+            try {
+                if (!connection.getAutoCommit()) {
+                    connection.rollback();
+                    connection.setAutoCommit(true);
+                }
+                lastUsed = System.currentTimeMillis();
+                return true;
+            } catch (SQLException ex) {
+                logger.debug("Resetting pooled connection failed, discarding it", ex);
+                return false;
+            }
+        }
+
+        void closePhysical() {
+            try {
+                connection.close();
+            } catch (SQLException ex) {
+                logger.debug("Failure closing pooled connection", ex);
+            }
+        }
+    }
+
+    /**
+     * Delegates to the pooled connection until closed
+     */
+    final class CheckedOutHandler implements InvocationHandler {
+        final PooledConnection pooled;
+        final AtomicBoolean released = new AtomicBoolean(false);
+
+        CheckedOutHandler(PooledConnection pooled) {
+            this.pooled = pooled;
+        }
+
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            if ("close".equals(name)) {
+                if (released.compareAndSet(false, true)) {
+                    release(pooled);
+                }
+                return null;
+            } else if ("isClosed".equals(name)) {
+                return Boolean.valueOf(released.get() || pooled.connection.isClosed());
+            } else if ("equals".equals(name)) {
+                return Boolean.valueOf(proxy == args[0]);
+            } else if ("hashCode".equals(name)) {
+                return Integer.valueOf(System.identityHashCode(proxy));
+            } else if ("toString".equals(name)) {
+                return "Pooled " + pooled.connection;
+            }
+            if (released.get()) {
+                throw new SQLException("Connection is closed");
+            }
+            try {
+                return method.invoke(pooled.connection, args);
+            } catch (InvocationTargetException ex) {
+                Throwable cause = ex.getCause();
+                if (cause instanceof SQLException) {
+                    String state = ((SQLException) cause).getSQLState();
+                    // SQL state class 08 is a connection exception, do not re-use the connection
+                    if (state != null && state.startsWith("08")) {
+                        pooled.broken = true;
+                    }
+                }
+                throw cause;
+            }
+        }
+    }
+}
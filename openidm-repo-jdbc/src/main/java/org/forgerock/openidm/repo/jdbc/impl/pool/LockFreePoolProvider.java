@@ -0,0 +1,79 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright © 2013 ForgeRock AS. All rights reserved.
+ *
+ * The contents of this file are subject to the terms
+ * of the Common Development and Distribution License
+ * (the License). You may not use this file except in
+ * compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://forgerock.org/license/CDDLv1.0.html
+ * See the License for the specific language governing
+ * permission and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL
+ * Header Notice in each file and include the License file
+ * at http://forgerock.org/license/CDDLv1.0.html
+ * If applicable, add the following below the CDDL Header,
+ * with the fields enclosed by brackets [] replaced by
+ * your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ */
+package org.forgerock.openidm.repo.jdbc.impl.pool;
+
+import javax.sql.DataSource;
+
+import org.forgerock.json.fluent.JsonValue;
+import org.forgerock.openidm.smartevent.Gauge;
+import org.forgerock.openidm.smartevent.Name;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Pool provider for the {@link LockFreeDataSource}
+ * <p/>
+ * Settings in the connection configuration: 
+ * <ul>
+ * <li>maxConnections - the maximum number of connections, default 20</li>
+ * <li>connectionTimeoutInMs - how long to wait for a connection if all are in use, default 30000</li>
+ * <li>idleConnectionTestPeriodInSeconds - validate connections idle for longer than this, default 60</li>
+ * </ul>
+ */
+public class LockFreePoolProvider implements PoolProvider {
+    private final static Logger logger = LoggerFactory.getLogger(LockFreePoolProvider.class);
+
+    /**
+     * @inheritDoc
+     */
+    public DataSource newDataSource(JsonValue config, String eventNamePrefix) {
+        final LockFreeDataSource ds = new LockFreeDataSource(
+                config.get("jdbcUrl").required().asString(),
+                config.get("username").required().asString(),
+                config.get("password").defaultTo("").asString(),
+                config.get("maxConnections").defaultTo(20).asInteger().intValue(),
+                config.get("connectionTimeoutInMs").defaultTo(30000).asLong().longValue(),
+                config.get("idleConnectionTestPeriodInSeconds").defaultTo(60).asLong().longValue() * 1000,
+                Name.get(eventNamePrefix + "wait"));
+
+        Name.get(eventNamePrefix + "active").setGauge(new Gauge() {
+            public long getValue() {
+                return ds.getActiveConnections();
+            }
+        });
+        Name.get(eventNamePrefix + "idle").setGauge(new Gauge() {
+            public long getValue() {
+                return ds.getIdleConnections();
+            }
+        });
+        Name.get(eventNamePrefix + "waiting").setGauge(new Gauge() {
+            public long getValue() {
+                return ds.getWaitingThreads();
+            }
+        });
+
+        logger.debug("LockFreeDataSource: {}", ds);
+        return ds;
+    }
+}
@@ -0,0 +1,44 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright © 2013 ForgeRock AS. All rights reserved.
+ *
+ * The contents of this file are subject to the terms
+ * of the Common Development and Distribution License
+ * (the License). You may not use this file except in
+ * compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://forgerock.org/license/CDDLv1.0.html
+ * See the License for the specific language governing
+ * permission and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL
+ * Header Notice in each file and include the License file
+ * at http://forgerock.org/license/CDDLv1.0.html
+ * If applicable, add the following below the CDDL Header,
+ * with the fields enclosed by brackets [] replaced by
+ * your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ */
+package org.forgerock.openidm.repo.jdbc.impl.pool;
+
+import javax.sql.DataSource;
+
+import org.forgerock.json.fluent.JsonValue;
+
+/**
+ * Connection pool implementation plugged into the {@link DataSourceFactory}
+ */
+public interface PoolProvider {
+
+    /**
+     * Creates a pooled data source. Implementations register the current
+     * pool state as smartevent gauges under the passed event name prefix.
+     * 
+     * @param config the connection configuration, including the pool settings
+     * @param eventNamePrefix the prefix for the monitoring names of this pool
+     * @return the pooled data source
+     */
+    DataSource newDataSource(JsonValue config, String eventNamePrefix);
+}
@@ -23,7 +23,9 @@
  */
 package org.forgerock.openidm.repo.jdbc.impl.query;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Locale;
 
 /**
  * Information about a JDBC query
@@ -33,10 +35,14 @@ import java.util.List;
 final class QueryInfo {
     private String queryString;
     private List<String> tokenNames;
+    private String firstPageQueryString;
+    private String nextPageQueryString;
+    private final boolean pageable;
 
     public QueryInfo(String queryString, List<String> tokenNames) {
         this.queryString = queryString;
         this.tokenNames = tokenNames;
+        this.pageable = returnsObjectId(queryString);
     }
 
     /**
@@ -54,4 +60,84 @@ final class QueryInfo {
     public List<String> getTokenNames() {
         return tokenNames;
     }
-}
\ No newline at end of file
+
+    /**
+     * Paging orders and resumes on the objectid column, which only works
+     * if the query returns it. The generic queries returning just the
+     * fullobject column can not be paged.
+     *
+     * @return whether the query returns the objectid column
+     */
+    public boolean isPageable() {
+        return pageable;
+    }
+
+    /**
+     * The paged variants order the query results by object identifier
+     * and, for subsequent pages, resume after the last identifier of the
+     * previous page. The query must return the objectid column, and
+     * the keyset parameter is the last ? after the query tokens.
+     *
+     * @param resume whether to resume after a last identifier (keyset)
+     * @return the paged query in string form
+     * @see #isPageable()
+     */
+    public String getPagedQueryString(boolean resume) {
+        if (resume) {
+            if (nextPageQueryString == null) {
+                nextPageQueryString = "SELECT * FROM (" + queryString + ") pagedquery"
+                        + " WHERE pagedquery.objectid > ? ORDER BY pagedquery.objectid";
+            }
+            return nextPageQueryString;
+        } else {
+            if (firstPageQueryString == null) {
+                firstPageQueryString = "SELECT * FROM (" + queryString + ") pagedquery"
+                        + " ORDER BY pagedquery.objectid";
+            }
+            return firstPageQueryString;
+        }
+    }
+
+    /**
+     * Inspects the select list of the outermost select for a column named
+     * objectid, either plain, qualified (obj.objectid) or as alias, or a wildcard.
+     *
+     * @param queryString the query in string form
+     * @return whether the query result includes the objectid column
+     */
+    static boolean returnsObjectId(String queryString) {
+        String query = queryString.toLowerCase(Locale.ENGLISH);
+        int select = query.indexOf("select");
+        if (select < 0) {
+            return false;
+        }
+        List<String> columns = new ArrayList<String>();
+        int depth = 0;
+        int start = select + "select".length();
+        for (int i = start; i < query.length(); i++) {
+            char c = query.charAt(i);
+            if (c == '(') {
+                depth++;
+            } else if (c == ')') {
+                depth--;
+            } else if (depth == 0 && c == ',') {
+                columns.add(query.substring(start, i));
+                start = i + 1;
+            } else if (depth == 0 && Character.isWhitespace(c) && query.startsWith("from", i + 1)
+                    && (i + 5 >= query.length() || !Character.isLetterOrDigit(query.charAt(i + 5)))) {
+                columns.add(query.substring(start, i));
+                break;
+            }
+        }
+        for (String column : columns) {
+            String[] words = column.trim().split("\\s+");
+            // The result column name is the alias if any, else the unqualified column
+            String name = words[words.length - 1];
+            name = name.substring(name.lastIndexOf('.') + 1);
+            if (name.equals("*") || name.equals("objectid")) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -30,6 +30,7 @@ import org.forgerock.openidm.objset.ObjectSetException;
 import org.forgerock.openidm.repo.QueryConstants;
 import org.forgerock.openidm.repo.jdbc.impl.CleanupHelper;
 import org.forgerock.openidm.repo.jdbc.impl.GenericTableHandler.QueryDefinition;
+import org.forgerock.openidm.repo.util.PagedResults;
 import org.forgerock.openidm.repo.util.TokenHandler;
 import org.forgerock.openidm.smartevent.EventEntry;
 import org.forgerock.openidm.smartevent.Name;
@@ -137,6 +138,9 @@ public class TableQueries {
      * 
      * The keys for the input parameters as well as the return map entries are in QueryConstants.
      * 
+     * If a page size is passed the results are ordered by objectid and limited to the page size, 
+     * resuming after the object identifier encoded in the paged results cookie if present.
+     * 
      * @param type the resource component name targeted by the URI
      * @param params the parameters which include the query id, or the query expression, as well as the 
      *        token key/value pairs to replace in the query
@@ -158,12 +162,14 @@ public class TableQueries {
             throw new BadRequestException("Either " + QueryConstants.QUERY_ID + " or " + QueryConstants.QUERY_EXPRESSION
                     + " to identify/define a query must be passed in the parameters. " + params);
         }
+        int pageSize = PagedResults.getPageSize(params);
+        String lastId = PagedResults.getLastId(params);
         PreparedStatement foundQuery = null;
         try {
             if (queryExpression != null) {
-                foundQuery = resolveInlineQuery(con, queryExpression, params);
+                foundQuery = resolveInlineQuery(con, queryExpression, params, pageSize, lastId);
             } else {
-                foundQuery = getQuery(con, queryId, type, params);
+                foundQuery = getQuery(con, queryId, type, params, pageSize, lastId);
             }
         } catch (SQLException ex) {
             throw new InternalServerErrorException("DB reported failure preparing query: " 
@@ -219,14 +225,16 @@ public class TableQueries {
      * @param con The db connection
      * @param queryExpression the native query string
      * @param params parameters passed to the resource query
+     * @param pageSize the maximum number of results, 0 if not paged
+     * @param lastId the object identifier to resume the page after, null for the first page
      * @return A resolved statement
      */
-    PreparedStatement resolveInlineQuery(Connection con, String queryExpression, Map<String, Object> params)
-            throws SQLException {
+    PreparedStatement resolveInlineQuery(Connection con, String queryExpression, Map<String, Object> params,
+            int pageSize, String lastId) throws SQLException, BadRequestException {
         // No token replacement on expressions for now
         List<String> tokenNames = new ArrayList<String>();
         QueryInfo info = new QueryInfo(queryExpression, tokenNames);
-        PreparedStatement stmt = resolveQuery(info, con, params);
+        PreparedStatement stmt = resolveQuery(info, con, params, pageSize, lastId);
         return stmt;
     }
     
@@ -236,18 +244,20 @@ public class TableQueries {
      * @param queryId the unique identifier of the paramterized, pre-defined query
      * @param type the resource component name targeted by the URI
      * @param params the paramteris passed into the query call
+     * @param pageSize the maximum number of results, 0 if not paged
+     * @param lastId the object identifier to resume the page after, null for the first page
      * @return The statement
      * @throws SQLException if resolving the statement failed
      * @throws BadRequestException if no query is defined for the given identifier
      */
-    PreparedStatement getQuery(Connection con, String queryId, String type, Map<String, Object> params)
-                throws SQLException, BadRequestException{
+    PreparedStatement getQuery(Connection con, String queryId, String type, Map<String, Object> params,
+            int pageSize, String lastId) throws SQLException, BadRequestException{
         
         QueryInfo info = queries.get(queryId);
         if (info == null) {
             throw new BadRequestException("No query defined/configured for requested queryId " + queryId);
         }
-        PreparedStatement stmt = resolveQuery(info, con, params);
+        PreparedStatement stmt = resolveQuery(info, con, params, pageSize, lastId);
         return stmt;
     }
 
@@ -256,12 +266,24 @@ public class TableQueries {
      * @param info The info encapsulating the query information
      * @param con the db connection 
      * @param params the paramters passed to query
+     * @param pageSize the maximum number of results, 0 if not paged
+     * @param lastId the object identifier to resume the page after, null for the first page
      * @return the resolved query
      * @throws SQLException if resolving the query failed
+     * @throws BadRequestException if a page is requested of a query which does not return the objectid column
      */
-    PreparedStatement resolveQuery(QueryInfo info, Connection con, Map<String, Object> params) 
-            throws SQLException {
-        String queryStr = info.getQueryString();
+    PreparedStatement resolveQuery(QueryInfo info, Connection con, Map<String, Object> params,
+            int pageSize, String lastId) throws SQLException, BadRequestException {
+        String queryStr = null;
+        if (pageSize > 0) {
+            if (!info.isPageable()) {
+                throw new BadRequestException("Query can not be paged as it does not return the objectid column: "
+                        + info.getQueryString());
+            }
+            queryStr = info.getPagedQueryString(lastId != null);
+        } else {
+            queryStr = info.getQueryString();
+        }
         List<String> tokenNames = info.getTokenNames();
         PreparedStatement statement = getPreparedStatement(con, queryStr); 
         int count = 1; // DB column count starts at 1
@@ -274,6 +296,14 @@ public class TableQueries {
             statement.setString(count, value);
             count++;
         }
+        if (pageSize > 0) {
+            // Keyset pagination, the DB can stop reading once the page is full
+            if (lastId != null) {
+                statement.setString(count, lastId);
+            }
+            statement.setMaxRows(pageSize);
+            statement.setFetchSize(pageSize);
+        }
         logger.debug("Prepared statement: {}", statement);
 
         return statement;
@@ -0,0 +1,150 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright © 2013 ForgeRock AS. All rights reserved.
+ *
+ * The contents of this file are subject to the terms
+ * of the Common Development and Distribution License
+ * (the License). You may not use this file except in
+ * compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://forgerock.org/license/CDDLv1.0.html
+ * See the License for the specific language governing
+ * permission and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL
+ * Header Notice in each file and include the License file
+ * at http://forgerock.org/license/CDDLv1.0.html
+ * If applicable, add the following below the CDDL Header,
+ * with the fields enclosed by brackets [] replaced by
+ * your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ */
+
+package org.forgerock.openidm.repo.jdbc.impl;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+public class GenericTableHandlerTest {
+
+    private Connection connection;
+
+    @BeforeClass
+    public void init() throws Exception {
+        Class.forName("org.hsqldb.jdbc.JDBCDriver");
+        connection = DriverManager.getConnection("jdbc:hsqldb:mem:generictablehandlertest", "sa", "");
+        Statement statement = connection.createStatement();
+        statement.execute("CREATE TABLE objects (objectid VARCHAR(36) PRIMARY KEY, fullobject CLOB)");
+        statement.close();
+    }
+
+    @AfterClass
+    public void dispose() throws Exception {
+        connection.createStatement().execute("SHUTDOWN");
+        connection.close();
+    }
+
+    private Map<String, Object> roundTrip(String id, Map<String, Object> obj) throws Exception {
+        PreparedStatement insert = connection.prepareStatement("INSERT INTO objects (objectid, fullobject) VALUES (?, ?)");
+        insert.setString(1, id);
+        if (obj == null) {
+            insert.setNull(2, java.sql.Types.CLOB);
+        } else {
+            GenericTableHandler.setFullObject(insert, 2, obj);
+        }
+        insert.executeUpdate();
+        insert.close();
+
+        PreparedStatement select = connection.prepareStatement("SELECT fullobject FROM objects WHERE objectid = ?");
+        select.setString(1, id);
+        ResultSet rs = select.executeQuery();
+        try {
+            Assert.assertTrue(rs.next());
+            return GenericTableHandler.readFullObject(rs);
+        } finally {
+            rs.close();
+            select.close();
+        }
+    }
+
+    @Test
+    public void testFullObjectRoundTrip() throws Exception {
+        Map<String, Object> address = new LinkedHashMap<String, Object>();
+        address.put("city", "Oslo");
+        address.put("zip", "0150");
+        List<Object> roles = new ArrayList<Object>();
+        roles.add("admin");
+        roles.add("user");
+        Map<String, Object> obj = new LinkedHashMap<String, Object>();
+        obj.put("_id", "1");
+        obj.put("userName", "j\u00f8rgen \"jo\" \u00e5s");
+        obj.put("age", 42);
+        obj.put("active", Boolean.TRUE);
+        obj.put("manager", null);
+        obj.put("address", address);
+        obj.put("roles", roles);
+
+        Map<String, Object> read = roundTrip("1", obj);
+        Assert.assertEquals(read, obj);
+        // The key order is kept
+        Assert.assertEquals(new ArrayList<String>(read.keySet()), new ArrayList<String>(obj.keySet()));
+    }
+
+    @Test
+    public void testLargeFullObjectRoundTrip() throws Exception {
+        StringBuilder description = new StringBuilder();
+        for (int i = 0; i < 10000; i++) {
+            description.append("0123456789");
+        }
+        Map<String, Object> obj = new LinkedHashMap<String, Object>();
+        obj.put("_id", "2");
+        obj.put("description", description.toString());
+        Assert.assertEquals(roundTrip("2", obj), obj);
+    }
+
+    @Test
+    public void testReaderGeneratesTheSameJson() throws Exception {
+        List<Object> values = new ArrayList<Object>();
+        for (int i = 0; i < 2000; i++) {
+            Map<String, Object> value = new LinkedHashMap<String, Object>();
+            value.put("index", i);
+            value.put("name", "value " + i);
+            value.put("empty", new ArrayList<Object>());
+            value.put("none", null);
+            values.add(value);
+        }
+        Map<String, Object> obj = new LinkedHashMap<String, Object>();
+        obj.put("_id", "4");
+        obj.put("values", values);
+        obj.put("nested", new LinkedHashMap<String, Object>());
+
+        StringBuilder json = new StringBuilder();
+        FullObjectReader reader = new FullObjectReader(GenericTableHandler.mapper, obj);
+        char[] chars = new char[7];
+        int count;
+        while ((count = reader.read(chars, 0, chars.length)) != -1) {
+            json.append(chars, 0, count);
+        }
+        reader.close();
+        Assert.assertEquals(json.toString(), GenericTableHandler.mapper.writeValueAsString(obj));
+    }
+
+    @Test
+    public void testNullFullObject() throws Exception {
+        Assert.assertNull(roundTrip("3", null));
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright © 2013 ForgeRock AS. All rights reserved.
+ *
+ * The contents of this file are subject to the terms
+ * of the Common Development and Distribution License
+ * (the License). You may not use this file except in
+ * compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://forgerock.org/license/CDDLv1.0.html
+ * See the License for the specific language governing
+ * permission and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL
+ * Header Notice in each file and include the License file
+ * at http://forgerock.org/license/CDDLv1.0.html
+ * If applicable, add the following below the CDDL Header,
+ * with the fields enclosed by brackets [] replaced by
+ * your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ */
+
+package org.forgerock.openidm.repo.jdbc.impl;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.forgerock.json.fluent.JsonValue;
+import org.forgerock.openidm.repo.jdbc.impl.pool.DataSourceFactory;
+import org.testng.Assert;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+public class ReadReplicaTest {
+
+    private static final String PRIMARY_URL = "jdbc:hsqldb:mem:replicatestprimary";
+    private static final String REPLICA_URL = "jdbc:hsqldb:mem:replicatestreplica";
+
+    /**
+     * Repository service whose primary connections come straight from the driver
+     */
+    private static class TestRepoService extends JDBCRepoService {
+        @Override
+        Connection getConnection() throws SQLException {
+            return DriverManager.getConnection(PRIMARY_URL, "sa", "");
+        }
+    }
+
+    @BeforeClass
+    public void init() throws Exception {
+        Class.forName("org.hsqldb.jdbc.JDBCDriver");
+    }
+
+    private JsonValue connectionConfig(String replicaUrl) {
+        Map<String, Object> replica = new HashMap<String, Object>();
+        replica.put("jdbcUrl", replicaUrl);
+        List<Object> connections = new ArrayList<Object>();
+        connections.add(replica);
+        Map<String, Object> replicas = new HashMap<String, Object>();
+        replicas.put("read", Boolean.TRUE);
+        replicas.put("connections", connections);
+
+        Map<String, Object> config = new HashMap<String, Object>();
+        config.put(JDBCRepoService.CONFIG_DB_DRIVER, "org.hsqldb.jdbc.JDBCDriver");
+        config.put(JDBCRepoService.CONFIG_DB_URL, PRIMARY_URL);
+        config.put(JDBCRepoService.CONFIG_USER, "sa");
+        config.put(JDBCRepoService.CONFIG_PASSWORD, "");
+        config.put(DataSourceFactory.CONFIG_POOL_TYPE, DataSourceFactory.POOL_TYPE_LOCKFREE);
+        config.put(JDBCRepoService.CONFIG_READ_REPLICAS, replicas);
+        return new JsonValue(config);
+    }
+
+    private String readUrl(JDBCRepoService service, boolean useReplica) throws SQLException {
+        Connection connection = service.getReadConnection(useReplica);
+        try {
+            return connection.getMetaData().getURL();
+        } finally {
+            connection.close();
+        }
+    }
+
+    @Test
+    public void testReadsGoToReplica() throws Exception {
+        JDBCRepoService service = new TestRepoService();
+        service.initReplicas(connectionConfig(REPLICA_URL));
+        try {
+            Assert.assertEquals(readUrl(service, true), REPLICA_URL);
+            Assert.assertEquals(readUrl(service, false), PRIMARY_URL);
+        } finally {
+            service.closeDataSources();
+        }
+        // Once closed, reads no longer go to the replica
+        Assert.assertEquals(readUrl(service, true), PRIMARY_URL);
+    }
+
+    @Test
+    public void testUnavailableReplicaFallsBackToPrimary() throws Exception {
+        JDBCRepoService service = new TestRepoService();
+        // The database does not exist, connecting to the replica fails
+        service.initReplicas(connectionConfig("jdbc:hsqldb:mem:replicatestmissing;ifexists=true"));
+        try {
+            Assert.assertEquals(readUrl(service, true), PRIMARY_URL);
+        } finally {
+            service.closeDataSources();
+        }
+    }
+
+    @Test
+    public void testNoReplicasReadFromPrimary() throws Exception {
+        JDBCRepoService service = new TestRepoService();
+        service.initReplicas(new JsonValue(new HashMap<String, Object>()));
+        Assert.assertEquals(readUrl(service, true), PRIMARY_URL);
+    }
+}
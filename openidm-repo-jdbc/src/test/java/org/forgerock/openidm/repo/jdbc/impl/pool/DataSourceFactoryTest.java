@@ -0,0 +1,102 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright © 2013 ForgeRock AS. All rights reserved.
+ *
+ * The contents of this file are subject to the terms
+ * of the Common Development and Distribution License
+ * (the License). You may not use this file except in
+ * compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://forgerock.org/license/CDDLv1.0.html
+ * See the License for the specific language governing
+ * permission and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL
+ * Header Notice in each file and include the License file
+ * at http://forgerock.org/license/CDDLv1.0.html
+ * If applicable, add the following below the CDDL Header,
+ * with the fields enclosed by brackets [] replaced by
+ * your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ */
+
+package org.forgerock.openidm.repo.jdbc.impl.pool;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.sql.DataSource;
+
+import org.forgerock.json.fluent.JsonValue;
+import org.forgerock.json.fluent.JsonValueException;
+import org.testng.Assert;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import com.jolbox.bonecp.BoneCPDataSource;
+
+public class DataSourceFactoryTest {
+
+    @BeforeClass
+    public void init() throws Exception {
+        Class.forName("org.hsqldb.jdbc.JDBCDriver");
+    }
+
+    private JsonValue config(String poolType) {
+        Map<String, Object> config = new HashMap<String, Object>();
+        config.put("driverClass", "org.hsqldb.jdbc.JDBCDriver");
+        config.put("jdbcUrl", "jdbc:hsqldb:mem:datasourcefactorytest");
+        config.put("username", "sa");
+        config.put("password", "");
+        if (poolType != null) {
+            config.put(DataSourceFactory.CONFIG_POOL_TYPE, poolType);
+        }
+        return new JsonValue(config);
+    }
+
+    private void assertUsable(DataSource ds) throws SQLException {
+        Connection connection = ds.getConnection();
+        try {
+            Statement statement = connection.createStatement();
+            Assert.assertTrue(statement.execute("VALUES (1)"));
+            statement.close();
+        } finally {
+            connection.close();
+        }
+    }
+
+    @Test
+    public void testBoneCPIsDefault() throws Exception {
+        DataSource ds = DataSourceFactory.newInstance(config(null), "test-bonecp");
+        Assert.assertTrue(ds instanceof BoneCPDataSource);
+        assertUsable(ds);
+        DataSourceFactory.close(ds);
+    }
+
+    @Test
+    public void testLockFreePool() throws Exception {
+        DataSource ds = DataSourceFactory.newInstance(config("lockfree"), "test-lockfree");
+        Assert.assertTrue(ds instanceof LockFreeDataSource);
+        assertUsable(ds);
+        Assert.assertEquals(((LockFreeDataSource) ds).getIdleConnections(), 1);
+
+        DataSourceFactory.close(ds);
+        Assert.assertEquals(((LockFreeDataSource) ds).getIdleConnections(), 0);
+        try {
+            ds.getConnection();
+            Assert.fail("Expected the closed pool to reject connection requests");
+        } catch (SQLException ex) {
+            // expected
+        }
+    }
+
+    @Test(expectedExceptions = JsonValueException.class)
+    public void testUnknownPoolType() throws Exception {
+        DataSourceFactory.newInstance(config("other"), "test-other");
+    }
+}
@@ -0,0 +1,152 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright © 2013 ForgeRock AS. All rights reserved.
+ *
+ * The contents of this file are subject to the terms
+ * of the Common Development and Distribution License
+ * (the License). You may not use this file except in
+ * compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://forgerock.org/license/CDDLv1.0.html
+ * See the License for the specific language governing
+ * permission and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL
+ * Header Notice in each file and include the License file
+ * at http://forgerock.org/license/CDDLv1.0.html
+ * If applicable, add the following below the CDDL Header,
+ * with the fields enclosed by brackets [] replaced by
+ * your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ */
+
+package org.forgerock.openidm.repo.jdbc.impl.pool;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.forgerock.openidm.smartevent.Name;
+import org.testng.Assert;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+public class LockFreeDataSourceTest {
+
+    private static final String URL = "jdbc:hsqldb:mem:lockfreedatasourcetest";
+
+    @BeforeClass
+    public void init() throws Exception {
+        Class.forName("org.hsqldb.jdbc.JDBCDriver");
+    }
+
+    private LockFreeDataSource newDataSource(int maxConnections, long timeout) {
+        return new LockFreeDataSource(URL, "sa", "", maxConnections, timeout, 60000,
+                Name.get("openidm/internal/repo/jdbc/pool/test/wait"));
+    }
+
+    @Test
+    public void testConnectionIsReused() throws Exception {
+        LockFreeDataSource ds = newDataSource(2, 1000);
+        Connection first = ds.getConnection();
+        Assert.assertEquals(ds.getActiveConnections(), 1);
+        Assert.assertEquals(ds.getIdleConnections(), 0);
+        first.close();
+        Assert.assertTrue(first.isClosed());
+        Assert.assertEquals(ds.getActiveConnections(), 0);
+        Assert.assertEquals(ds.getIdleConnections(), 1);
+
+        Connection second = ds.getConnection();
+        Assert.assertEquals(ds.getIdleConnections(), 0);
+        Assert.assertFalse(second.isClosed());
+        second.close();
+        // Closing twice returns the connection once only
+        second.close();
+        Assert.assertEquals(ds.getIdleConnections(), 1);
+        ds.close();
+    }
+
+    @Test(expectedExceptions = SQLException.class)
+    public void testClosedConnectionRejectsUse() throws Exception {
+        LockFreeDataSource ds = newDataSource(1, 1000);
+        try {
+            Connection connection = ds.getConnection();
+            connection.close();
+            connection.createStatement();
+        } finally {
+            ds.close();
+        }
+    }
+
+    @Test
+    public void testExhaustedPoolTimesOut() throws Exception {
+        LockFreeDataSource ds = newDataSource(1, 100);
+        Connection connection = ds.getConnection();
+        try {
+            ds.getConnection();
+            Assert.fail("Expected the exhausted pool to time out");
+        } catch (SQLException ex) {
+            // expected
+        } finally {
+            connection.close();
+        }
+        Assert.assertEquals(ds.getWaitingThreads(), 0);
+        // The permit of the timed out request is not lost
+        ds.getConnection().close();
+        ds.close();
+    }
+
+    @Test
+    public void testWaiterGetsReturnedConnection() throws Exception {
+        final LockFreeDataSource ds = newDataSource(1, 10000);
+        Connection connection = ds.getConnection();
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<Connection> waiter = executor.submit(new Callable<Connection>() {
+                public Connection call() throws Exception {
+                    return ds.getConnection();
+                }
+            });
+            long deadline = System.currentTimeMillis() + 5000;
+            while (ds.getWaitingThreads() == 0 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            Assert.assertEquals(ds.getWaitingThreads(), 1);
+            connection.close();
+            Connection handedOver = waiter.get(5, TimeUnit.SECONDS);
+            Assert.assertEquals(ds.getActiveConnections(), 1);
+            handedOver.close();
+        } finally {
+            executor.shutdownNow();
+            ds.close();
+        }
+    }
+
+    @Test
+    public void testCloseReleasesConnections() throws Exception {
+        LockFreeDataSource ds = newDataSource(2, 1000);
+        Connection idle = ds.getConnection();
+        Connection inUse = ds.getConnection();
+        idle.close();
+        Assert.assertEquals(ds.getIdleConnections(), 1);
+
+        ds.close();
+        Assert.assertEquals(ds.getIdleConnections(), 0);
+        // A connection returned after the pool closed is not pooled again
+        inUse.close();
+        Assert.assertEquals(ds.getIdleConnections(), 0);
+        Assert.assertEquals(ds.getActiveConnections(), 0);
+        try {
+            ds.getConnection();
+            Assert.fail("Expected the closed pool to reject connection requests");
+        } catch (SQLException ex) {
+            // expected
+        }
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright © 2013 ForgeRock AS. All rights reserved.
+ *
+ * The contents of this file are subject to the terms
+ * of the Common Development and Distribution License
+ * (the License). You may not use this file except in
+ * compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://forgerock.org/license/CDDLv1.0.html
+ * See the License for the specific language governing
+ * permission and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL
+ * Header Notice in each file and include the License file
+ * at http://forgerock.org/license/CDDLv1.0.html
+ * If applicable, add the following below the CDDL Header,
+ * with the fields enclosed by brackets [] replaced by
+ * your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ */
+
+package org.forgerock.openidm.repo.jdbc.impl.query;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.forgerock.json.fluent.JsonValue;
+import org.forgerock.openidm.objset.BadRequestException;
+import org.forgerock.openidm.repo.QueryConstants;
+import org.forgerock.openidm.repo.util.PagedResults;
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+public class TableQueriesTest {
+
+    private Connection connection;
+    private TableQueries tableQueries;
+
+    @BeforeClass
+    public void init() throws Exception {
+        Class.forName("org.hsqldb.jdbc.JDBCDriver");
+        connection = DriverManager.getConnection("jdbc:hsqldb:mem:tablequeriestest", "sa", "");
+        Statement statement = connection.createStatement();
+        statement.execute("CREATE TABLE objects (objectid VARCHAR(36) PRIMARY KEY, fullobject VARCHAR(255))");
+        // Inserted out of order, the pages must still be ordered by objectid
+        for (String id : new String[] { "e", "b", "d", "a", "c" }) {
+            statement.execute("INSERT INTO objects VALUES ('" + id + "', '{\"_id\":\"" + id + "\"}')");
+        }
+        statement.close();
+
+        tableQueries = new TableQueries(new QueryResultMapper() {
+            public List<Map<String, Object>> mapQueryToObject(ResultSet rs, String queryId, String type,
+                    Map<String, Object> params, TableQueries tableQueries) throws SQLException, IOException {
+                List<Map<String, Object>> result = new ArrayList<Map<String, Object>>();
+                while (rs.next()) {
+                    Map<String, Object> obj = new HashMap<String, Object>();
+                    obj.put("_id", rs.getString("objectid"));
+                    result.add(obj);
+                }
+                return result;
+            }
+        });
+        Map<String, Object> queries = new HashMap<String, Object>();
+        queries.put("query-ids", "SELECT obj.objectid FROM ${_dbSchema}.${_table} obj WHERE obj.objectid <> ${skip}");
+        queries.put("query-all", "SELECT fullobject FROM ${_dbSchema}.${_table}");
+        tableQueries.setConfiguredQueries("objects", "PUBLIC", new JsonValue(queries), null);
+    }
+
+    @AfterClass
+    public void dispose() throws Exception {
+        connection.createStatement().execute("SHUTDOWN");
+        connection.close();
+    }
+
+    private List<Map<String, Object>> page(int pageSize, String cookie) throws Exception {
+        Map<String, Object> params = new HashMap<String, Object>();
+        params.put(QueryConstants.QUERY_ID, "query-ids");
+        params.put("skip", "c");
+        params.put(QueryConstants.PAGE_SIZE, pageSize);
+        if (cookie != null) {
+            params.put(QueryConstants.PAGED_RESULTS_COOKIE, cookie);
+        }
+        return tableQueries.query("managed/user", params, connection);
+    }
+
+    private String ids(List<Map<String, Object>> docs) {
+        StringBuilder ids = new StringBuilder();
+        for (Map<String, Object> doc : docs) {
+            ids.append(doc.get("_id"));
+        }
+        return ids.toString();
+    }
+
+    @Test
+    public void testPagesResumeAfterLastId() throws Exception {
+        List<Map<String, Object>> first = page(2, null);
+        Assert.assertEquals(ids(first), "ab");
+
+        Map<String, Object> result = new HashMap<String, Object>();
+        PagedResults.setPagedResultsCookie(result, first, 2);
+        List<Map<String, Object>> second = page(2, (String) result.get(QueryConstants.PAGED_RESULTS_COOKIE));
+        Assert.assertEquals(ids(second), "de");
+
+        result.clear();
+        PagedResults.setPagedResultsCookie(result, second, 2);
+        List<Map<String, Object>> last = page(2, (String) result.get(QueryConstants.PAGED_RESULTS_COOKIE));
+        Assert.assertEquals(ids(last), "");
+    }
+
+    @Test(expectedExceptions = BadRequestException.class)
+    public void testQueryWithoutObjectIdNotPageable() throws Exception {
+        Map<String, Object> params = new HashMap<String, Object>();
+        params.put(QueryConstants.QUERY_ID, "query-all");
+        params.put(QueryConstants.PAGE_SIZE, 2);
+        tableQueries.query("managed/user", params, connection);
+    }
+
+    @Test
+    public void testReturnsObjectId() {
+        Assert.assertTrue(QueryInfo.returnsObjectId("SELECT * FROM objects"));
+        Assert.assertTrue(QueryInfo.returnsObjectId("SELECT obj.objectid, obj.rev FROM objects obj"));
+        Assert.assertTrue(QueryInfo.returnsObjectId("select id AS objectid from objects"));
+        Assert.assertFalse(QueryInfo.returnsObjectId("SELECT fullobject FROM objects WHERE objectid = ?"));
+        Assert.assertFalse(QueryInfo.returnsObjectId("SELECT (SELECT objectid FROM other) AS x FROM objects"));
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright © 2013 ForgeRock AS. All rights reserved.
+ *
+ * The contents of this file are subject to the terms
+ * of the Common Development and Distribution License
+ * (the License). You may not use this file except in
+ * compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://forgerock.org/license/CDDLv1.0.html
+ * See the License for the specific language governing
+ * permission and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL
+ * Header Notice in each file and include the License file
+ * at http://forgerock.org/license/CDDLv1.0.html
+ * If applicable, add the following below the CDDL Header,
+ * with the fields enclosed by brackets [] replaced by
+ * your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ */
+package org.forgerock.openidm.repo.orientdb.impl;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.forgerock.json.fluent.JsonValue;
+import org.forgerock.openidm.config.InvalidException;
+
+/**
+ * Selects the cluster new documents of a class with several physical
+ * clusters are stored in, spreading concurrent inserts over the clusters.
+ */
+final class ClusterSelection {
+
+    /** Store new documents in the default cluster of the class */
+    static final String STRATEGY_DEFAULT = "default";
+
+    /** Store new documents in the clusters of the class in turn */
+    static final String STRATEGY_ROUND_ROBIN = "round-robin";
+
+    private final String[] clusterNames;
+    private final AtomicInteger next = new AtomicInteger();
+
+    ClusterSelection(List<String> clusterNames) {
+        this.clusterNames = clusterNames.toArray(new String[clusterNames.size()]);
+    }
+
+    /**
+     * @return the name of the cluster to store the next new document in
+     */
+    String nextCluster() {
+        return clusterNames[(next.getAndIncrement() & Integer.MAX_VALUE) % clusterNames.length];
+    }
+
+    /**
+     * @param completeConfig the full configuration for the DB
+     * @return the cluster selection of the classes using a non-default strategy, keyed by OrientDB class
+     * @throws InvalidException if a configured strategy is unknown
+     */
+    static Map<String, ClusterSelection> fromConfig(JsonValue completeConfig) throws InvalidException {
+        Map<String, ClusterSelection> selections = new HashMap<String, ClusterSelection>();
+        JsonValue orientDBClasses = completeConfig.get(OrientDBRepoService.CONFIG_DB_STRUCTURE)
+                .get(OrientDBRepoService.CONFIG_ORIENTDB_CLASS);
+        if (orientDBClasses.isNull()) {
+            return selections;
+        }
+        for (String orientClassName : orientDBClasses.keys()) {
+            JsonValue classConfig = orientDBClasses.get(orientClassName);
+            String strategy = classConfig.get(OrientDBRepoService.CONFIG_CLUSTER_SELECTION)
+                    .defaultTo(STRATEGY_DEFAULT).asString();
+            if (STRATEGY_ROUND_ROBIN.equals(strategy)) {
+                List<String> clusterNames = DBHelper.getClusterNames(orientClassName, classConfig);
+                if (clusterNames.size() > 1) {
+                    selections.put(orientClassName, new ClusterSelection(clusterNames));
+                }
+            } else if (!STRATEGY_DEFAULT.equals(strategy)) {
+                throw new InvalidException("Unknown cluster selection " + strategy + " on " + orientClassName
+                        + ", valid values: " + STRATEGY_DEFAULT + ", " + STRATEGY_ROUND_ROBIN);
+            }
+        }
+        return selections;
+    }
+}
@@ -134,6 +134,9 @@ public class DBHelper {
         // Have the storage closed when the DB is closed.
         OGlobalConfiguration.STORAGE_KEEP_OPEN.setValue(false);
         
+        // Configured settings take precedence over the above defaults
+        applyStorageSettings(completeConfig.get(OrientDBRepoService.CONFIG_STORAGE));
+        
         boolean success = false;
         int maxRetry = 10;
         int retryCount = 0;
@@ -279,8 +282,12 @@ public class DBHelper {
                     String orientClassName = (String) key;
                     JsonValue orientClassConfig = (JsonValue) orientDBClasses.get(orientClassName);
                     if (schema.existsClass(orientClassName)) {
-                        // TODO: update indexes too if changed
-                        logger.trace("OrientDB class {} already exists, skipping", orientClassName);
+                        // TODO: update changed indexes too
+                        logger.trace("OrientDB class {} already exists, adding missing clusters and indexes", 
+                                orientClassName);
+                        OClass orientClass = schema.getClass(orientClassName);
+                        addClusters(db, orientClass, orientClassName, orientClassConfig);
+                        createMissingIndexes(db, orientClass, orientClassName, orientClassConfig);
                     } else {
                         createOrientDBClass(db,schema, orientClassName, orientClassConfig);
                         if ("internal_user".equals(orientClassName)) {
@@ -301,62 +308,226 @@ public class DBHelper {
         OClass orientClass = schema.createClass(orientClassName, 
                 db.addCluster(orientClassName, 
                 OStorage.CLUSTER_TYPE.PHYSICAL));
+        addClusters(db, orientClass, orientClassName, orientClassConfig);
         
         JsonValue indexes = orientClassConfig.get(OrientDBRepoService.CONFIG_INDEX);
         for (JsonValue index : indexes) {
-            String propertyType = index.get(OrientDBRepoService.CONFIG_PROPERTY_TYPE).asString();
-            String indexType = index.get(OrientDBRepoService.CONFIG_INDEX_TYPE).asString();
-            
-            String propertyName = index.get(OrientDBRepoService.CONFIG_PROPERTY_NAME).asString();
-            String[] propertyNames = null; 
-            if (propertyName != null) {
-                propertyNames = new String[] {propertyName};
-            } else {
-                List propNamesList = index.get(OrientDBRepoService.CONFIG_PROPERTY_NAMES).asList();
-                if (propNamesList == null) {
-                    throw new InvalidException("Invalid index configuration. " 
-                            + "Missing property name(s) on index configuration for property type "
-                            + propertyType + " with index type " + indexType + " on " + orientClassName);
-                }
-                propertyNames = (String[]) propNamesList.toArray(new String[0]);
+            createIndex(orientClass, orientClassName, index);
+        }
+    }
+    
+    /**
+     * Adds the additional physical clusters configured for a class, if not present yet
+     */
+    private static void addClusters(ODatabaseDocumentTx db, OClass orientClass, 
+            String orientClassName, JsonValue orientClassConfig) {
+        List<String> clusterNames = getClusterNames(orientClassName, orientClassConfig);
+        for (String clusterName : clusterNames.subList(1, clusterNames.size())) {
+            if (db.getClusterIdByName(clusterName) == -1) {
+                logger.info("Adding cluster {} to OrientDB class {}", clusterName, orientClassName);
+                orientClass.addClusterId(db.addCluster(clusterName, OStorage.CLUSTER_TYPE.PHYSICAL));
             }
-            
-            // Determine a unique name to use for the index
-            // Naming pattern used is <class>|property1[|propertyN]*|Idx
-            StringBuilder indexName = new StringBuilder(orientClassName);
-            indexName.append("|"); // Not using dot as is reserved for (simple index) naming convention
-            for (String entry : propertyNames) {
-                indexName.append(entry);
-                indexName.append("|");
+        }
+    }
+    
+    /**
+     * The physical clusters of a class, the first being the default cluster
+     * named like the class. Additional clusters are configured with 
+     * "clusters" : <total number of clusters> on the class.
+     * 
+     * @param orientClassName the OrientDB class
+     * @param orientClassConfig the class configuration
+     * @return the cluster names of the class
+     */
+    static List<String> getClusterNames(String orientClassName, JsonValue orientClassConfig) {
+        int clusters = 1;
+        if (orientClassConfig != null && !orientClassConfig.isNull()) {
+            clusters = orientClassConfig.get(OrientDBRepoService.CONFIG_CLUSTERS).defaultTo(1).asInteger().intValue();
+        }
+        List<String> clusterNames = new ArrayList<String>(clusters);
+        clusterNames.add(orientClassName);
+        for (int i = 1; i < clusters; i++) {
+            clusterNames.add(orientClassName + "_" + i);
+        }
+        return clusterNames;
+    }
+    
+    /**
+     * Creates the configured indexes missing on an existing class, e.g. added to the 
+     * configuration or dropped for a bulk load
+     */
+    private static void createMissingIndexes(ODatabaseDocumentTx db, OClass orientClass, 
+            String orientClassName, JsonValue orientClassConfig) {
+        JsonValue indexes = orientClassConfig.get(OrientDBRepoService.CONFIG_INDEX);
+        if (indexes.isNull()) {
+            return;
+        }
+        for (JsonValue index : indexes) {
+            String indexName = getIndexName(orientClassName, getPropertyNames(orientClassName, index));
+            if (db.getMetadata().getIndexManager().getIndex(indexName) == null) {
+                try {
+                    createIndex(orientClass, orientClassName, index);
+                } catch (RuntimeException ex) {
+                    logger.warn("Failed to create index {}, the existing data may violate its constraints", 
+                            indexName, ex);
+                }
             }
-            indexName.append("Idx");
-            
-            logger.info("Creating index on propertis {} of type {} with index type {} on {} for OrientDB class ", 
-                    new Object[] {propertyNames, propertyType, indexType, orientClassName});
+        }
+    }
+    
+    private static String[] getPropertyNames(String orientClassName, JsonValue index) {
+        String propertyName = index.get(OrientDBRepoService.CONFIG_PROPERTY_NAME).asString();
+        if (propertyName != null) {
+            return new String[] {propertyName};
+        }
+        List propNamesList = index.get(OrientDBRepoService.CONFIG_PROPERTY_NAMES).asList();
+        if (propNamesList == null) {
+            throw new InvalidException("Invalid index configuration. " 
+                    + "Missing property name(s) on index configuration for property type "
+                    + index.get(OrientDBRepoService.CONFIG_PROPERTY_TYPE).asString() + " with index type " 
+                    + index.get(OrientDBRepoService.CONFIG_INDEX_TYPE).asString() + " on " + orientClassName);
+        }
+        return (String[]) propNamesList.toArray(new String[0]);
+    }
+    
+    /**
+     * Creates a configured index, building it over the existing records of the class
+     */
+    private static void createIndex(OClass orientClass, String orientClassName, JsonValue index) {
+        String propertyType = index.get(OrientDBRepoService.CONFIG_PROPERTY_TYPE).asString();
+        String indexType = index.get(OrientDBRepoService.CONFIG_INDEX_TYPE).asString();
+        
+        String propertyName = index.get(OrientDBRepoService.CONFIG_PROPERTY_NAME).asString();
+        String[] propertyNames = getPropertyNames(orientClassName, index); 
+        
+        String indexName = getIndexName(orientClassName, propertyNames);
+        
+        logger.info("Creating index on propertis {} of type {} with index type {} on {} for OrientDB class ", 
+                new Object[] {propertyNames, propertyType, indexType, orientClassName});
 
-            OType orientPropertyType = null;
-            try {
-                orientPropertyType = OType.valueOf(propertyType.toUpperCase());
-            } catch (IllegalArgumentException ex) {
-                throw new InvalidException("Invalid property type '" + propertyType + 
-                        "' in configuration on properties "
-                        + propertyNames + " with index type " + indexType + " on " 
-                        + orientClassName + " valid values: " + OType.values() 
-                        + " failure message: " + ex.getMessage(), ex);
-            }
-            
-            try {
-                OClass.INDEX_TYPE orientIndexType = OClass.INDEX_TYPE.valueOf(indexType.toUpperCase());
+        OType orientPropertyType = null;
+        try {
+            orientPropertyType = OType.valueOf(propertyType.toUpperCase());
+        } catch (IllegalArgumentException ex) {
+            throw new InvalidException("Invalid property type '" + propertyType + 
+                    "' in configuration on properties "
+                    + propertyNames + " with index type " + indexType + " on " 
+                    + orientClassName + " valid values: " + OType.values() 
+                    + " failure message: " + ex.getMessage(), ex);
+        }
+        
+        try {
+            OClass.INDEX_TYPE orientIndexType = OClass.INDEX_TYPE.valueOf(indexType.toUpperCase());
+            if (propertyName != null && orientClass.getProperty(propertyName) == null) {
                 OProperty prop = orientClass.createProperty(propertyName, orientPropertyType);
-                orientClass.createIndex(indexName.toString(), orientIndexType, propertyNames);
-            } catch (IllegalArgumentException ex) {
-                throw new InvalidException("Invalid index type '" + indexType + 
-                        "' in configuration on properties "
-                        + propertyNames + " of type " + propertyType + " on " 
-                        + orientClassName + " valid values: " + OClass.INDEX_TYPE.values() 
-                        + " failure message: " + ex.getMessage(), ex);
             }
+            orientClass.createIndex(indexName, orientIndexType, propertyNames);
+        } catch (IllegalArgumentException ex) {
+            throw new InvalidException("Invalid index type '" + indexType + 
+                    "' in configuration on properties "
+                    + propertyNames + " of type " + propertyType + " on " 
+                    + orientClassName + " valid values: " + OClass.INDEX_TYPE.values() 
+                    + " failure message: " + ex.getMessage(), ex);
+        }
+    }
+    
+    /**
+     * Drops the configured indexes which are not unique, to avoid maintaining 
+     * them record by record during a bulk load. Unique indexes are kept as they 
+     * enforce constraints, including the uniqueness of the OpenIDM identifier.
+     * 
+     * @param db the database
+     * @param completeConfig the full configuration for the DB
+     * @return the names of the dropped indexes
+     */
+    static List<String> dropNonUniqueIndexes(ODatabaseDocumentTx db, JsonValue completeConfig) {
+        List<String> dropped = new ArrayList<String>();
+        JsonValue orientDBClasses = completeConfig.get(OrientDBRepoService.CONFIG_DB_STRUCTURE)
+                .get(OrientDBRepoService.CONFIG_ORIENTDB_CLASS);
+        if (orientDBClasses.isNull()) {
+            return dropped;
+        }
+        for (String orientClassName : orientDBClasses.keys()) {
+            JsonValue indexes = orientDBClasses.get(orientClassName).get(OrientDBRepoService.CONFIG_INDEX);
+            if (indexes.isNull()) {
+                continue;
+            }
+            for (JsonValue index : indexes) {
+                String indexType = index.get(OrientDBRepoService.CONFIG_INDEX_TYPE).asString();
+                if (indexType != null && indexType.toUpperCase().startsWith("UNIQUE")) {
+                    continue;
+                }
+                String indexName = getIndexName(orientClassName, getPropertyNames(orientClassName, index));
+                if (db.getMetadata().getIndexManager().getIndex(indexName) != null) {
+                    logger.info("Dropping index {} for the bulk load", indexName);
+                    db.getMetadata().getIndexManager().dropIndex(indexName);
+                    dropped.add(indexName);
+                }
+            }
+        }
+        return dropped;
+    }
+    
+    /**
+     * Creates the configured indexes missing on the configured classes, 
+     * re-building the indexes dropped for a bulk load
+     * 
+     * @param db the database
+     * @param completeConfig the full configuration for the DB
+     */
+    static void createMissingIndexes(ODatabaseDocumentTx db, JsonValue completeConfig) {
+        JsonValue orientDBClasses = completeConfig.get(OrientDBRepoService.CONFIG_DB_STRUCTURE)
+                .get(OrientDBRepoService.CONFIG_ORIENTDB_CLASS);
+        if (orientDBClasses.isNull()) {
+            return;
+        }
+        OSchema schema = db.getMetadata().getSchema();
+        for (String orientClassName : orientDBClasses.keys()) {
+            if (schema.existsClass(orientClassName)) {
+                createMissingIndexes(db, schema.getClass(orientClassName), orientClassName, 
+                        orientDBClasses.get(orientClassName));
+            }
+        }
+    }
+    
+    /**
+     * Applies OrientDB global configuration settings, e.g. "storage" : { "db.mvcc" : true, 
+     * "tx.useLog" : true, "tx.log.synch" : false, "tx.commit.synch" : true }
+     * 
+     * @param storageConfig the settings keyed by the OrientDB configuration key
+     */
+    static void applyStorageSettings(JsonValue storageConfig) {
+        if (storageConfig == null || storageConfig.isNull()) {
+            return;
+        }
+        for (String key : storageConfig.keys()) {
+            OGlobalConfiguration setting = OGlobalConfiguration.findByKey(key);
+            if (setting == null) {
+                logger.warn("Ignoring unknown OrientDB storage setting {}", key);
+            } else {
+                logger.info("Setting OrientDB storage setting {} to {}", key, storageConfig.get(key).getObject());
+                setting.setValue(storageConfig.get(key).getObject());
+            }
+        }
+    }
+    
+    /**
+     * Determine a unique name to use for an index
+     * Naming pattern used is <class>|property1[|propertyN]*|Idx
+     * 
+     * @param orientClassName the OrientDB class the index is defined on
+     * @param propertyNames the indexed properties
+     * @return the index name
+     */
+    public static String getIndexName(String orientClassName, String... propertyNames) {
+        StringBuilder indexName = new StringBuilder(orientClassName);
+        indexName.append("|"); // Not using dot as is reserved for (simple index) naming convention
+        for (String entry : propertyNames) {
+            indexName.append(entry);
+            indexName.append("|");
         }
+        indexName.append("Idx");
+        return indexName.toString();
     }
     
     // Populates the default user, the pwd needs to be changed by the installer
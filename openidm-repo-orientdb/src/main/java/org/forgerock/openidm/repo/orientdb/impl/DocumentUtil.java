@@ -76,29 +76,54 @@ public class DocumentUtil  {
      */
     private static Map<String, Object> toMap(ODocument doc, boolean topLevel) {    	
         Map<String, Object> result = null;
+        boolean trace = logger.isTraceEnabled();
         if (doc != null) {
             result = new LinkedHashMap<String, Object>(); // TODO: As JSON doesn't, do we really want to maintain order?   
             for (java.util.Map.Entry<String, Object> entry : doc) {
                 Object value = entry.getValue();
                 String key = entry.getKey();
                 if (key.equals(ORIENTDB_PRIMARY_KEY)) {
-                    logger.trace("Setting primary key to value {}", value);
-                    result.put(TAG_ID, value);
-                    String revision = Integer.toString(doc.getVersion());
-                    logger.trace("Setting revision to {}", revision);
-                    result.put(TAG_REV, revision);
+                    putIdAndRevision(doc, value, result);
                 } else {
                     // TODO: optimization switch: if we know that no embedded ODocuments are used 
                     // (i.e. only embedded Maps, Lists) then we would not need to traverse the whole graph
-                    value = asSimpleBinding(value);
-                    logger.trace("Map setting {} to value {}", key, value);
+                    if (isContainer(value)) {
+                        value = asSimpleBinding(value);
+                    }
+                    if (trace) {
+                        logger.trace("Map setting {} to value {}", key, value);
+                    }
                     result.put(key, value);
                 }
             }
         }
-        logger.trace("Converted document {} to {}", doc, result);
+        if (trace) {
+            logger.trace("Converted document {} to {}", doc, result);
+        }
         return result;
     }
+
+    /**
+     * Map the primary key and document version to the OpenIDM identifier and revision
+     */
+    private static void putIdAndRevision(ODocument doc, Object id, Map<String, Object> result) {
+        result.put(TAG_ID, id);
+        String revision = Integer.toString(doc.getVersion());
+        if (logger.isTraceEnabled()) {
+            logger.trace("Setting primary key to value {} and revision to {}", id, revision);
+        }
+        result.put(TAG_REV, revision);
+    }
+
+    /**
+     * @param value the value of a document field
+     * @return true if the value may need conversion to the JSON object model, 
+     * false for simple values (String, Number, Boolean, null) which do not
+     */
+    private static boolean isContainer(Object value) {
+        return value != null && !(value instanceof String) && !(value instanceof Number) 
+                && !(value instanceof Boolean);
+    }
     
     /**
      * Recursively ensure that the passed type is represented
@@ -46,16 +46,19 @@ import org.forgerock.json.fluent.JsonValueException;
 import org.forgerock.openidm.config.EnhancedConfig;
 import org.forgerock.openidm.config.JSONEnhancedConfig;
 import org.forgerock.openidm.core.IdentityServer;
+import org.forgerock.openidm.core.ServerConstants;
 import org.forgerock.openidm.repo.QueryConstants;
 import org.forgerock.openidm.repo.RepoBootService;
 import org.forgerock.openidm.repo.RepositoryService; 
 import org.forgerock.openidm.repo.orientdb.impl.query.PredefinedQueries;
 import org.forgerock.openidm.repo.orientdb.impl.query.Queries;
+import org.forgerock.openidm.repo.util.PagedResults;
 
 import com.orientechnologies.orient.core.db.document.ODatabaseDocumentTx;
 import com.orientechnologies.orient.core.db.document.ODatabaseDocumentPool;
 import com.orientechnologies.orient.core.exception.OConcurrentModificationException;
 import com.orientechnologies.orient.core.index.OIndexException;
+import com.orientechnologies.orient.core.intent.OIntentMassiveInsert;
 import com.orientechnologies.orient.core.record.impl.ODocument;
 
 // JSON Resource
@@ -102,6 +105,15 @@ public class OrientDBRepoService extends ObjectSetJsonResource implements Reposi
     public static final String CONFIG_PROPERTY_NAMES = "propertyNames";
     public static final String CONFIG_PROPERTY_TYPE = "propertyType";
     public static final String CONFIG_INDEX_TYPE = "indexType";
+    public static final String CONFIG_CLUSTERS = "clusters";
+    public static final String CONFIG_CLUSTER_SELECTION = "clusterSelection";
+    public static final String CONFIG_STORAGE = "storage";
+    public static final String CONFIG_POOL_MIN_SIZE = "poolMinSize";
+    public static final String CONFIG_POOL_MAX_SIZE = "poolMaxSize";
+
+    // Actions
+    public static final String ACTION_BULK_LOAD_START = "bulkLoadStart";
+    public static final String ACTION_BULK_LOAD_END = "bulkLoadEnd";
     
     ODatabaseDocumentPool pool;
 
@@ -111,6 +123,12 @@ public class OrientDBRepoService extends ObjectSetJsonResource implements Reposi
     int poolMinSize = 5; 
     int poolMaxSize = 20;
 
+    // Cluster selection of classes storing new documents in several clusters, keyed by OrientDB class
+    Map<String, ClusterSelection> clusterSelections = new HashMap<String, ClusterSelection>();
+
+    // Whether a bulk load is in progress, with non-unique indexes dropped
+    volatile boolean bulkLoad = false;
+
     // Current configuration
     JsonValue existingConfig;
     
@@ -189,12 +207,22 @@ public class OrientDBRepoService extends ObjectSetJsonResource implements Reposi
         
         obj.put(DocumentUtil.TAG_ID, localId);
         
+        // Read once, the intent declared on the pooled connection must be the one cleared
+        boolean massiveInsert = bulkLoad;
         ODatabaseDocumentTx db = getConnection();
         try{
             // Rather than using MVCC for insert, rely on primary key uniqueness constraints to detect duplicate create
             ODocument newDoc = DocumentUtil.toDocument(obj, null, db, orientClassName);
             logger.trace("Created doc for id: {} to save {}", fullId, newDoc);
-            newDoc.save();
+            if (massiveInsert) {
+                db.declareIntent(new OIntentMassiveInsert());
+            }
+            ClusterSelection clusterSelection = clusterSelections.get(orientClassName);
+            if (clusterSelection != null) {
+                newDoc.save(clusterSelection.nextCluster());
+            } else {
+                newDoc.save();
+            }
             
             obj.put(DocumentUtil.TAG_REV, Integer.toString(newDoc.getVersion()));
             logger.debug("Completed create for id: {} revision: {}", fullId, newDoc.getVersion());
@@ -215,6 +243,9 @@ public class OrientDBRepoService extends ObjectSetJsonResource implements Reposi
             throw e;
         } finally {
             if (db != null) {
+                if (massiveInsert) {
+                    db.declareIntent(null);
+                }
                 db.close();
             }
         }
@@ -356,6 +387,7 @@ public class OrientDBRepoService extends ObjectSetJsonResource implements Reposi
      * The returned map is structured as follow: 
      * - The top level map contains meta-data about the query, plus an entry with the actual result records.
      * - The <code>QueryConstants</code> defines the map keys, including the result records (QUERY_RESULT)
+     * - If a PAGE_SIZE was requested and further records may exist, the PAGED_RESULTS_COOKIE for the next page
      *
      * @param fullId identifies the object to query.
      * @param params the parameters of the query to perform.
@@ -386,12 +418,14 @@ public class OrientDBRepoService extends ObjectSetJsonResource implements Reposi
             if (queryResult != null) {
                 long convStart = System.currentTimeMillis();
                 for (ODocument entry : queryResult) {
+                    // Converted before the connection returns to the pool, field access needs an open database
                     Map<String, Object> convertedEntry = DocumentUtil.toMap(entry);
                     docs.add(convertedEntry);
                 }
                 long convEnd = System.currentTimeMillis();
                 result.put(QueryConstants.STATISTICS_CONVERSION_TIME, Long.valueOf(convEnd-convStart));
             }
+            PagedResults.setPagedResultsCookie(result, docs, PagedResults.getPageSize(params));
             result.put(QueryConstants.STATISTICS_QUERY_TIME, Long.valueOf(end-start));
             
             if (logger.isDebugEnabled()) {
@@ -409,9 +443,91 @@ public class OrientDBRepoService extends ObjectSetJsonResource implements Reposi
         return result;
     }
 
+    /**
+     * Supports bulk loading: the {@code bulkLoadStart} action drops the configured indexes 
+     * which are not unique and optimizes creates for mass insertion, the {@code bulkLoadEnd} 
+     * action re-builds the dropped indexes. Indexes still missing are also re-built when the 
+     * repository starts, should a bulk load not have been ended.
+     * <p>
+     * The {@code updateBatch} action updates a list of objects of the resource type identified 
+     * by {@code id}, skipping those changed or deleted since they were read.
+     * 
+     * @param id the identifier of the resource type for the {@code updateBatch} action, else ignored
+     * @param params the action parameters, including the action name
+     * @return the result of the action
+     * @throws BadRequestException if the action is not supported
+     */
     @Override
     public Map<String, Object> action(String id, Map<String, Object> params) throws ObjectSetException {
-        throw new UnsupportedOperationException();
+        Object action = params.get(ServerConstants.ACTION_NAME);
+        Map<String, Object> result = new HashMap<String, Object>();
+        if (ACTION_BULK_LOAD_START.equals(action)) {
+            ODatabaseDocumentTx db = getConnection();
+            try {
+                bulkLoad = true;
+                List<String> dropped = DBHelper.dropNonUniqueIndexes(db, existingConfig);
+                result.put("droppedIndexes", dropped);
+                logger.info("Bulk load started, dropped indexes {}", dropped);
+            } finally {
+                db.close();
+            }
+        } else if (ACTION_BULK_LOAD_END.equals(action)) {
+            ODatabaseDocumentTx db = getConnection();
+            try {
+                long start = System.currentTimeMillis();
+                DBHelper.createMissingIndexes(db, existingConfig);
+                bulkLoad = false;
+                predefinedQueries.reset();
+                result.put("indexRebuildTime", Long.valueOf(System.currentTimeMillis() - start));
+                logger.info("Bulk load ended, re-built indexes in {} ms", result.get("indexRebuildTime"));
+            } finally {
+                db.close();
+            }
+        } else if (RepositoryService.ACTION_UPDATE_BATCH.equals(action)) {
+            result.put(RepositoryService.BATCH_UPDATED, updateBatch(id, params.get("_entity")));
+        } else {
+            throw new BadRequestException("Unsupported action " + action + " on the OrientDB repository, supported: " 
+                    + ACTION_BULK_LOAD_START + ", " + ACTION_BULK_LOAD_END + ", " + RepositoryService.ACTION_UPDATE_BATCH);
+        }
+        return result;
+    }
+
+    /**
+     * Updates a batch of objects, each only if its revision still matches. Objects changed or 
+     * deleted since they were read are skipped.
+     * 
+     * @param type the resource type of the objects
+     * @param entity the list of objects to update, each with its _id and _rev
+     * @return the _id and new _rev of the updated objects
+     * @throws BadRequestException if the entity is not a list of objects with _id and _rev
+     */
+    private List<Map<String, Object>> updateBatch(String type, Object entity) throws ObjectSetException {
+        if (!(entity instanceof List)) {
+            throw new BadRequestException("Batch update expects a list of objects to update");
+        }
+        List<Map<String, Object>> updated = new ArrayList<Map<String, Object>>();
+        for (Object obj : (List<?>) entity) {
+            if (!(obj instanceof Map) || ((Map<?, ?>) obj).get(DocumentUtil.TAG_ID) == null 
+                    || ((Map<?, ?>) obj).get(DocumentUtil.TAG_REV) == null) {
+                throw new BadRequestException("Batch update expects objects with _id and _rev: " + obj);
+            }
+            Map<String, Object> written = new HashMap<String, Object>((Map<String, Object>) obj);
+            String fullId = type + "/" + written.get(DocumentUtil.TAG_ID);
+            try {
+                update(fullId, written.get(DocumentUtil.TAG_REV).toString(), written);
+            } catch (PreconditionFailedException ex) {
+                logger.debug("Batch update skips {}, {}", fullId, ex.getMessage());
+                continue;
+            } catch (NotFoundException ex) {
+                logger.debug("Batch update skips {}, {}", fullId, ex.getMessage());
+                continue;
+            }
+            Map<String, Object> result = new HashMap<String, Object>();
+            result.put(DocumentUtil.TAG_ID, written.get(DocumentUtil.TAG_ID));
+            result.put(DocumentUtil.TAG_REV, written.get(DocumentUtil.TAG_REV));
+            updated.add(result);
+        }
+        return updated;
     }
     
     /**
@@ -554,9 +670,13 @@ public class OrientDBRepoService extends ObjectSetJsonResource implements Reposi
             user = getUser(config);
             password = getPassword(config);
 
+            poolMinSize = config.get(CONFIG_POOL_MIN_SIZE).defaultTo(5).asInteger().intValue();
+            poolMaxSize = config.get(CONFIG_POOL_MAX_SIZE).defaultTo(20).asInteger().intValue();
+
             Map map = config.get(CONFIG_QUERIES).asMap();
             Map<String, String> queryMap = (Map<String, String>) map;
             queries.setConfiguredQueries(queryMap);
+            clusterSelections = ClusterSelection.fromConfig(config);
         } catch (RuntimeException ex) {
             logger.warn("Configuration invalid, can not start OrientDB repository", ex);
             throw ex;
@@ -565,6 +685,8 @@ public class OrientDBRepoService extends ObjectSetJsonResource implements Reposi
         try {
             pool = DBHelper.getPool(dbURL, user, password, poolMinSize, poolMaxSize, config, true);
             logger.debug("Obtained pool {}", pool);
+            // The database structure may have changed with the configuration
+            predefinedQueries.reset();
         } catch (RuntimeException ex) {
             logger.warn("Initializing database pool failed", ex);
             throw ex;
@@ -24,17 +24,20 @@
 package org.forgerock.openidm.repo.orientdb.impl.query;
 
 import com.orientechnologies.orient.core.db.document.ODatabaseDocumentTx;
+import com.orientechnologies.orient.core.db.record.OIdentifiable;
+import com.orientechnologies.orient.core.index.OIndex;
 import com.orientechnologies.orient.core.record.impl.ODocument;
 import com.orientechnologies.orient.core.sql.query.OSQLSynchQuery;
 
-
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.regex.Pattern;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.forgerock.openidm.objset.BadRequestException;
-import org.forgerock.openidm.objset.ObjectSetException;
+import org.forgerock.openidm.repo.orientdb.impl.DBHelper;
 import org.forgerock.openidm.repo.orientdb.impl.DocumentUtil;
 import org.forgerock.openidm.repo.orientdb.impl.OrientDBRepoService;
 import org.slf4j.Logger;
@@ -48,30 +51,66 @@ import org.slf4j.LoggerFactory;
 public class PredefinedQueries {
 
     final static Logger logger = LoggerFactory.getLogger(PredefinedQueries.class);
-    
+
+    // Marks OrientDB classes without an index on the primary key
+    private final static String NO_INDEX = "";
+
+    // Per OrientDB class, the name of the index on the primary key or NO_INDEX
+    final ConcurrentMap<String, String> primaryKeyIndexes = new ConcurrentHashMap<String, String>();
+
+    // Per thread and OrientDB class, the parameterized query by primary key for classes without 
+    // an index. A query keeps the state of its execution, it can not be shared between threads.
+    final ThreadLocal<Map<String, OSQLSynchQuery<ODocument>>> byIdQueries = 
+            new ThreadLocal<Map<String, OSQLSynchQuery<ODocument>>>() {
+        @Override
+        protected Map<String, OSQLSynchQuery<ODocument>> initialValue() {
+            return new HashMap<String, OSQLSynchQuery<ODocument>>();
+        }
+    };
+
     /**
      * Query by primary key, the OpenIDM identifier. This identifier is different from the OrientDB internal record id.
+     * <p/>
+     * Looks the identifier up in the index on the primary key directly if the class has one, 
+     * rather than parsing and planning a query for every read.
      * 
      * @param id the OpenIDM identifier for an object
-     * @param type the OrientDB class
+     * @param type the OpenIDM type of the object
      * @param database a handle to the OrientDB database object. No other thread must operate on this concurrently.
      * @return The ODocument if found, null if not found.
      * @throws BadRequestException if the passed identifier or type are invalid
      */
     public ODocument getByID(final String id, final String type, ODatabaseDocumentTx database) throws BadRequestException {
 
-        String orientClassName = OrientDBRepoService.typeToOrientClassName(type);
-        
         if (id == null) {
             throw new BadRequestException("Query by id the passed id was null.");
         } else if (type == null) {
             throw new BadRequestException("Query by id the passed type was null.");
         }
-        
-        // TODO: convert into a prepared statement
-        OSQLSynchQuery<ODocument> query = new OSQLSynchQuery<ODocument>(
-                "select * from " + orientClassName + " where " + DocumentUtil.ORIENTDB_PRIMARY_KEY + " = '" + id + "'");
-        List<ODocument> result = database.query(query);
+
+        String orientClassName = OrientDBRepoService.typeToOrientClassName(type);
+
+        OIndex<?> index = getPrimaryKeyIndex(orientClassName, database);
+        if (index != null) {
+            ODocument found = null;
+            OIdentifiable identifiable = getFirst(index.get(id));
+            if (identifiable != null) {
+                found = database.load(identifiable.getIdentity());
+            }
+            logger.trace("Index lookup of {} in {} Result: {}", new Object[] {id, orientClassName, found});
+            return found;
+        }
+
+        Map<String, OSQLSynchQuery<ODocument>> queries = byIdQueries.get();
+        OSQLSynchQuery<ODocument> query = queries.get(orientClassName);
+        if (query == null) {
+            query = new OSQLSynchQuery<ODocument>("select * from " + orientClassName 
+                    + " where " + DocumentUtil.ORIENTDB_PRIMARY_KEY + " = :id");
+            queries.put(orientClassName, query);
+        }
+        Map<String, Object> params = new HashMap<String, Object>(2);
+        params.put("id", id);
+        List<ODocument> result = database.command(query).execute(params);
         logger.trace("Query: {} Result: {}", query, result);
         ODocument first = null;
         if (result.size() > 0) {
@@ -79,4 +118,46 @@ public class PredefinedQueries {
         }
         return first;
     }
+
+    /**
+     * @param orientClassName the OrientDB class
+     * @param database the database to get the index handle from
+     * @return the index on the primary key of the class, or null if it has none
+     */
+    OIndex<?> getPrimaryKeyIndex(String orientClassName, ODatabaseDocumentTx database) {
+        String indexName = primaryKeyIndexes.get(orientClassName);
+        if (indexName == null) {
+            indexName = DBHelper.getIndexName(orientClassName, DocumentUtil.ORIENTDB_PRIMARY_KEY);
+            if (database.getMetadata().getIndexManager().getIndex(indexName) == null) {
+                logger.debug("No index on {} for {}, reading by query", DocumentUtil.ORIENTDB_PRIMARY_KEY, orientClassName);
+                indexName = NO_INDEX;
+            }
+            primaryKeyIndexes.put(orientClassName, indexName);
+        }
+        if (NO_INDEX.equals(indexName)) {
+            return null;
+        }
+        // Index handles are bound to the database instance, only the name is cached 
+        return database.getMetadata().getIndexManager().getIndex(indexName);
+    }
+
+    /**
+     * @param indexValue the value of a unique or not unique index
+     * @return the (first) record identifier, or null if none
+     */
+    private OIdentifiable getFirst(Object indexValue) {
+        if (indexValue instanceof OIdentifiable) {
+            return (OIdentifiable) indexValue;
+        } else if (indexValue instanceof Collection && !((Collection<?>) indexValue).isEmpty()) {
+            return (OIdentifiable) ((Collection<?>) indexValue).iterator().next();
+        }
+        return null;
+    }
+
+    /**
+     * Forgets which classes have an index on the primary key, e.g. after the database structure changed
+     */
+    public void reset() {
+        primaryKeyIndexes.clear();
+    }
 }
@@ -31,13 +31,17 @@ import com.orientechnologies.orient.core.sql.query.OSQLSynchQuery;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import org.forgerock.openidm.objset.BadRequestException;
 import org.forgerock.openidm.objset.ObjectSetException;
 import org.forgerock.openidm.repo.QueryConstants;
+import org.forgerock.openidm.repo.orientdb.impl.DocumentUtil;
 import org.forgerock.openidm.repo.orientdb.impl.OrientDBRepoService;
+import org.forgerock.openidm.repo.util.PagedResults;
 import org.forgerock.openidm.smartevent.EventEntry;
+import org.forgerock.openidm.smartevent.Gauge;
 import org.forgerock.openidm.smartevent.Name;
 import org.forgerock.openidm.smartevent.Publisher;
 
@@ -59,18 +63,63 @@ public class Queries {
     
     // Monitoring event name prefix
     static final String EVENT_RAW_QUERY_PREFIX = "openidm/internal/repo/orientdb/raw/query/";
+
+    // Query parameter holding the identifier a paged query resumes after
+    static final String PAGED_RESULTS_LAST_ID = "_pagedResultsLastId";
+
+    // Locates the where clause a paged query extends with its keyset condition
+    static final Pattern WHERE_PATTERN = Pattern.compile("\\swhere\\s", Pattern.CASE_INSENSITIVE);
+
+    // Clauses which conflict with the ordering and limit of a paged query
+    static final Pattern UNPAGEABLE_PATTERN = 
+            Pattern.compile("\\b(order\\s+by|group\\s+by|limit|skip)\\b", Pattern.CASE_INSENSITIVE);
     
+    // Monitoring name prefix of the inline query cache statistics
+    static final String EVENT_QUERY_CACHE_PREFIX = "openidm/internal/repo/orientdb/query-cache/";
+
+    // Maximum number of distinct inline query expressions to keep prepared
+    static final int INLINE_QUERY_CACHE_SIZE = 256;
+
     TokenHandler tokenHandler = new TokenHandler();
     
     // Pre-configured queries, key is query id
     Map<String, QueryInfo> configuredQueries = new HashMap<String, QueryInfo>();
 
+    // Prepared inline queries, key is the query expression
+    final LRUCache<String, QueryInfo> inlineQueries = new LRUCache<String, QueryInfo>(INLINE_QUERY_CACHE_SIZE);
+
+    public Queries() {
+        Name.get(EVENT_QUERY_CACHE_PREFIX + "inline/hits").setGauge(new Gauge() {
+            public long getValue() {
+                return inlineQueries.getHits();
+            }
+        });
+        Name.get(EVENT_QUERY_CACHE_PREFIX + "inline/misses").setGauge(new Gauge() {
+            public long getValue() {
+                return inlineQueries.getMisses();
+            }
+        });
+        Name.get(EVENT_QUERY_CACHE_PREFIX + "orient-token/hits").setGauge(new Gauge() {
+            public long getValue() {
+                return tokenHandler.orientTokenCache.getHits();
+            }
+        });
+        Name.get(EVENT_QUERY_CACHE_PREFIX + "orient-token/misses").setGauge(new Gauge() {
+            public long getValue() {
+                return tokenHandler.orientTokenCache.getMisses();
+            }
+        });
+    }
+
     /**
      * Execute a query, either a pre-configured query by using the query ID, or a query expression passed as 
      * part of the params.
      * 
      * The keys for the input parameters as well as the return map entries are in QueryConstants.
      * 
+     * If a page size is passed the results are ordered by the OpenIDM identifier and limited to the page size, 
+     * resuming after the identifier encoded in the paged results cookie if present.
+     * 
      * @param type the relative/local resource name, which needs to be converted to match the OrientDB document class name
      * @param params the parameters which include the query id, or the query expression, as well as the 
      *        token key/value pairs to replace in the query
@@ -87,6 +136,9 @@ public class Queries {
         QueryInfo foundQueryInfo = null;
         params.put(QueryConstants.RESOURCE_NAME, orientClassName); 
         
+        int pageSize = PagedResults.getPageSize(params);
+        String lastId = PagedResults.getLastId(params);
+        
         String queryExpression = (String) params.get(QueryConstants.QUERY_EXPRESSION);
         String queryId = null;
         if (queryExpression != null) {
@@ -111,7 +163,14 @@ public class Queries {
             // boolean tryPrepared = foundQueryInfo.isUsePrepared();
             boolean tryPrepared = false;
             
-            if (tryPrepared) {
+            Map<String, Object> queryParams = params;
+            if (pageSize > 0) {
+                // Keyset pagination on the OpenIDM identifier, bound on a copy to leave the caller's params untouched
+                queryParams = new HashMap<String, Object>(params);
+                String queryString = foundQueryInfo.getQueryString();
+                query = resolvePagedQuery(queryString, queryParams, pageSize, lastId);
+                logger.debug("Paged query for {} resulted in {}", queryString, query);
+            } else if (tryPrepared) {
                 // Try to use the prepared statement, which supports token substitution of where clause
                 query = foundQueryInfo.getPreparedQuery();
                 logger.debug("Prepared query {} ", query);
@@ -127,7 +186,7 @@ public class Queries {
             Name eventName = getEventName(queryExpression, queryId);
             EventEntry measure = Publisher.start(eventName, query, null);
             try {
-                result = database.command(query).execute(params);
+                result = database.command(query).execute(queryParams);
                 measure.setResult(result);
             } catch (OQueryParsingException firstTryEx) {
                 if (tryPrepared) {
@@ -193,6 +252,7 @@ public class Queries {
             }
         }
         configuredQueries = prepQueries;
+        inlineQueries.clear();
     }    
     
     /**
@@ -212,6 +272,51 @@ public class Queries {
         return new OSQLSynchQuery<ODocument>(resolvedQueryString);
     }
     
+    /**
+     * Resolve the tokens of a query and restrict it to one page of results, ordered by the 
+     * OpenIDM identifier. The query must not define its own ordering, grouping, limit or skip.
+     * 
+     * Subsequent pages extend the where clause with a condition on the identifier
+     * rather than skipping records, hence the identifier index can be used to find the start of the page.
+     * The query template rather than the resolved query is inspected, so token values can not 
+     * make a query unpageable or move its where clause.
+     * 
+     * @param queryString The query with tokens
+     * @param params THe parameters to replace the tokens with, the identifier to resume after is added to them
+     * @param pageSize the maximum number of results
+     * @param lastId the identifier to resume the page after, null for the first page
+     * @return the paged query with any found tokens replaced
+     * @throws BadRequestException if the queryString contains token missing from params, or can not be paged
+     */
+    protected OSQLSynchQuery<ODocument> resolvePagedQuery(String queryString, Map<String,Object> params,
+            int pageSize, String lastId) throws BadRequestException {
+        if (UNPAGEABLE_PATTERN.matcher(queryString).find()) {
+            throw new BadRequestException("Query can not be paged as it defines its own order by, group by, "
+                    + "limit or skip: " + queryString);
+        }
+        StringBuilder paged = new StringBuilder(queryString.length() + 64);
+        if (lastId != null) {
+            Matcher where = WHERE_PATTERN.matcher(queryString);
+            if (where.find()) {
+                paged.append(tokenHandler.replaceTokensWithValues(queryString.substring(0, where.end()), params))
+                        .append("(")
+                        .append(tokenHandler.replaceTokensWithValues(queryString.substring(where.end()), params))
+                        .append(") and ");
+            } else {
+                paged.append(tokenHandler.replaceTokensWithValues(queryString, params)).append(" where ");
+            }
+            // Bound as a parameter, the identifier is never concatenated into the query
+            paged.append(DocumentUtil.ORIENTDB_PRIMARY_KEY).append(" > :").append(PAGED_RESULTS_LAST_ID);
+            params.put(PAGED_RESULTS_LAST_ID, lastId);
+        } else {
+            paged.append(tokenHandler.replaceTokensWithValues(queryString, params));
+        }
+        paged.append(" order by ").append(DocumentUtil.ORIENTDB_PRIMARY_KEY).append(" asc");
+        OSQLSynchQuery<ODocument> query = new OSQLSynchQuery<ODocument>(paged.toString());
+        query.setLimit(pageSize);
+        return query;
+    }
+    
     /**
      * Populate and prepare the query information with the query expression passed in the parameters
      *
@@ -221,9 +326,13 @@ public class Queries {
      * @return the populated query info
      */
     protected QueryInfo resolveInlineQuery(final String type, Map<String, Object> params, ODatabaseDocumentTx database ) {
-        // TODO: LRU cache
         String queryString = (String) params.get(QueryConstants.QUERY_EXPRESSION);
-        return  prepareQuery(queryString);
+        QueryInfo queryInfo = inlineQueries.get(queryString);
+        if (queryInfo == null) {
+            queryInfo = prepareQuery(queryString);
+            inlineQueries.put(queryString, queryInfo);
+        }
+        return queryInfo;
     }
 
     /**
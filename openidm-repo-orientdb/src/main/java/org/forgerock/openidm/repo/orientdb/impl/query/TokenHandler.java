@@ -45,6 +45,12 @@ public class TokenHandler {
     // The OpenIDM query token is of format ${token-name}
     Pattern tokenPattern = Pattern.compile("\\$\\{(.+?)\\}");
 
+    // Marks queries in the orient token cache that can not be converted into prepared statements
+    private static final String PREPARE_NOT_SUPPORTED = new String("PREPARE_NOT_SUPPORTED");
+
+    // Results of replaceTokensWithOrientToken, keyed by the query with OpenIDM format tokens
+    final LRUCache<String, String> orientTokenCache = new LRUCache<String, String>(256);
+
     /**
      * Replaces a query string with tokens of format ${token-name} with the values from the
      * passed in map, where the token-name must be the key in the map
@@ -132,6 +138,23 @@ public class TokenHandler {
      * That a statement was not rejected here though does not mean it could not fail during the parsing phase later.
      */
     String replaceTokensWithOrientToken(String queryString) throws PrepareNotSupported {
+        String cached = orientTokenCache.get(queryString);
+        if (cached == PREPARE_NOT_SUPPORTED) {
+            throw new PrepareNotSupported("Prepared query not supported for params with dotnotation conversion");
+        } else if (cached != null) {
+            return cached;
+        }
+        try {
+            String replaced = convertTokensToOrientToken(queryString);
+            orientTokenCache.put(queryString, replaced);
+            return replaced;
+        } catch (PrepareNotSupported ex) {
+            orientTokenCache.put(queryString, PREPARE_NOT_SUPPORTED);
+            throw ex;
+        }
+    }
+
+    private String convertTokensToOrientToken(String queryString) throws PrepareNotSupported {
         Matcher matcher = tokenPattern.matcher(queryString);
         StringBuffer buf = new StringBuffer();
         while (matcher.find()) {
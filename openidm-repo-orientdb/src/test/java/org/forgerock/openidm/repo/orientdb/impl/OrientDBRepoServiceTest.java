@@ -0,0 +1,144 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright © 2013 ForgeRock AS. All rights reserved.
+ *
+ * The contents of this file are subject to the terms
+ * of the Common Development and Distribution License
+ * (the License). You may not use this file except in
+ * compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://forgerock.org/license/CDDLv1.0.html
+ * See the License for the specific language governing
+ * permission and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL
+ * Header Notice in each file and include the License file
+ * at http://forgerock.org/license/CDDLv1.0.html
+ * If applicable, add the following below the CDDL Header,
+ * with the fields enclosed by brackets [] replaced by
+ * your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ */
+package org.forgerock.openidm.repo.orientdb.impl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.orientechnologies.orient.core.db.document.ODatabaseDocumentTx;
+import com.orientechnologies.orient.core.sql.OCommandSQL;
+import com.orientechnologies.orient.server.OServerMain;
+
+import org.forgerock.json.fluent.JsonValue;
+import org.forgerock.openidm.core.ServerConstants;
+import org.forgerock.openidm.objset.BadRequestException;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+import static org.testng.Assert.*;
+
+public class OrientDBRepoServiceTest {
+
+    private static final String DB_URL = "local:./target/orientdbreposervicetestdb";
+    private static final String NAME_INDEX = DBHelper.getIndexName("managed_user", "name");
+    private static final String ID_INDEX = DBHelper.getIndexName("managed_user", DocumentUtil.ORIENTDB_PRIMARY_KEY);
+
+    private OrientDBRepoService repo;
+
+    @BeforeClass
+    public void setUp() throws Exception {
+        List<Object> indexes = new ArrayList<Object>();
+        indexes.add(index(DocumentUtil.ORIENTDB_PRIMARY_KEY, "unique"));
+        indexes.add(index("name", "notunique"));
+        Map<String, Object> managedUser = new HashMap<String, Object>();
+        managedUser.put("index", indexes);
+        Map<String, Object> classes = new HashMap<String, Object>();
+        classes.put("managed_user", managedUser);
+        Map<String, Object> structure = new HashMap<String, Object>();
+        structure.put("orientdbClass", classes);
+        Map<String, Object> config = new HashMap<String, Object>();
+        config.put("dbStructure", structure);
+
+        repo = new OrientDBRepoService();
+        repo.existingConfig = new JsonValue(config);
+        repo.dbURL = DB_URL;
+        repo.user = "admin";
+        repo.password = "admin";
+        repo.pool = DBHelper.getPool(DB_URL, "admin", "admin", 1, 5, repo.existingConfig, true);
+        ODatabaseDocumentTx db = repo.getConnection();
+        try {
+            db.command(new OCommandSQL("delete from managed_user")).execute();
+        } finally {
+            db.close();
+        }
+    }
+
+    @AfterClass
+    public void tearDown() throws Exception {
+        DBHelper.closePools();
+        OServerMain.create().shutdown();
+    }
+
+    private static Map<String, Object> index(String propertyName, String indexType) {
+        Map<String, Object> index = new HashMap<String, Object>();
+        index.put("propertyName", propertyName);
+        index.put("propertyType", "string");
+        index.put("indexType", indexType);
+        return index;
+    }
+
+    private Map<String, Object> action(String action) throws Exception {
+        Map<String, Object> params = new HashMap<String, Object>();
+        params.put(ServerConstants.ACTION_NAME, action);
+        return repo.action("repo/managed/user", params);
+    }
+
+    private boolean hasIndex(String indexName) throws Exception {
+        ODatabaseDocumentTx db = repo.getConnection();
+        try {
+            return db.getMetadata().getIndexManager().getIndex(indexName) != null;
+        } finally {
+            db.close();
+        }
+    }
+
+    @Test
+    public void bulkLoad() throws Exception {
+        Map<String, Object> started = action(OrientDBRepoService.ACTION_BULK_LOAD_START);
+        assertTrue(repo.bulkLoad);
+        assertEquals(started.get("droppedIndexes"), Arrays.asList(NAME_INDEX));
+        assertFalse(hasIndex(NAME_INDEX));
+        assertTrue(hasIndex(ID_INDEX), "Unique indexes are kept to reject duplicates");
+
+        for (int i = 0; i < 10; i++) {
+            Map<String, Object> user = new HashMap<String, Object>();
+            user.put("name", "name" + i);
+            repo.create("managed/user/bulk" + i, user);
+            assertNotNull(user.get(DocumentUtil.TAG_REV));
+        }
+
+        Map<String, Object> ended = action(OrientDBRepoService.ACTION_BULK_LOAD_END);
+        assertFalse(repo.bulkLoad);
+        assertNotNull(ended.get("indexRebuildTime"));
+        assertTrue(hasIndex(NAME_INDEX));
+
+        Map<String, Object> read = repo.read("managed/user/bulk3");
+        assertEquals(read.get("name"), "name3");
+    }
+
+    @Test(dependsOnMethods = "bulkLoad")
+    public void bulkLoadEndWithoutStart() throws Exception {
+        action(OrientDBRepoService.ACTION_BULK_LOAD_END);
+        assertFalse(repo.bulkLoad);
+        assertTrue(hasIndex(NAME_INDEX));
+    }
+
+    @Test(expectedExceptions = BadRequestException.class)
+    public void unsupportedAction() throws Exception {
+        action("unknown");
+    }
+}
@@ -0,0 +1,158 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright © 2013 ForgeRock AS. All rights reserved.
+ *
+ * The contents of this file are subject to the terms
+ * of the Common Development and Distribution License
+ * (the License). You may not use this file except in
+ * compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://forgerock.org/license/CDDLv1.0.html
+ * See the License for the specific language governing
+ * permission and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL
+ * Header Notice in each file and include the License file
+ * at http://forgerock.org/license/CDDLv1.0.html
+ * If applicable, add the following below the CDDL Header,
+ * with the fields enclosed by brackets [] replaced by
+ * your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ */
+package org.forgerock.openidm.repo.orientdb.impl.query;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.orientechnologies.orient.core.db.document.ODatabaseDocumentPool;
+import com.orientechnologies.orient.core.db.document.ODatabaseDocumentTx;
+import com.orientechnologies.orient.core.record.impl.ODocument;
+import com.orientechnologies.orient.core.sql.OCommandSQL;
+import com.orientechnologies.orient.core.sql.query.OSQLSynchQuery;
+import com.orientechnologies.orient.server.OServer;
+import com.orientechnologies.orient.server.OServerMain;
+
+import org.forgerock.json.fluent.JsonValue;
+import org.forgerock.openidm.repo.orientdb.impl.DBHelper;
+import org.forgerock.openidm.repo.orientdb.impl.DocumentUtil;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+import static org.testng.Assert.*;
+
+public class PredefinedQueriesTest {
+
+    private static final String DB_URL = "local:./target/predefinedqueriestestdb";
+    private static final int OBJECT_COUNT = 1000;
+
+    private ODatabaseDocumentPool pool;
+    private ODatabaseDocumentTx db;
+    private PredefinedQueries predefinedQueries = new PredefinedQueries();
+
+    @BeforeClass
+    public void setUp() throws Exception {
+        Map<String, Object> index = new HashMap<String, Object>();
+        index.put("propertyName", DocumentUtil.ORIENTDB_PRIMARY_KEY);
+        index.put("propertyType", "string");
+        index.put("indexType", "unique");
+        List<Object> indexes = new ArrayList<Object>();
+        indexes.add(index);
+        Map<String, Object> managedUser = new HashMap<String, Object>();
+        managedUser.put("index", indexes);
+        Map<String, Object> classes = new HashMap<String, Object>();
+        classes.put("managed_user", managedUser);
+        Map<String, Object> structure = new HashMap<String, Object>();
+        structure.put("orientdbClass", classes);
+        Map<String, Object> config = new HashMap<String, Object>();
+        config.put("dbStructure", structure);
+
+        pool = DBHelper.getPool(DB_URL, "admin", "admin", 1, 5, new JsonValue(config), true);
+        db = pool.acquire(DB_URL, "admin", "admin");
+        for (String orientClass : new String[] {"managed_user", "config"}) {
+            db.command(new OCommandSQL("delete from " + orientClass)).execute();
+            for (int i = 0; i < OBJECT_COUNT; i++) {
+                ODocument doc = new ODocument(orientClass);
+                doc.field(DocumentUtil.ORIENTDB_PRIMARY_KEY, "id" + i);
+                doc.field("name", "name" + i);
+                doc.save();
+            }
+        }
+    }
+
+    @AfterClass
+    public void tearDown() {
+        db.close();
+        DBHelper.closePools();
+        OServer server = OServerMain.create();
+        server.shutdown();
+    }
+
+    @Test
+    public void readByIndex() throws Exception {
+        assertNotNull(predefinedQueries.getPrimaryKeyIndex("managed_user", db));
+        ODocument doc = predefinedQueries.getByID("id42", "managed/user", db);
+        assertNotNull(doc);
+        assertEquals(doc.field("name"), "name42");
+        assertNull(predefinedQueries.getByID("unknown", "managed/user", db));
+    }
+
+    @Test
+    public void readByQuery() throws Exception {
+        assertNull(predefinedQueries.getPrimaryKeyIndex("config", db));
+        ODocument doc = predefinedQueries.getByID("id42", "config", db);
+        assertNotNull(doc);
+        assertEquals(doc.field("name"), "name42");
+        // The identifier is passed as a parameter, not part of the query
+        assertNull(predefinedQueries.getByID("' or '1' = '1", "config", db));
+    }
+
+    @Test(dependsOnMethods = {"readByIndex", "readByQuery"})
+    public void resolvedOnce() throws Exception {
+        // The index, or its absence, is looked up on the first read of a class only
+        assertEquals(predefinedQueries.primaryKeyIndexes.get("managed_user"),
+                DBHelper.getIndexName("managed_user", DocumentUtil.ORIENTDB_PRIMARY_KEY));
+        assertEquals(predefinedQueries.primaryKeyIndexes.get("config"), "");
+        assertFalse(predefinedQueries.byIdQueries.get().containsKey("managed_user"));
+
+        // The prepared query is reused by the later reads of the thread
+        OSQLSynchQuery<ODocument> query = predefinedQueries.byIdQueries.get().get("config");
+        assertNotNull(query);
+        for (int i = 0; i < 10; i++) {
+            assertEquals(predefinedQueries.getByID("id" + i, "config", db).field("name"), "name" + i);
+        }
+        assertSame(predefinedQueries.byIdQueries.get().get("config"), query);
+        assertEquals(predefinedQueries.byIdQueries.get().size(), 1);
+
+        predefinedQueries.reset();
+        assertTrue(predefinedQueries.primaryKeyIndexes.isEmpty());
+        assertNotNull(predefinedQueries.getByID("id42", "managed/user", db));
+        assertEquals(predefinedQueries.primaryKeyIndexes.size(), 1);
+    }
+
+    /**
+     * Not an assertion, reports the point read latency of the index lookup 
+     * compared to the query for the same number of objects
+     */
+    @Test(dependsOnMethods = {"resolvedOnce"})
+    public void pointReadLatency() throws Exception {
+        int reads = 10000;
+        for (String type : new String[] {"managed/user", "config"}) {
+            // Warm up
+            for (int i = 0; i < reads; i++) {
+                predefinedQueries.getByID("id" + (i % OBJECT_COUNT), type, db);
+            }
+            long start = System.nanoTime();
+            for (int i = 0; i < reads; i++) {
+                assertNotNull(predefinedQueries.getByID("id" + (i % OBJECT_COUNT), type, db));
+            }
+            long micros = (System.nanoTime() - start) / 1000;
+            System.out.println("Point read of " + type + " (" 
+                    + (predefinedQueries.getPrimaryKeyIndex(type.replace('/', '_'), db) != null ? "index" : "query")
+                    + "): " + ((double) micros / reads) + " us per read");
+        }
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright © 2013 ForgeRock AS. All rights reserved.
+ *
+ * The contents of this file are subject to the terms
+ * of the Common Development and Distribution License
+ * (the License). You may not use this file except in
+ * compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://forgerock.org/license/CDDLv1.0.html
+ * See the License for the specific language governing
+ * permission and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL
+ * Header Notice in each file and include the License file
+ * at http://forgerock.org/license/CDDLv1.0.html
+ * If applicable, add the following below the CDDL Header,
+ * with the fields enclosed by brackets [] replaced by
+ * your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ */
+package org.forgerock.openidm.repo.orientdb.impl.query;
+
+import com.orientechnologies.orient.core.record.impl.ODocument;
+import com.orientechnologies.orient.core.sql.query.OSQLSynchQuery;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.forgerock.openidm.objset.BadRequestException;
+
+import org.testng.annotations.*;
+import static org.testng.Assert.*;
+
+public class QueriesTest {
+
+    Queries queries = new Queries();
+
+    @Test
+    public void firstPage() throws BadRequestException {
+        Map<String, Object> params = new HashMap<String, Object>();
+        params.put("_resource", "managed_user");
+        OSQLSynchQuery<ODocument> query = queries.resolvePagedQuery(
+                "select * from ${unquoted:_resource}", params, 10, null);
+        assertEquals(query.getText(), "select * from managed_user order by _openidm_id asc");
+        assertEquals(query.getLimit(), 10);
+    }
+
+    @Test
+    public void nextPageExtendsWhereClause() throws BadRequestException {
+        Map<String, Object> params = new HashMap<String, Object>();
+        params.put("_resource", "managed_user");
+        params.put("firstname", "John");
+        OSQLSynchQuery<ODocument> query = queries.resolvePagedQuery(
+                "select * from ${unquoted:_resource} where firstname = ${firstname} or lastname = 'D'", params, 10, "abc");
+        assertEquals(query.getText(), "select * from managed_user where (firstname = 'John' or lastname = 'D') "
+                + "and _openidm_id > :" + Queries.PAGED_RESULTS_LAST_ID + " order by _openidm_id asc");
+        assertEquals(params.get(Queries.PAGED_RESULTS_LAST_ID), "abc");
+    }
+
+    @Test
+    public void nextPageWithoutWhereClause() throws BadRequestException {
+        Map<String, Object> params = new HashMap<String, Object>();
+        params.put("_resource", "managed_user");
+        OSQLSynchQuery<ODocument> query = queries.resolvePagedQuery(
+                "select _openidm_id from ${unquoted:_resource}", params, 10, "abc");
+        assertEquals(query.getText(), "select _openidm_id from managed_user where _openidm_id > :"
+                + Queries.PAGED_RESULTS_LAST_ID + " order by _openidm_id asc");
+    }
+
+    @Test(expectedExceptions = BadRequestException.class)
+    public void orderedQueryNotPageable() throws BadRequestException {
+        Map<String, Object> params = new HashMap<String, Object>();
+        params.put("_resource", "managed_user");
+        queries.resolvePagedQuery("select * from ${unquoted:_resource} order by lastname", params, 10, null);
+    }
+
+    @Test
+    public void tokenValuesDoNotAffectPaging() throws BadRequestException {
+        Map<String, Object> params = new HashMap<String, Object>();
+        params.put("_resource", "managed_user");
+        params.put("lastname", "x where limit skip");
+        OSQLSynchQuery<ODocument> query = queries.resolvePagedQuery(
+                "select * from ${unquoted:_resource} where lastname = ${lastname}", params, 10, "abc");
+        assertEquals(query.getText(), "select * from managed_user where (lastname = 'x where limit skip') "
+                + "and _openidm_id > :" + Queries.PAGED_RESULTS_LAST_ID + " order by _openidm_id asc");
+    }
+
+    @Test
+    public void inlineQueryPreparedOnce() {
+        Map<String, Object> params = new HashMap<String, Object>();
+        params.put("_queryExpression", "select * from managed_user where firstname = ${firstname}");
+        QueryInfo first = queries.resolveInlineQuery("managed/user", params, null);
+        long hits = queries.inlineQueries.getHits();
+        QueryInfo second = queries.resolveInlineQuery("managed/user", params, null);
+        assertSame(second, first);
+        assertEquals(queries.inlineQueries.getHits(), hits + 1);
+    }
+
+    @Test
+    public void orientTokenReplacementCached() throws PrepareNotSupported {
+        TokenHandler tokenHandler = new TokenHandler();
+        String queryString = "select * from managed_user where firstname = ${firstname}";
+        assertEquals(tokenHandler.replaceTokensWithOrientToken(queryString),
+                "select * from managed_user where firstname = :firstname");
+        assertEquals(tokenHandler.replaceTokensWithOrientToken(queryString),
+                "select * from managed_user where firstname = :firstname");
+        assertEquals(tokenHandler.orientTokenCache.getHits(), 1);
+        assertEquals(tokenHandler.orientTokenCache.getMisses(), 1);
+    }
+
+    @Test(expectedExceptions = PrepareNotSupported.class)
+    public void prepareNotSupportedCached() throws PrepareNotSupported {
+        TokenHandler tokenHandler = new TokenHandler();
+        String queryString = "select * from managed_user where ${dotnotation:field} = 'x'";
+        try {
+            tokenHandler.replaceTokensWithOrientToken(queryString);
+            fail("Expected PrepareNotSupported");
+        } catch (PrepareNotSupported ex) {
+            // expected, the second attempt is answered from the cache
+        }
+        tokenHandler.replaceTokensWithOrientToken(queryString);
+    }
+}
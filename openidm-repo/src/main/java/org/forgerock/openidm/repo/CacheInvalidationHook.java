@@ -0,0 +1,58 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright © 2013 ForgeRock AS. All rights reserved.
+ *
+ * The contents of this file are subject to the terms
+ * of the Common Development and Distribution License
+ * (the License). You may not use this file except in
+ * compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://forgerock.org/license/CDDLv1.0.html
+ * See the License for the specific language governing
+ * permission and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL
+ * Header Notice in each file and include the License file
+ * at http://forgerock.org/license/CDDLv1.0.html
+ * If applicable, add the following below the CDDL Header,
+ * with the fields enclosed by brackets [] replaced by
+ * your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ */
+package org.forgerock.openidm.repo;
+
+import org.forgerock.openidm.repo.util.ObjectCache;
+
+/**
+ * Pluggable hook to keep repository object caches consistent across a cluster.
+ * <p/>
+ * Services registered under this interface are handed the object cache of 
+ * the local repository. They are told about every object invalidated by a 
+ * local write, to propagate it to the other nodes, and apply invalidations 
+ * received from other nodes with {@link ObjectCache#evict(String)}.
+ */
+public interface CacheInvalidationHook {
+
+    /**
+     * Called when a repository object cache becomes available
+     *
+     * @param cache the cache to apply remote invalidations to
+     */
+    void register(ObjectCache cache);
+
+    /**
+     * Called when a repository object cache is discarded
+     *
+     * @param cache the cache previously registered
+     */
+    void unregister(ObjectCache cache);
+
+    /**
+     * Called after a local write invalidated a cached object
+     *
+     * @param fullId the identifier of the object invalidated, or null if all objects were invalidated
+     */
+    void invalidated(String fullId);
+}
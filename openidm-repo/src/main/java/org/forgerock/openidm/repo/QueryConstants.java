@@ -69,8 +69,28 @@ public final class QueryConstants {
      * resource queried by name. Example use: select * from ${_resource} where ...
      */
     public final static String RESOURCE_NAME = "_resource";
-    
-    
+
+    /**
+     * Query input key.
+     *
+     * Optional maximum number of records to return in one page of results. When present
+     * the query result is ordered by object identifier and, if further records may exist,
+     * the query output contains a PAGED_RESULTS_COOKIE to request the next page with.
+     */
+    public final static String PAGE_SIZE = "_pageSize";
+
+    /**
+     * Query input and output key.
+     *
+     * Opaque cookie identifying the position after which the next page of results starts.
+     * The repositories encode the last returned object identifier (keyset pagination), so
+     * retrieving a page costs the same regardless of how deep into the result set it is.
+     *
+     * Absent from the query output when the last page was returned.
+     */
+    public final static String PAGED_RESULTS_COOKIE = "_pagedResultsCookie";
+
+
     // Keys in the query output
     
     /**
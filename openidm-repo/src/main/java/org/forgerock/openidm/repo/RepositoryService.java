@@ -31,4 +31,18 @@ import org.forgerock.json.resource.JsonResource;
  * @author aegloff
  */
 public interface RepositoryService extends JsonResource {
+
+    /**
+     * Action updating a batch of objects of one resource in a single request. The action
+     * value is the list of objects, each with the {@code _id} and the {@code _rev} it was
+     * read at. Each object is only updated if it still has that revision; objects changed
+     * or deleted since are skipped rather than failing the batch.
+     */
+    String ACTION_UPDATE_BATCH = "updateBatch";
+
+    /**
+     * Result key of the {@link #ACTION_UPDATE_BATCH} action, the list of the objects updated
+     * with their {@code _id} and new {@code _rev}.
+     */
+    String BATCH_UPDATED = "updated";
 }
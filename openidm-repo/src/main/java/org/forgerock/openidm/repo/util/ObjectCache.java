@@ -0,0 +1,301 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright © 2013 ForgeRock AS. All rights reserved.
+ *
+ * The contents of this file are subject to the terms
+ * of the Common Development and Distribution License
+ * (the License). You may not use this file except in
+ * compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://forgerock.org/license/CDDLv1.0.html
+ * See the License for the specific language governing
+ * permission and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL
+ * Header Notice in each file and include the License file
+ * at http://forgerock.org/license/CDDLv1.0.html
+ * If applicable, add the following below the CDDL Header,
+ * with the fields enclosed by brackets [] replaced by
+ * your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ */
+package org.forgerock.openidm.repo.util;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.forgerock.openidm.repo.CacheInvalidationHook;
+
+/**
+ * Read-through cache of repository objects, bounded in size (least recently
+ * used entries are evicted first) and in the time an entry is trusted.
+ * <p/>
+ * Objects are cached together with their revision ({@code _rev}): an entry is 
+ * never replaced by an older revision of the same object. Writes invalidate 
+ * entries and leave a marker behind, so that a read that started before the 
+ * write can not populate the cache with the object it read.
+ * <p/>
+ * Objects are copied on the way in and out, callers are free to modify them.
+ */
+public class ObjectCache {
+
+    private final int maxEntries;
+    private final long timeToLive;
+
+    private final LinkedHashMap<String, Entry> entries;
+    private final AtomicLong sequence = new AtomicLong();
+
+    private final List<CacheInvalidationHook> hooks = new CopyOnWriteArrayList<CacheInvalidationHook>();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+
+    /**
+     * @param maxEntries the maximum number of objects kept
+     * @param timeToLive milliseconds after which a cached object is read again from the repository
+     */
+    public ObjectCache(final int maxEntries, long timeToLive) {
+        this.maxEntries = maxEntries;
+        this.timeToLive = timeToLive;
+        this.entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    /**
+     * @return a stamp to pass to {@link #put(String, Map, long)} for an object 
+     * about to be read from the repository
+     */
+    public long stamp() {
+        return sequence.get();
+    }
+
+    /**
+     * @param fullId the identifier of the object
+     * @return a copy of the cached object, or null if it is not cached
+     */
+    public Map<String, Object> get(String fullId) {
+        Entry entry;
+        synchronized (entries) {
+            entry = entries.get(fullId);
+            if (entry != null && (entry.object == null || entry.isExpired())) {
+                if (entry.isExpired()) {
+                    entries.remove(fullId);
+                }
+                entry = null;
+            }
+        }
+        if (entry == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        return copy(entry.object);
+    }
+
+    /**
+     * Caches an object read from, or written to, the repository. The object
+     * is not cached if it was invalidated since the stamp was taken, or if a 
+     * newer revision is already cached.
+     *
+     * @param fullId the identifier of the object
+     * @param object the object, including its {@code _rev}
+     * @param stamp the {@link #stamp()} taken before the object was read
+     */
+    public void put(String fullId, Map<String, Object> object, long stamp) {
+        Entry entry = new Entry(copy(object), stamp);
+        synchronized (entries) {
+            Entry existing = entries.get(fullId);
+            if (existing != null && !existing.isExpired()) {
+                if (existing.object == null && existing.sequence > stamp) {
+                    // Invalidated after the read started
+                    return;
+                }
+                if (existing.object != null && isOlder(entry.object, existing.object)) {
+                    return;
+                }
+            }
+            entries.put(fullId, entry);
+        }
+    }
+
+    /**
+     * Invalidates an object changed by a local write, and notifies the
+     * registered hooks.
+     *
+     * @param fullId the identifier of the object
+     */
+    public void invalidate(String fullId) {
+        evict(fullId);
+        for (CacheInvalidationHook hook : hooks) {
+            hook.invalidated(fullId);
+        }
+    }
+
+    /**
+     * Invalidates all objects, e.g. after a command changing objects in bulk,
+     * and notifies the registered hooks.
+     */
+    public void invalidateAll() {
+        evictAll();
+        for (CacheInvalidationHook hook : hooks) {
+            hook.invalidated(null);
+        }
+    }
+
+    /**
+     * Invalidates an object without notifying the hooks; to apply 
+     * invalidations received from other nodes.
+     *
+     * @param fullId the identifier of the object
+     */
+    public void evict(String fullId) {
+        invalidations.incrementAndGet();
+        Entry marker = new Entry(null, sequence.incrementAndGet());
+        synchronized (entries) {
+            entries.put(fullId, marker);
+        }
+    }
+
+    /**
+     * Invalidates all objects without notifying the hooks.
+     */
+    public void evictAll() {
+        invalidations.incrementAndGet();
+        long marker = sequence.incrementAndGet();
+        synchronized (entries) {
+            // Markers for all known entries, so reads in progress can not populate the cache 
+            List<String> ids = new ArrayList<String>(entries.keySet());
+            entries.clear();
+            for (String id : ids) {
+                entries.put(id, new Entry(null, marker));
+            }
+        }
+    }
+
+    /**
+     * @param hook the hook to notify of local invalidations
+     */
+    public void addHook(CacheInvalidationHook hook) {
+        hooks.add(hook);
+    }
+
+    /**
+     * @param hook the hook to no longer notify
+     */
+    public void removeHook(CacheInvalidationHook hook) {
+        hooks.remove(hook);
+    }
+
+    /**
+     * @return the number of objects served from the cache
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * @return the number of reads not served from the cache
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * @return the number of invalidations, local and remote
+     */
+    public long getInvalidations() {
+        return invalidations.get();
+    }
+
+    /**
+     * @return the number of objects currently cached
+     */
+    public int size() {
+        int size = 0;
+        synchronized (entries) {
+            for (Iterator<Entry> iter = entries.values().iterator(); iter.hasNext();) {
+                if (iter.next().object != null) {
+                    size++;
+                }
+            }
+        }
+        return size;
+    }
+
+    /**
+     * @return the maximum number of objects kept
+     */
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+
+    /**
+     * Compares numeric revisions, revisions that are not numeric are not ordered
+     */
+    static boolean isOlder(Map<String, Object> object, Map<String, Object> than) {
+        Object rev = object.get("_rev");
+        Object thanRev = than.get("_rev");
+        if (rev == null || thanRev == null) {
+            return false;
+        }
+        try {
+            return Long.parseLong(rev.toString()) < Long.parseLong(thanRev.toString());
+        } catch (NumberFormatException ex) {
+            return false;
+        }
+    }
+
+    /**
+     * Deep copy of the JSON object model; other values are immutable
+     */
+    @SuppressWarnings("unchecked")
+    static <T> T copy(T value) {
+        if (value instanceof Map) {
+            Map<String, Object> map = (Map<String, Object>) value;
+            Map<String, Object> result = new LinkedHashMap<String, Object>(map.size() * 4 / 3 + 1);
+            for (Map.Entry<String, Object> entry : map.entrySet()) {
+                result.put(entry.getKey(), copy(entry.getValue()));
+            }
+            return (T) result;
+        } else if (value instanceof List) {
+            List<Object> list = (List<Object>) value;
+            List<Object> result = new ArrayList<Object>(list.size());
+            for (Object element : list) {
+                result.add(copy(element));
+            }
+            return (T) result;
+        }
+        return value;
+    }
+
+    /**
+     * A cached object, or an invalidation marker if the object is null
+     */
+    private final class Entry {
+        final Map<String, Object> object;
+        final long sequence;
+        final long created = System.currentTimeMillis();
+
+        Entry(Map<String, Object> object, long sequence) {
+            this.object = object;
+            this.sequence = sequence;
+        }
+
+        boolean isExpired() {
+            return System.currentTimeMillis() - created > timeToLive;
+        }
+    }
+}
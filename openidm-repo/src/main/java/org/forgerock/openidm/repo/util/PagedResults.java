@@ -0,0 +1,148 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright © 2013 ForgeRock AS. All rights reserved.
+ *
+ * The contents of this file are subject to the terms
+ * of the Common Development and Distribution License
+ * (the License). You may not use this file except in
+ * compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://forgerock.org/license/CDDLv1.0.html
+ * See the License for the specific language governing
+ * permission and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL
+ * Header Notice in each file and include the License file
+ * at http://forgerock.org/license/CDDLv1.0.html
+ * If applicable, add the following below the CDDL Header,
+ * with the fields enclosed by brackets [] replaced by
+ * your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ */
+package org.forgerock.openidm.repo.util;
+
+import java.io.UnsupportedEncodingException;
+import java.util.List;
+import java.util.Map;
+
+import org.forgerock.openidm.objset.BadRequestException;
+import org.forgerock.openidm.repo.QueryConstants;
+
+/**
+ * Helpers for keyset based paging of repository queries.
+ * <p/>
+ * The paged results cookie handed out to clients is the hex encoded
+ * (UTF-8) identifier of the last object of the previous page. Repositories
+ * resume after that identifier rather than skipping an offset.
+ */
+public final class PagedResults {
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private PagedResults() {}
+
+    /**
+     * @param params the query parameters
+     * @return the requested page size, or 0 if the query is not paged
+     * @throws BadRequestException if the page size is not a positive number
+     */
+    public static int getPageSize(Map<String, Object> params) throws BadRequestException {
+        Object value = params.get(QueryConstants.PAGE_SIZE);
+        if (value == null) {
+            return 0;
+        }
+        int pageSize;
+        try {
+            if (value instanceof Number) {
+                pageSize = ((Number) value).intValue();
+            } else {
+                pageSize = Integer.parseInt(value.toString().trim());
+            }
+        } catch (NumberFormatException ex) {
+            throw new BadRequestException("Invalid " + QueryConstants.PAGE_SIZE + " " + value, ex);
+        }
+        if (pageSize < 1) {
+            throw new BadRequestException("Invalid " + QueryConstants.PAGE_SIZE + " " + value
+                    + ", must be greater than 0");
+        }
+        return pageSize;
+    }
+
+    /**
+     * @param params the query parameters
+     * @return the identifier of the last object of the previous page, or null for the first page
+     * @throws BadRequestException if the passed cookie is not valid
+     */
+    public static String getLastId(Map<String, Object> params) throws BadRequestException {
+        Object cookie = params.get(QueryConstants.PAGED_RESULTS_COOKIE);
+        if (cookie == null || cookie.toString().length() == 0) {
+            return null;
+        }
+        return decodeCookie(cookie.toString());
+    }
+
+    /**
+     * Populates the query output with the cookie for the next page, if the
+     * current page is full and hence further results may exist.
+     *
+     * @param result the query output map
+     * @param docs the records of the current page
+     * @param pageSize the requested page size, 0 if the query is not paged
+     */
+    public static void setPagedResultsCookie(Map<String, Object> result, List<Map<String, Object>> docs,
+            int pageSize) {
+        if (pageSize > 0 && docs != null && docs.size() >= pageSize) {
+            Object lastId = docs.get(docs.size() - 1).get("_id");
+            if (lastId != null) {
+                result.put(QueryConstants.PAGED_RESULTS_COOKIE, encodeCookie(lastId.toString()));
+            }
+        }
+    }
+
+    /**
+     * @param lastId the identifier of the last object of a page
+     * @return the opaque cookie for the page that follows
+     */
+    public static String encodeCookie(String lastId) {
+        byte[] bytes;
+        try {
+            bytes = lastId.getBytes("UTF-8");
+        } catch (UnsupportedEncodingException ex) {
+            // UTF-8 is always supported
+            throw new IllegalStateException(ex);
+        }
+        char[] encoded = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            encoded[i * 2] = HEX[(bytes[i] >> 4) & 0x0f];
+            encoded[i * 2 + 1] = HEX[bytes[i] & 0x0f];
+        }
+        return new String(encoded);
+    }
+
+    /**
+     * @param cookie the cookie as handed out by {@link #encodeCookie(String)}
+     * @return the identifier of the last object of the previous page
+     * @throws BadRequestException if the cookie is not valid
+     */
+    public static String decodeCookie(String cookie) throws BadRequestException {
+        if (cookie.length() % 2 != 0) {
+            throw new BadRequestException("Invalid " + QueryConstants.PAGED_RESULTS_COOKIE + " " + cookie);
+        }
+        byte[] bytes = new byte[cookie.length() / 2];
+        for (int i = 0; i < bytes.length; i++) {
+            int high = Character.digit(cookie.charAt(i * 2), 16);
+            int low = Character.digit(cookie.charAt(i * 2 + 1), 16);
+            if (high < 0 || low < 0) {
+                throw new BadRequestException("Invalid " + QueryConstants.PAGED_RESULTS_COOKIE + " " + cookie);
+            }
+            bytes[i] = (byte) ((high << 4) | low);
+        }
+        try {
+            return new String(bytes, "UTF-8");
+        } catch (UnsupportedEncodingException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+}
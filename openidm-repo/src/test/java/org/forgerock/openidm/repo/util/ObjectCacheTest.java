@@ -0,0 +1,91 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright © 2013 ForgeRock AS. All rights reserved.
+ *
+ * The contents of this file are subject to the terms
+ * of the Common Development and Distribution License
+ * (the License). You may not use this file except in
+ * compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://forgerock.org/license/CDDLv1.0.html
+ * See the License for the specific language governing
+ * permission and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL
+ * Header Notice in each file and include the License file
+ * at http://forgerock.org/license/CDDLv1.0.html
+ * If applicable, add the following below the CDDL Header,
+ * with the fields enclosed by brackets [] replaced by
+ * your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ */
+package org.forgerock.openidm.repo.util;
+
+import static org.testng.Assert.*;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.testng.annotations.Test;
+
+public class ObjectCacheTest {
+
+    private Map<String, Object> object(String rev) {
+        Map<String, Object> obj = new HashMap<String, Object>();
+        obj.put("_id", "1");
+        obj.put("_rev", rev);
+        return obj;
+    }
+
+    @Test
+    public void testReadThrough() {
+        ObjectCache cache = new ObjectCache(10, 60000);
+        assertNull(cache.get("managed/user/1"));
+        cache.put("managed/user/1", object("0"), cache.stamp());
+        Map<String, Object> cached = cache.get("managed/user/1");
+        assertEquals(cached.get("_rev"), "0");
+        assertEquals(cache.getHits(), 1);
+        assertEquals(cache.getMisses(), 1);
+
+        // Callers get copies
+        cached.put("_rev", "changed");
+        assertEquals(cache.get("managed/user/1").get("_rev"), "0");
+    }
+
+    @Test
+    public void testInvalidatedDuringRead() {
+        ObjectCache cache = new ObjectCache(10, 60000);
+        long stamp = cache.stamp();
+        cache.invalidate("managed/user/1");
+        cache.put("managed/user/1", object("0"), stamp);
+        assertNull(cache.get("managed/user/1"));
+
+        cache.put("managed/user/1", object("1"), cache.stamp());
+        assertEquals(cache.get("managed/user/1").get("_rev"), "1");
+    }
+
+    @Test
+    public void testOlderRevisionNotCached() {
+        ObjectCache cache = new ObjectCache(10, 60000);
+        cache.put("managed/user/1", object("2"), cache.stamp());
+        cache.put("managed/user/1", object("1"), cache.stamp());
+        assertEquals(cache.get("managed/user/1").get("_rev"), "2");
+    }
+
+    @Test
+    public void testBounds() throws InterruptedException {
+        ObjectCache cache = new ObjectCache(2, 60000);
+        cache.put("a/1", object("0"), cache.stamp());
+        cache.put("a/2", object("0"), cache.stamp());
+        cache.put("a/3", object("0"), cache.stamp());
+        assertEquals(cache.size(), 2);
+        assertNull(cache.get("a/1"));
+
+        ObjectCache expiring = new ObjectCache(2, 0);
+        expiring.put("a/1", object("0"), expiring.stamp());
+        Thread.sleep(5);
+        assertNull(expiring.get("a/1"));
+    }
+}
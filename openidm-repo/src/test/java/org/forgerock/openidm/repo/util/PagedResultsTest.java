@@ -0,0 +1,86 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright © 2013 ForgeRock AS. All rights reserved.
+ *
+ * The contents of this file are subject to the terms
+ * of the Common Development and Distribution License
+ * (the License). You may not use this file except in
+ * compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://forgerock.org/license/CDDLv1.0.html
+ * See the License for the specific language governing
+ * permission and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL
+ * Header Notice in each file and include the License file
+ * at http://forgerock.org/license/CDDLv1.0.html
+ * If applicable, add the following below the CDDL Header,
+ * with the fields enclosed by brackets [] replaced by
+ * your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ */
+package org.forgerock.openidm.repo.util;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.forgerock.openidm.objset.BadRequestException;
+import org.forgerock.openidm.repo.QueryConstants;
+
+import org.testng.annotations.*;
+import static org.testng.Assert.*;
+
+public class PagedResultsTest {
+
+    @Test
+    public void cookieRoundTrip() throws BadRequestException {
+        String id = "d3b0c5a4-été/user 1";
+        String cookie = PagedResults.encodeCookie(id);
+        assertTrue(cookie.matches("[0-9a-f]+"));
+        assertEquals(PagedResults.decodeCookie(cookie), id);
+    }
+
+    @Test(expectedExceptions = BadRequestException.class)
+    public void invalidCookie() throws BadRequestException {
+        PagedResults.decodeCookie("zz");
+    }
+
+    @Test
+    public void pageSizeFromParams() throws BadRequestException {
+        Map<String, Object> params = new HashMap<String, Object>();
+        assertEquals(PagedResults.getPageSize(params), 0);
+        params.put(QueryConstants.PAGE_SIZE, "50");
+        assertEquals(PagedResults.getPageSize(params), 50);
+        params.put(QueryConstants.PAGE_SIZE, Integer.valueOf(10));
+        assertEquals(PagedResults.getPageSize(params), 10);
+    }
+
+    @Test(expectedExceptions = BadRequestException.class)
+    public void invalidPageSize() throws BadRequestException {
+        Map<String, Object> params = new HashMap<String, Object>();
+        params.put(QueryConstants.PAGE_SIZE, "0");
+        PagedResults.getPageSize(params);
+    }
+
+    @Test
+    public void cookieOnlyForFullPage() throws BadRequestException {
+        List<Map<String, Object>> docs = new ArrayList<Map<String, Object>>();
+        for (int i = 0; i < 2; i++) {
+            Map<String, Object> doc = new HashMap<String, Object>();
+            doc.put("_id", "id" + i);
+            docs.add(doc);
+        }
+        Map<String, Object> result = new HashMap<String, Object>();
+        PagedResults.setPagedResultsCookie(result, docs, 3);
+        assertFalse(result.containsKey(QueryConstants.PAGED_RESULTS_COOKIE));
+
+        PagedResults.setPagedResultsCookie(result, docs, 2);
+        Map<String, Object> params = new HashMap<String, Object>();
+        params.put(QueryConstants.PAGED_RESULTS_COOKIE, result.get(QueryConstants.PAGED_RESULTS_COOKIE));
+        assertEquals(PagedResults.getLastId(params), "id1");
+    }
+}
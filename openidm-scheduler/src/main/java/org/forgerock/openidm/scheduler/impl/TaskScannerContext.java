@@ -43,6 +43,8 @@ public class TaskScannerContext {
         ERROR
     }
 
+    private final static int DEFAULT_PAGE_SIZE = 1000;
+
     private String invokerName;
     private String scriptName;
     private JsonValue params;
@@ -115,6 +117,10 @@ public class TaskScannerContext {
         statistics.setNumberOfTasksToProcess(number);
     }
 
+    public void addNumberOfTasksToProcess(int number) {
+        statistics.addNumberOfTasksToProcess(number);
+    }
+
     public JsonValue getContext() {
         return this.context;
     }
@@ -186,6 +192,20 @@ public class TaskScannerContext {
         return waitForCompletion.booleanValue();
     }
 
+    /**
+     * Returns the number of objects to query at once. The scan pages through the query
+     * results, holding no more than a page and the work queue in memory. The repositories
+     * can only page queries returning the object ID.
+     * @return the page size, 0 to query all objects at once
+     */
+    public int getPageSize() {
+        JsonValue pageSize = params.get("pageSize").defaultTo(DEFAULT_PAGE_SIZE);
+        if (pageSize.isString()) {
+            return Integer.parseInt(pageSize.asString());
+        }
+        return pageSize.asInteger();
+    }
+
     public int getNumberOfThreads() {
         JsonValue numParams = params.get("numberOfThreads").defaultTo(10);
         return numParams.asInteger();
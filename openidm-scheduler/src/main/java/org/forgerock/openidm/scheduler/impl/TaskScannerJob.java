@@ -24,13 +24,21 @@
 package org.forgerock.openidm.scheduler.impl;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.Callable;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.forgerock.json.fluent.JsonPointer;
 import org.forgerock.json.fluent.JsonValue;
@@ -38,10 +46,13 @@ import org.forgerock.json.fluent.JsonValueException;
 import org.forgerock.json.resource.JsonResource;
 import org.forgerock.json.resource.JsonResourceAccessor;
 import org.forgerock.json.resource.JsonResourceException;
+import org.forgerock.openidm.core.ServerConstants;
 import org.forgerock.openidm.objset.ObjectSetContext;
 import org.forgerock.openidm.objset.PreconditionFailedException;
 import org.forgerock.openidm.quartz.impl.ExecutionException;
 import org.forgerock.openidm.repo.QueryConstants;
+import org.forgerock.openidm.repo.RepositoryService;
+import org.forgerock.openidm.repo.util.PagedResults;
 import org.forgerock.openidm.scope.ScopeFactory;
 import org.forgerock.openidm.script.Script;
 import org.forgerock.openidm.script.ScriptException;
@@ -57,11 +68,31 @@ public class TaskScannerJob {
     private final static Logger logger = LoggerFactory.getLogger(TaskScannerJob.class);
     private final static DateUtil DATE_UTIL = DateUtil.getDateUtil("UTC");
 
+    /**
+     * Queued after the last object of the query results, tells the worker threads to stop.
+     */
+    private final static JsonValue END_OF_RESULTS = new JsonValue(null);
+
+    /**
+     * The number of repository objects claimed, or marked completed, with one batch update
+     */
+    private final static int BATCH_SIZE = 100;
+
     private TaskScannerContext context;
     private JsonResource router;
     private ScopeFactory scopeFactory;
     private Script script;
 
+    /**
+     * IDs of the queued objects already claimed by a batch update
+     */
+    private final Set<String> claimedIds = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+    /**
+     * Objects waiting to be marked completed by the next batch update, guarded by itself
+     */
+    private final List<JsonValue> completions = new ArrayList<JsonValue>();
+
     public TaskScannerJob(TaskScannerContext context, JsonResource router, ScopeFactory scopeFactory)
             throws ExecutionException {
         this.context = context;
@@ -76,6 +107,13 @@ public class TaskScannerJob {
         }
     }
 
+    TaskScannerJob(TaskScannerContext context, JsonResource router, ScopeFactory scopeFactory, Script script) {
+        this.context = context;
+        this.router = router;
+        this.scopeFactory = scopeFactory;
+        this.script = script;
+    }
+
     /**
      * Starts the task associated with a task scanner event.
      * This method may run synchronously or launch a new thread depending upon the settings in the TaskScannerContext
@@ -118,11 +156,13 @@ public class TaskScannerJob {
 
     /**
      * Performs the task associated with the task scanner event.
-     * Runs the query and executes the script across each resulting object.
+     * Pages through the query results and feeds them, through a bounded queue, to worker
+     * threads executing the script on each object. Each worker takes the next object as soon
+     * as it is done with the previous one, so the threads stay evenly loaded however long the
+     * script takes on individual objects, and no more than one page and the queue are held
+     * in memory at any time.
      *
-     * @param invokerName name of the invoker
-     * @param scriptName name of the script associated with the task scanner event
-     * @param params parameters necessary for the execution of the script
+     * @param executor the executor running the worker threads
      * @throws ExecutionException
      */
     private void performTask(ExecutorService executor)
@@ -131,51 +171,56 @@ public class TaskScannerJob {
         logger.info("Task {} started from {} with script {}",
                 new Object[] { context.getTaskScanID(), context.getInvokerName(), context.getScriptName() });
 
-        JsonValue results;
-        context.startQuery();
-        try {
-            results = fetchAllObjects();
-        } catch (JsonResourceException e1) {
-            throw new ExecutionException("Error during query", e1);
-        }
-        context.endQuery();
-        Integer maxRecords = context.getMaxRecords();
-        if (maxRecords == null) {
-            context.setNumberOfTasksToProcess(results.size());
-        } else {
-            context.setNumberOfTasksToProcess(Math.min(results.size(), maxRecords));
-        }
-        logger.debug("TaskScan {} query results: {}", context.getInvokerName(), results.size());
-        // TODO jump out early if it's empty?
-
-        // Split and prune the result set according to our max and if we're synchronous or not
-        List<JsonValue> resultSets = splitResultsOverThreads(results, context.getNumberOfThreads(), maxRecords);
-        logger.debug("Split result set into {} units", resultSets.size());
+        int numberOfThreads = context.getNumberOfThreads();
+        int pageSize = context.getPageSize();
+        final BlockingQueue<JsonValue> queue = new LinkedBlockingQueue<JsonValue>(
+                pageSize > 0 ? Math.max(pageSize, numberOfThreads) : Integer.MAX_VALUE);
 
         final JsonValue threadContext = ObjectSetContext.get();
-        List<Callable<Object>> todo = new ArrayList<Callable<Object>>();
-        for (final JsonValue result : resultSets) {
+        final AtomicInteger liveWorkers = new AtomicInteger(numberOfThreads);
+        List<Future<?>> workers = new ArrayList<Future<?>>();
+        for (int i = 0; i < numberOfThreads; i++) {
             Runnable command = new Runnable() {
                 @Override
                 public void run() {
                     try {
                         ObjectSetContext.push(threadContext);
-                        performTaskOverSet(result);
+                        performTaskOverQueue(queue);
                     } catch (Exception ex) {
                         logger.warn("Taskscanner failed with unexpected exception", ex);
+                    } finally {
+                        liveWorkers.decrementAndGet();
                     }
                 }
             };
-            todo.add(Executors.callable(command));
+            workers.add(executor.submit(command));
         }
 
         try {
-            executor.invokeAll(todo);
+            try {
+                feedQueue(queue, pageSize, liveWorkers);
+            } finally {
+                if (context.isCanceled() || liveWorkers.get() == 0) {
+                    queue.clear();
+                }
+                while (!queue.offer(END_OF_RESULTS, 1, TimeUnit.SECONDS) && liveWorkers.get() > 0) {
+                    // Wait for the workers to make room
+                }
+            }
+            for (Future<?> worker : workers) {
+                worker.get();
+            }
         } catch (InterruptedException e) {
             // Mark it interrupted
             context.interrupted();
+            for (Future<?> worker : workers) {
+                worker.cancel(true);
+            }
             logger.warn("Task scan '" + context.getTaskScanID() + "' interrupted");
+        } catch (java.util.concurrent.ExecutionException e) {
+            logger.warn("Taskscanner failed with unexpected exception", e.getCause());
         }
+        writeCompletions();
         // Don't mark the job as completed if its been deactivated
         if (!context.isInactive()) {
             context.endJob();
@@ -189,88 +234,301 @@ public class TaskScannerJob {
         });
     }
 
-    private List<JsonValue> splitResultsOverThreads(JsonValue results, int numberOfThreads, Integer max) {
-        List<List<Object>> resultSets = new ArrayList<List<Object>>();
-        for (int i = 0; i < numberOfThreads; i++) {
-            resultSets.add(new ArrayList<Object>());
+    /**
+     * Pages through the query results, adding them to the queue of objects to process.
+     * Blocks while the queue is full, and stops early once maxRecords objects have been
+     * queued or the task is cancelled.
+     * <p>
+     * Pages are requested from the ID of the last object of the previous page rather than
+     * from an offset, so objects dropping out of the results as they are claimed and
+     * completed do not shift the following pages.
+     * <p>
+     * Repository objects are claimed in batches as they are queued, with one update of the
+     * repository for a batch of objects.
+     *
+     * @param queue the queue of objects to process
+     * @param pageSize the number of objects to query at once, 0 to query all at once
+     * @param liveWorkers the number of worker threads still taking objects from the queue
+     * @throws ExecutionException if the query fails or no worker thread is left
+     * @throws InterruptedException
+     */
+    private void feedQueue(BlockingQueue<JsonValue> queue, int pageSize, AtomicInteger liveWorkers)
+            throws ExecutionException, InterruptedException {
+        Integer maxRecords = context.getMaxRecords();
+        JsonValue params = flattenJson(context.getScanValue());
+        ConfigMacroUtil.expand(params);
+        if (pageSize > 0) {
+            params.put(QueryConstants.PAGE_SIZE, pageSize);
         }
 
-        int i = 0;
-        for (JsonValue obj : results) {
-            if (max != null && i >= max) {
-                break;
+        int queued = 0;
+        String lastId = null;
+        boolean morePages;
+        do {
+            if (lastId != null) {
+                params.put(QueryConstants.PAGED_RESULTS_COOKIE, PagedResults.encodeCookie(lastId));
             }
-            resultSets.get(i % numberOfThreads).add(obj.getObject());
-            i++;
-        }
-
-        List<JsonValue> jsonSets = new ArrayList<JsonValue>();
-        for (List<Object> set : resultSets) {
-            jsonSets.add(new JsonValue(set));
-        }
+            JsonValue page;
+            context.startQuery();
+            try {
+                page = accessor().query(context.getObjectID(), params);
+            } catch (JsonResourceException e) {
+                throw new ExecutionException("Error during query", e);
+            } finally {
+                context.endQuery();
+            }
+            JsonValue results = page.get(QueryConstants.QUERY_RESULT);
+            logger.debug("TaskScan {} query results: {}", context.getInvokerName(), results.size());
 
-        return jsonSets;
+            int count = results.size();
+            if (maxRecords != null) {
+                count = Math.min(count, maxRecords - queued);
+            }
+            context.addNumberOfTasksToProcess(count);
+            List<JsonValue> objects = new ArrayList<JsonValue>(count);
+            Iterator<JsonValue> iter = results.iterator();
+            for (int i = 0; i < count && iter.hasNext(); i++) {
+                objects.add(iter.next());
+            }
+            for (int from = 0; from < objects.size(); from += BATCH_SIZE) {
+                List<JsonValue> batch = objects.subList(from, Math.min(from + BATCH_SIZE, objects.size()));
+                if (isRepoObject()) {
+                    batch = claimBatch(batch);
+                }
+                for (JsonValue obj : batch) {
+                    while (!queue.offer(obj, 1, TimeUnit.SECONDS)) {
+                        if (context.isCanceled()) {
+                            return;
+                        }
+                        if (liveWorkers.get() == 0) {
+                            throw new ExecutionException("Task scan '" + context.getTaskScanID()
+                                    + "' has no worker thread left to process the results");
+                        }
+                    }
+                    lastId = obj.get("_id").asString();
+                    queued++;
+                }
+            }
+            morePages = pageSize > 0 && !page.get(QueryConstants.PAGED_RESULTS_COOKIE).isNull();
+        } while (morePages && lastId != null && !context.isCanceled()
+                && (maxRecords == null || queued < maxRecords));
     }
 
-    private void performTaskOverSet(JsonValue results)
-                    throws ExecutionException {
-        for (JsonValue input : results) {
+    /**
+     * Takes objects from the queue and processes them, until the end of the results is
+     * reached or the task is cancelled.
+     *
+     * @param queue the queue of objects to process
+     * @throws InterruptedException
+     */
+    private void performTaskOverQueue(BlockingQueue<JsonValue> queue) throws InterruptedException {
+        while (true) {
+            JsonValue input = queue.take();
+            if (input == END_OF_RESULTS) {
+                // Leave it for the other threads
+                queue.put(END_OF_RESULTS);
+                return;
+            }
             if (context.isCanceled()) {
                 logger.info("Task '" + context.getTaskScanID() + "' cancelled. Terminating execution.");
-                break; // Jump out quick since we've cancelled the job
+                return; // Jump out quick since we've cancelled the job
             }
-            // Check if this object has a STARTED time already
-            JsonValue startTime = input.get(context.getStartField());
-            String startTimeString = null;
-            if (startTime != null && !startTime.isNull()) {
-                startTimeString = startTime.asString();
-                DateTime startedTime = DATE_UTIL.parseTimestamp(startTimeString);
-
-                // Skip if the startTime + interval has not been passed
-                ReadablePeriod period = context.getRecoveryTimeout();
-                DateTime expirationDate = startedTime.plus(period);
-                if (expirationDate.isAfterNow()) {
-                    logger.debug("Object already started and has not expired. Started at: {}. Timeout: {}. Expires at: {}",
-                            new Object[] {
-                            DATE_UTIL.formatDateTime(startedTime),
-                            period,
-                            DATE_UTIL.formatDateTime(expirationDate)});
-                    continue;
-                }
+            try {
+                performTaskOverObject(input);
+            } catch (ExecutionException ex) {
+                logger.warn("Taskscanner failed to process " + input.get("_id").asString(), ex);
+            } catch (RuntimeException ex) {
+                // Keep the thread taking objects, the feeder relies on it
+                context.getStatistics().taskFailed();
+                logger.warn("Taskscanner failed to process " + input.get("_id").asString(), ex);
             }
+        }
+    }
 
-            try {
-                claimAndExecScript(input, startTimeString);
-            } catch (JsonResourceException e) {
-                throw new ExecutionException("Error during claim and execution phase", e);
+    private void performTaskOverObject(JsonValue input)
+                    throws ExecutionException {
+        try {
+            if (claimedIds.remove(input.get("_id").asString())) {
+                // Claimed by a batch update, repository objects are not transformed on read
+                execScript(input);
+            } else if (isDue(input)) {
+                claimAndExecScript(input, input.get(context.getStartField()).asString());
             }
+        } catch (JsonResourceException e) {
+            throw new ExecutionException("Error during claim and execution phase", e);
         }
     }
 
     /**
-     * Flatten a list of parameters and perform a query to fetch all objects from storage
-     * @param id the identifier of the resource to query
-     * @param params the parameters of the query
-     * @return JsonValue containing a list of all the retrieved objects
-     * @throws JsonResourceException
+     * Checks if an object is due to be processed, that is if it has not been started or the
+     * recovery timeout has passed since it was started.
+     * @param input the object to check
+     * @return true if the object is due
+     */
+    private boolean isDue(JsonValue input) {
+        // Check if this object has a STARTED time already
+        JsonValue startTime = input.get(context.getStartField());
+        if (startTime != null && !startTime.isNull()) {
+            DateTime startedTime = DATE_UTIL.parseTimestamp(startTime.asString());
+
+            // Skip if the startTime + interval has not been passed
+            ReadablePeriod period = context.getRecoveryTimeout();
+            DateTime expirationDate = startedTime.plus(period);
+            if (expirationDate.isAfterNow()) {
+                logger.debug("Object already started and has not expired. Started at: {}. Timeout: {}. Expires at: {}",
+                        new Object[] {
+                        DATE_UTIL.formatDateTime(startedTime),
+                        period,
+                        DATE_UTIL.formatDateTime(expirationDate)});
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Whether the scanned objects are read from the repository directly, rather than through a
+     * service such as the managed objects. Repository objects are claimed and marked completed
+     * in batches.
+     * @return true if the scanned objects are repository objects
+     */
+    private boolean isRepoObject() {
+        return context.getObjectID().startsWith("repo/");
+    }
+
+    /**
+     * Claims the due objects of a batch with one batch update of the repository, setting their
+     * start field. Claimed objects are queued as written, with their new revision, and the
+     * workers execute the script on them straight away. Objects changed since the query, by a
+     * claim of another node for instance, are queued as read and go through the claim of a
+     * single object, which checks whether they are still to be processed.
+     *
+     * @param batch the objects to claim
+     * @return the objects to queue
+     * @throws ExecutionException if the batch update fails
      */
-    private JsonValue fetchAllObjects() throws JsonResourceException {
-        JsonValue flatParams = flattenJson(context.getScanValue());
-        ConfigMacroUtil.expand(flatParams);
-        return performQuery(context.getObjectID(), flatParams);
+    private List<JsonValue> claimBatch(List<JsonValue> batch) throws ExecutionException {
+        JsonPointer startField = context.getStartField();
+        List<JsonValue> toQueue = new ArrayList<JsonValue>(batch);
+        Map<String, Integer> positions = new HashMap<String, Integer>();
+        List<Object> claims = new ArrayList<Object>();
+        for (int i = 0; i < batch.size(); i++) {
+            JsonValue obj = batch.get(i);
+            if (!isDue(obj)) {
+                continue;
+            }
+            JsonValue claim = obj.copy();
+            ensureJsonPointerExists(startField, claim);
+            claim.put(startField, DATE_UTIL.now());
+            toQueue.set(i, claim);
+            positions.put(claim.get("_id").asString(), Integer.valueOf(i));
+            claims.add(claim.getObject());
+        }
+        if (claims.isEmpty()) {
+            return batch;
+        }
+        JsonValue updated;
+        try {
+            updated = updateBatch(claims);
+        } catch (JsonResourceException e) {
+            throw new ExecutionException("Error during batch claim", e);
+        }
+        for (JsonValue obj : updated) {
+            String id = obj.get("_id").asString();
+            Integer position = positions.remove(id);
+            if (position != null) {
+                toQueue.get(position.intValue()).put("_rev", obj.get("_rev").getObject());
+                claimedIds.add(id);
+            }
+        }
+        // Not claimed, queue as read
+        for (Integer position : positions.values()) {
+            toQueue.set(position.intValue(), batch.get(position.intValue()));
+        }
+        logger.debug("Claimed {} of {} objects with a batch update", claims.size() - positions.size(), batch.size());
+        return toQueue;
     }
 
     /**
-     * Performs a query on a resource and returns the result set
-     * @param resourceID the identifier of the resource to query
-     * @param params parameters to supply to the query
-     * @return the set of results from the performed query
+     * Updates a batch of repository objects of the scanned resource, each only if its revision
+     * has not changed.
+     * @param objects the objects to update
+     * @return the ID and new revision of the updated objects
      * @throws JsonResourceException
      */
-    private JsonValue performQuery(String resourceID, JsonValue params) throws JsonResourceException {
-        JsonValue queryResults = null;
-        queryResults = accessor().query(resourceID, params);
-        return queryResults.get(QueryConstants.QUERY_RESULT);
+    private JsonValue updateBatch(List<Object> objects) throws JsonResourceException {
+        JsonValue params = new JsonValue(new HashMap<String, Object>());
+        params.put(ServerConstants.ACTION_NAME, RepositoryService.ACTION_UPDATE_BATCH);
+        JsonValue result = accessor().action(context.getObjectID(), params, new JsonValue(objects));
+        return result.get(RepositoryService.BATCH_UPDATED);
+    }
+
+    /**
+     * Adds an object to the batch of objects to mark completed, and writes the batch once full.
+     * @param value the object to mark completed
+     */
+    private void addCompletion(JsonValue value) {
+        List<JsonValue> batch = null;
+        synchronized (completions) {
+            completions.add(value);
+            if (completions.size() >= BATCH_SIZE) {
+                batch = new ArrayList<JsonValue>(completions);
+                completions.clear();
+            }
+        }
+        if (batch != null) {
+            writeCompletions(batch);
+        }
+    }
+
+    /**
+     * Writes the objects still waiting to be marked completed.
+     */
+    private void writeCompletions() {
+        List<JsonValue> batch;
+        synchronized (completions) {
+            batch = new ArrayList<JsonValue>(completions);
+            completions.clear();
+        }
+        if (!batch.isEmpty()) {
+            writeCompletions(batch);
+        }
+    }
+
+    /**
+     * Marks a batch of objects completed with one batch update of the repository. An object
+     * changed since it was read after its script ran is read again and marked completed on its own.
+     * @param batch the objects to mark completed
+     */
+    private void writeCompletions(List<JsonValue> batch) {
+        String resourceID = context.getObjectID();
+        JsonPointer completedField = context.getCompletedField();
+        List<Object> objects = new ArrayList<Object>();
+        for (JsonValue value : batch) {
+            ensureJsonPointerExists(completedField, value);
+            value.put(completedField, DATE_UTIL.now());
+            objects.add(value.getObject());
+        }
+        Set<String> updated = new HashSet<String>();
+        try {
+            for (JsonValue obj : updateBatch(objects)) {
+                updated.add(obj.get("_id").asString());
+            }
+        } catch (JsonResourceException ex) {
+            logger.warn("Taskscanner failed to mark a batch of " + batch.size() + " objects completed", ex);
+        }
+        for (JsonValue value : batch) {
+            String id = value.get("_id").asString();
+            try {
+                if (!updated.contains(id)) {
+                    updateValueWithObject(resourceID, retrieveObject(resourceID, id), completedField, DATE_UTIL.now());
+                }
+                context.getStatistics().taskSucceded();
+            } catch (JsonResourceException ex) {
+                context.getStatistics().taskFailed();
+                logger.warn("Taskscanner failed to mark " + id + " completed", ex);
+            }
+        }
     }
 
     /**
@@ -301,7 +559,10 @@ public class TaskScannerJob {
     }
 
     /**
-     * Performs an update on a given resource with a supplied JsonValue
+     * Performs an update on a given resource with a supplied JsonValue.
+     * The updated object is the supplied value with the revision returned by the update, as
+     * written rather than as the resource would return it on read. It is only read back from
+     * the resource if the update does not return the new revision.
      * @param resourceID the resource identifier to perform the update on
      * @param value the object to update with
      * @return the updated object
@@ -312,8 +573,13 @@ public class TaskScannerJob {
         String fullID = retrieveFullID(resourceID, value);
         String rev = value.get("_rev").required().asString();
 
-        accessor().update(fullID, rev, value);
-        return retrieveObject(resourceID, id);
+        JsonValue result = accessor().update(fullID, rev, value);
+        String newRev = result == null ? null : result.get("_rev").asString();
+        if (newRev == null) {
+            return retrieveObject(resourceID, id);
+        }
+        value.put("_rev", newRev);
+        return value;
     }
 
     /**
@@ -393,7 +659,9 @@ public class TaskScannerJob {
             }
         } while (retryClaimTask && !context.isCanceled());
         if (claimedTask) {
-            execScript(_input);
+            // Read the claimed object back, the script gets it as transformed by the resource
+            // (such as the onRead script of a managed object) rather than as written
+            execScript(retrieveObject(resourceID, id));
         }
     }
 
@@ -428,7 +696,10 @@ public class TaskScannerJob {
                 JsonValue _input = retrieveUpdatedObject(resourceID, input);
                 logger.debug("After script execution: {}", _input);
 
-                if (returnedValue == Boolean.TRUE) {
+                if (returnedValue == Boolean.TRUE && isRepoObject()) {
+                    // Counted as succeeded once written
+                    addCompletion(_input);
+                } else if (returnedValue == Boolean.TRUE) {
                    _input = updateValueWithObject(resourceID, _input, context.getCompletedField(), DATE_UTIL.now());
                    context.getStatistics().taskSucceded();
                    logger.debug("Updated CompletedField: {}", _input);
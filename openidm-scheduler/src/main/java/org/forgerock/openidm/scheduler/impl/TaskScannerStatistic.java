@@ -31,7 +31,8 @@ public class TaskScannerStatistic {
     private long jobEndTime;
     private long queryStartTime;
     private long queryEndTime;
-    private int numberToProcess = 0;
+    private long queryDuration;
+    private volatile int numberToProcess = 0;
 
     // Note: These should be the only ones used during the thread executions
     private AtomicInteger numSuccessful;
@@ -68,10 +69,14 @@ public class TaskScannerStatistic {
 
     public void queryEnd() {
         queryEndTime = System.currentTimeMillis();
+        queryDuration += queryEndTime - queryStartTime;
     }
 
+    /**
+     * @return the total time spent querying, over all pages of results
+     */
     public long getQueryDuration() {
-        return queryEndTime - queryStartTime;
+        return queryDuration;
     }
 
     public void taskSucceded() {
@@ -105,4 +110,8 @@ public class TaskScannerStatistic {
     public void setNumberOfTasksToProcess(int numberToProcess) {
         this.numberToProcess = numberToProcess;
     }
+
+    public void addNumberOfTasksToProcess(int number) {
+        this.numberToProcess += number;
+    }
 }
@@ -0,0 +1,319 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright © 2013 ForgeRock AS. All rights reserved.
+ *
+ * The contents of this file are subject to the terms
+ * of the Common Development and Distribution License
+ * (the License). You may not use this file except in
+ * compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://forgerock.org/license/CDDLv1.0.html
+ * See the License for the specific language governing
+ * permission and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL
+ * Header Notice in each file and include the License file
+ * at http://forgerock.org/license/CDDLv1.0.html
+ * If applicable, add the following below the CDDL Header,
+ * with the fields enclosed by brackets [] replaced by
+ * your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ */
+package org.forgerock.openidm.scheduler.impl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import org.forgerock.json.fluent.JsonValue;
+import org.forgerock.json.resource.JsonResource;
+import org.forgerock.json.resource.JsonResourceException;
+import org.forgerock.openidm.objset.NotFoundException;
+import org.forgerock.openidm.objset.ObjectSetContext;
+import org.forgerock.openidm.objset.PreconditionFailedException;
+import org.forgerock.openidm.quartz.impl.ExecutionException;
+import org.forgerock.openidm.repo.QueryConstants;
+import org.forgerock.openidm.repo.RepositoryService;
+import org.forgerock.openidm.repo.util.PagedResults;
+import org.forgerock.openidm.scope.ScopeFactory;
+import org.forgerock.openidm.script.Script;
+import org.forgerock.openidm.script.ScriptException;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+import static org.testng.Assert.*;
+
+public class TaskScannerJobTest {
+
+    private static final int OBJECT_COUNT = 10;
+
+    private Repo repo;
+
+    @BeforeMethod
+    public void setUp() {
+        repo = new Repo();
+        for (int i = 0; i < OBJECT_COUNT; i++) {
+            Map<String, Object> obj = new HashMap<String, Object>();
+            obj.put("_id", "obj" + i);
+            obj.put("_rev", "0");
+            repo.objects.put("obj" + i, obj);
+        }
+        ObjectSetContext.push(new JsonValue(new HashMap<String, Object>()));
+    }
+
+    @AfterMethod
+    public void tearDown() {
+        ObjectSetContext.clear();
+    }
+
+    /**
+     * Objects claimed and completed drop out of the scan query results while it is paged.
+     */
+    @Test
+    public void pagesThroughShrinkingResults() throws Exception {
+        RecordingScript script = new RecordingScript(null);
+        TaskScannerContext context = newContext(2, 3);
+        new TaskScannerJob(context, repo, new MapScopeFactory(), script).startTask();
+
+        assertEquals(script.processed.size(), OBJECT_COUNT);
+        assertEquals(context.getStatistics().getNumberOfTasksSucceeded(), OBJECT_COUNT);
+        for (Map<String, Object> obj : repo.objects.values()) {
+            assertNotNull(obj.get("completed"), obj.get("_id") + " not completed");
+        }
+        assertTrue(repo.queries > 1, "Query not paged");
+        assertTrue(context.isCompleted());
+    }
+
+    /**
+     * The script gets the claimed object as read, with the properties the resource adds on
+     * read, and the completion update is not read back.
+     */
+    @Test
+    public void scriptGetsObjectAsRead() throws Exception {
+        RecordingScript script = new RecordingScript(null);
+        TaskScannerContext context = newContext(2, 0);
+        new TaskScannerJob(context, repo, new MapScopeFactory(), script).startTask();
+
+        assertEquals(script.read.size(), OBJECT_COUNT);
+        // One read after the claim, one after the script before marking completion
+        assertEquals(repo.reads, 2 * OBJECT_COUNT);
+    }
+
+    @Test
+    public void workerSurvivesFailedObject() throws Exception {
+        RecordingScript script = new RecordingScript(new IllegalStateException("failed obj3"));
+        TaskScannerContext context = newContext(1, 3);
+        new TaskScannerJob(context, repo, new MapScopeFactory(), script).startTask();
+
+        assertEquals(script.processed.size(), OBJECT_COUNT);
+        assertEquals(context.getStatistics().getNumberOfTasksSucceeded(), OBJECT_COUNT - 1);
+        assertEquals(context.getStatistics().getNumberOfTasksFailed(), 1);
+        assertNull(repo.objects.get("obj3").get("completed"));
+    }
+
+    @Test(expectedExceptions = ExecutionException.class, timeOut = 30000)
+    public void feederStopsWithoutWorkers() throws Exception {
+        RecordingScript script = new RecordingScript(new Error("worker died"));
+        TaskScannerContext context = newContext(1, 2);
+        try {
+            new TaskScannerJob(context, repo, new MapScopeFactory(), script).startTask();
+        } finally {
+            assertTrue(script.processed.size() < OBJECT_COUNT);
+        }
+    }
+
+    /**
+     * Repository objects are claimed and marked completed with batch updates, an object
+     * changed before the batch claim is claimed on its own.
+     */
+    @Test
+    public void batchUpdatesRepoObjects() throws Exception {
+        RecordingScript script = new RecordingScript(null);
+        TaskScannerContext context = newContext("repo/scan", 2, 0);
+        repo.changedBeforeBatch = "obj2";
+        new TaskScannerJob(context, repo, new MapScopeFactory(), script).startTask();
+
+        assertEquals(script.processed.size(), OBJECT_COUNT);
+        assertEquals(context.getStatistics().getNumberOfTasksSucceeded(), OBJECT_COUNT);
+        for (Map<String, Object> obj : repo.objects.values()) {
+            assertNotNull(obj.get("started"), obj.get("_id") + " not started");
+            assertNotNull(obj.get("completed"), obj.get("_id") + " not completed");
+        }
+        // One batch claim, one batch of completions
+        assertEquals(repo.batches, 2);
+        // Only obj2 is claimed and marked completed on its own
+        assertEquals(repo.updates, 2);
+    }
+
+    @Test
+    public void pagesByDefault() throws Exception {
+        TaskScannerContext context = newContext(1, null);
+        assertEquals(context.getPageSize(), 1000);
+    }
+
+    private static TaskScannerContext newContext(int numberOfThreads, Integer pageSize) {
+        return newContext("managed/user", numberOfThreads, pageSize);
+    }
+
+    private static TaskScannerContext newContext(String object, int numberOfThreads, Integer pageSize) {
+        Map<String, Object> taskState = new HashMap<String, Object>();
+        taskState.put("started", "/started");
+        taskState.put("completed", "/completed");
+        Map<String, Object> scan = new HashMap<String, Object>();
+        scan.put("object", object);
+        scan.put("_queryId", "scan-tasks");
+        scan.put("taskState", taskState);
+        Map<String, Object> scriptConfig = new HashMap<String, Object>();
+        scriptConfig.put("type", "text/javascript");
+        scriptConfig.put("source", "true");
+        Map<String, Object> task = new HashMap<String, Object>();
+        task.put("script", scriptConfig);
+        Map<String, Object> params = new HashMap<String, Object>();
+        params.put("scan", scan);
+        params.put("task", task);
+        params.put("numberOfThreads", numberOfThreads);
+        if (pageSize != null) {
+            params.put("pageSize", pageSize);
+        }
+        params.put("waitForCompletion", true);
+        Map<String, Object> context = new HashMap<String, Object>();
+        context.put("uuid", "test-scan");
+        return new TaskScannerContext("test", "test-script", new JsonValue(params), new JsonValue(context));
+    }
+
+    /**
+     * Returns true for each object, or throws the given failure for obj3.
+     */
+    private static class RecordingScript implements Script {
+        final Set<String> processed = Collections.synchronizedSet(new HashSet<String>());
+        final Set<String> read = Collections.synchronizedSet(new HashSet<String>());
+        private final Throwable failure;
+
+        RecordingScript(Throwable failure) {
+            this.failure = failure;
+        }
+
+        public Object exec(Map<String, Object> scope) throws ScriptException {
+            Map<?, ?> input = (Map<?, ?>) scope.get("input");
+            String id = (String) input.get("_id");
+            processed.add(id);
+            if (input.get("virtual") != null) {
+                read.add(id);
+            }
+            if (failure instanceof RuntimeException && id.equals("obj3")) {
+                throw (RuntimeException) failure;
+            } else if (failure instanceof Error) {
+                throw (Error) failure;
+            }
+            return Boolean.TRUE;
+        }
+    }
+
+    private static class MapScopeFactory implements ScopeFactory {
+        public void setRouter(JsonResource router) {
+        }
+
+        public Map<String, Object> newInstance(JsonValue context) {
+            return new HashMap<String, Object>();
+        }
+    }
+
+    /**
+     * Repository of objects ordered by ID, the scan query returning those not completed
+     * and paging on the ID like the JDBC and OrientDB repositories. Reads add a virtual
+     * property, as an onRead script would. Batch updates are supported as by the repositories.
+     */
+    private static class Repo implements JsonResource {
+        final Map<String, Map<String, Object>> objects = new TreeMap<String, Map<String, Object>>();
+        int queries;
+        int reads;
+        int updates;
+        int batches;
+        String changedBeforeBatch;
+
+        public synchronized JsonValue handle(JsonValue request) throws JsonResourceException {
+            String method = request.get("method").asString();
+            if ("query".equals(method)) {
+                return query(request.get("params").asMap());
+            } else if ("action".equals(method)) {
+                return updateBatch(request.get("value"));
+            }
+            String id = request.get("id").asString();
+            Map<String, Object> obj = objects.get(id.substring(id.lastIndexOf('/') + 1));
+            if (obj == null) {
+                throw new NotFoundException(id);
+            }
+            if ("read".equals(method)) {
+                reads++;
+                Map<String, Object> result = new HashMap<String, Object>(obj);
+                result.put("virtual", "computed");
+                return new JsonValue(result);
+            } else if ("update".equals(method)) {
+                updates++;
+                JsonValue result = update(obj, request.get("rev").asString(), request.get("value"));
+                if (result == null) {
+                    throw new PreconditionFailedException(id);
+                }
+                return result;
+            }
+            throw new JsonResourceException(JsonResourceException.BAD_REQUEST);
+        }
+
+        private JsonValue update(Map<String, Object> obj, String rev, JsonValue value) {
+            if (!obj.get("_rev").equals(rev)) {
+                return null;
+            }
+            Map<String, Object> updated = new HashMap<String, Object>(value.asMap());
+            updated.put("_rev", Integer.toString(Integer.parseInt((String) obj.get("_rev")) + 1));
+            objects.put((String) obj.get("_id"), updated);
+            Map<String, Object> result = new HashMap<String, Object>();
+            result.put("_id", obj.get("_id"));
+            result.put("_rev", updated.get("_rev"));
+            return new JsonValue(result);
+        }
+
+        private JsonValue updateBatch(JsonValue value) {
+            if (batches++ == 0 && changedBeforeBatch != null) {
+                objects.get(changedBeforeBatch).put("_rev", "1");
+            }
+            List<Object> updated = new ArrayList<Object>();
+            for (JsonValue obj : value) {
+                JsonValue result = update(objects.get(obj.get("_id").asString()), obj.get("_rev").asString(), obj);
+                if (result != null) {
+                    updated.add(result.getObject());
+                }
+            }
+            Map<String, Object> result = new HashMap<String, Object>();
+            result.put(RepositoryService.BATCH_UPDATED, updated);
+            return new JsonValue(result);
+        }
+
+        private JsonValue query(Map<String, Object> params) throws JsonResourceException {
+            queries++;
+            int pageSize = PagedResults.getPageSize(params);
+            String lastId = PagedResults.getLastId(params);
+            List<Map<String, Object>> docs = new ArrayList<Map<String, Object>>();
+            for (Map<String, Object> obj : objects.values()) {
+                String id = (String) obj.get("_id");
+                if (obj.get("completed") != null || (lastId != null && id.compareTo(lastId) <= 0)) {
+                    continue;
+                }
+                if (pageSize > 0 && docs.size() == pageSize) {
+                    break;
+                }
+                docs.add(new HashMap<String, Object>(obj));
+            }
+            Map<String, Object> result = new HashMap<String, Object>();
+            result.put(QueryConstants.QUERY_RESULT, docs);
+            PagedResults.setPagedResultsCookie(result, docs, pageSize);
+            return new JsonValue(result);
+        }
+    }
+}
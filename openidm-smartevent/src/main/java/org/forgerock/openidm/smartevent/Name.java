@@ -75,6 +75,11 @@ public class Name {
      */
     boolean resultHistoryEnabled = false;
     
+    /**
+     * Optional gauge exposing a current value under this name
+     */
+    volatile Gauge gauge;
+    
     PluggablePublisher publisherImpl;
     
     private Name(String stringifiedName) {
@@ -167,6 +172,23 @@ public class Name {
         return resultHistoryEnabled;
     }
     
+    /**
+     * Fluent API to expose a current value under this name in monitoring
+     * @param gauge the gauge to sample, or null to remove an existing gauge
+     * @return this Name instance for use as a fluent API
+     */
+    public Name setGauge(Gauge gauge) {
+        this.gauge = gauge;
+        return this;
+    }
+    
+    /**
+     * @return the gauge exposed under this name, or null if none
+     */
+    public Gauge getGauge() {
+        return gauge;
+    }
+    
     /**
      * Get all currently registered event names 
      * The returned map should not be directly modified.
@@ -26,8 +26,31 @@ import org.slf4j.LoggerFactory;
  */
 public class MonitoringInfo {
 
+    // Upper bounds (exclusive) of the latency histogram buckets, in nanoseconds
+    static final long[] HISTOGRAM_BOUNDS = {1000000L, 10000000L, 100000000L, 1000000000L};
+    static final String[] HISTOGRAM_LABELS = {"<1ms", "<10ms", "<100ms", "<1s", ">=1s"};
+
     public long totalInvokes;
     public long totalTime;
+    public long maxTime;
+    public long[] histogram = new long[HISTOGRAM_LABELS.length];
+
+    /**
+     * Record the duration of one event
+     * @param duration the event duration in nanoseconds
+     */
+    public void record(long duration) {
+        totalTime += duration;
+        totalInvokes++;
+        if (duration > maxTime) {
+            maxTime = duration;
+        }
+        int bucket = 0;
+        while (bucket < HISTOGRAM_BOUNDS.length && duration >= HISTOGRAM_BOUNDS[bucket]) {
+            bucket++;
+        }
+        histogram[bucket]++;
+    }
 
     /**
      * Reset the statistics
@@ -35,11 +58,22 @@ public class MonitoringInfo {
     public void reset() {
         totalInvokes = 0;
         totalTime = 0;
+        maxTime = 0;
+        histogram = new long[HISTOGRAM_LABELS.length];
     }
     
     public String toString() {
+        StringBuilder distribution = new StringBuilder();
+        for (int i = 0; i < histogram.length; i++) {
+            if (i > 0) {
+                distribution.append(", ");
+            }
+            distribution.append(HISTOGRAM_LABELS[i]).append(": ").append(histogram[i]);
+        }
         return "Invocations: " + totalInvokes 
                 + " total time: " + StatisticsHandler.formatNsAsMs(totalTime) 
-                + " mean: " + StatisticsHandler.formatNsAsMs(totalInvokes > 0 ? totalTime/totalInvokes : -1);
+                + " mean: " + StatisticsHandler.formatNsAsMs(totalInvokes > 0 ? totalTime/totalInvokes : -1)
+                + " max: " + StatisticsHandler.formatNsAsMs(totalInvokes > 0 ? maxTime : -1)
+                + " distribution: [" + distribution + "]";
     }
-}
\ No newline at end of file
+}
@@ -26,6 +26,7 @@ import java.util.Map;
 import java.util.TreeMap;
 
 import org.forgerock.openidm.smartevent.EventEntry;
+import org.forgerock.openidm.smartevent.Gauge;
 import org.forgerock.openidm.smartevent.Name;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -112,6 +113,24 @@ public class StatisticsHandler implements
         return recent;
     }
     
+    /**
+     * @inheritDoc
+     */
+    public Map<String, Long> getGauges() {
+        Map<String, Long> gauges = new TreeMap<String, Long>();
+        for (Map.Entry<String, Name> entry : Name.getAllNames().entrySet()) {
+            Gauge gauge = entry.getValue().getGauge();
+            if (gauge != null) {
+                try {
+                    gauges.put(entry.getKey(), Long.valueOf(gauge.getValue()));
+                } catch (RuntimeException ex) {
+                    logger.info("Failure in sampling gauge {}", entry.getKey(), ex);
+                }
+            }
+        }
+        return gauges;
+    }
+    
     /**
      * @inheritDoc
      */
@@ -203,8 +222,7 @@ public class StatisticsHandler implements
             entry = new MonitoringInfo();
             map.put(eventEntry.eventName.asString(), entry);
         }
-        entry.totalTime += diff;
-        entry.totalInvokes++;
+        entry.record(diff);
     }
     
     // TODO: more research on latency of batched end time option
@@ -230,8 +248,7 @@ public class StatisticsHandler implements
             entry = new MonitoringInfo();
             map.put(eventEntry.eventName.asString(), entry);
         }
-        entry.totalTime += diff;
-        entry.totalInvokes++;
+        entry.record(diff);
         if (endOfBatch) {
             newBatch = true;
         } else {
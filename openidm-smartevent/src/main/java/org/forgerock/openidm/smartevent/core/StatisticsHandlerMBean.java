@@ -52,6 +52,12 @@ public interface StatisticsHandlerMBean {
      */
     Map getRecent();
     
+    /**
+     * @return the current values of the registered gauges, 
+     * mapping from Stringified name to value
+     */
+    Map<String, Long> getGauges();
+    
     /**
      * Reset all statistics data for events
      */